@@ -11,12 +11,21 @@ import nl.andrewl.aos2_client.sound.SoundManager;
 import nl.andrewl.aos_core.config.Config;
 import nl.andrewl.aos_core.model.Projectile;
 import nl.andrewl.aos_core.model.Team;
+import nl.andrewl.aos_core.model.world.Chunk;
+import nl.andrewl.aos_core.model.world.ColorPalette;
+import nl.andrewl.aos_core.model.world.WorldDigest;
 import nl.andrewl.aos_core.net.client.*;
+import nl.andrewl.aos_core.net.world.BlockChangeSetMessage;
 import nl.andrewl.aos_core.net.world.ChunkDataMessage;
 import nl.andrewl.aos_core.net.world.ChunkHashMessage;
 import nl.andrewl.aos_core.net.world.ChunkUpdateMessage;
+import nl.andrewl.aos_core.net.world.WorldChangeMessage;
+import nl.andrewl.aos_core.net.world.WorldDigestMessage;
+import nl.andrewl.aos_core.net.world.WorldSubtreeMessage;
+import nl.andrewl.aos_core.net.world.WorldSubtreeRequestMessage;
 import nl.andrewl.record_net.Message;
 import org.joml.Vector3f;
+import org.joml.Vector3i;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -30,12 +39,30 @@ public class Client implements Runnable {
 	public final ConnectConfig connectConfig;
 	public final ClientConfig config;
 
+	private static final int SNAPSHOT_HISTORY_SIZE = 32;
+
 	private final CommunicationHandler communicationHandler;
 	private final InputHandler inputHandler;
 	private final Camera camera;
 	private GameRenderer gameRenderer;
 	private SoundManager soundManager;
 	private long lastPlayerUpdate = 0;
+	/**
+	 * The most recent player snapshots that we've received, indexed by their
+	 * sequence number modulo {@link Client#SNAPSHOT_HISTORY_SIZE}, so that we
+	 * can decode later snapshots that are deltas against them. These are only
+	 * used by the thread that receives datagrams.
+	 */
+	private final PlayerSnapshot[] snapshots = new PlayerSnapshot[SNAPSHOT_HISTORY_SIZE];
+	private final int[] snapshotSequences = new int[SNAPSHOT_HISTORY_SIZE];
+	private int lastSnapshotSequence = -1;
+	/**
+	 * The parts that we've received of the newest snapshot that was sent in
+	 * more than one part, which is stored once we have all of them.
+	 */
+	private PlayerSnapshot[] pendingSnapshotParts = new PlayerSnapshot[0];
+	private int pendingSnapshotSequence = -1;
+	private int pendingSnapshotPartCount = 0;
 
 	private ClientWorld world;
 	private ClientPlayer myPlayer;
@@ -116,9 +143,36 @@ public class Client implements Runnable {
 		} else if (msg instanceof ChunkUpdateMessage u) {
 			world.updateChunk(u);
 			// If we received an update for a chunk we don't have, request it!
-			if (world.getChunkAt(u.getChunkPos()) == null) {
+			if (world.getChunkAt(u.getChunkKey()) == null) {
 				communicationHandler.sendMessage(new ChunkHashMessage(u.cx(), u.cy(), u.cz(), -1));
 			}
+		} else if (msg instanceof BlockChangeSetMessage changeSetMessage) {
+			world.applyChanges(changeSetMessage.toChangeSet());
+		} else if (msg instanceof WorldChangeMessage changeMessage) {
+			// The world is cleared straight away, since the new world's chunks follow this message.
+			world.changeWorld(ColorPalette.fromArray(changeMessage.getPalette()));
+			int[] teamIds = changeMessage.getTeamIds();
+			float[] points = changeMessage.getTeamSpawnPoints();
+			runLater(() -> {
+				for (int i = 0; i < teamIds.length; i++) {
+					Team team = teams.get(teamIds[i]);
+					if (team != null) team.setSpawnPoint(new Vector3f(points[i * 3], points[i * 3 + 1], points[i * 3 + 2]));
+				}
+			});
+		} else if (msg instanceof WorldDigestMessage digestMessage) {
+			var digest = world.getDigest(digestMessage.ox(), digestMessage.oy(), digestMessage.oz(), digestMessage.level());
+			if (digest.getRootHash() != digestMessage.hash()) {
+				requestWorldSubtree(digest, digest.getLevel(), 0);
+			}
+		} else if (msg instanceof WorldSubtreeMessage subtreeMessage) {
+			var digest = world.getDigest(subtreeMessage.ox(), subtreeMessage.oy(), subtreeMessage.oz(), subtreeMessage.rootLevel());
+			long[] hashes = digest.getChildHashes(subtreeMessage.level(), subtreeMessage.index());
+			long[] serverHashes = subtreeMessage.getChildHashes();
+			for (int i = 0; i < hashes.length && i < serverHashes.length; i++) {
+				if (hashes[i] != serverHashes[i]) {
+					requestWorldSubtree(digest, subtreeMessage.level() - 1, (subtreeMessage.index() << 3) | i);
+				}
+			}
 		} else if (msg instanceof PlayerUpdateMessage playerUpdate) {
 			runLater(() -> {
 				if (playerUpdate.clientId() == myPlayer.getId() && playerUpdate.timestamp() > lastPlayerUpdate) {
@@ -142,6 +196,8 @@ public class Client implements Runnable {
 					}
 				}
 			});
+		} else if (msg instanceof PlayerSnapshotMessage snapshotMessage) {
+			handlePlayerSnapshot(snapshotMessage);
 		} else if (msg instanceof ClientInventoryMessage inventoryMessage) {
 			runLater(() -> myPlayer.setInventory(inventoryMessage.inv()));
 		} else if (msg instanceof InventorySelectedStackMessage selectedStackMessage) {
@@ -209,6 +265,116 @@ public class Client implements Runnable {
 		}
 	}
 
+	/**
+	 * Decodes a player snapshot against the snapshot that it's a delta of, and
+	 * acknowledges it so that the server can use it as the baseline for later
+	 * snapshots. If we don't have the baseline anymore, the snapshot is
+	 * dropped without acknowledging it, and the server will eventually send a
+	 * full one. Only snapshots newer than the last one are applied to players,
+	 * and all of their players are applied, since a player that's unchanged
+	 * since the baseline may have changed since the last applied snapshot.
+	 * <p>
+	 *     Parts of a snapshot are applied as they arrive, but the snapshot is
+	 *     only stored and acknowledged once we have all of its parts.
+	 * </p>
+	 * @param msg The snapshot message.
+	 */
+	private void handlePlayerSnapshot(PlayerSnapshotMessage msg) {
+		PlayerSnapshot baseline = PlayerSnapshot.EMPTY;
+		if (msg.baseline() != -1) {
+			int index = msg.baseline() % SNAPSHOT_HISTORY_SIZE;
+			if (snapshots[index] == null || snapshotSequences[index] != msg.baseline()) return;
+			baseline = snapshots[index];
+		}
+		PlayerSnapshot snapshot;
+		try {
+			snapshot = PlayerSnapshot.decodeDelta(baseline, msg.firstId(), msg.endId(), msg.data());
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		if (msg.partCount() == 1) {
+			storeSnapshot(msg.sequence(), snapshot);
+		} else {
+			addSnapshotPart(msg, snapshot);
+		}
+		if (msg.sequence() < lastSnapshotSequence) return;
+		lastSnapshotSequence = msg.sequence();
+		runLater(() -> {
+			for (int i = 0; i < snapshot.size(); i++) {
+				int id = snapshot.getId(i);
+				if (id == myPlayer.getId()) {
+					snapshot.applyMovement(i, myPlayer);
+					if (gameRenderer != null) {
+						gameRenderer.getCamera().setToPlayer(myPlayer);
+					}
+					if (soundManager != null) {
+						soundManager.updateListener(myPlayer.getEyePosition(), myPlayer.getVelocity());
+					}
+				} else {
+					OtherPlayer p = players.get(id);
+					if (p != null) {
+						snapshot.apply(i, p);
+						p.setHeldItemId(snapshot.getSelectedItemId(i));
+						p.updateModelTransform();
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Adds a part of a snapshot that was sent in more than one part, and
+	 * stores the snapshot if that was the last part that we were missing.
+	 * Parts of snapshots older than the one we're collecting are dropped.
+	 * @param msg The part's message.
+	 * @param part The decoded part.
+	 */
+	private void addSnapshotPart(PlayerSnapshotMessage msg, PlayerSnapshot part) {
+		if (msg.sequence() < pendingSnapshotSequence) return;
+		if (msg.sequence() > pendingSnapshotSequence) {
+			pendingSnapshotSequence = msg.sequence();
+			pendingSnapshotParts = new PlayerSnapshot[msg.partCount()];
+			pendingSnapshotPartCount = 0;
+		}
+		if (msg.part() < 0 || msg.part() >= pendingSnapshotParts.length || pendingSnapshotParts[msg.part()] != null) return;
+		pendingSnapshotParts[msg.part()] = part;
+		if (++pendingSnapshotPartCount == pendingSnapshotParts.length) {
+			storeSnapshot(msg.sequence(), PlayerSnapshot.join(pendingSnapshotParts));
+		}
+	}
+
+	private void storeSnapshot(int sequence, PlayerSnapshot snapshot) {
+		int index = sequence % SNAPSHOT_HISTORY_SIZE;
+		snapshots[index] = snapshot;
+		snapshotSequences[index] = sequence;
+		communicationHandler.sendDatagramPacket(new PlayerSnapshotAckMessage(myPlayer.getId(), sequence));
+	}
+
+	/**
+	 * Asks the server about a node of its world digest whose hash is different
+	 * from ours. For chunks, we send the chunk's hash, so that the server will
+	 * send us the chunk if it's out-of-date.
+	 * @param digest Our digest of the world.
+	 * @param level The level of the node.
+	 * @param index The index of the node.
+	 */
+	private void requestWorldSubtree(WorldDigest digest, int level, long index) {
+		if (level == 0) {
+			Vector3i pos = digest.getChunkPos(index);
+			Chunk chunk = world.getChunkAt(pos.x, pos.y, pos.z);
+			long hash = chunk == null ? -1 : chunk.blockHash();
+			communicationHandler.sendMessage(new ChunkHashMessage(pos.x, pos.y, pos.z, hash));
+		} else {
+			communicationHandler.sendMessage(new WorldSubtreeRequestMessage(
+					digest.getOriginX(), digest.getOriginY(), digest.getOriginZ(),
+					digest.getLevel(),
+					level,
+					index
+			));
+		}
+	}
+
 	public void setWorld(ClientWorld world) {
 		this.world = world;
 	}
@@ -2,11 +2,13 @@ package nl.andrewl.aos2_client;
 
 import nl.andrewl.aos2_client.render.chunk.ChunkMesh;
 import nl.andrewl.aos2_client.render.chunk.ChunkMeshGenerator;
+import nl.andrewl.aos_core.model.world.BlockChangeSet;
 import nl.andrewl.aos_core.model.world.Chunk;
+import nl.andrewl.aos_core.model.world.ChunkMap;
+import nl.andrewl.aos_core.model.world.ColorPalette;
 import nl.andrewl.aos_core.model.world.World;
 import nl.andrewl.aos_core.net.world.ChunkDataMessage;
 import nl.andrewl.aos_core.net.world.ChunkUpdateMessage;
-import org.joml.Vector3i;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -34,17 +36,31 @@ public class ClientWorld extends World {
 	}
 
 	@Override
-	public void removeChunk(Vector3i chunkPos) {
-		Chunk chunk = getChunkAt(chunkPos);
+	public void removeChunk(long chunkKey) {
+		Chunk chunk = getChunkAt(chunkKey);
 		if (chunk != null) {
 			chunkRemovalQueue.add(chunk);
 			chunkUpdateQueue.remove(chunk);
 		}
-		super.removeChunk(chunkPos);
+		super.removeChunk(chunkKey);
+	}
+
+	/**
+	 * Removes all chunks and spawn points, and uses a new palette, when the
+	 * server changes to a new world. The new world's chunks are received
+	 * afterwards.
+	 * @param palette The new world's palette.
+	 */
+	public void changeWorld(ColorPalette palette) {
+		for (long key : getChunkKeys()) {
+			removeChunk(key);
+		}
+		spawnPoints.clear();
+		setPalette(palette);
 	}
 
 	public void updateChunk(ChunkUpdateMessage update) {
-		Chunk chunk = getChunkAt(update.getChunkPos());
+		Chunk chunk = getChunkAt(update.getChunkKey());
 		if (chunk != null) {
 			chunk.setBlockAt(update.lx(), update.ly(), update.lz(), update.newBlock());
 			List<Chunk> chunksToReRender = new ArrayList<>(7);
@@ -78,6 +94,26 @@ public class ClientWorld extends World {
 		}
 	}
 
+	@Override
+	public void applyChanges(BlockChangeSet changes) {
+		super.applyChanges(changes);
+		// Re-render each changed chunk, and its neighbors since their faces may be affected.
+		Set<Chunk> chunksToReRender = new HashSet<>();
+		for (long key : changes.getChunkKeys()) {
+			int cx = ChunkMap.keyX(key), cy = ChunkMap.keyY(key), cz = ChunkMap.keyZ(key);
+			Chunk[] chunks = {
+					getChunkAt(key),
+					getChunkAt(cx - 1, cy, cz), getChunkAt(cx + 1, cy, cz),
+					getChunkAt(cx, cy - 1, cz), getChunkAt(cx, cy + 1, cz),
+					getChunkAt(cx, cy, cz - 1), getChunkAt(cx, cy, cz + 1)
+			};
+			for (var c : chunks) {
+				if (c != null) chunksToReRender.add(c);
+			}
+		}
+		chunkUpdateQueue.addAll(chunksToReRender);
+	}
+
 	/**
 	 * Call this to process any queued chunk updates, and update chunk meshes.
 	 * Only call this method on the main OpenGL context thread!
@@ -41,7 +41,7 @@ public final class ChunkMeshGenerator {
 			int worldX = Chunk.SIZE * chunk.getPosition().x + x;
 			int worldY = Chunk.SIZE * chunk.getPosition().y + y;
 			int worldZ = Chunk.SIZE * chunk.getPosition().z + z;
-			byte block = chunk.getBlocks()[i];
+			byte block = chunk.getBlockAt(x, y, z);
 			if (block <= 0) {
 				continue; // Don't render empty blocks.
 			}
@@ -0,0 +1,89 @@
+package nl.andrewl.aos_core;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Schedules ticks on a fixed timestep, against absolute deadlines so that
+ * the tick rate doesn't drift. If a tick overruns, the missed ticks are run
+ * back-to-back to catch up, up to a limit, after which the rest are skipped.
+ * Snapshots, like player updates, are sent after the tick that's due at
+ * their own rate, which is at most the tick rate.
+ * <p>
+ *     Time is read from a clock that's given to the constructor, like
+ *     {@link System#nanoTime()}, so that the schedule can be tested without
+ *     waiting.
+ * </p>
+ */
+public final class FixedTimestep {
+	/**
+	 * Runs a single tick.
+	 */
+	@FunctionalInterface
+	public interface Ticker {
+		/**
+		 * Runs a tick.
+		 * @param sendSnapshot Whether a snapshot should be sent after this
+		 *                     tick.
+		 */
+		void tick(boolean sendSnapshot);
+	}
+
+	private final LongSupplier clock;
+	private final long nsPerTick;
+	private final long nsPerSnapshot;
+	private final int maxCatchUpTicks;
+	private long nextTickAt;
+	private long nextSnapshotAt;
+
+	/**
+	 * Creates a schedule whose first tick is due now.
+	 * @param clock The clock, which gives the time in nanoseconds.
+	 * @param nsPerTick The time between ticks.
+	 * @param nsPerSnapshot The time between snapshots. This is raised to
+	 *                      the time between ticks if it's shorter.
+	 * @param maxCatchUpTicks The most ticks to run back-to-back to catch up.
+	 */
+	public FixedTimestep(LongSupplier clock, long nsPerTick, long nsPerSnapshot, int maxCatchUpTicks) {
+		this.clock = clock;
+		this.nsPerTick = nsPerTick;
+		this.nsPerSnapshot = Math.max(nsPerTick, nsPerSnapshot);
+		this.maxCatchUpTicks = Math.max(1, maxCatchUpTicks);
+		this.nextTickAt = clock.getAsLong();
+		this.nextSnapshotAt = nextTickAt;
+	}
+
+	/**
+	 * @return The time at which the next tick is due, in terms of the clock.
+	 */
+	public long getNextTickAt() {
+		return nextTickAt;
+	}
+
+	/**
+	 * Runs the tick that's due, and then any that were missed, up to the
+	 * catch-up limit. This should be called once the next tick is due.
+	 * @param ticker Runs each tick.
+	 * @return The number of ticks that were skipped because the limit was
+	 * reached, which is usually 0.
+	 */
+	public long runDueTicks(Ticker ticker) {
+		int ticks = 0;
+		do {
+			long tickStart = clock.getAsLong();
+			boolean sendSnapshot = tickStart - nextSnapshotAt >= 0;
+			if (sendSnapshot) {
+				nextSnapshotAt += nsPerSnapshot;
+				// Don't send a burst of snapshots after falling behind.
+				if (tickStart - nextSnapshotAt >= 0) nextSnapshotAt = tickStart + nsPerSnapshot;
+			}
+			ticker.tick(sendSnapshot);
+			nextTickAt += nsPerTick;
+			ticks++;
+		} while (ticks < maxCatchUpTicks && clock.getAsLong() - nextTickAt >= 0);
+		long now = clock.getAsLong();
+		if (now - nextTickAt < 0) return 0;
+		long skipped = (now - nextTickAt) / nsPerTick + 1;
+		nextTickAt += skipped * nsPerTick;
+		return skipped;
+	}
+}
@@ -0,0 +1,73 @@
+package nl.andrewl.aos_core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds, with log-linear buckets like an
+ * HdrHistogram: each power of two is split into {@link LatencyHistogram#SUB_BUCKETS}
+ * buckets, so values are recorded with about 3% precision, in a fixed amount
+ * of memory.
+ * <p>
+ *     One thread records values, while any other thread can read the counts
+ *     without locking. Since counts only grow, readers can find the values
+ *     recorded in an interval by subtracting the counts they read at its
+ *     start.
+ * </p>
+ */
+public final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/**
+	 * The largest value that's recorded exactly; larger values are clamped
+	 * to it. This is about 18 minutes.
+	 */
+	private static final long MAX_VALUE = (1L << 40) - 1;
+	public static final int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+	public void record(long nanos) {
+		counts.incrementAndGet(bucketIndex(Math.max(0, Math.min(nanos, MAX_VALUE))));
+	}
+
+	/**
+	 * Copies the current counts into an array.
+	 * @param dest The array, which must have {@link LatencyHistogram#BUCKET_COUNT} elements.
+	 */
+	public void copyCounts(long[] dest) {
+		for (int i = 0; i < BUCKET_COUNT; i++) dest[i] = counts.get(i);
+	}
+
+	static int bucketIndex(long value) {
+		int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	/**
+	 * Gets the largest value that's counted in a bucket.
+	 */
+	public static long bucketMaxValue(int index) {
+		int shift = Math.max(0, index / SUB_BUCKETS - 1);
+		long lowest = (long) (index - shift * SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/**
+	 * Gets a percentile of the values in some counts.
+	 * @param counts The counts of each bucket.
+	 * @param total The sum of the counts.
+	 * @param percentile The percentile, from 0 to 100.
+	 * @return The largest value of the bucket that the percentile falls in,
+	 * or 0 if there are no values.
+	 */
+	public static long percentile(long[] counts, long total, double percentile) {
+		if (total == 0) return 0;
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) return bucketMaxValue(i);
+		}
+		return bucketMaxValue(counts.length - 1);
+	}
+}
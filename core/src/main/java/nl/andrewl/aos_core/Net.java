@@ -1,13 +1,19 @@
 package nl.andrewl.aos_core;
 
+import nl.andrewl.aos_core.net.MessageBatch;
 import nl.andrewl.aos_core.net.client.*;
 import nl.andrewl.aos_core.net.connect.ConnectAcceptMessage;
 import nl.andrewl.aos_core.net.connect.ConnectRejectMessage;
 import nl.andrewl.aos_core.net.connect.ConnectRequestMessage;
 import nl.andrewl.aos_core.net.connect.DatagramInit;
+import nl.andrewl.aos_core.net.world.BlockChangeSetMessage;
 import nl.andrewl.aos_core.net.world.ChunkDataMessage;
 import nl.andrewl.aos_core.net.world.ChunkHashMessage;
 import nl.andrewl.aos_core.net.world.ChunkUpdateMessage;
+import nl.andrewl.aos_core.net.world.WorldChangeMessage;
+import nl.andrewl.aos_core.net.world.WorldDigestMessage;
+import nl.andrewl.aos_core.net.world.WorldSubtreeMessage;
+import nl.andrewl.aos_core.net.world.WorldSubtreeRequestMessage;
 import nl.andrewl.record_net.Message;
 import nl.andrewl.record_net.Serializer;
 import nl.andrewl.record_net.util.ExtendedDataInputStream;
@@ -57,6 +63,16 @@ public final class Net {
 		serializer.registerTypeSerializer(i++, new ItemStackSerializer());
 
 		serializer.registerType(i++, SoundMessage.class);
+
+		// Newer messages are added at the end, so that the ids of existing ones don't change.
+		serializer.registerType(i++, WorldDigestMessage.class);
+		serializer.registerType(i++, WorldSubtreeRequestMessage.class);
+		serializer.registerType(i++, WorldSubtreeMessage.class);
+		serializer.registerType(i++, BlockChangeSetMessage.class);
+		serializer.registerType(i++, WorldChangeMessage.class);
+		serializer.registerType(i++, MessageBatch.class);
+		serializer.registerType(i++, PlayerSnapshotMessage.class);
+		serializer.registerType(i++, PlayerSnapshotAckMessage.class);
 	}
 
 	public static ExtendedDataInputStream getInputStream(InputStream in) {
@@ -0,0 +1,101 @@
+package nl.andrewl.aos_core.model.world;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs batches of work on the common pool, and hands their results to a
+ * consumer on the submitting thread, in the order that they were submitted.
+ * Only a few batches are in flight at once, so that a producer that's faster
+ * than the workers doesn't pile up work in memory. If the common pool can't
+ * run anything in parallel, batches are just run on the submitting thread.
+ * <p>
+ *     A pipeline is used by one thread at a time.
+ * </p>
+ * @param <T> The type of each batch's result.
+ */
+final class BatchPipeline<T> {
+	interface Batch<T> {
+		T run() throws IOException;
+	}
+
+	interface ResultConsumer<T> {
+		void accept(T result) throws IOException;
+	}
+
+	private final ResultConsumer<T> consumer;
+	private final boolean parallel;
+	private final int maxInFlight;
+	private final ArrayDeque<ForkJoinTask<T>> inFlight = new ArrayDeque<>();
+
+	BatchPipeline(ResultConsumer<T> consumer) {
+		this.consumer = consumer;
+		int parallelism = ForkJoinPool.getCommonPoolParallelism();
+		this.parallel = parallelism > 1;
+		this.maxInFlight = 2 * parallelism;
+	}
+
+	/**
+	 * Submits a batch. Results of earlier batches that are done are consumed
+	 * first, and if too many batches are in flight, this waits for the oldest
+	 * one.
+	 * @param batch The batch to run.
+	 * @throws IOException If an earlier batch failed, or the consumer failed.
+	 */
+	void submit(Batch<T> batch) throws IOException {
+		if (!parallel) {
+			consumer.accept(batch.run());
+			return;
+		}
+		while (!inFlight.isEmpty() && (inFlight.size() >= maxInFlight || inFlight.peek().isDone())) {
+			consumeNext();
+		}
+		inFlight.add(ForkJoinPool.commonPool().submit(() -> {
+			try {
+				return batch.run();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}));
+	}
+
+	/**
+	 * Waits for all batches to finish, and consumes their results.
+	 * @throws IOException If a batch failed, or the consumer failed.
+	 */
+	void finish() throws IOException {
+		while (!inFlight.isEmpty()) consumeNext();
+	}
+
+	private void consumeNext() throws IOException {
+		T result;
+		try {
+			result = inFlight.remove().get();
+		} catch (InterruptedException e) {
+			cancel();
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a batch.", e);
+		} catch (ExecutionException e) {
+			cancel();
+			// The pool may have wrapped the batch's exception again, so we look
+			// for the IOException that the batch threw.
+			for (Throwable t = e.getCause(); t != null; t = t.getCause()) {
+				if (t instanceof IOException io) throw io;
+			}
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException r) throw r;
+			if (cause instanceof Error err) throw err;
+			throw new IOException(cause);
+		}
+		consumer.accept(result);
+	}
+
+	private void cancel() {
+		inFlight.forEach(task -> task.cancel(false));
+		inFlight.clear();
+	}
+}
@@ -0,0 +1,134 @@
+package nl.andrewl.aos_core.model.world;
+
+import java.util.Arrays;
+
+/**
+ * A compact record of blocks that were all set to the same value, as the
+ * result of {@link World#fill(BlockRegion, byte)}. Changes are grouped by
+ * chunk, and within each chunk they're stored as runs of consecutive block
+ * indices, so that filling whole rows or chunks only takes a few values.
+ * <p>
+ *     Each run is packed into an int, with the start index in the upper bits
+ *     and the length in the lower {@link BlockChangeSet#LENGTH_BITS} bits.
+ * </p>
+ */
+public final class BlockChangeSet {
+	static final int LENGTH_BITS = 13;
+	private static final int LENGTH_MASK = (1 << LENGTH_BITS) - 1;
+
+	private final byte block;
+	private long[] chunkKeys;
+	private int[] runCounts;
+	private int chunkCount;
+	private int[] runs;
+	private int runCount;
+	private int blockCount;
+
+	public BlockChangeSet(byte block) {
+		this.block = block;
+		this.chunkKeys = new long[8];
+		this.runCounts = new int[8];
+		this.runs = new int[32];
+	}
+
+	/**
+	 * Creates a change set from its raw data, as obtained from
+	 * {@link BlockChangeSet#getChunkKeys()}, {@link BlockChangeSet#getRunCounts()}
+	 * and {@link BlockChangeSet#getRuns()}.
+	 */
+	public BlockChangeSet(byte block, long[] chunkKeys, int[] runCounts, int[] runs) {
+		this.block = block;
+		this.chunkKeys = chunkKeys;
+		this.runCounts = runCounts;
+		this.chunkCount = chunkKeys.length;
+		this.runs = runs;
+		this.runCount = runs.length;
+		for (int run : runs) blockCount += runLength(run);
+	}
+
+	public static int runStart(int run) {
+		return run >>> LENGTH_BITS;
+	}
+
+	public static int runLength(int run) {
+		return run & LENGTH_MASK;
+	}
+
+	void beginChunk(long key) {
+		if (chunkCount == chunkKeys.length) {
+			chunkKeys = Arrays.copyOf(chunkKeys, chunkCount * 2);
+			runCounts = Arrays.copyOf(runCounts, chunkCount * 2);
+		}
+		chunkKeys[chunkCount] = key;
+		runCounts[chunkCount] = 0;
+		chunkCount++;
+	}
+
+	void addRun(int start, int length) {
+		if (runCount == runs.length) runs = Arrays.copyOf(runs, runCount * 2);
+		runs[runCount++] = (start << LENGTH_BITS) | length;
+		runCounts[chunkCount - 1]++;
+		blockCount += length;
+	}
+
+	/**
+	 * Finishes the current chunk, discarding it if nothing was changed.
+	 */
+	void endChunk() {
+		if (runCounts[chunkCount - 1] == 0) chunkCount--;
+	}
+
+	/**
+	 * @return The value that all changed blocks were set to.
+	 */
+	public byte getBlock() {
+		return block;
+	}
+
+	public int getChunkCount() {
+		return chunkCount;
+	}
+
+	/**
+	 * @return The total number of blocks that were changed.
+	 */
+	public int getBlockCount() {
+		return blockCount;
+	}
+
+	public boolean isEmpty() {
+		return chunkCount == 0;
+	}
+
+	public long[] getChunkKeys() {
+		return Arrays.copyOf(chunkKeys, chunkCount);
+	}
+
+	public int[] getRunCounts() {
+		return Arrays.copyOf(runCounts, chunkCount);
+	}
+
+	public int[] getRuns() {
+		return Arrays.copyOf(runs, runCount);
+	}
+
+	/**
+	 * Applies these changes to a world. Chunks that the world doesn't have
+	 * are skipped.
+	 * @param world The world to apply the changes to.
+	 */
+	void applyTo(World world) {
+		int runOffset = 0;
+		for (int i = 0; i < chunkCount; i++) {
+			Chunk chunk = world.acquireChunk(chunkKeys[i]);
+			if (chunk != null) {
+				try {
+					chunk.fillRuns(runs, runOffset, runCounts[i], block);
+				} finally {
+					world.releaseChunk(chunk);
+				}
+			}
+			runOffset += runCounts[i];
+		}
+	}
+}
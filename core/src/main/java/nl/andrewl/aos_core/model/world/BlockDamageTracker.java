@@ -0,0 +1,186 @@
+package nl.andrewl.aos_core.model.world;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the damage that's been done to individual blocks, like from
+ * consecutive bullet strikes, so that blocks can take multiple hits before
+ * being destroyed. A block's damage wears off once it hasn't been damaged for
+ * the cooldown period.
+ * <p>
+ *     Blocks are keyed by their position, packed with
+ *     {@link ChunkMap#key(int, int, int)}, in an open-addressed table, so
+ *     damaging a block doesn't allocate anything. Each block is scheduled to
+ *     expire in a {@link TimingWheel}, so that expiring blocks only costs
+ *     time for the blocks that expire. The wheel may be a little late, so
+ *     damage that has worn off is also ignored when it's looked up. When a
+ *     block is damaged again, its old expiry is kept, and it's rescheduled
+ *     when that passes.
+ * </p>
+ * <p>
+ *     Damage is added up as doubles, so that n hits of damage d reach a
+ *     block's resistance R exactly when n * d >= R, without float rounding
+ *     leaving the total just short of it.
+ * </p>
+ */
+public class BlockDamageTracker {
+	private static final long EMPTY = -1;
+	private static final long WHEEL_TICK_MILLIS = 50;
+
+	private final long cooldownMillis;
+	private final TimingWheel expiry;
+
+	private long[] keys;
+	private double[] damage;
+	private long[] lastDamagedAt;
+	private int size;
+
+	/**
+	 * Creates a tracker.
+	 * @param cooldownMillis The time after which a block's damage wears off,
+	 *                       if it isn't damaged again.
+	 * @param now The current time.
+	 */
+	public BlockDamageTracker(long cooldownMillis, long now) {
+		this.cooldownMillis = cooldownMillis;
+		this.expiry = new TimingWheel(WHEEL_TICK_MILLIS, now);
+		allocate(64);
+	}
+
+	/**
+	 * Adds damage to a block.
+	 * @param x The block's x coordinate.
+	 * @param y The block's y coordinate.
+	 * @param z The block's z coordinate.
+	 * @param amount The amount of damage to add.
+	 * @param now The current time.
+	 * @return The block's total damage, including this damage.
+	 */
+	public double damage(int x, int y, int z, float amount, long now) {
+		long key = ChunkMap.key(x, y, z);
+		int idx = find(key);
+		if (keys[idx] == EMPTY) {
+			if ((size + 1) * 2 > keys.length) {
+				grow();
+				idx = find(key);
+			}
+			keys[idx] = key;
+			damage[idx] = 0;
+			size++;
+			expiry.schedule(key, now + cooldownMillis + 1);
+		} else if (isExpired(idx, now)) {
+			// The wheel hasn't caught up with this block yet, but its damage has worn off.
+			damage[idx] = 0;
+		}
+		damage[idx] += amount;
+		lastDamagedAt[idx] = now;
+		return damage[idx];
+	}
+
+	/**
+	 * @return The damage that's been done to a block, or 0 if it hasn't been
+	 * damaged recently.
+	 */
+	public double getDamage(int x, int y, int z, long now) {
+		int idx = find(ChunkMap.key(x, y, z));
+		return keys[idx] == EMPTY || isExpired(idx, now) ? 0 : damage[idx];
+	}
+
+	/**
+	 * Forgets the damage done to a block, like when it's destroyed.
+	 */
+	public void remove(int x, int y, int z) {
+		int idx = find(ChunkMap.key(x, y, z));
+		if (keys[idx] != EMPTY) removeAt(idx);
+	}
+
+	/**
+	 * Removes the damage of blocks whose cooldown has passed.
+	 * @param now The current time.
+	 */
+	public void tick(long now) {
+		expiry.advance(now, key -> {
+			int idx = find(key);
+			// The block may have been removed, or damaged again since it was scheduled.
+			if (keys[idx] == EMPTY) return;
+			if (isExpired(idx, now)) {
+				removeAt(idx);
+			} else {
+				expiry.schedule(key, lastDamagedAt[idx] + cooldownMillis + 1);
+			}
+		});
+	}
+
+	/**
+	 * @return The number of blocks with damage.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+		expiry.clear();
+	}
+
+	private boolean isExpired(int idx, long now) {
+		return now - lastDamagedAt[idx] > cooldownMillis;
+	}
+
+	private int find(long key) {
+		int mask = keys.length - 1;
+		int idx = slot(key, mask);
+		while (keys[idx] != EMPTY && keys[idx] != key) idx = (idx + 1) & mask;
+		return idx;
+	}
+
+	/**
+	 * Removes the entry in a slot, and shifts back any later entries in its
+	 * probe sequence, so that no tombstones are needed.
+	 */
+	private void removeAt(int idx) {
+		int mask = keys.length - 1;
+		keys[idx] = EMPTY;
+		size--;
+		int next = (idx + 1) & mask;
+		while (keys[next] != EMPTY) {
+			int home = slot(keys[next], mask);
+			// Moves the entry into the gap, if the gap is between its home slot and where it is.
+			if (((next - home) & mask) >= ((next - idx) & mask)) {
+				keys[idx] = keys[next];
+				damage[idx] = damage[next];
+				lastDamagedAt[idx] = lastDamagedAt[next];
+				keys[next] = EMPTY;
+				idx = next;
+			}
+			next = (next + 1) & mask;
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+		damage = new double[capacity];
+		lastDamagedAt = new long[capacity];
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		double[] oldDamage = damage;
+		long[] oldLastDamagedAt = lastDamagedAt;
+		allocate(oldKeys.length * 2);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == EMPTY) continue;
+			int idx = find(oldKeys[i]);
+			keys[idx] = oldKeys[i];
+			damage[idx] = oldDamage[i];
+			lastDamagedAt[idx] = oldLastDamagedAt[i];
+		}
+	}
+
+	private static int slot(long key, int mask) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+}
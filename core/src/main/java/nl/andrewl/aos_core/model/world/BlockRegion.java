@@ -0,0 +1,110 @@
+package nl.andrewl.aos_core.model.world;
+
+import java.util.BitSet;
+
+/**
+ * A region of block positions in a world, which can be edited all at once
+ * with {@link World#fill(BlockRegion, byte)}. Each region has an inclusive
+ * bounding box, and decides which blocks within that box it contains.
+ */
+public interface BlockRegion {
+	int minX();
+	int minY();
+	int minZ();
+	int maxX();
+	int maxY();
+	int maxZ();
+
+	/**
+	 * Checks if this region contains the given block. This is only called for
+	 * blocks within the region's bounds.
+	 * @param x The block's x coordinate.
+	 * @param y The block's y coordinate.
+	 * @param z The block's z coordinate.
+	 * @return True if the block is part of this region.
+	 */
+	boolean contains(int x, int y, int z);
+
+	/**
+	 * @return True if this region contains every block in its bounds, which
+	 * allows whole rows and chunks to be filled at once.
+	 */
+	default boolean isFilled() {
+		return false;
+	}
+
+	static BlockRegion box(int x1, int y1, int z1, int x2, int y2, int z2) {
+		return new Box(
+				Math.min(x1, x2), Math.min(y1, y2), Math.min(z1, z2),
+				Math.max(x1, x2), Math.max(y1, y2), Math.max(z1, z2)
+		);
+	}
+
+	static BlockRegion column(int x, int z, int y1, int y2) {
+		return box(x, y1, z, x, y2, z);
+	}
+
+	static BlockRegion sphere(int cx, int cy, int cz, float radius) {
+		return new Sphere(cx, cy, cz, radius);
+	}
+
+	/**
+	 * Gets a region that contains the blocks that are set in a mask.
+	 * @param x The x coordinate of the mask's minimum corner.
+	 * @param y The y coordinate of the mask's minimum corner.
+	 * @param z The z coordinate of the mask's minimum corner.
+	 * @param sizeX The size of the mask on the x axis.
+	 * @param sizeY The size of the mask on the y axis.
+	 * @param sizeZ The size of the mask on the z axis.
+	 * @param bits The mask, indexed by {@code (dx * sizeY + dy) * sizeZ + dz}.
+	 * @return The region.
+	 */
+	static BlockRegion mask(int x, int y, int z, int sizeX, int sizeY, int sizeZ, BitSet bits) {
+		return new Mask(x, y, z, sizeX, sizeY, sizeZ, bits);
+	}
+
+	record Box(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) implements BlockRegion {
+		@Override
+		public boolean contains(int x, int y, int z) {
+			return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+		}
+
+		@Override
+		public boolean isFilled() {
+			return true;
+		}
+	}
+
+	/**
+	 * A sphere of blocks whose distance from the center block is at most the
+	 * radius.
+	 */
+	record Sphere(int cx, int cy, int cz, float radius) implements BlockRegion {
+		public int minX() {return cx - (int) radius;}
+		public int minY() {return cy - (int) radius;}
+		public int minZ() {return cz - (int) radius;}
+		public int maxX() {return cx + (int) radius;}
+		public int maxY() {return cy + (int) radius;}
+		public int maxZ() {return cz + (int) radius;}
+
+		@Override
+		public boolean contains(int x, int y, int z) {
+			int dx = x - cx, dy = y - cy, dz = z - cz;
+			return dx * dx + dy * dy + dz * dz <= radius * radius;
+		}
+	}
+
+	record Mask(int x, int y, int z, int sizeX, int sizeY, int sizeZ, BitSet bits) implements BlockRegion {
+		public int minX() {return x;}
+		public int minY() {return y;}
+		public int minZ() {return z;}
+		public int maxX() {return x + sizeX - 1;}
+		public int maxY() {return y + sizeY - 1;}
+		public int maxZ() {return z + sizeZ - 1;}
+
+		@Override
+		public boolean contains(int bx, int by, int bz) {
+			return bits.get(((bx - x) * sizeY + (by - y)) * sizeZ + (bz - z));
+		}
+	}
+}
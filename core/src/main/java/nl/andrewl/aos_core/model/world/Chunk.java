@@ -3,49 +3,169 @@ package nl.andrewl.aos_core.model.world;
 import net.openhft.hashing.LongHashFunction;
 import org.joml.Vector3i;
 
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Holds information about a uniform "chunk" of the voxel world, with a cubic
  * shape. Each chunk contains a flattened 1-dimensional array that holds the
- * information about each "block" in the chunk.
+ * information about each "block" in the chunk. Internally, that array may be
+ * stored in a more compact form if the chunk only contains a few distinct
+ * values; see {@link ChunkStorage}.
+ * <p>
+ *     Chunks can be read on any thread while they're changed on another.
+ *     Changes are made while holding the chunk's write lock. Reading a single
+ *     block doesn't lock anything, and may return a value from before a
+ *     change that's being made at the same time. Reading all of the blocks,
+ *     like with {@link Chunk#copyBlocks(byte[])} or {@link Chunk#blockHash()},
+ *     always gives a consistent result: it's first tried optimistically, and
+ *     done again with the read lock held if the chunk was changed meanwhile.
+ * </p>
  */
 public class Chunk {
+	/**
+	 * The number of bits needed to address a block on one axis of the chunk.
+	 */
+	public static final int SIZE_BITS = 4;
+
 	/**
 	 * The size of a chunk, in terms of the number of blocks on one axis of the cube.
 	 */
-	public static final int SIZE = 16;
+	public static final int SIZE = 1 << SIZE_BITS;
+
+	/**
+	 * Bit mask that can be applied to a world coordinate to get the local
+	 * coordinate within its chunk.
+	 */
+	public static final int LOCAL_MASK = SIZE - 1;
 
 	/**
-	 * The total size of the chunk's {@link Chunk#blocks} array.
+	 * The total number of blocks in the chunk.
 	 */
 	public static final int TOTAL_SIZE = SIZE * SIZE * SIZE;
 
-	private final byte[] blocks = new byte[TOTAL_SIZE];
+	private static final LongHashFunction BLOCK_HASH = LongHashFunction.xx3(0);
+
+	private volatile ChunkStorage storage = UniformChunkStorage.of((byte) 0);
+
+	/**
+	 * The lock that's held while changing this chunk. It's also used as a
+	 * sequence lock, to check that blocks read without locking are
+	 * consistent.
+	 */
+	private final StampedLock lock = new StampedLock();
+
+	/**
+	 * The allocator to store this chunk's blocks with, if its world keeps
+	 * blocks off-heap. Uniform chunks don't need any storage, so they stay
+	 * on the heap until they're modified.
+	 */
+	private ChunkSlabAllocator slabAllocator;
+
+	/**
+	 * Whether this chunk's storage belongs to another, read-only chunk, in
+	 * which case it's copied before this chunk's first change. See
+	 * {@link Chunk#shareBlocks(Chunk)}.
+	 */
+	private boolean sharedStorage;
+
+	/**
+	 * Whether this chunk is currently in a world. Worlds use this to check
+	 * that a chunk they've cached hasn't been removed meanwhile.
+	 */
+	private volatile boolean inWorld;
 	private final Vector3i position;
+	private final long key;
+
+	/**
+	 * The number of non-air blocks in this chunk.
+	 */
+	private int nonAirCount;
+
+	/**
+	 * For each (x, z) column in this chunk, the local y coordinate of the
+	 * top-most non-air block, or -1 if the column is empty. Indexed by
+	 * {@code x * SIZE + z}.
+	 */
+	private final byte[] columnHeights = new byte[SIZE * SIZE];
+
+	/**
+	 * A counter that's incremented each time a block in this chunk changes.
+	 */
+	private volatile long version = 0;
+
+	/**
+	 * The most recently computed block hash, so that we only re-hash the
+	 * chunk after it's been changed.
+	 */
+	private volatile BlockHash cachedHash;
+
+	private record BlockHash(long version, long hash) {}
 
 	public Chunk(int cx, int cy, int cz) {
 		this.position = new Vector3i(cx, cy, cz);
+		this.key = ChunkMap.key(cx, cy, cz);
+		Arrays.fill(columnHeights, (byte) -1);
 	}
 
 	public Chunk(int cx, int cy, int cz, byte[] blocks) {
 		this(cx, cy, cz);
-		System.arraycopy(blocks, 0, this.blocks, 0, TOTAL_SIZE);
+		this.storage = ChunkStorage.of(blocks);
+		recomputeMetadata();
 	}
 
 	public Chunk(Vector3i position) {
-		this.position = new Vector3i(position);
+		this(position.x, position.y, position.z);
 	}
 
 	public Chunk(Chunk other) {
 		this(other.position);
-		System.arraycopy(other.blocks, 0, this.blocks, 0, TOTAL_SIZE);
+		long stamp = other.lock.readLock();
+		try {
+			this.storage = other.storage.copy();
+			copyMetadata(other);
+		} finally {
+			other.lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Copies another chunk's occupancy metadata and cached hash. The other
+	 * chunk must be locked, or never change.
+	 */
+	private void copyMetadata(Chunk other) {
+		System.arraycopy(other.columnHeights, 0, this.columnHeights, 0, columnHeights.length);
+		this.nonAirCount = other.nonAirCount;
+		BlockHash hash = other.cachedHash;
+		if (hash != null && hash.version == other.version) {
+			this.cachedHash = new BlockHash(this.version, hash.hash);
+		}
 	}
 
 	public Vector3i getPosition() {
 		return position;
 	}
 
+	/**
+	 * Gets this chunk's position, packed into a single long.
+	 * @return The packed chunk key.
+	 * @see ChunkMap#key(int, int, int)
+	 */
+	public long getKey() {
+		return key;
+	}
+
+	boolean isInWorld() {
+		return inWorld;
+	}
+
+	void setInWorld(boolean inWorld) {
+		this.inWorld = inWorld;
+	}
+
 	/**
 	 * Converts the given 3D coordinate to a 1D index which points to the block
 	 * with that coordinate within the chunk.
@@ -82,7 +202,7 @@ public class Chunk {
 	public byte getBlockAt(int x, int y, int z) {
 		int idx = xyzToIdx(x, y, z);
 		if (idx < 0) return 0;
-		return blocks[idx];
+		return storage.get(idx);
 	}
 
 	public byte getBlockAt(Vector3i localPosition) {
@@ -92,13 +212,379 @@ public class Chunk {
 	public void setBlockAt(int x, int y, int z, byte value) {
 		int idx = xyzToIdx(x, y, z);
 		if (idx < 0) return;
-		blocks[idx] = value;
+		long stamp = lock.writeLock();
+		try {
+			byte previous = storage.get(idx);
+			if (previous == value) return;
+			ensureOwnStorage();
+			useStorage(storage.set(idx, value));
+			version++;
+			// Keep our occupancy metadata up-to-date.
+			if (previous == 0) {
+				nonAirCount++;
+			} else if (value == 0) {
+				nonAirCount--;
+			}
+			int col = x * SIZE + z;
+			if (value != 0) {
+				if (y > columnHeights[col]) columnHeights[col] = (byte) y;
+			} else if (y == columnHeights[col]) {
+				columnHeights[col] = (byte) findColumnHeight(x, y - 1, z);
+			}
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Sets blocks in a local box of this chunk to the given value, and records
+	 * the changes. Whole rows and chunks are filled at once if the region
+	 * contains all of its blocks.
+	 * @param region The region to fill.
+	 * @param x1 The minimum local x coordinate to fill.
+	 * @param y1 The minimum local y coordinate to fill.
+	 * @param z1 The minimum local z coordinate to fill.
+	 * @param x2 The maximum local x coordinate to fill.
+	 * @param y2 The maximum local y coordinate to fill.
+	 * @param z2 The maximum local z coordinate to fill.
+	 * @param value The value to set.
+	 * @param changes The change set to add changed blocks to.
+	 */
+	void fill(BlockRegion region, int x1, int y1, int z1, int x2, int y2, int z2, byte value, BlockChangeSet changes) {
+		long stamp = lock.writeLock();
+		try {
+			changes.beginChunk(key);
+			boolean filled = region.isFilled();
+			if (filled && x1 == 0 && y1 == 0 && z1 == 0 && x2 == SIZE - 1 && y2 == SIZE - 1 && z2 == SIZE - 1) {
+				if (storage != UniformChunkStorage.of(value)) {
+					releaseStorage();
+					storage = UniformChunkStorage.of(value);
+					nonAirCount = value == 0 ? 0 : TOTAL_SIZE;
+					Arrays.fill(columnHeights, (byte) (value == 0 ? -1 : SIZE - 1));
+					version++;
+					changes.addRun(0, TOTAL_SIZE);
+				}
+				changes.endChunk();
+				return;
+			}
+			int bx = position.x * SIZE, by = position.y * SIZE, bz = position.z * SIZE;
+			boolean changed = false;
+			// Changed blocks are collected into runs of consecutive indices, which may span multiple rows.
+			int runStart = -1, runEnd = -1, runAir = 0;
+			for (int x = x1; x <= x2; x++) {
+				for (int y = y1; y <= y2; y++) {
+					int rowStart = x * SIZE * SIZE + y * SIZE;
+					for (int z = z1; z <= z2; z++) {
+						int idx = rowStart + z;
+						byte previous = storage.get(idx);
+						if (previous == value || !(filled || region.contains(bx + x, by + y, bz + z))) continue;
+						if (idx != runEnd) {
+							if (runStart != -1) fillRun(runStart, runEnd, runAir, value, changes);
+							runStart = idx;
+							runAir = 0;
+						}
+						runEnd = idx + 1;
+						if (previous == 0) runAir++;
+						changed = true;
+					}
+				}
+			}
+			if (runStart != -1) fillRun(runStart, runEnd, runAir, value, changes);
+			if (changed) {
+				version++;
+				for (int x = x1; x <= x2; x++) {
+					for (int z = z1; z <= z2; z++) {
+						columnHeights[x * SIZE + z] = (byte) findColumnHeight(x, SIZE - 1, z);
+					}
+				}
+			}
+			changes.endChunk();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
 	}
 
+	private void fillRun(int from, int to, int airCount, byte value, BlockChangeSet changes) {
+		ensureOwnStorage();
+		useStorage(storage.fill(from, to, value));
+		nonAirCount += value == 0 ? -(to - from) : airCount;
+		changes.addRun(from, to - from);
+	}
+
+	/**
+	 * Sets the blocks in the given runs of indices to a value, as recorded in
+	 * a {@link BlockChangeSet}.
+	 * @param runs The array of packed runs.
+	 * @param offset The index of the first run to apply.
+	 * @param count The number of runs to apply.
+	 * @param value The value to set.
+	 */
+	void fillRuns(int[] runs, int offset, int count, byte value) {
+		long stamp = lock.writeLock();
+		try {
+			for (int i = offset; i < offset + count; i++) {
+				int start = BlockChangeSet.runStart(runs[i]);
+				int length = BlockChangeSet.runLength(runs[i]);
+				if (start == 0 && length == TOTAL_SIZE) {
+					releaseStorage();
+					storage = UniformChunkStorage.of(value);
+				} else {
+					ensureOwnStorage();
+					useStorage(storage.fill(start, start + length, value));
+				}
+			}
+			version++;
+			recomputeMetadata();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Switches to a new storage, after the current one returned it from a
+	 * modification. If this chunk is stored off-heap, the new storage is
+	 * moved there.
+	 */
+	private void useStorage(ChunkStorage next) {
+		if (next != storage) {
+			storage = slabAllocator == null ? next : new SlabChunkStorage(slabAllocator, next);
+		}
+	}
+
+	/**
+	 * Gives this chunk its own copy of its blocks, if they're currently
+	 * shared with another chunk, so that they can be modified.
+	 */
+	private void ensureOwnStorage() {
+		if (!sharedStorage) return;
+		sharedStorage = false;
+		ChunkStorage copy = storage.copy();
+		storage = slabAllocator == null || copy instanceof UniformChunkStorage ? copy : new SlabChunkStorage(slabAllocator, copy);
+	}
+
+	/**
+	 * Releases this chunk's storage before it's replaced, unless it's shared.
+	 */
+	private void releaseStorage() {
+		if (!sharedStorage) storage.release();
+		sharedStorage = false;
+	}
+
+	/**
+	 * Makes this chunk use the same blocks as another chunk, without copying
+	 * them, and discards any blocks that it had. The other chunk must never
+	 * be modified after this; changes to this chunk copy the blocks first.
+	 * @param base The chunk to share blocks with, at the same position.
+	 */
+	void shareBlocks(Chunk base) {
+		long stamp = lock.writeLock();
+		try {
+			if (base.key != key) throw new IllegalArgumentException("Can't share blocks with a chunk at another position.");
+			if (base.sharedStorage || base.slabAllocator != null) {
+				throw new IllegalArgumentException("Can only share blocks that belong to a chunk on the heap.");
+			}
+			releaseStorage();
+			storage = base.storage;
+			sharedStorage = !(storage instanceof UniformChunkStorage);
+			version++;
+			copyMetadata(base);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * @param base A chunk that this chunk may share blocks with.
+	 * @return True if this chunk is currently sharing the base chunk's blocks,
+	 * without having changed any of them.
+	 */
+	boolean isSharingBlocksWith(Chunk base) {
+		long stamp = lock.readLock();
+		try {
+			return storage == base.storage && (sharedStorage || storage instanceof UniformChunkStorage);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Makes a copy of this chunk that shares its blocks, until either of the
+	 * two is changed. Blocks that are stored off-heap are copied onto the
+	 * heap straight away instead, since a slot can't be shared.
+	 * @return The copy.
+	 */
+	Chunk snapshot() {
+		Chunk copy = new Chunk(position);
+		long stamp = lock.writeLock();
+		try {
+			if (storage instanceof SlabChunkStorage) {
+				copy.storage = storage.copy();
+			} else {
+				copy.storage = storage;
+				if (!(storage instanceof UniformChunkStorage)) {
+					copy.sharedStorage = true;
+					sharedStorage = true;
+				}
+			}
+			copy.copyMetadata(this);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+		return copy;
+	}
+
+	/**
+	 * Gets a copy of this chunk's blocks as a flat array, indexed according
+	 * to {@link Chunk#xyzToIdx(int, int, int)}.
+	 * @return The array of blocks.
+	 */
 	public byte[] getBlocks() {
+		byte[] blocks = new byte[TOTAL_SIZE];
+		copyBlocks(blocks);
 		return blocks;
 	}
 
+	/**
+	 * Copies this chunk's blocks into the given array.
+	 * @param dest The array to copy into, of at least {@link Chunk#TOTAL_SIZE}
+	 *             length.
+	 */
+	public void copyBlocks(byte[] dest) {
+		long stamp = lock.tryOptimisticRead();
+		storage.copyTo(dest);
+		if (lock.validate(stamp)) return;
+		stamp = lock.readLock();
+		try {
+			storage.copyTo(dest);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Writes this chunk's blocks to the given channel. If the blocks are
+	 * stored off-heap, they're written directly from there.
+	 * @param channel The channel to write to.
+	 * @param buffer A buffer of at least {@link Chunk#TOTAL_SIZE} bytes, which
+	 *               may be used as temporary space.
+	 * @throws IOException If an error occurs while writing.
+	 */
+	public void writeBlocks(WritableByteChannel channel, byte[] buffer) throws IOException {
+		long stamp = lock.readLock();
+		try {
+			storage.writeTo(channel, buffer);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Moves this chunk's blocks into a slot of the given allocator, and keeps
+	 * them there from now on.
+	 * @param allocator The allocator to use.
+	 */
+	void moveToSlab(ChunkSlabAllocator allocator) {
+		long stamp = lock.writeLock();
+		try {
+			if (slabAllocator == allocator) return;
+			ChunkStorage previous = storage;
+			slabAllocator = allocator;
+			// Shared blocks are moved once they're copied.
+			if (sharedStorage) return;
+			if (!(storage instanceof UniformChunkStorage)) {
+				storage = new SlabChunkStorage(allocator, previous);
+			}
+			previous.release();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Moves this chunk's blocks back onto the heap, releasing any slot that
+	 * it had. This is called once the chunk is removed from its world, since
+	 * others may still hold on to the chunk.
+	 */
+	void releaseSlab() {
+		long stamp = lock.writeLock();
+		try {
+			if (slabAllocator == null) return;
+			slabAllocator = null;
+			if (sharedStorage) return;
+			ChunkStorage previous = storage;
+			storage = previous.copy();
+			previous.release();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * @return An estimate of the number of bytes used to store this chunk's
+	 * blocks. Blocks that are shared with another chunk aren't counted.
+	 */
+	public int getStorageSize() {
+		return sharedStorage ? 0 : storage.getSizeInBytes();
+	}
+
+	/**
+	 * Gets this chunk's version, which changes every time one of its blocks
+	 * is changed.
+	 * @return The version.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return The number of non-air blocks in this chunk.
+	 */
+	public int getNonAirCount() {
+		return nonAirCount;
+	}
+
+	/**
+	 * @return True if this chunk contains only air.
+	 */
+	public boolean isEmpty() {
+		return nonAirCount == 0;
+	}
+
+	/**
+	 * Gets the local y coordinate of the top-most non-air block in the given
+	 * column of this chunk.
+	 * @param x The local x coordinate.
+	 * @param z The local z coordinate.
+	 * @return The local y coordinate, or -1 if the column is empty.
+	 */
+	public int getColumnHeight(int x, int z) {
+		if (x < 0 || x >= SIZE || z < 0 || z >= SIZE) return -1;
+		return columnHeights[x * SIZE + z];
+	}
+
+	private int findColumnHeight(int x, int startY, int z) {
+		for (int y = startY; y >= 0; y--) {
+			if (storage.get(x * SIZE * SIZE + y * SIZE + z) != 0) return y;
+		}
+		return -1;
+	}
+
+	/**
+	 * Recomputes this chunk's occupancy metadata from scratch. This should be
+	 * called after modifying the block array directly.
+	 */
+	private void recomputeMetadata() {
+		nonAirCount = 0;
+		for (int i = 0; i < TOTAL_SIZE; i++) {
+			if (storage.get(i) != 0) nonAirCount++;
+		}
+		for (int x = 0; x < SIZE; x++) {
+			for (int z = 0; z < SIZE; z++) {
+				columnHeights[x * SIZE + z] = (byte) findColumnHeight(x, SIZE - 1, z);
+			}
+		}
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
@@ -119,15 +605,33 @@ public class Chunk {
 		return position.hashCode();
 	}
 
+	/**
+	 * Gets a hash of this chunk's blocks. This is only re-computed if the
+	 * chunk has been changed since the last time it was called.
+	 * @return The hash.
+	 */
 	public long blockHash() {
-		return LongHashFunction.xx3(0).hashBytes(blocks);
+		BlockHash hash = cachedHash;
+		if (hash != null && hash.version == version) return hash.hash;
+		long stamp = lock.tryOptimisticRead();
+		hash = new BlockHash(version, BLOCK_HASH.hashBytes(storage.toArray()));
+		if (!lock.validate(stamp)) {
+			stamp = lock.readLock();
+			try {
+				hash = new BlockHash(version, BLOCK_HASH.hashBytes(storage.toArray()));
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		cachedHash = hash;
+		return hash.hash;
 	}
 
 	public static Chunk random(Vector3i position, Random rand) {
-		Chunk c = new Chunk(position);
+		byte[] blocks = new byte[TOTAL_SIZE];
 		for (int i = 0; i < TOTAL_SIZE; i++) {
-			c.blocks[i] = (byte) rand.nextInt(1, 128);
+			blocks[i] = (byte) rand.nextInt(1, 128);
 		}
-		return c;
+		return new Chunk(position.x, position.y, position.z, blocks);
 	}
 }
@@ -0,0 +1,159 @@
+package nl.andrewl.aos_core.model.world;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes and decodes chunks' blocks for storage in world files. Chunks made
+ * of a few long runs of blocks are run-length encoded, and other chunks are
+ * compressed with deflate. Each encoded chunk starts with a byte that says
+ * which of these was used:
+ * <ul>
+ *     <li>{@link ChunkCodec#RAW}: the {@link Chunk#TOTAL_SIZE} blocks as-is.</li>
+ *     <li>{@link ChunkCodec#RLE}: pairs of a block value and a varint run
+ *     length, in block index order.</li>
+ *     <li>{@link ChunkCodec#DEFLATE}: the blocks, compressed with deflate.</li>
+ * </ul>
+ * A codec re-uses its buffers and compressors, so it isn't thread-safe.
+ */
+final class ChunkCodec {
+	static final byte RAW = 0;
+	static final byte RLE = 1;
+	static final byte DEFLATE = 2;
+
+	/**
+	 * Run-length encoded data up to this size is used without trying deflate,
+	 * since deflate couldn't save much, and is slower to decode.
+	 */
+	private static final int MAX_PLAIN_RLE_LENGTH = 128;
+
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final Inflater inflater = new Inflater();
+	private final byte[] decoded = new byte[Chunk.TOTAL_SIZE];
+	private final byte[] rle = new byte[Chunk.TOTAL_SIZE];
+	private final byte[] compressed = new byte[Chunk.TOTAL_SIZE];
+
+	/**
+	 * Encodes a chunk's blocks.
+	 * @param blocks The chunk's {@link Chunk#TOTAL_SIZE} blocks.
+	 * @return The encoded data, or null if the chunk should be stored
+	 * {@link ChunkCodec#RAW}, since that's the smallest.
+	 */
+	byte[] encode(byte[] blocks) {
+		int rleLength = encodeRle(blocks);
+		if (rleLength >= 0 && rleLength <= MAX_PLAIN_RLE_LENGTH) {
+			return withCodec(RLE, rle, rleLength);
+		}
+
+		deflater.reset();
+		deflater.setInput(blocks, 0, Chunk.TOTAL_SIZE);
+		deflater.finish();
+		int compressedLength = deflater.deflate(compressed);
+		if (!deflater.finished()) compressedLength = -1;
+
+		if (rleLength >= 0 && (compressedLength < 0 || rleLength <= compressedLength)) {
+			return withCodec(RLE, rle, rleLength);
+		} else if (compressedLength >= 0) {
+			return withCodec(DEFLATE, compressed, compressedLength);
+		}
+		return null;
+	}
+
+	/**
+	 * Run-length encodes blocks into the RLE buffer.
+	 * @return The length of the encoded data, or -1 if it wouldn't be any
+	 * smaller than the raw blocks.
+	 */
+	private int encodeRle(byte[] blocks) {
+		int rleLength = 0;
+		int i = 0;
+		while (i < Chunk.TOTAL_SIZE) {
+			byte value = blocks[i];
+			int runEnd = i + 1;
+			while (runEnd < Chunk.TOTAL_SIZE && blocks[runEnd] == value) runEnd++;
+			// A run takes at most 3 bytes: the value, and a 2-byte varint.
+			if (rleLength + 3 > rle.length) return -1;
+			rle[rleLength++] = value;
+			int length = runEnd - i;
+			while (length >= 0x80) {
+				rle[rleLength++] = (byte) (length | 0x80);
+				length >>>= 7;
+			}
+			rle[rleLength++] = (byte) length;
+			i = runEnd;
+		}
+		return rleLength;
+	}
+
+	private static byte[] withCodec(byte codec, byte[] src, int length) {
+		byte[] data = new byte[length + 1];
+		data[0] = codec;
+		System.arraycopy(src, 0, data, 1, length);
+		return data;
+	}
+
+	/**
+	 * Decodes a chunk's blocks.
+	 * @param data The encoded data, starting with the codec byte.
+	 * @param length The length of the encoded data.
+	 * @return The blocks. This array is re-used by the next call.
+	 * @throws IOException If the data is invalid.
+	 */
+	byte[] decode(byte[] data, int length) throws IOException {
+		if (length < 1) throw new IOException("Empty chunk data.");
+		switch (data[0]) {
+			case RAW -> {
+				if (length - 1 != Chunk.TOTAL_SIZE) throw new IOException("Invalid raw chunk length " + (length - 1));
+				System.arraycopy(data, 1, decoded, 0, Chunk.TOTAL_SIZE);
+			}
+			case RLE -> decodeRle(data, 1, length - 1);
+			case DEFLATE -> {
+				inflater.reset();
+				inflater.setInput(data, 1, length - 1);
+				try {
+					int blockCount = inflater.inflate(decoded);
+					if (blockCount != Chunk.TOTAL_SIZE || !inflater.finished()) {
+						throw new IOException("Compressed chunk data has the wrong size.");
+					}
+				} catch (DataFormatException e) {
+					throw new IOException("Invalid compressed chunk data.", e);
+				}
+			}
+			default -> throw new IOException("Unknown chunk codec " + data[0]);
+		}
+		return decoded;
+	}
+
+	private void decodeRle(byte[] data, int offset, int length) throws IOException {
+		int end = offset + length;
+		int idx = 0;
+		int i = offset;
+		while (i < end) {
+			byte value = data[i++];
+			int runLength = 0;
+			int shift = 0;
+			byte b;
+			do {
+				if (i >= end) throw new IOException("Truncated run length.");
+				b = data[i++];
+				runLength |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0 && shift < 21);
+			if (runLength > Chunk.TOTAL_SIZE - idx) throw new IOException("Run exceeds chunk size.");
+			Arrays.fill(decoded, idx, idx + runLength, value);
+			idx += runLength;
+		}
+		if (idx != Chunk.TOTAL_SIZE) throw new IOException("Run-length data covers " + idx + " blocks instead of " + Chunk.TOTAL_SIZE);
+	}
+
+	/**
+	 * Frees the native resources used by this codec.
+	 */
+	void close() {
+		deflater.end();
+		inflater.end();
+	}
+}
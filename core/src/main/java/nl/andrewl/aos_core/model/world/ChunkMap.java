@@ -0,0 +1,293 @@
+package nl.andrewl.aos_core.model.world;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * A map of chunks, keyed by their packed chunk coordinates. This uses an
+ * open-addressing table of primitive long keys, so that looking up a chunk
+ * never allocates or boxes anything, which is important since chunk lookups
+ * happen many times per tick for collision detection, raycasting and meshing.
+ * <p>
+ *     Chunk coordinates are packed into a single long using 21 bits per
+ *     axis. See {@link ChunkMap#key(int, int, int)}.
+ * </p>
+ * <p>
+ *     Any number of threads can read the map without locking, while one
+ *     thread at a time changes it. A chunk is only made visible once it's
+ *     fully added, removed chunks are replaced by a tombstone that lookups
+ *     skip over, and when the table is resized or cleaned up, a new table is
+ *     built and then swapped in. Iterating over the map goes through the
+ *     table as it was when iteration started.
+ * </p>
+ */
+public class ChunkMap {
+	private static final int INITIAL_CAPACITY = 64;
+	private static final float LOAD_FACTOR = 0.5f;
+	private static final int COORD_BITS = 21;
+	private static final long COORD_MASK = (1L << COORD_BITS) - 1;
+
+	private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(Chunk[].class);
+
+	/**
+	 * Marks a slot whose chunk was removed, so that lookups keep probing past
+	 * it. Tombstones are re-used by later additions, and dropped when the
+	 * table is rebuilt.
+	 */
+	private static final Chunk TOMBSTONE = new Chunk(0, 0, 0);
+
+	private static final class Table {
+		final long[] keys;
+		final Chunk[] values;
+		final int mask;
+
+		Table(int capacity) {
+			this.keys = new long[capacity];
+			this.values = new Chunk[capacity];
+			this.mask = capacity - 1;
+		}
+
+		Chunk get(int idx) {
+			return (Chunk) VALUES.getAcquire(values, idx);
+		}
+
+		/**
+		 * Publishes a chunk in a slot. The key is written first, so that any
+		 * reader that sees the chunk also sees its key.
+		 */
+		void set(int idx, long key, Chunk chunk) {
+			keys[idx] = key;
+			VALUES.setRelease(values, idx, chunk);
+		}
+	}
+
+	private volatile Table table;
+	private volatile int size;
+
+	/**
+	 * The number of slots that are in use, including tombstones. This is only
+	 * used by the thread that changes the map.
+	 */
+	private int usedSlots;
+
+	public ChunkMap() {
+		table = new Table(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Packs the given chunk coordinates into a single long key.
+	 * @param cx The chunk x coordinate.
+	 * @param cy The chunk y coordinate.
+	 * @param cz The chunk z coordinate.
+	 * @return The packed key.
+	 */
+	public static long key(int cx, int cy, int cz) {
+		return ((cx & COORD_MASK) << (2 * COORD_BITS)) |
+				((cy & COORD_MASK) << COORD_BITS) |
+				(cz & COORD_MASK);
+	}
+
+	public static int keyX(long key) {
+		return (int) (key << (64 - 3 * COORD_BITS) >> (64 - COORD_BITS));
+	}
+
+	public static int keyY(long key) {
+		return (int) (key << (64 - 2 * COORD_BITS) >> (64 - COORD_BITS));
+	}
+
+	public static int keyZ(long key) {
+		return (int) (key << (64 - COORD_BITS) >> (64 - COORD_BITS));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public Chunk get(long key) {
+		Table t = table;
+		int idx = slot(key, t.mask);
+		Chunk chunk;
+		while ((chunk = t.get(idx)) != null) {
+			// The chunk's own key is checked too, since the slot may have been re-used since we read it.
+			if (t.keys[idx] == key && chunk != TOMBSTONE && chunk.getKey() == key) return chunk;
+			idx = (idx + 1) & t.mask;
+		}
+		return null;
+	}
+
+	public Chunk get(int cx, int cy, int cz) {
+		return get(key(cx, cy, cz));
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Adds a chunk to the map, keyed by its position.
+	 * @param chunk The chunk to add.
+	 * @return The chunk that previously occupied the same position, if any.
+	 */
+	public Chunk put(Chunk chunk) {
+		Table t = table;
+		long key = chunk.getKey();
+		int idx = slot(key, t.mask);
+		int free = -1;
+		Chunk existing;
+		while ((existing = t.values[idx]) != null) {
+			if (existing == TOMBSTONE) {
+				if (free == -1) free = idx;
+			} else if (t.keys[idx] == key) {
+				t.set(idx, key, chunk);
+				return existing;
+			}
+			idx = (idx + 1) & t.mask;
+		}
+		if (free == -1) {
+			free = idx;
+			usedSlots++;
+		}
+		t.set(free, key, chunk);
+		size++;
+		if (usedSlots > t.values.length * LOAD_FACTOR) {
+			// Only grow if most of the used slots aren't tombstones.
+			rebuild(size > t.values.length * LOAD_FACTOR / 2 ? t.values.length * 2 : t.values.length);
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the chunk with the given key.
+	 * @param key The packed chunk key.
+	 * @return The chunk that was removed, or null if there was none.
+	 */
+	public Chunk remove(long key) {
+		Table t = table;
+		int idx = slot(key, t.mask);
+		Chunk existing;
+		while ((existing = t.values[idx]) != null) {
+			if (existing != TOMBSTONE && t.keys[idx] == key) {
+				t.set(idx, key, TOMBSTONE);
+				size--;
+				return existing;
+			}
+			idx = (idx + 1) & t.mask;
+		}
+		return null;
+	}
+
+	public void clear() {
+		table = new Table(INITIAL_CAPACITY);
+		size = 0;
+		usedSlots = 0;
+	}
+
+	public void forEach(Consumer<Chunk> action) {
+		Table t = table;
+		for (int i = 0; i < t.values.length; i++) {
+			Chunk chunk = t.get(i);
+			if (chunk != null && chunk != TOMBSTONE) action.accept(chunk);
+		}
+	}
+
+	/**
+	 * Gets the keys of all chunks in this map.
+	 * @return The array of keys.
+	 */
+	public long[] keys() {
+		Table t = table;
+		long[] keys = new long[size];
+		int count = 0;
+		for (int i = 0; i < t.values.length; i++) {
+			Chunk chunk = t.get(i);
+			if (chunk == null || chunk == TOMBSTONE) continue;
+			// Chunks may be added while we go through the table.
+			if (count == keys.length) keys = Arrays.copyOf(keys, Math.max(16, count * 2));
+			keys[count++] = chunk.getKey();
+		}
+		return count == keys.length ? keys : Arrays.copyOf(keys, count);
+	}
+
+	/**
+	 * Gets a read-only view of the chunks in this map.
+	 * @return The collection of chunks.
+	 */
+	public Collection<Chunk> values() {
+		return new AbstractCollection<>() {
+			@Override
+			public Iterator<Chunk> iterator() {
+				return new ChunkIterator();
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	private static int slot(long key, int mask) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	/**
+	 * Builds a new table without any tombstones, and swaps it in.
+	 * @param capacity The capacity of the new table.
+	 */
+	private void rebuild(int capacity) {
+		Table old = table;
+		Table t = new Table(capacity);
+		for (int i = 0; i < old.values.length; i++) {
+			Chunk chunk = old.values[i];
+			if (chunk == null || chunk == TOMBSTONE) continue;
+			int idx = slot(old.keys[i], t.mask);
+			while (t.values[idx] != null) idx = (idx + 1) & t.mask;
+			t.keys[idx] = old.keys[i];
+			t.values[idx] = chunk;
+		}
+		table = t;
+		usedSlots = size;
+	}
+
+	private class ChunkIterator implements Iterator<Chunk> {
+		private final Table table = ChunkMap.this.table;
+		private Chunk next;
+		private int idx = 0;
+
+		private ChunkIterator() {
+			advance();
+		}
+
+		private void advance() {
+			next = null;
+			while (next == null && idx < table.values.length) {
+				Chunk chunk = table.get(idx++);
+				if (chunk != null && chunk != TOMBSTONE) next = chunk;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public Chunk next() {
+			if (next == null) throw new NoSuchElementException();
+			Chunk chunk = next;
+			advance();
+			return chunk;
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package nl.andrewl.aos_core.model.world;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Allocates space for chunk blocks from large, off-heap slabs of memory.
+ * Each slab is a direct byte buffer that's divided into fixed-size slots of
+ * {@link Chunk#TOTAL_SIZE} bytes, one for each chunk. When a chunk is removed
+ * from its world, its slot is freed so that it can be re-used by another.
+ * <p>
+ *     Keeping block data off-heap means that big worlds don't add thousands
+ *     of arrays for the garbage collector to trace. See
+ *     {@link World#useSlabStorage(ChunkSlabAllocator)}.
+ * </p>
+ */
+public final class ChunkSlabAllocator {
+	/**
+	 * The default number of chunks in each slab, which gives 1 MiB slabs.
+	 */
+	public static final int DEFAULT_CHUNKS_PER_SLAB = 256;
+
+	private final int chunksPerSlab;
+	private final List<ByteBuffer> slabs = new ArrayList<>();
+	private int[] freeSlots = new int[16];
+	private int freeSlotCount = 0;
+	private int nextSlot = 0;
+
+	public ChunkSlabAllocator(int chunksPerSlab) {
+		if (chunksPerSlab < 1) throw new IllegalArgumentException("Slabs must hold at least one chunk.");
+		this.chunksPerSlab = chunksPerSlab;
+	}
+
+	public ChunkSlabAllocator() {
+		this(DEFAULT_CHUNKS_PER_SLAB);
+	}
+
+	/**
+	 * Allocates a slot, preferring one that was freed before, and adding a
+	 * new slab if all others are full.
+	 * @return The slot index.
+	 */
+	synchronized int allocate() {
+		if (freeSlotCount > 0) return freeSlots[--freeSlotCount];
+		if (nextSlot == slabs.size() * chunksPerSlab) {
+			slabs.add(ByteBuffer.allocateDirect(chunksPerSlab * Chunk.TOTAL_SIZE));
+		}
+		return nextSlot++;
+	}
+
+	/**
+	 * Frees a slot so that it can be allocated again. The slot's buffer must
+	 * not be used after this.
+	 * @param slot The slot index.
+	 */
+	synchronized void free(int slot) {
+		if (freeSlotCount == freeSlots.length) {
+			int[] newFreeSlots = new int[freeSlots.length * 2];
+			System.arraycopy(freeSlots, 0, newFreeSlots, 0, freeSlotCount);
+			freeSlots = newFreeSlots;
+		}
+		freeSlots[freeSlotCount++] = slot;
+	}
+
+	/**
+	 * Gets a buffer that covers exactly the given slot.
+	 * @param slot The slot index.
+	 * @return A buffer of {@link Chunk#TOTAL_SIZE} bytes.
+	 */
+	synchronized ByteBuffer slice(int slot) {
+		ByteBuffer slab = slabs.get(slot / chunksPerSlab);
+		return slab.slice((slot % chunksPerSlab) * Chunk.TOTAL_SIZE, Chunk.TOTAL_SIZE);
+	}
+
+	/**
+	 * @return The number of slots that are currently in use.
+	 */
+	public synchronized int getUsedSlotCount() {
+		return nextSlot - freeSlotCount;
+	}
+
+	/**
+	 * @return The number of slabs that have been allocated.
+	 */
+	public synchronized int getSlabCount() {
+		return slabs.size();
+	}
+
+	/**
+	 * @return The total number of off-heap bytes reserved by this allocator.
+	 */
+	public synchronized long getCapacityInBytes() {
+		return (long) slabs.size() * chunksPerSlab * Chunk.TOTAL_SIZE;
+	}
+}
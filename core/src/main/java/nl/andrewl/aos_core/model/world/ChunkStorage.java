@@ -0,0 +1,129 @@
+package nl.andrewl.aos_core.model.world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The underlying storage for a chunk's blocks. Depending on how many distinct
+ * values a chunk contains, we use a different representation to save memory:
+ * <ul>
+ *     <li>{@link UniformChunkStorage} for chunks that are filled with a
+ *     single value, like empty air chunks or solid underground chunks.</li>
+ *     <li>{@link PaletteChunkStorage} for chunks with only a few distinct
+ *     values, which are stored as bit-packed indices into a small palette.</li>
+ *     <li>{@link DenseChunkStorage} for everything else, which is just a
+ *     plain array of {@link Chunk#TOTAL_SIZE} bytes.</li>
+ *     <li>{@link SlabChunkStorage} for chunks in worlds that keep their
+ *     blocks off-heap.</li>
+ * </ul>
+ * Storage is addressed by the same 1D index as {@link Chunk#xyzToIdx(int, int, int)}.
+ */
+interface ChunkStorage {
+	byte get(int idx);
+
+	/**
+	 * Sets the value at the given index.
+	 * @param idx The index to set.
+	 * @param value The value to set.
+	 * @return The storage that should be used from now on. This is usually
+	 * the same storage, unless it had to be promoted to a representation
+	 * that can hold the new value.
+	 */
+	ChunkStorage set(int idx, byte value);
+
+	/**
+	 * Sets all values in a range of indices.
+	 * @param from The first index to set, inclusive.
+	 * @param to The last index to set, exclusive.
+	 * @param value The value to set.
+	 * @return The storage that should be used from now on.
+	 */
+	default ChunkStorage fill(int from, int to, byte value) {
+		ChunkStorage storage = this;
+		for (int i = from; i < to; i++) {
+			storage = storage.set(i, value);
+		}
+		return storage;
+	}
+
+	/**
+	 * @return A copy of this storage that can be modified independently.
+	 */
+	ChunkStorage copy();
+
+	/**
+	 * Copies all values into the given array.
+	 * @param dest The array to copy into, of at least {@link Chunk#TOTAL_SIZE}
+	 *             length.
+	 */
+	void copyTo(byte[] dest);
+
+	/**
+	 * Gets all values as an array. Implementations may return their internal
+	 * array directly, so the result must not be modified.
+	 * @return The array of values.
+	 */
+	default byte[] toArray() {
+		byte[] array = new byte[Chunk.TOTAL_SIZE];
+		copyTo(array);
+		return array;
+	}
+
+	/**
+	 * Writes all values to the given channel.
+	 * @param channel The channel to write to.
+	 * @param buffer A buffer of at least {@link Chunk#TOTAL_SIZE} bytes which
+	 *               may be used if the values aren't already stored
+	 *               contiguously.
+	 * @throws IOException If an error occurs while writing.
+	 */
+	default void writeTo(WritableByteChannel channel, byte[] buffer) throws IOException {
+		copyTo(buffer);
+		writeFully(channel, ByteBuffer.wrap(buffer, 0, Chunk.TOTAL_SIZE));
+	}
+
+	/**
+	 * Releases any resources held by this storage. It must not be used
+	 * afterwards.
+	 */
+	default void release() {}
+
+	/**
+	 * @return An estimate of the number of bytes of memory used to store the
+	 * values, not including object headers.
+	 */
+	int getSizeInBytes();
+
+	/**
+	 * Gets the most compact storage that can hold the given values.
+	 * @param blocks The values to store. This array is not kept.
+	 * @return The storage.
+	 */
+	static ChunkStorage of(byte[] blocks) {
+		boolean[] seen = new boolean[256];
+		byte[] distinct = new byte[PaletteChunkStorage.MAX_PALETTE_SIZE];
+		int distinctCount = 0;
+		for (int i = 0; i < Chunk.TOTAL_SIZE; i++) {
+			int v = blocks[i] & 0xFF;
+			if (seen[v]) continue;
+			seen[v] = true;
+			if (distinctCount == distinct.length) {
+				return new DenseChunkStorage(blocks.clone());
+			}
+			distinct[distinctCount++] = blocks[i];
+		}
+		if (distinctCount == 1) return UniformChunkStorage.of(distinct[0]);
+		var storage = new PaletteChunkStorage(distinct, distinctCount);
+		for (int i = 0; i < Chunk.TOTAL_SIZE; i++) {
+			storage.set(i, blocks[i]);
+		}
+		return storage;
+	}
+
+	static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package nl.andrewl.aos_core.model.world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Storage for a chunk that's simply a flat array with one byte per block.
+ */
+final class DenseChunkStorage implements ChunkStorage {
+	private final byte[] blocks;
+
+	/**
+	 * Creates a dense storage that uses the given array directly.
+	 * @param blocks The array of blocks.
+	 */
+	DenseChunkStorage(byte[] blocks) {
+		this.blocks = blocks;
+	}
+
+	@Override
+	public byte get(int idx) {
+		return blocks[idx];
+	}
+
+	@Override
+	public ChunkStorage set(int idx, byte value) {
+		blocks[idx] = value;
+		return this;
+	}
+
+	@Override
+	public ChunkStorage fill(int from, int to, byte value) {
+		Arrays.fill(blocks, from, to, value);
+		return this;
+	}
+
+	@Override
+	public ChunkStorage copy() {
+		return new DenseChunkStorage(blocks.clone());
+	}
+
+	@Override
+	public void copyTo(byte[] dest) {
+		System.arraycopy(blocks, 0, dest, 0, Chunk.TOTAL_SIZE);
+	}
+
+	@Override
+	public void writeTo(WritableByteChannel channel, byte[] buffer) throws IOException {
+		ChunkStorage.writeFully(channel, ByteBuffer.wrap(blocks));
+	}
+
+	@Override
+	public byte[] toArray() {
+		return blocks;
+	}
+
+	@Override
+	public int getSizeInBytes() {
+		return blocks.length;
+	}
+}
@@ -7,9 +7,77 @@ import org.joml.Vector3ic;
 /**
  * Represents the point at which a ray hits a block, often used when casting a
  * ray from a player's location to see if they break or place a block.
+ * <p>
+ *     Hits are mutable so that they can be re-used by callers that cast many
+ *     rays, like the server's projectile logic. A hit whose distance is
+ *     infinite is empty, meaning that the ray didn't hit anything.
+ * </p>
  */
-public record Hit (
-		Vector3i pos,
-		Vector3ic norm,
-		Vector3f rawPos
-) {}
+public class Hit {
+	private final Vector3i pos;
+	private Vector3ic norm;
+	private final Vector3f rawPos;
+	private float distance;
+
+	public Hit(Vector3i pos, Vector3ic norm, Vector3f rawPos) {
+		this.pos = pos;
+		this.norm = norm;
+		this.rawPos = rawPos;
+		this.distance = 0;
+	}
+
+	public Hit() {
+		this.pos = new Vector3i();
+		this.rawPos = new Vector3f();
+		clear();
+	}
+
+	/**
+	 * @return The position of the block that was hit.
+	 */
+	public Vector3i pos() {
+		return pos;
+	}
+
+	/**
+	 * @return The normal of the face of the block that was hit.
+	 */
+	public Vector3ic norm() {
+		return norm;
+	}
+
+	/**
+	 * @return The exact point at which the ray entered the block.
+	 */
+	public Vector3f rawPos() {
+		return rawPos;
+	}
+
+	/**
+	 * @return The distance from the ray's origin to the hit point.
+	 */
+	public float distance() {
+		return distance;
+	}
+
+	public boolean isEmpty() {
+		return Float.isInfinite(distance);
+	}
+
+	void set(int x, int y, int z, Vector3ic norm, float rx, float ry, float rz, float distance) {
+		this.pos.set(x, y, z);
+		this.norm = norm;
+		this.rawPos.set(rx, ry, rz);
+		this.distance = distance;
+	}
+
+	void clear() {
+		this.norm = null;
+		this.distance = Float.POSITIVE_INFINITY;
+	}
+
+	@Override
+	public String toString() {
+		return "Hit[pos=" + pos + ", norm=" + norm + ", rawPos=" + rawPos + "]";
+	}
+}
@@ -0,0 +1,237 @@
+package nl.andrewl.aos_core.model.world;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of the chunks that a {@link PagedWorld} has loaded, in
+ * least-recently-used order. For each chunk, it holds the version that was
+ * last written to the store, and the number of callers that have pinned it,
+ * so that it's not unloaded while it's being changed.
+ * <p>
+ *     Entries are kept in parallel primitive arrays, linked together in
+ *     order of use, and found through an open-addressing index of chunk
+ *     keys, so that looking up a chunk doesn't allocate or box anything.
+ *     Entry numbers stay the same until the entry is removed.
+ * </p>
+ * <p>
+ *     A table isn't thread-safe.
+ * </p>
+ */
+final class LoadedChunkTable {
+	static final int NONE = -1;
+	private static final int INITIAL_CAPACITY = 16;
+
+	private long[] keys;
+	private long[] savedVersions;
+	private int[] pins;
+	/**
+	 * The next and previous entries in order of use. Free entries are linked
+	 * through {@link LoadedChunkTable#next}.
+	 */
+	private int[] next;
+	private int[] prev;
+	private int oldest = NONE;
+	private int newest = NONE;
+	private int free = NONE;
+	private int size;
+
+	/**
+	 * Maps each key's slot to its entry number plus one, or 0 if the slot is
+	 * empty.
+	 */
+	private int[] index;
+
+	LoadedChunkTable() {
+		clear();
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Finds the entry for a chunk.
+	 * @param key The chunk's key.
+	 * @return The entry, or {@link LoadedChunkTable#NONE} if there isn't one.
+	 */
+	int find(long key) {
+		int mask = index.length - 1;
+		for (int slot = slot(key, mask); index[slot] != 0; slot = (slot + 1) & mask) {
+			int entry = index[slot] - 1;
+			if (keys[entry] == key) return entry;
+		}
+		return NONE;
+	}
+
+	/**
+	 * Adds an entry for a chunk that isn't in the table yet, as the most
+	 * recently used one.
+	 * @param key The chunk's key.
+	 * @param savedVersion The chunk's version in the store.
+	 * @return The new entry.
+	 */
+	int add(long key, long savedVersion) {
+		if (free == NONE) grow();
+		int entry = free;
+		free = next[entry];
+		keys[entry] = key;
+		savedVersions[entry] = savedVersion;
+		pins[entry] = 0;
+		linkNewest(entry);
+		int mask = index.length - 1;
+		int slot = slot(key, mask);
+		while (index[slot] != 0) slot = (slot + 1) & mask;
+		index[slot] = entry + 1;
+		size++;
+		return entry;
+	}
+
+	/**
+	 * Removes an entry. Its number may be re-used by later additions.
+	 * @param entry The entry to remove.
+	 */
+	void remove(int entry) {
+		int mask = index.length - 1;
+		int slot = slot(keys[entry], mask);
+		while (index[slot] != entry + 1) slot = (slot + 1) & mask;
+		// Shifts later entries of the probe sequence back, so that lookups don't need tombstones.
+		int gap = slot;
+		for (slot = (slot + 1) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+			int home = slot(keys[index[slot] - 1], mask);
+			if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+				index[gap] = index[slot];
+				gap = slot;
+			}
+		}
+		index[gap] = 0;
+		unlink(entry);
+		next[entry] = free;
+		free = entry;
+		size--;
+	}
+
+	/**
+	 * Marks an entry as the most recently used one.
+	 * @param entry The entry.
+	 */
+	void touch(int entry) {
+		if (entry == newest) return;
+		unlink(entry);
+		linkNewest(entry);
+	}
+
+	long key(int entry) {
+		return keys[entry];
+	}
+
+	long savedVersion(int entry) {
+		return savedVersions[entry];
+	}
+
+	void setSavedVersion(int entry, long version) {
+		savedVersions[entry] = version;
+	}
+
+	boolean isPinned(int entry) {
+		return pins[entry] > 0;
+	}
+
+	void pin(int entry) {
+		pins[entry]++;
+	}
+
+	/**
+	 * Removes one pin from an entry.
+	 * @param entry The entry.
+	 * @return True if the entry is no longer pinned.
+	 */
+	boolean unpin(int entry) {
+		if (pins[entry] > 0) pins[entry]--;
+		return pins[entry] == 0;
+	}
+
+	/**
+	 * @return The least recently used entry, or {@link LoadedChunkTable#NONE}
+	 * if the table is empty.
+	 */
+	int oldest() {
+		return oldest;
+	}
+
+	/**
+	 * @param entry An entry.
+	 * @return The entry that was used after it, or
+	 * {@link LoadedChunkTable#NONE} if it's the most recently used one.
+	 */
+	int newer(int entry) {
+		return next[entry];
+	}
+
+	void clear() {
+		keys = new long[INITIAL_CAPACITY];
+		savedVersions = new long[INITIAL_CAPACITY];
+		pins = new int[INITIAL_CAPACITY];
+		next = new int[INITIAL_CAPACITY];
+		prev = new int[INITIAL_CAPACITY];
+		index = new int[INITIAL_CAPACITY * 2];
+		oldest = NONE;
+		newest = NONE;
+		size = 0;
+		free = NONE;
+		addFreeEntries(0, INITIAL_CAPACITY);
+	}
+
+	private void grow() {
+		int capacity = keys.length * 2;
+		keys = Arrays.copyOf(keys, capacity);
+		savedVersions = Arrays.copyOf(savedVersions, capacity);
+		pins = Arrays.copyOf(pins, capacity);
+		next = Arrays.copyOf(next, capacity);
+		prev = Arrays.copyOf(prev, capacity);
+		addFreeEntries(capacity / 2, capacity);
+		// The index is rebuilt at twice the number of entries, to keep probe sequences short.
+		index = new int[capacity * 2];
+		int mask = index.length - 1;
+		for (int entry = oldest; entry != NONE; entry = next[entry]) {
+			int slot = slot(keys[entry], mask);
+			while (index[slot] != 0) slot = (slot + 1) & mask;
+			index[slot] = entry + 1;
+		}
+	}
+
+	private void addFreeEntries(int from, int to) {
+		for (int entry = to - 1; entry >= from; entry--) {
+			next[entry] = free;
+			free = entry;
+		}
+	}
+
+	private void linkNewest(int entry) {
+		prev[entry] = newest;
+		next[entry] = NONE;
+		if (newest != NONE) {
+			next[newest] = entry;
+		} else {
+			oldest = entry;
+		}
+		newest = entry;
+	}
+
+	private void unlink(int entry) {
+		if (prev[entry] != NONE) {
+			next[prev[entry]] = next[entry];
+		} else {
+			oldest = next[entry];
+		}
+		if (next[entry] != NONE) {
+			prev[next[entry]] = prev[entry];
+		} else {
+			newest = prev[entry];
+		}
+	}
+
+	private static int slot(long key, int mask) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+}
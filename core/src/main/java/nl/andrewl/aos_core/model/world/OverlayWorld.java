@@ -0,0 +1,84 @@
+package nl.andrewl.aos_core.model.world;
+
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A world that starts out as a {@link WorldBase}, and shares the base's
+ * blocks until they're changed. Only chunks that have been changed get their
+ * own copy of their blocks, so many overlays of one base are cheap, and
+ * {@link OverlayWorld#reset()} only has to drop those copies.
+ */
+public class OverlayWorld extends World {
+	private final WorldBase base;
+
+	public OverlayWorld(WorldBase base) {
+		super(base.getPalette());
+		this.base = base;
+		reset();
+	}
+
+	public WorldBase getBase() {
+		return base;
+	}
+
+	/**
+	 * Resets this world to its base, by discarding all changed blocks,
+	 * removing chunks that aren't in the base and adding back those that were
+	 * removed. Spawn points are reset too. Worlds with a journal can't be
+	 * reset, since the journal couldn't be replayed onto the base afterwards.
+	 * @return The chunks whose blocks were reset or added back.
+	 */
+	public synchronized List<Chunk> reset() {
+		if (getJournal() != null) throw new IllegalStateException("Can't reset a world that has a journal.");
+		ChunkMap baseChunks = base.getChunks();
+		for (long key : getChunkKeys()) {
+			if (!baseChunks.containsKey(key)) removeChunk(key);
+		}
+		List<Chunk> resetChunks = new ArrayList<>();
+		for (var baseChunk : baseChunks.values()) {
+			Chunk chunk = chunkMap.get(baseChunk.getKey());
+			if (chunk == null) {
+				chunk = new Chunk(baseChunk.getPosition());
+				chunk.shareBlocks(baseChunk);
+				addChunk(chunk);
+				resetChunks.add(chunk);
+			} else if (!chunk.isSharingBlocksWith(baseChunk)) {
+				chunk.shareBlocks(baseChunk);
+				resetChunks.add(chunk);
+			}
+		}
+		spawnPoints.clear();
+		base.getSpawnPoints().forEach((name, point) -> setSpawnPoint(name, new Vector3f(point)));
+		return resetChunks;
+	}
+
+	/**
+	 * @return The number of chunks that aren't in the base, and would be
+	 * removed by a reset.
+	 */
+	public int getAddedChunkCount() {
+		ChunkMap baseChunks = base.getChunks();
+		int count = 0;
+		for (var chunk : chunkMap.values()) {
+			if (!baseChunks.containsKey(chunk.getKey())) count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return The number of chunks that have their own blocks, because they
+	 * were changed or added since the last reset.
+	 */
+	public int getChangedChunkCount() {
+		ChunkMap baseChunks = base.getChunks();
+		int count = 0;
+		for (var chunk : chunkMap.values()) {
+			Chunk baseChunk = baseChunks.get(chunk.getKey());
+			if (baseChunk == null || !chunk.isSharingBlocksWith(baseChunk)) count++;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,270 @@
+package nl.andrewl.aos_core.model.world;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A world whose chunks are kept in memory-mapped region files, and are only
+ * loaded when they're accessed. At most a fixed number of chunks are kept in
+ * memory, and when more are needed, the least recently used ones are
+ * unloaded, and written back to their region file if they were changed.
+ * <p>
+ *     The {@link World#getChunkMap() chunk map} only contains the chunks that
+ *     are currently loaded. Use {@link World#getChunkKeys()} and
+ *     {@link World#getChunkAt(long)} to go through all chunks. Every change
+ *     to blocks made through the world pins its chunk until the change is
+ *     done, and pinned chunks are never unloaded, so no change is lost. A
+ *     chunk that's only being read may be unloaded meanwhile, in which case
+ *     the reader keeps a detached copy of its blocks.
+ * </p>
+ * <p>
+ *     Paged worlds are excluded from the lock-free reads that other worlds
+ *     offer: every chunk lookup is synchronized, since it may load or unload
+ *     chunks. They also don't support {@link World#snapshot() snapshots} or
+ *     {@link World#getDigest() digests}, since both need every chunk in
+ *     memory. Code that reads the whole world, like to save it, reads it
+ *     directly instead, and may see changes that are made meanwhile.
+ * </p>
+ */
+public class PagedWorld extends World {
+	/**
+	 * The name of the world file in a paged world's directory, which holds
+	 * the palette and spawn points, but no chunks.
+	 */
+	public static final String METADATA_FILE = "world.wld";
+
+	private final RegionChunkStore store;
+	private final int maxLoadedChunks;
+
+	/**
+	 * The version of each loaded chunk when it was last written to the store,
+	 * and the number of changes that have pinned it, in least-recently-used
+	 * order.
+	 */
+	private final LoadedChunkTable loaded = new LoadedChunkTable();
+
+	private Chunk lastChunk;
+
+	private PagedWorld(RegionChunkStore store, World metadata, int maxLoadedChunks) {
+		super(metadata.getPalette());
+		metadata.getSpawnPoints().forEach(this::setSpawnPoint);
+		this.store = store;
+		this.maxLoadedChunks = Math.max(1, maxLoadedChunks);
+	}
+
+	/**
+	 * Opens a paged world that was written with
+	 * {@link PagedWorld#write(World, Path)}. No chunks are loaded until
+	 * they're accessed.
+	 * @param directory The world's directory.
+	 * @param maxLoadedChunks The maximum number of chunks to keep in memory.
+	 * @return The world.
+	 * @throws IOException If the world can't be read.
+	 */
+	public static PagedWorld open(Path directory, int maxLoadedChunks) throws IOException {
+		World metadata = WorldIO.read(directory.resolve(METADATA_FILE));
+		return new PagedWorld(new RegionChunkStore(directory), metadata, maxLoadedChunks);
+	}
+
+	/**
+	 * Writes a world as a paged world, which can then be opened with
+	 * {@link PagedWorld#open(Path, int)}.
+	 * @param world The world to write.
+	 * @param directory The directory to write to.
+	 * @throws IOException If an exception occurs.
+	 */
+	public static void write(World world, Path directory) throws IOException {
+		var store = new RegionChunkStore(directory);
+		for (long key : world.getChunkKeys()) {
+			store.save(world.getChunkAt(key));
+		}
+		store.close();
+		writeMetadata(world, directory);
+	}
+
+	public static boolean isPagedWorld(Path directory) {
+		return Files.isRegularFile(directory.resolve(METADATA_FILE));
+	}
+
+	@Override
+	public synchronized Chunk getChunkAt(long chunkKey) {
+		Chunk chunk = lastChunk;
+		if (chunk != null && chunk.getKey() == chunkKey) return chunk;
+		chunk = chunkMap.get(chunkKey);
+		if (chunk != null) {
+			loaded.touch(loaded.find(chunkKey));
+		} else {
+			chunk = store.load(chunkKey);
+			if (chunk == null) return null;
+			if (getSlabAllocator() != null) chunk.moveToSlab(getSlabAllocator());
+			chunk.setInWorld(true);
+			chunkMap.put(chunk);
+			loaded.add(chunkKey, chunk.getVersion());
+			unloadExcessChunks();
+		}
+		lastChunk = chunk;
+		return chunk;
+	}
+
+	/**
+	 * Gets a chunk, and pins it so that it isn't unloaded until it's
+	 * released.
+	 */
+	@Override
+	protected synchronized Chunk acquireChunk(long chunkKey) {
+		Chunk chunk = getChunkAt(chunkKey);
+		if (chunk != null) loaded.pin(loaded.find(chunkKey));
+		return chunk;
+	}
+
+	@Override
+	protected synchronized void releaseChunk(Chunk chunk) {
+		int entry = loaded.find(chunk.getKey());
+		// The chunk may have been removed or replaced while it was pinned.
+		if (entry == LoadedChunkTable.NONE || chunkMap.get(chunk.getKey()) != chunk) return;
+		if (loaded.unpin(entry)) unloadExcessChunks();
+	}
+
+	/**
+	 * Adds a chunk, and writes it to the store straight away.
+	 * @param chunk The chunk to add.
+	 */
+	@Override
+	public synchronized void addChunk(Chunk chunk) {
+		long version = chunk.getVersion();
+		try {
+			store.save(chunk);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		super.addChunk(chunk);
+		int entry = loaded.find(chunk.getKey());
+		if (entry != LoadedChunkTable.NONE) loaded.remove(entry);
+		loaded.add(chunk.getKey(), version);
+		lastChunk = null;
+		unloadExcessChunks();
+	}
+
+	@Override
+	public synchronized void removeChunk(long chunkKey) {
+		store.remove(chunkKey);
+		int entry = loaded.find(chunkKey);
+		if (entry != LoadedChunkTable.NONE) loaded.remove(entry);
+		super.removeChunk(chunkKey);
+		lastChunk = null;
+	}
+
+	@Override
+	public synchronized long[] getChunkKeys() {
+		return store.getChunkKeys();
+	}
+
+	@Override
+	public synchronized int getChunkCount() {
+		return store.getChunkCount();
+	}
+
+	@Override
+	public boolean supportsSnapshots() {
+		return false;
+	}
+
+	@Override
+	public boolean supportsDigests() {
+		return false;
+	}
+
+	/**
+	 * Removes all chunks from this world and its store, and clears its spawn
+	 * points.
+	 */
+	@Override
+	public synchronized void clear() {
+		for (long key : store.getChunkKeys()) store.remove(key);
+		loaded.clear();
+		lastChunk = null;
+		super.clear();
+	}
+
+	/**
+	 * Writes all changed chunks, the palette and spawn points to disk.
+	 * @throws IOException If an exception occurs.
+	 */
+	public synchronized void save() throws IOException {
+		for (int entry = loaded.oldest(); entry != LoadedChunkTable.NONE; entry = loaded.newer(entry)) {
+			saveIfChanged(entry, chunkMap.get(loaded.key(entry)));
+		}
+		store.flush();
+		writeMetadata(this, store.getDirectory());
+	}
+
+	/**
+	 * Saves this world, and closes its store. The world can't be used after
+	 * this.
+	 * @throws IOException If an exception occurs.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		save();
+		store.close();
+		super.clear();
+		loaded.clear();
+		lastChunk = null;
+	}
+
+	/**
+	 * @return The number of chunks that are currently loaded.
+	 */
+	public synchronized int getLoadedChunkCount() {
+		return chunkMap.size();
+	}
+
+	/**
+	 * Unloads the least recently used chunks that aren't pinned, until no
+	 * more than the maximum number of chunks are loaded, or all of the
+	 * remaining ones are pinned. Pinned chunks may briefly push the number of
+	 * loaded chunks over the maximum.
+	 */
+	private void unloadExcessChunks() {
+		int entry = loaded.oldest();
+		while (chunkMap.size() > maxLoadedChunks && entry != LoadedChunkTable.NONE) {
+			int next = loaded.newer(entry);
+			// The most recently used chunk is kept, since it's about to be returned.
+			if (next == LoadedChunkTable.NONE) break;
+			if (!loaded.isPinned(entry)) {
+				Chunk chunk = chunkMap.remove(loaded.key(entry));
+				try {
+					saveIfChanged(entry, chunk);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				loaded.remove(entry);
+				chunk.setInWorld(false);
+				chunk.releaseSlab();
+				if (chunk == lastChunk) lastChunk = null;
+			}
+			entry = next;
+		}
+	}
+
+	/**
+	 * Writes a loaded chunk to the store if it changed since it was last
+	 * written. Its version is read first, so that a change made while it's
+	 * written is saved the next time.
+	 */
+	private void saveIfChanged(int entry, Chunk chunk) throws IOException {
+		long version = chunk.getVersion();
+		if (version != loaded.savedVersion(entry)) {
+			store.save(chunk);
+			loaded.setSavedVersion(entry, version);
+		}
+	}
+
+	private static void writeMetadata(World world, Path directory) throws IOException {
+		World metadata = new World(world.getPalette());
+		world.getSpawnPoints().forEach(metadata::setSpawnPoint);
+		WorldIO.write(metadata, directory.resolve(METADATA_FILE));
+	}
+}
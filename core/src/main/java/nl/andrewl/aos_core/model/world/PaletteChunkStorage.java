@@ -0,0 +1,123 @@
+package nl.andrewl.aos_core.model.world;
+
+/**
+ * Storage for a chunk with only a few distinct values. Each block is stored
+ * as a 1, 2 or 4-bit index into a palette of values, packed into longs. If a
+ * value is added that doesn't fit in the palette, the indices are widened,
+ * and once that's no longer possible, the storage is promoted to a
+ * {@link DenseChunkStorage}.
+ * <p>
+ *     The number of bits per index is implied by the length of the data
+ *     array, so that a read on another thread while the indices are widened
+ *     sees either the old or the new array, but never a mix of the two.
+ * </p>
+ */
+final class PaletteChunkStorage implements ChunkStorage {
+	static final int MAX_BITS = 4;
+	static final int MAX_PALETTE_SIZE = 1 << MAX_BITS;
+
+	private final byte[] palette = new byte[MAX_PALETTE_SIZE];
+	private int paletteSize;
+	private long[] data;
+
+	/**
+	 * Creates a new palette storage in which every block has the first value
+	 * in the given palette.
+	 * @param palette The initial palette values.
+	 * @param paletteSize The number of values in the palette.
+	 */
+	PaletteChunkStorage(byte[] palette, int paletteSize) {
+		System.arraycopy(palette, 0, this.palette, 0, paletteSize);
+		this.paletteSize = paletteSize;
+		int bits = 1;
+		while ((1 << bits) < paletteSize) bits *= 2;
+		this.data = new long[Chunk.TOTAL_SIZE * bits / Long.SIZE];
+	}
+
+	private PaletteChunkStorage(PaletteChunkStorage other) {
+		System.arraycopy(other.palette, 0, this.palette, 0, other.paletteSize);
+		this.paletteSize = other.paletteSize;
+		this.data = other.data.clone();
+	}
+
+	@Override
+	public byte get(int idx) {
+		return palette[readIndex(data, idx)];
+	}
+
+	@Override
+	public ChunkStorage set(int idx, byte value) {
+		int p = indexOf(value);
+		if (p == -1) {
+			int bits = bits(data);
+			if (paletteSize == (1 << bits)) {
+				if (bits == MAX_BITS) {
+					var dense = new DenseChunkStorage(toArray());
+					dense.set(idx, value);
+					return dense;
+				}
+				widen();
+			}
+			p = paletteSize;
+			palette[paletteSize++] = value;
+		}
+		writeIndex(data, idx, p);
+		return this;
+	}
+
+	@Override
+	public ChunkStorage copy() {
+		return new PaletteChunkStorage(this);
+	}
+
+	@Override
+	public void copyTo(byte[] dest) {
+		long[] data = this.data;
+		for (int i = 0; i < Chunk.TOTAL_SIZE; i++) {
+			dest[i] = palette[readIndex(data, i)];
+		}
+	}
+
+	@Override
+	public int getSizeInBytes() {
+		return data.length * Long.BYTES + palette.length;
+	}
+
+	private int indexOf(byte value) {
+		for (int i = 0; i < paletteSize; i++) {
+			if (palette[i] == value) return i;
+		}
+		return -1;
+	}
+
+	private static int bits(long[] data) {
+		return data.length * Long.SIZE / Chunk.TOTAL_SIZE;
+	}
+
+	private static int readIndex(long[] data, int idx) {
+		int bits = bits(data);
+		int bitIdx = idx * bits;
+		return (int) (data[bitIdx >>> 6] >>> (bitIdx & 63)) & ((1 << bits) - 1);
+	}
+
+	private static void writeIndex(long[] data, int idx, int p) {
+		int bits = bits(data);
+		int bitIdx = idx * bits;
+		int word = bitIdx >>> 6;
+		int shift = bitIdx & 63;
+		long mask = ((1L << bits) - 1) << shift;
+		data[word] = (data[word] & ~mask) | ((long) p << shift);
+	}
+
+	/**
+	 * Doubles the number of bits used for each index, so that the palette can
+	 * hold more values.
+	 */
+	private void widen() {
+		long[] wider = new long[data.length * 2];
+		for (int i = 0; i < Chunk.TOTAL_SIZE; i++) {
+			writeIndex(wider, i, readIndex(data, i));
+		}
+		data = wider;
+	}
+}
@@ -0,0 +1,72 @@
+package nl.andrewl.aos_core.model.world;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressed hash set of positions packed with
+ * {@link ChunkMap#key(int, int, int)}, which avoids boxing every position
+ * like a {@code HashSet<Long>} would. Packed positions are never negative, so
+ * -1 marks empty slots.
+ */
+final class PositionSet {
+	private static final long EMPTY = -1;
+
+	private long[] slots;
+	private int size;
+
+	PositionSet(int expectedSize) {
+		slots = new long[Math.max(16, Integer.highestOneBit(expectedSize * 2 - 1) << 1)];
+		Arrays.fill(slots, EMPTY);
+	}
+
+	/**
+	 * Adds a position.
+	 * @param position The packed position.
+	 * @return True if it wasn't in the set yet.
+	 */
+	boolean add(long position) {
+		if (size * 2 >= slots.length) grow();
+		int mask = slots.length - 1;
+		for (int i = slot(position, mask); ; i = (i + 1) & mask) {
+			if (slots[i] == EMPTY) {
+				slots[i] = position;
+				size++;
+				return true;
+			}
+			if (slots[i] == position) return false;
+		}
+	}
+
+	boolean contains(long position) {
+		int mask = slots.length - 1;
+		for (int i = slot(position, mask); ; i = (i + 1) & mask) {
+			if (slots[i] == EMPTY) return false;
+			if (slots[i] == position) return true;
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		if (size == 0) return;
+		Arrays.fill(slots, EMPTY);
+		size = 0;
+	}
+
+	private void grow() {
+		long[] old = slots;
+		slots = new long[old.length * 2];
+		Arrays.fill(slots, EMPTY);
+		size = 0;
+		for (long position : old) {
+			if (position != EMPTY) add(position);
+		}
+	}
+
+	private static int slot(long position, int mask) {
+		long h = position * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+}
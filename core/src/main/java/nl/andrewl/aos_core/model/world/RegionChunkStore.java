@@ -0,0 +1,211 @@
+package nl.andrewl.aos_core.model.world;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * A directory of memory-mapped region files, which hold the blocks of chunks
+ * that aren't kept in memory. Each region file covers a cube of
+ * {@link RegionChunkStore#REGION_SIZE} chunks per axis, and is laid out as:
+ * <ol>
+ *     <li>A header page, with the {@link RegionChunkStore#MAGIC} number, a
+ *     version, and one byte per slot that's 1 if the slot holds a chunk.</li>
+ *     <li>One page-aligned slot of {@link Chunk#TOTAL_SIZE} raw blocks for
+ *     each chunk in the region.</li>
+ * </ol>
+ * Since each chunk has a fixed slot, it can be written back in place, and
+ * the operating system only keeps the pages that are used in memory. Slots
+ * that were never written are left as holes in the file, on file systems
+ * that support it.
+ * <p>
+ *     A store isn't thread-safe.
+ * </p>
+ */
+final class RegionChunkStore {
+	/**
+	 * The magic number at the start of each region file, which is "AOSR" in
+	 * ASCII.
+	 */
+	static final int MAGIC = 0x414F5352;
+	static final int VERSION = 1;
+	static final int REGION_BITS = 3;
+	static final int REGION_SIZE = 1 << REGION_BITS;
+	static final int REGION_MASK = REGION_SIZE - 1;
+	static final int SLOTS = REGION_SIZE * REGION_SIZE * REGION_SIZE;
+
+	private static final int HEADER_SIZE = Chunk.TOTAL_SIZE;
+	private static final int PRESENCE_OFFSET = 2 * Integer.BYTES;
+	private static final long FILE_SIZE = HEADER_SIZE + (long) SLOTS * Chunk.TOTAL_SIZE;
+	private static final Pattern FILE_NAME = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\.(-?\\d+)\\.region");
+
+	private final Path directory;
+	private final Map<Long, MappedByteBuffer> regions = new HashMap<>();
+	private final byte[] scratch = new byte[Chunk.TOTAL_SIZE];
+	private int chunkCount;
+
+	/**
+	 * Opens a store, and maps all of its existing region files. Only their
+	 * headers are read, so this is fast even for very large worlds.
+	 * @param directory The directory to keep region files in. It's created
+	 *                  if it doesn't exist.
+	 * @throws IOException If a region file can't be opened, or is invalid.
+	 */
+	RegionChunkStore(Path directory) throws IOException {
+		this.directory = directory;
+		Files.createDirectories(directory);
+		try (var files = Files.list(directory)) {
+			for (var file : files.toList()) {
+				var matcher = FILE_NAME.matcher(file.getFileName().toString());
+				if (!matcher.matches()) continue;
+				long regionKey = ChunkMap.key(
+						Integer.parseInt(matcher.group(1)),
+						Integer.parseInt(matcher.group(2)),
+						Integer.parseInt(matcher.group(3))
+				);
+				MappedByteBuffer region = map(file);
+				if (region.getInt(0) != MAGIC || region.getInt(Integer.BYTES) != VERSION) {
+					throw new IOException("Invalid region file " + file);
+				}
+				for (int slot = 0; slot < SLOTS; slot++) {
+					if (region.get(PRESENCE_OFFSET + slot) != 0) chunkCount++;
+				}
+				regions.put(regionKey, region);
+			}
+		}
+	}
+
+	Path getDirectory() {
+		return directory;
+	}
+
+	int getChunkCount() {
+		return chunkCount;
+	}
+
+	boolean contains(long chunkKey) {
+		MappedByteBuffer region = regions.get(regionKey(chunkKey));
+		return region != null && region.get(PRESENCE_OFFSET + slot(chunkKey)) != 0;
+	}
+
+	/**
+	 * Reads a chunk from its slot.
+	 * @param chunkKey The chunk's key.
+	 * @return A new chunk with the stored blocks, or null if there's no chunk
+	 * stored with that key.
+	 */
+	Chunk load(long chunkKey) {
+		if (!contains(chunkKey)) return null;
+		MappedByteBuffer region = regions.get(regionKey(chunkKey));
+		region.get(slotOffset(chunkKey), scratch, 0, Chunk.TOTAL_SIZE);
+		return new Chunk(ChunkMap.keyX(chunkKey), ChunkMap.keyY(chunkKey), ChunkMap.keyZ(chunkKey), scratch);
+	}
+
+	/**
+	 * Writes a chunk's blocks to its slot, creating its region file if needed.
+	 * @param chunk The chunk to write.
+	 * @throws IOException If the region file can't be created.
+	 */
+	void save(Chunk chunk) throws IOException {
+		long chunkKey = chunk.getKey();
+		long regionKey = regionKey(chunkKey);
+		MappedByteBuffer region = regions.get(regionKey);
+		if (region == null) {
+			region = map(directory.resolve(String.format(
+					"r.%d.%d.%d.region",
+					ChunkMap.keyX(regionKey),
+					ChunkMap.keyY(regionKey),
+					ChunkMap.keyZ(regionKey)
+			)));
+			region.putInt(0, MAGIC);
+			region.putInt(Integer.BYTES, VERSION);
+			regions.put(regionKey, region);
+		}
+		chunk.copyBlocks(scratch);
+		region.put(slotOffset(chunkKey), scratch, 0, Chunk.TOTAL_SIZE);
+		int presence = PRESENCE_OFFSET + slot(chunkKey);
+		if (region.get(presence) == 0) {
+			region.put(presence, (byte) 1);
+			chunkCount++;
+		}
+	}
+
+	void remove(long chunkKey) {
+		if (!contains(chunkKey)) return;
+		regions.get(regionKey(chunkKey)).put(PRESENCE_OFFSET + slot(chunkKey), (byte) 0);
+		chunkCount--;
+	}
+
+	/**
+	 * @return The keys of all stored chunks.
+	 */
+	long[] getChunkKeys() {
+		long[] keys = new long[chunkCount];
+		int i = 0;
+		for (var entry : regions.entrySet()) {
+			long regionKey = entry.getKey();
+			MappedByteBuffer region = entry.getValue();
+			int rx = ChunkMap.keyX(regionKey) << REGION_BITS;
+			int ry = ChunkMap.keyY(regionKey) << REGION_BITS;
+			int rz = ChunkMap.keyZ(regionKey) << REGION_BITS;
+			for (int slot = 0; slot < SLOTS; slot++) {
+				if (region.get(PRESENCE_OFFSET + slot) == 0) continue;
+				keys[i++] = ChunkMap.key(
+						rx + (slot >> (2 * REGION_BITS)),
+						ry + ((slot >> REGION_BITS) & REGION_MASK),
+						rz + (slot & REGION_MASK)
+				);
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Forces all changes to be written to disk.
+	 */
+	void flush() {
+		regions.values().forEach(MappedByteBuffer::force);
+	}
+
+	/**
+	 * Flushes all changes, and forgets about the mapped region files. The
+	 * mappings themselves are released once they're garbage-collected.
+	 */
+	void close() {
+		flush();
+		regions.clear();
+		chunkCount = 0;
+	}
+
+	private static MappedByteBuffer map(Path file) throws IOException {
+		// The mapping stays valid after the channel is closed.
+		try (var channel = FileChannel.open(file, CREATE, READ, WRITE)) {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+		}
+	}
+
+	private static long regionKey(long chunkKey) {
+		return ChunkMap.key(
+				ChunkMap.keyX(chunkKey) >> REGION_BITS,
+				ChunkMap.keyY(chunkKey) >> REGION_BITS,
+				ChunkMap.keyZ(chunkKey) >> REGION_BITS
+		);
+	}
+
+	private static int slot(long chunkKey) {
+		return ((ChunkMap.keyX(chunkKey) & REGION_MASK) << (2 * REGION_BITS)) |
+				((ChunkMap.keyY(chunkKey) & REGION_MASK) << REGION_BITS) |
+				(ChunkMap.keyZ(chunkKey) & REGION_MASK);
+	}
+
+	private static int slotOffset(long chunkKey) {
+		return HEADER_SIZE + slot(chunkKey) * Chunk.TOTAL_SIZE;
+	}
+}
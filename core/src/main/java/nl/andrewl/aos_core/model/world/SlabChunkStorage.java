@@ -0,0 +1,79 @@
+package nl.andrewl.aos_core.model.world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Storage for a chunk that keeps one byte per block in a slot of an off-heap
+ * slab, allocated by a {@link ChunkSlabAllocator}. The slot must be released
+ * once the chunk is no longer part of a world.
+ */
+final class SlabChunkStorage implements ChunkStorage {
+	private final ChunkSlabAllocator allocator;
+	private final int slot;
+	private final ByteBuffer buffer;
+
+	/**
+	 * Allocates a new slot, and fills it with the values of the given storage.
+	 * @param allocator The allocator to get a slot from.
+	 * @param source The storage to copy values from.
+	 */
+	SlabChunkStorage(ChunkSlabAllocator allocator, ChunkStorage source) {
+		this.allocator = allocator;
+		this.slot = allocator.allocate();
+		this.buffer = allocator.slice(slot);
+		for (int i = 0; i < Chunk.TOTAL_SIZE; i++) {
+			buffer.put(i, source.get(i));
+		}
+	}
+
+	@Override
+	public byte get(int idx) {
+		return buffer.get(idx);
+	}
+
+	@Override
+	public ChunkStorage set(int idx, byte value) {
+		buffer.put(idx, value);
+		return this;
+	}
+
+	@Override
+	public ChunkStorage fill(int from, int to, byte value) {
+		for (int i = from; i < to; i++) {
+			buffer.put(i, value);
+		}
+		return this;
+	}
+
+	/**
+	 * Copies this storage back onto the heap, so that copies don't hold on to
+	 * a slot that nobody will release.
+	 * @return A heap-based copy of this storage.
+	 */
+	@Override
+	public ChunkStorage copy() {
+		return ChunkStorage.of(toArray());
+	}
+
+	@Override
+	public void copyTo(byte[] dest) {
+		buffer.get(0, dest, 0, Chunk.TOTAL_SIZE);
+	}
+
+	@Override
+	public void writeTo(WritableByteChannel channel, byte[] buffer) throws IOException {
+		ChunkStorage.writeFully(channel, this.buffer.duplicate());
+	}
+
+	@Override
+	public void release() {
+		allocator.free(slot);
+	}
+
+	@Override
+	public int getSizeInBytes() {
+		return Chunk.TOTAL_SIZE;
+	}
+}
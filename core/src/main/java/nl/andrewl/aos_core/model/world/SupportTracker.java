@@ -0,0 +1,276 @@
+package nl.andrewl.aos_core.model.world;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Finds clusters of blocks that are left floating when blocks are removed,
+ * and removes them.
+ * <p>
+ *     Removed blocks are queued, and checked on the next call to
+ *     {@link SupportTracker#tick()}. Each solid neighbor of a removed block
+ *     is first checked for a solid column below it. If it doesn't have one,
+ *     a depth-first search looks for ground, trying to go down first,
+ *     and stops as soon as it finds the bottom of the world, a block that's
+ *     already known to be grounded, or an anchored chunk. A chunk is anchored
+ *     if it and every chunk below it, down to the bottom of the world, are
+ *     completely solid. This is summarized once per chunk on each tick, so
+ *     searches through solid ground are short. If a search runs out of
+ *     blocks, everything that it visited is floating.
+ * </p>
+ * <p>
+ *     The work of each tick is bounded: clusters larger than the maximum
+ *     cluster size are assumed to be supported, and once a tick has visited
+ *     its maximum number of blocks, the rest of the queue waits for the next
+ *     tick. A tracker is used by the thread that changes its world.
+ * </p>
+ */
+public final class SupportTracker {
+	private final World world;
+	private final int maxClusterSize;
+	private final int maxVisitsPerTick;
+
+	/**
+	 * Packed positions of blocks that might have lost their support.
+	 */
+	private long[] pending = new long[64];
+	private int pendingCount;
+
+	// These are only valid during a single tick, since removed blocks may change them.
+	private final PositionSet grounded = new PositionSet(1024);
+	private final PositionSet floating = new PositionSet(256);
+	private final PositionSet anchoredChunks = new PositionSet(64);
+	private final PositionSet looseChunks = new PositionSet(64);
+	private long[] floatingBlocks = new long[256];
+	private int floatingCount;
+
+	// The state of the current search.
+	private final PositionSet visited = new PositionSet(1024);
+	private long[] visitedBlocks = new long[1024];
+	private int visitedCount;
+	private long[] stack = new long[1024];
+	private int stackSize;
+
+	/**
+	 * Creates a tracker.
+	 * @param world The world to track.
+	 * @param maxClusterSize The largest cluster of blocks that can be removed.
+	 *                       Larger clusters are assumed to be supported.
+	 * @param maxVisitsPerTick The number of blocks to visit in each tick,
+	 *                         after which no more searches are started.
+	 */
+	public SupportTracker(World world, int maxClusterSize, int maxVisitsPerTick) {
+		this.world = world;
+		this.maxClusterSize = maxClusterSize;
+		this.maxVisitsPerTick = maxVisitsPerTick;
+	}
+
+	/**
+	 * Queues the neighbors of a block that was removed, to be checked for
+	 * support on the next tick.
+	 * @param x The block's x coordinate.
+	 * @param y The block's y coordinate.
+	 * @param z The block's z coordinate.
+	 */
+	public void blockRemoved(int x, int y, int z) {
+		if (pendingCount + 6 > pending.length) pending = Arrays.copyOf(pending, pending.length * 2);
+		pending[pendingCount++] = ChunkMap.key(x, y + 1, z);
+		pending[pendingCount++] = ChunkMap.key(x + 1, y, z);
+		pending[pendingCount++] = ChunkMap.key(x - 1, y, z);
+		pending[pendingCount++] = ChunkMap.key(x, y, z + 1);
+		pending[pendingCount++] = ChunkMap.key(x, y, z - 1);
+		pending[pendingCount++] = ChunkMap.key(x, y - 1, z);
+	}
+
+	/**
+	 * Queues the blocks around a region whose blocks were all removed, like
+	 * by filling it with air, to be checked for support on the next tick.
+	 * Only the blocks just outside the region are queued, since those inside
+	 * it are all gone.
+	 * @param region The region.
+	 */
+	public void regionRemoved(BlockRegion region) {
+		for (int x = region.minX() - 1; x <= region.maxX() + 1; x++) {
+			for (int y = region.minY() - 1; y <= region.maxY() + 1; y++) {
+				for (int z = region.minZ() - 1; z <= region.maxZ() + 1; z++) {
+					if (inRegion(region, x, y, z)) continue;
+					if (
+							inRegion(region, x, y - 1, z) || inRegion(region, x, y + 1, z) ||
+							inRegion(region, x - 1, y, z) || inRegion(region, x + 1, y, z) ||
+							inRegion(region, x, y, z - 1) || inRegion(region, x, y, z + 1)
+					) {
+						if (pendingCount == pending.length) pending = Arrays.copyOf(pending, pending.length * 2);
+						pending[pendingCount++] = ChunkMap.key(x, y, z);
+					}
+				}
+			}
+		}
+	}
+
+	private static boolean inRegion(BlockRegion region, int x, int y, int z) {
+		return x >= region.minX() && x <= region.maxX() &&
+				y >= region.minY() && y <= region.maxY() &&
+				z >= region.minZ() && z <= region.maxZ() &&
+				region.contains(x, y, z);
+	}
+
+	/**
+	 * @return The number of blocks that are waiting to be checked.
+	 */
+	public int getPendingCount() {
+		return pendingCount;
+	}
+
+	/**
+	 * Forgets all queued blocks, like when the world is reset.
+	 */
+	public void clear() {
+		pendingCount = 0;
+	}
+
+	/**
+	 * Checks queued blocks for support, and removes all floating clusters
+	 * that are found, in one edit.
+	 * @return The blocks that were removed, or null if none were.
+	 */
+	public BlockChangeSet tick() {
+		if (pendingCount == 0) return null;
+		grounded.clear();
+		floating.clear();
+		anchoredChunks.clear();
+		looseChunks.clear();
+		floatingCount = 0;
+		int floorY = world.getMinY();
+		int visits = 0;
+		int checked = 0;
+		while (checked < pendingCount && visits < maxVisitsPerTick) {
+			long position = pending[checked++];
+			if (grounded.contains(position) || floating.contains(position)) continue;
+			if (world.getBlockAt(ChunkMap.keyX(position), ChunkMap.keyY(position), ChunkMap.keyZ(position)) == 0) continue;
+			visits += search(position, floorY);
+		}
+		System.arraycopy(pending, checked, pending, 0, pendingCount - checked);
+		pendingCount -= checked;
+		if (floatingCount == 0) return null;
+		return world.fill(floatingRegion(), (byte) 0);
+	}
+
+	/**
+	 * Searches the cluster of blocks that a block belongs to, until ground is
+	 * found. Blocks are added to the grounded or floating sets afterwards.
+	 * @param start The packed position of the block to start from.
+	 * @param floorY The y coordinate of the bottom of the world.
+	 * @return The number of blocks that were visited.
+	 */
+	private int search(long start, int floorY) {
+		// Most blocks are standing on a solid column, which is much quicker to check first.
+		int drop = dropToGround(ChunkMap.keyX(start), ChunkMap.keyY(start), ChunkMap.keyZ(start), floorY);
+		if (drop > 0) {
+			grounded.add(start);
+			return drop;
+		}
+		visited.clear();
+		visitedCount = 0;
+		stackSize = 0;
+		visit(start);
+		boolean supported = false;
+		while (stackSize > 0) {
+			long position = stack[--stackSize];
+			int x = ChunkMap.keyX(position);
+			int y = ChunkMap.keyY(position);
+			int z = ChunkMap.keyZ(position);
+			if (
+					y <= floorY ||
+					visitedCount > maxClusterSize ||
+					grounded.contains(position) ||
+					isAnchored(x >> Chunk.SIZE_BITS, y >> Chunk.SIZE_BITS, z >> Chunk.SIZE_BITS, floorY)
+			) {
+				supported = true;
+				break;
+			}
+			// The block below is pushed last, so that it's searched first.
+			visitIfSolid(x, y + 1, z);
+			visitIfSolid(x + 1, y, z);
+			visitIfSolid(x - 1, y, z);
+			visitIfSolid(x, y, z + 1);
+			visitIfSolid(x, y, z - 1);
+			visitIfSolid(x, y - 1, z);
+		}
+		for (int i = 0; i < visitedCount; i++) {
+			if (supported) {
+				grounded.add(visitedBlocks[i]);
+			} else {
+				floating.add(visitedBlocks[i]);
+				if (floatingCount == floatingBlocks.length) floatingBlocks = Arrays.copyOf(floatingBlocks, floatingCount * 2);
+				floatingBlocks[floatingCount++] = visitedBlocks[i];
+			}
+		}
+		return visitedCount;
+	}
+
+	/**
+	 * Checks if a block stands on a solid column that reaches the ground.
+	 * @return The number of blocks that were checked, or 0 if the column
+	 * doesn't reach the ground.
+	 */
+	private int dropToGround(int x, int y, int z, int floorY) {
+		for (int by = y; world.getBlockAt(x, by, z) != 0; by--) {
+			if (by <= floorY || isAnchored(x >> Chunk.SIZE_BITS, by >> Chunk.SIZE_BITS, z >> Chunk.SIZE_BITS, floorY)) {
+				return y - by + 1;
+			}
+		}
+		return 0;
+	}
+
+	private void visitIfSolid(int x, int y, int z) {
+		if (world.getBlockAt(x, y, z) != 0) visit(ChunkMap.key(x, y, z));
+	}
+
+	private void visit(long position) {
+		if (!visited.add(position)) return;
+		if (visitedCount == visitedBlocks.length) visitedBlocks = Arrays.copyOf(visitedBlocks, visitedCount * 2);
+		visitedBlocks[visitedCount++] = position;
+		if (stackSize == stack.length) stack = Arrays.copyOf(stack, stackSize * 2);
+		stack[stackSize++] = position;
+	}
+
+	/**
+	 * Checks if a chunk is anchored, meaning that it and every chunk below it
+	 * are completely solid, down to the bottom of the world.
+	 */
+	private boolean isAnchored(int cx, int cy, int cz, int floorY) {
+		long key = ChunkMap.key(cx, cy, cz);
+		if (anchoredChunks.contains(key)) return true;
+		if (looseChunks.contains(key)) return false;
+		Chunk chunk = world.getChunkAt(key);
+		boolean anchored = chunk != null &&
+				chunk.getNonAirCount() == Chunk.TOTAL_SIZE &&
+				(cy * Chunk.SIZE <= floorY || isAnchored(cx, cy - 1, cz, floorY));
+		(anchored ? anchoredChunks : looseChunks).add(key);
+		return anchored;
+	}
+
+	/**
+	 * Builds a region that contains all floating blocks that were found.
+	 */
+	private BlockRegion floatingRegion() {
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+		for (int i = 0; i < floatingCount; i++) {
+			long p = floatingBlocks[i];
+			minX = Math.min(minX, ChunkMap.keyX(p));
+			minY = Math.min(minY, ChunkMap.keyY(p));
+			minZ = Math.min(minZ, ChunkMap.keyZ(p));
+			maxX = Math.max(maxX, ChunkMap.keyX(p));
+			maxY = Math.max(maxY, ChunkMap.keyY(p));
+			maxZ = Math.max(maxZ, ChunkMap.keyZ(p));
+		}
+		int sizeX = maxX - minX + 1, sizeY = maxY - minY + 1, sizeZ = maxZ - minZ + 1;
+		BitSet bits = new BitSet(sizeX * sizeY * sizeZ);
+		for (int i = 0; i < floatingCount; i++) {
+			long p = floatingBlocks[i];
+			bits.set(((ChunkMap.keyX(p) - minX) * sizeY + (ChunkMap.keyY(p) - minY)) * sizeZ + (ChunkMap.keyZ(p) - minZ));
+		}
+		return BlockRegion.mask(minX, minY, minZ, sizeX, sizeY, sizeZ, bits);
+	}
+}
@@ -0,0 +1,335 @@
+package nl.andrewl.aos_core.model.world;
+
+import org.joml.Vector3f;
+
+import java.awt.Color;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Generates square worlds of procedural terrain from a seed, with hills,
+ * mountains, a few biomes, and trees and boulders on top.
+ * <p>
+ *     Everything about the terrain is a pure function of the seed and a
+ *     block's position, so each column of chunks is generated on its own, in
+ *     parallel on the common fork-join pool. A column's blocks are written
+ *     straight into arrays that its chunks are then made from. Structures
+ *     that stick out of their column are generated by every column that they
+ *     touch.
+ * </p>
+ */
+public final class TerrainGenerator {
+	/**
+	 * The number of chunks that each column of the world is tall.
+	 */
+	public static final int CHUNK_HEIGHT = 4;
+
+	/**
+	 * The largest world size, in blocks along each axis.
+	 */
+	public static final int MAX_SIZE = 4096;
+
+	private static final int MIN_TERRAIN_HEIGHT = 4;
+	private static final int MAX_TERRAIN_HEIGHT = 52;
+	private static final int SAND_HEIGHT = 19;
+	private static final int ROCK_HEIGHT = 36;
+	private static final int SNOW_HEIGHT = 44;
+
+	/**
+	 * Structures are placed at most one per cell of this size, and never
+	 * reach further than {@link TerrainGenerator#STRUCTURE_RADIUS} from their
+	 * position.
+	 */
+	private static final int STRUCTURE_CELL = 8;
+	private static final int STRUCTURE_RADIUS = 2;
+
+	/**
+	 * Spawn points are this far in from each corner of the world, and
+	 * structures are kept away from them.
+	 */
+	private static final int SPAWN_INSET = 8;
+	private static final int SPAWN_CLEARANCE = 6;
+
+	private static final byte STONE = 1;
+	private static final byte DARK_STONE = 2;
+	private static final byte DIRT = 3;
+	private static final byte SAND = 4;
+	private static final byte DARK_SAND = 5;
+	private static final byte GRASS = 6;
+	private static final byte DARK_GRASS = 7;
+	private static final byte FOREST_GRASS = 8;
+	private static final byte SNOW = 9;
+	private static final byte WOOD = 10;
+	private static final byte LEAVES = 11;
+	private static final byte DARK_LEAVES = 12;
+
+	private enum Biome {SAND, PLAINS, FOREST, ROCK, SNOW}
+
+	private static final double[] GRADIENTS_X = {1, -1, 0, 0, 0.7071, -0.7071, 0.7071, -0.7071};
+	private static final double[] GRADIENTS_Z = {0, 0, 1, -1, 0.7071, 0.7071, -0.7071, -0.7071};
+
+	private final long seed;
+	private final int size;
+	private final int chunkSize;
+
+	/**
+	 * Creates a generator.
+	 * @param seed The seed. The same seed and size always give the same world.
+	 * @param size The width and length of the world, in blocks. It's rounded
+	 *             up to a whole number of chunks.
+	 */
+	public TerrainGenerator(long seed, int size) {
+		if (size < 1 || size > MAX_SIZE) {
+			throw new IllegalArgumentException("World size must be between 1 and " + MAX_SIZE + ".");
+		}
+		this.seed = seed;
+		this.chunkSize = (size + Chunk.SIZE - 1) / Chunk.SIZE;
+		this.size = chunkSize * Chunk.SIZE;
+	}
+
+	/**
+	 * @return The width and length of generated worlds, in blocks.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Generates the world.
+	 * @return The world.
+	 */
+	public World generate() {
+		List<Chunk[]> columns = IntStream.range(0, chunkSize * chunkSize).parallel()
+				.mapToObj(i -> generateColumn(i / chunkSize, i % chunkSize))
+				.toList();
+		World world = new World(palette());
+		for (var column : columns) {
+			for (var chunk : column) world.addChunk(chunk);
+		}
+		float inset = SPAWN_INSET + 0.5f;
+		float far = size - inset;
+		world.setSpawnPoint("A", spawnPoint(inset, inset));
+		world.setSpawnPoint("B", spawnPoint(far, far));
+		world.setSpawnPoint("C", spawnPoint(far, inset));
+		world.setSpawnPoint("D", spawnPoint(inset, far));
+		return world;
+	}
+
+	/**
+	 * Gets the height of the terrain at a column, not counting structures.
+	 * @param x The x coordinate.
+	 * @param z The z coordinate.
+	 * @return The number of blocks in the column, so the top block is one
+	 * below this.
+	 */
+	public int getTerrainHeight(int x, int z) {
+		double continent = fbm(seed, x / 256.0, z / 256.0, 4);
+		double hills = fbm(seed + 1, x / 48.0, z / 48.0, 3);
+		double ridges = 1 - Math.abs(fbm(seed + 2, x / 128.0, z / 128.0, 4));
+		double mountains = Math.max(0, ridges - 0.6) * 90 * Math.max(0, continent + 0.3);
+		double height = 22 + 10 * continent + 5 * hills + mountains;
+		return (int) Math.max(MIN_TERRAIN_HEIGHT, Math.min(MAX_TERRAIN_HEIGHT, height));
+	}
+
+	private Biome biomeAt(int x, int z, int height) {
+		if (height <= SAND_HEIGHT) return Biome.SAND;
+		if (height >= SNOW_HEIGHT) return Biome.SNOW;
+		if (height >= ROCK_HEIGHT) return Biome.ROCK;
+		return fbm(seed + 3, x / 96.0, z / 96.0, 2) > 0.1 ? Biome.FOREST : Biome.PLAINS;
+	}
+
+	private Vector3f spawnPoint(float x, float z) {
+		return new Vector3f(x, getTerrainHeight((int) x, (int) z), z);
+	}
+
+	private Chunk[] generateColumn(int cx, int cz) {
+		byte[][] blocks = new byte[CHUNK_HEIGHT][Chunk.TOTAL_SIZE];
+		int bx = cx * Chunk.SIZE;
+		int bz = cz * Chunk.SIZE;
+		for (int lx = 0; lx < Chunk.SIZE; lx++) {
+			for (int lz = 0; lz < Chunk.SIZE; lz++) {
+				generateTerrain(blocks, lx, lz, bx + lx, bz + lz);
+			}
+		}
+		int minCellX = Math.floorDiv(bx - STRUCTURE_RADIUS, STRUCTURE_CELL);
+		int maxCellX = Math.floorDiv(bx + Chunk.SIZE - 1 + STRUCTURE_RADIUS, STRUCTURE_CELL);
+		int minCellZ = Math.floorDiv(bz - STRUCTURE_RADIUS, STRUCTURE_CELL);
+		int maxCellZ = Math.floorDiv(bz + Chunk.SIZE - 1 + STRUCTURE_RADIUS, STRUCTURE_CELL);
+		for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+			for (int cellZ = minCellZ; cellZ <= maxCellZ; cellZ++) {
+				generateStructure(blocks, bx, bz, cellX, cellZ);
+			}
+		}
+		Chunk[] chunks = new Chunk[CHUNK_HEIGHT];
+		for (int cy = 0; cy < CHUNK_HEIGHT; cy++) {
+			chunks[cy] = new Chunk(cx, cy, cz, blocks[cy]);
+		}
+		return chunks;
+	}
+
+	private void generateTerrain(byte[][] blocks, int lx, int lz, int x, int z) {
+		int height = getTerrainHeight(x, z);
+		Biome biome = biomeAt(x, z, height);
+		// Each bit of the column's hash picks between two shades for one block.
+		long shades = hash(seed, x, z);
+		for (int y = 0; y < height; y++) {
+			boolean dark = ((shades >>> y) & 1) == 1;
+			byte block;
+			if (y == height - 1) {
+				block = switch (biome) {
+					case SAND -> dark ? DARK_SAND : SAND;
+					case PLAINS -> dark ? DARK_GRASS : GRASS;
+					case FOREST -> FOREST_GRASS;
+					case ROCK -> dark ? DARK_STONE : STONE;
+					case SNOW -> SNOW;
+				};
+			} else if (y >= height - 4 && biome != Biome.ROCK && biome != Biome.SNOW) {
+				block = biome == Biome.SAND ? SAND : DIRT;
+			} else {
+				block = dark ? DARK_STONE : STONE;
+			}
+			blocks[y >> Chunk.SIZE_BITS][index(lx, y & Chunk.LOCAL_MASK, lz)] = block;
+		}
+	}
+
+	private void generateStructure(byte[][] blocks, int bx, int bz, int cellX, int cellZ) {
+		long h = hash(seed + 4, cellX, cellZ);
+		int x = cellX * STRUCTURE_CELL + (int) ((h >>> 8) & (STRUCTURE_CELL - 1));
+		int z = cellZ * STRUCTURE_CELL + (int) ((h >>> 16) & (STRUCTURE_CELL - 1));
+		if (x < 0 || x >= size || z < 0 || z >= size || isNearSpawn(x, z)) return;
+		int chance = (int) (h & 0xFF);
+		int height = getTerrainHeight(x, z);
+		switch (biomeAt(x, z, height)) {
+			case FOREST -> {
+				if (chance < 180) tree(blocks, bx, bz, x, height, z, 4 + (int) ((h >>> 24) & 3));
+			}
+			case PLAINS -> {
+				if (chance < 40) {
+					tree(blocks, bx, bz, x, height, z, 4 + (int) ((h >>> 24) & 1));
+				} else if (chance < 64) {
+					boulder(blocks, bx, bz, x, height, z);
+				}
+			}
+			case ROCK -> {
+				if (chance < 80) boulder(blocks, bx, bz, x, height, z);
+			}
+			default -> {}
+		}
+	}
+
+	private boolean isNearSpawn(int x, int z) {
+		int dx = Math.min(Math.abs(x - SPAWN_INSET), Math.abs(size - SPAWN_INSET - 1 - x));
+		int dz = Math.min(Math.abs(z - SPAWN_INSET), Math.abs(size - SPAWN_INSET - 1 - z));
+		return dx <= SPAWN_CLEARANCE && dz <= SPAWN_CLEARANCE;
+	}
+
+	private void tree(byte[][] blocks, int bx, int bz, int x, int y, int z, int trunkHeight) {
+		int top = y + trunkHeight;
+		for (int dy = -2; dy <= 1; dy++) {
+			int radius = dy == 1 ? 1 : STRUCTURE_RADIUS;
+			for (int dx = -radius; dx <= radius; dx++) {
+				for (int dz = -radius; dz <= radius; dz++) {
+					if (Math.abs(dx) == radius && Math.abs(dz) == radius && radius > 1) continue;
+					set(blocks, bx, bz, x + dx, top + dy, z + dz, (dx + dy + dz & 1) == 0 ? LEAVES : DARK_LEAVES);
+				}
+			}
+		}
+		for (int ty = y; ty < top; ty++) set(blocks, bx, bz, x, ty, z, WOOD);
+	}
+
+	private void boulder(byte[][] blocks, int bx, int bz, int x, int y, int z) {
+		for (int dx = -STRUCTURE_RADIUS; dx <= STRUCTURE_RADIUS; dx++) {
+			for (int dy = -1; dy <= 1; dy++) {
+				for (int dz = -STRUCTURE_RADIUS; dz <= STRUCTURE_RADIUS; dz++) {
+					if (dx * dx + 2 * dy * dy + dz * dz > 5) continue;
+					set(blocks, bx, bz, x + dx, y + dy, z + dz, dy < 1 ? DARK_STONE : STONE);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets a block in a column, if it's in the column.
+	 */
+	private static void set(byte[][] blocks, int bx, int bz, int x, int y, int z, byte block) {
+		int lx = x - bx;
+		int lz = z - bz;
+		if (lx < 0 || lx >= Chunk.SIZE || lz < 0 || lz >= Chunk.SIZE || y < 0 || y >= CHUNK_HEIGHT * Chunk.SIZE) return;
+		blocks[y >> Chunk.SIZE_BITS][index(lx, y & Chunk.LOCAL_MASK, lz)] = block;
+	}
+
+	private static int index(int x, int y, int z) {
+		return x * Chunk.SIZE * Chunk.SIZE + y * Chunk.SIZE + z;
+	}
+
+	private static ColorPalette palette() {
+		ColorPalette palette = new ColorPalette();
+		palette.setColor(STONE, new Color(120, 120, 118));
+		palette.setColor(DARK_STONE, new Color(96, 96, 94));
+		palette.setColor(DIRT, new Color(105, 78, 46));
+		palette.setColor(SAND, new Color(214, 196, 140));
+		palette.setColor(DARK_SAND, new Color(196, 178, 122));
+		palette.setColor(GRASS, new Color(86, 140, 54));
+		palette.setColor(DARK_GRASS, new Color(74, 124, 46));
+		palette.setColor(FOREST_GRASS, new Color(46, 96, 36));
+		palette.setColor(SNOW, new Color(240, 244, 248));
+		palette.setColor(WOOD, new Color(92, 64, 38));
+		palette.setColor(LEAVES, new Color(40, 110, 40));
+		palette.setColor(DARK_LEAVES, new Color(30, 86, 32));
+		return palette;
+	}
+
+	/**
+	 * Fractal noise, from a few octaves of gradient noise.
+	 * @return A value that's roughly between -1 and 1.
+	 */
+	private static double fbm(long seed, double x, double z, int octaves) {
+		double sum = 0;
+		double amplitude = 1;
+		double total = 0;
+		for (int i = 0; i < octaves; i++) {
+			sum += amplitude * noise(seed + i, x, z);
+			total += amplitude;
+			x *= 2;
+			z *= 2;
+			amplitude /= 2;
+		}
+		return sum / total;
+	}
+
+	/**
+	 * 2D gradient noise, with a pseudorandom gradient at each integer point.
+	 * @return A value that's roughly between -1 and 1.
+	 */
+	private static double noise(long seed, double x, double z) {
+		int x0 = (int) Math.floor(x);
+		int z0 = (int) Math.floor(z);
+		double fx = x - x0;
+		double fz = z - z0;
+		double u = fade(fx);
+		double v = fade(fz);
+		double n00 = gradient(seed, x0, z0, fx, fz);
+		double n10 = gradient(seed, x0 + 1, z0, fx - 1, fz);
+		double n01 = gradient(seed, x0, z0 + 1, fx, fz - 1);
+		double n11 = gradient(seed, x0 + 1, z0 + 1, fx - 1, fz - 1);
+		double nx0 = n00 + u * (n10 - n00);
+		double nx1 = n01 + u * (n11 - n01);
+		return 1.4 * (nx0 + v * (nx1 - nx0));
+	}
+
+	private static double gradient(long seed, int x, int z, double dx, double dz) {
+		int i = (int) (hash(seed, x, z) & 7);
+		return GRADIENTS_X[i] * dx + GRADIENTS_Z[i] * dz;
+	}
+
+	private static double fade(double t) {
+		return t * t * t * (t * (t * 6 - 15) + 10);
+	}
+
+	private static long hash(long seed, int x, int z) {
+		long h = seed ^ (x * 0x9E3779B97F4A7C15L) ^ (z * 0xC2B2AE3D27D4EB4FL);
+		h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+		h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+		return h ^ (h >>> 31);
+	}
+}
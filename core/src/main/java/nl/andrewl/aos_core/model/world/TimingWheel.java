@@ -0,0 +1,121 @@
+package nl.andrewl.aos_core.model.world;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * A hierarchical timing wheel, which schedules long keys to expire at a
+ * certain time. Each level has {@link TimingWheel#SLOTS} slots, and each slot
+ * of a level spans as much time as the whole level below it. Keys are put in
+ * the lowest level whose span reaches their deadline, and moved down a level
+ * each time that the level below wraps around. So advancing the wheel only
+ * touches keys that expire, or that move down a level, no matter how many
+ * keys are scheduled.
+ * <p>
+ *     Keys can't be cancelled; whoever schedules them should ignore keys that
+ *     no longer matter when they expire.
+ * </p>
+ */
+final class TimingWheel {
+	private static final int SLOT_BITS = 6;
+	static final int SLOTS = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = SLOTS - 1;
+	private static final int LEVELS = 4;
+
+	private final long tickMillis;
+	private long currentTick;
+	private int size;
+
+	// The keys and deadline ticks in each slot, indexed by level * SLOTS + slot.
+	private final long[][] keys = new long[LEVELS * SLOTS][];
+	private final long[][] deadlines = new long[LEVELS * SLOTS][];
+	private final int[] counts = new int[LEVELS * SLOTS];
+
+	/**
+	 * Creates a timing wheel.
+	 * @param tickMillis The resolution of the wheel. Keys never expire early,
+	 *                   but may expire up to this late.
+	 * @param now The current time.
+	 */
+	TimingWheel(long tickMillis, long now) {
+		this.tickMillis = tickMillis;
+		this.currentTick = now / tickMillis;
+	}
+
+	/**
+	 * Schedules a key to expire.
+	 * @param key The key.
+	 * @param deadline The time at which the key expires.
+	 */
+	void schedule(long key, long deadline) {
+		// Rounds up, so that keys never expire early.
+		insert(key, Math.max(currentTick + 1, (deadline + tickMillis - 1) / tickMillis));
+		size++;
+	}
+
+	/**
+	 * Advances the wheel to the current time, expiring any keys whose
+	 * deadline has passed.
+	 * @param now The current time.
+	 * @param expired Called with each expired key. It may schedule keys.
+	 */
+	void advance(long now, LongConsumer expired) {
+		long targetTick = now / tickMillis;
+		while (currentTick < targetTick) {
+			if (size == 0) {
+				currentTick = targetTick;
+				return;
+			}
+			currentTick++;
+			// When a level wraps around, the next slot of the level above is moved down.
+			for (int level = 1; level < LEVELS; level++) {
+				if ((currentTick & ((1L << (level * SLOT_BITS)) - 1)) != 0) break;
+				int slot = level * SLOTS + (int) ((currentTick >>> (level * SLOT_BITS)) & SLOT_MASK);
+				long[] slotKeys = keys[slot];
+				long[] slotDeadlines = deadlines[slot];
+				int count = counts[slot];
+				counts[slot] = 0;
+				for (int i = 0; i < count; i++) insert(slotKeys[i], slotDeadlines[i]);
+			}
+			int slot = (int) (currentTick & SLOT_MASK);
+			int count = counts[slot];
+			if (count == 0) continue;
+			// The slot is swapped out, so that the callback can schedule keys into it.
+			long[] slotKeys = keys[slot];
+			keys[slot] = null;
+			deadlines[slot] = null;
+			counts[slot] = 0;
+			size -= count;
+			for (int i = 0; i < count; i++) expired.accept(slotKeys[i]);
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		Arrays.fill(counts, 0);
+		size = 0;
+	}
+
+	private void insert(long key, long deadlineTick) {
+		long delta = deadlineTick - currentTick;
+		int level = 0;
+		while (level < LEVELS - 1 && delta >= 1L << ((level + 1) * SLOT_BITS)) level++;
+		// Keys that are too far away wait in the furthest slot, and are moved down again from there.
+		long tick = Math.min(deadlineTick, currentTick + (1L << (LEVELS * SLOT_BITS)) - 1);
+		int slot = level * SLOTS + (int) ((tick >>> (level * SLOT_BITS)) & SLOT_MASK);
+		int count = counts[slot];
+		if (keys[slot] == null) {
+			keys[slot] = new long[4];
+			deadlines[slot] = new long[4];
+		} else if (count == keys[slot].length) {
+			keys[slot] = Arrays.copyOf(keys[slot], count * 2);
+			deadlines[slot] = Arrays.copyOf(deadlines[slot], count * 2);
+		}
+		keys[slot][count] = key;
+		deadlines[slot][count] = deadlineTick;
+		counts[slot] = count + 1;
+	}
+}
@@ -0,0 +1,54 @@
+package nl.andrewl.aos_core.model.world;
+
+import java.util.Arrays;
+
+/**
+ * Storage for a chunk whose blocks all have the same value. These are
+ * immutable, so one instance is shared for each value.
+ */
+final class UniformChunkStorage implements ChunkStorage {
+	private static final UniformChunkStorage[] INSTANCES = new UniformChunkStorage[256];
+	static {
+		for (int i = 0; i < INSTANCES.length; i++) {
+			INSTANCES[i] = new UniformChunkStorage((byte) i);
+		}
+	}
+
+	private final byte value;
+
+	private UniformChunkStorage(byte value) {
+		this.value = value;
+	}
+
+	static UniformChunkStorage of(byte value) {
+		return INSTANCES[value & 0xFF];
+	}
+
+	@Override
+	public byte get(int idx) {
+		return value;
+	}
+
+	@Override
+	public ChunkStorage set(int idx, byte value) {
+		if (value == this.value) return this;
+		var storage = new PaletteChunkStorage(new byte[]{this.value, value}, 2);
+		storage.set(idx, value);
+		return storage;
+	}
+
+	@Override
+	public ChunkStorage copy() {
+		return this;
+	}
+
+	@Override
+	public void copyTo(byte[] dest) {
+		Arrays.fill(dest, 0, Chunk.TOTAL_SIZE, value);
+	}
+
+	@Override
+	public int getSizeInBytes() {
+		return 0;
+	}
+}
@@ -0,0 +1,577 @@
+package nl.andrewl.aos_core.model.world;
+
+import org.joml.Vector3f;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Utility class for reading and writing maps in the {@code .vxl} format of
+ * the classic Ace of Spades game.
+ * <p>
+ *     A map is {@link VxlIO#SIZE} by {@link VxlIO#SIZE} columns of
+ *     {@link VxlIO#HEIGHT} blocks, stored one row after another. Each column
+ *     is a list of spans, which each start with 4 bytes: the span's length in
+ *     4-byte words (or 0 for the last span), the first and last z of its top
+ *     run of colored blocks, and the z where its air starts. Then comes a
+ *     BGRA color for each colored block. Solid blocks are only colored if
+ *     they can be seen; every block below the top run of the last span is
+ *     solid. z increases downwards, so it's flipped to become our y.
+ * </p>
+ * <p>
+ *     Maps are read as a stream, in strips of one chunk's width of rows. The
+ *     spans of each strip are read on the calling thread, and decoded in
+ *     parallel straight into chunk arrays, which only refer to each chunk's
+ *     own colors. Once every color has been seen, they're quantized into a
+ *     {@link ColorPalette} with a median cut, and each chunk is converted to
+ *     use it. Hidden blocks are given the color of the closest block above
+ *     them.
+ * </p>
+ */
+public final class VxlIO {
+	/**
+	 * The number of columns along each horizontal axis of a map.
+	 */
+	public static final int SIZE = 512;
+
+	/**
+	 * The number of blocks in each column of a map.
+	 */
+	public static final int HEIGHT = 64;
+
+	private static final int CHUNKS = SIZE / Chunk.SIZE;
+	private static final int CHUNK_HEIGHT = HEIGHT / Chunk.SIZE;
+
+	/**
+	 * Colors are counted in bins of 5 bits per channel, which are what's
+	 * quantized into the palette.
+	 */
+	private static final int BIN_BITS = 5;
+	private static final int BINS = 1 << (3 * BIN_BITS);
+
+	/**
+	 * The color of any air that's written at the bottom of a map, since the
+	 * bottom is always solid in {@code .vxl} maps.
+	 */
+	private static final int WATER_COLOR = 0x2F5F8F;
+	private static final int DEFAULT_COLOR = 0x808080;
+
+	private VxlIO() {}
+
+	/**
+	 * The blocks of a strip of chunk columns, whose values refer to the
+	 * chunk's own colors, where a value of {@code v} is the color bin
+	 * {@code bins[chunk][v - 1]}.
+	 */
+	private record Strip(Chunk[] chunks, short[][] bins, int[] histogram) {}
+
+	/**
+	 * Reads a map from an input stream. This reads exactly the bytes of the
+	 * map. The map's first row is at z = 0, and its bottom at y = 0. Since
+	 * maps don't have spawn points, spawn points A and B are added at the
+	 * middle of the west and east ends of the map, like where the classic
+	 * game spawns its teams.
+	 * @param in The input stream to read from.
+	 * @return The world which was read.
+	 * @throws IOException If an exception occurs, or the map is invalid.
+	 */
+	public static World read(InputStream in) throws IOException {
+		var d = new DataInputStream(in);
+		List<Chunk> chunks = new ArrayList<>(CHUNKS * CHUNKS * CHUNK_HEIGHT);
+		List<short[]> chunkBins = new ArrayList<>(CHUNKS * CHUNKS * CHUNK_HEIGHT);
+		int[] histogram = new int[BINS];
+		var pipeline = new BatchPipeline<Strip>(strip -> {
+			chunks.addAll(Arrays.asList(strip.chunks()));
+			chunkBins.addAll(Arrays.asList(strip.bins()));
+			for (int i = 0; i < BINS; i++) histogram[i] += strip.histogram()[i];
+		});
+		byte[] buffer = new byte[64 * 1024];
+		for (int cz = 0; cz < CHUNKS; cz++) {
+			int[] offsets = new int[Chunk.SIZE * SIZE + 1];
+			buffer = readStrip(d, buffer, offsets);
+			byte[] data = Arrays.copyOf(buffer, offsets[offsets.length - 1]);
+			int stripZ = cz;
+			pipeline.submit(() -> decodeStrip(data, offsets, stripZ));
+		}
+		pipeline.finish();
+
+		int[] colors = medianCut(histogram, ColorPalette.MAX_COLORS);
+		byte[] binValues = nearestColors(colors);
+		World world = new World(toPalette(colors));
+		// Each chunk is dropped once it's converted, so that we never hold two copies of the world.
+		Chunk[] converted = new Chunk[chunks.size()];
+		IntStream.range(0, converted.length).parallel().forEach(i -> {
+			Chunk chunk = chunks.set(i, null);
+			short[] bins = chunkBins.set(i, null);
+			byte[] blocks = chunk.getBlocks();
+			for (int j = 0; j < blocks.length; j++) {
+				if (blocks[j] != 0) blocks[j] = binValues[bins[(blocks[j] & 0xFF) - 1]];
+			}
+			converted[i] = new Chunk(chunk.getPosition().x, chunk.getPosition().y, chunk.getPosition().z, blocks);
+		});
+		for (var chunk : converted) world.addChunk(chunk);
+		world.setSpawnPoint("A", surfacePoint(world, SIZE / 8, SIZE / 2));
+		world.setSpawnPoint("B", surfacePoint(world, SIZE - SIZE / 8 - 1, SIZE / 2));
+		return world;
+	}
+
+	public static World read(Path filePath) throws IOException {
+		try (var in = new BufferedInputStream(Files.newInputStream(filePath), 64 * 1024)) {
+			return read(in);
+		}
+	}
+
+	/**
+	 * Writes the part of a world from (0, 0, 0) to (511, 63, 511) as a map.
+	 * Blocks outside of that are ignored, and air at y = 0 is written as
+	 * water, since the bottom of a map is always solid. Each strip's blocks
+	 * are copied on the calling thread, and encoded in parallel.
+	 * @param world The world to write.
+	 * @param out The output stream to write to.
+	 * @throws IOException If an exception occurs.
+	 */
+	public static void write(World world, OutputStream out) throws IOException {
+		int[] colors = new int[256];
+		Arrays.fill(colors, DEFAULT_COLOR);
+		for (int v = 1; v <= ColorPalette.MAX_COLORS; v++) {
+			Vector3f c = world.getPalette().getColor((byte) v);
+			colors[v] = (Math.round(c.x * 255) << 16) | (Math.round(c.y * 255) << 8) | Math.round(c.z * 255);
+		}
+		var pipeline = new BatchPipeline<byte[]>(out::write);
+		long[] previousRow = columnMasks(world, -1);
+		for (int cz = 0; cz < CHUNKS; cz++) {
+			byte[][] blocks = new byte[CHUNKS * CHUNK_HEIGHT][Chunk.TOTAL_SIZE];
+			for (int cx = 0; cx < CHUNKS; cx++) {
+				for (int cy = 0; cy < CHUNK_HEIGHT; cy++) {
+					Chunk chunk = world.getChunkAt(cx, cy, cz);
+					if (chunk != null) chunk.copyBlocks(blocks[cx * CHUNK_HEIGHT + cy]);
+				}
+			}
+			long[] before = previousRow;
+			long[] after = columnMasks(world, (cz + 1) * Chunk.SIZE);
+			pipeline.submit(() -> encodeStrip(blocks, before, after, colors));
+			// The masks of this strip's last row are needed by the next strip.
+			previousRow = columnMasks(blocks, Chunk.SIZE - 1);
+		}
+		pipeline.finish();
+		out.flush();
+	}
+
+	public static void write(World world, Path filePath) throws IOException {
+		try (var out = new BufferedOutputStream(Files.newOutputStream(filePath), 64 * 1024)) {
+			write(world, out);
+		}
+	}
+
+	/**
+	 * Reads the spans of a strip's columns, without decoding them.
+	 * @param d The stream to read from.
+	 * @param buffer A buffer to read into.
+	 * @param offsets Filled with the offset of each column's spans, and the
+	 *                total length.
+	 * @return The buffer, or a larger one if it was too small.
+	 * @throws IOException If an exception occurs, or a span is invalid.
+	 */
+	private static byte[] readStrip(DataInputStream d, byte[] buffer, int[] offsets) throws IOException {
+		int length = 0;
+		for (int column = 0; column < Chunk.SIZE * SIZE; column++) {
+			offsets[column] = length;
+			while (true) {
+				if (buffer.length < length + 4 * (HEIGHT + 2)) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				d.readFully(buffer, length, 4);
+				int words = buffer[length] & 0xFF;
+				int topStart = buffer[length + 1] & 0xFF;
+				int topEnd = buffer[length + 2] & 0xFF;
+				int topCount = topEnd - topStart + 1;
+				if (topStart > HEIGHT || topEnd >= HEIGHT || topCount < 0 || (words != 0 && (words - 1 < topCount || words - 1 > HEIGHT))) {
+					throw new IOException("Invalid span in column " + column + " of a strip.");
+				}
+				int colorBytes = 4 * (words == 0 ? topCount : words - 1);
+				d.readFully(buffer, length + 4, colorBytes);
+				length += 4 + colorBytes;
+				if (words == 0) break;
+			}
+		}
+		offsets[offsets.length - 1] = length;
+		return buffer;
+	}
+
+	/**
+	 * Decodes a strip's columns into chunks, whose values refer to each
+	 * chunk's own colors.
+	 */
+	private static Strip decodeStrip(byte[] data, int[] offsets, int cz) throws IOException {
+		Chunk[] chunks = new Chunk[CHUNKS * CHUNK_HEIGHT];
+		short[][] chunkBins = new short[chunks.length][];
+		int[] histogram = new int[BINS];
+		// Maps a color bin to its value in the current chunk, tagged with the chunk's index.
+		int[] localValues = new int[BINS];
+		Arrays.fill(localValues, -1);
+		int[] column = new int[HEIGHT];
+		byte[][] blocks = new byte[CHUNK_HEIGHT][Chunk.TOTAL_SIZE];
+		short[][] bins = new short[CHUNK_HEIGHT][255];
+		int[] binCounts = new int[CHUNK_HEIGHT];
+		for (int cx = 0; cx < CHUNKS; cx++) {
+			for (byte[] b : blocks) Arrays.fill(b, (byte) 0);
+			Arrays.fill(binCounts, 0);
+			for (int lx = 0; lx < Chunk.SIZE; lx++) {
+				for (int lz = 0; lz < Chunk.SIZE; lz++) {
+					int x = cx * Chunk.SIZE + lx;
+					decodeColumn(data, offsets[lz * SIZE + x], offsets[lz * SIZE + x + 1], column, histogram);
+					for (int z = 0; z < HEIGHT; z++) {
+						if (column[z] < 0) continue;
+						int y = HEIGHT - 1 - z;
+						int cy = y >> Chunk.SIZE_BITS;
+						int chunkIndex = cx * CHUNK_HEIGHT + cy;
+						int bin = column[z];
+						int value;
+						if (localValues[bin] >> 8 == chunkIndex) {
+							value = localValues[bin] & 0xFF;
+						} else if (binCounts[cy] < 255) {
+							bins[cy][binCounts[cy]] = (short) bin;
+							value = ++binCounts[cy];
+							localValues[bin] = (chunkIndex << 8) | value;
+						} else {
+							value = 1 + closestBin(bins[cy], binCounts[cy], bin);
+						}
+						blocks[cy][(lx * Chunk.SIZE + (y & Chunk.LOCAL_MASK)) * Chunk.SIZE + lz] = (byte) value;
+					}
+				}
+			}
+			for (int cy = 0; cy < CHUNK_HEIGHT; cy++) {
+				chunks[cx * CHUNK_HEIGHT + cy] = new Chunk(cx, cy, cz, blocks[cy]);
+				chunkBins[cx * CHUNK_HEIGHT + cy] = Arrays.copyOf(bins[cy], binCounts[cy]);
+			}
+		}
+		return new Strip(chunks, chunkBins, histogram);
+	}
+
+	/**
+	 * Decodes one column's spans.
+	 * @param data The strip's data.
+	 * @param offset The offset of the column's first span.
+	 * @param end The offset after the column's last span.
+	 * @param column Filled with the color bin of each block, or -1 for air.
+	 * @param histogram The color counts to add this column's colors to.
+	 */
+	private static void decodeColumn(byte[] data, int offset, int end, int[] column, int[] histogram) throws IOException {
+		// Blocks are solid until they're found to be air, and -2 marks a solid block without a color.
+		Arrays.fill(column, -2);
+		int z = 0;
+		while (true) {
+			int words = data[offset] & 0xFF;
+			int topStart = data[offset + 1] & 0xFF;
+			int topEnd = data[offset + 2] & 0xFF;
+			for (; z < topStart; z++) column[z] = -1;
+			int colorOffset = offset + 4;
+			for (z = topStart; z <= topEnd; z++) {
+				column[z] = colorBin(data, colorOffset, histogram);
+				colorOffset += 4;
+			}
+			if (words == 0) break;
+			int bottomCount = (words - 1) - (topEnd - topStart + 1);
+			offset += 4 * words;
+			if (offset + 4 > end) throw new IOException("A column's spans are longer than its data.");
+			int airStart = data[offset + 3] & 0xFF;
+			if (airStart > HEIGHT || airStart - bottomCount < topEnd + 1) throw new IOException("Invalid air start " + airStart);
+			for (z = airStart - bottomCount; z < airStart; z++) {
+				column[z] = colorBin(data, colorOffset, histogram);
+				colorOffset += 4;
+			}
+			z = airStart;
+		}
+		// Hidden blocks take the color of the closest colored block above them, or else below them.
+		int color = -2;
+		for (z = 0; z < HEIGHT; z++) {
+			if (column[z] >= 0) color = column[z];
+			else if (column[z] == -2) column[z] = color;
+		}
+		color = bin(DEFAULT_COLOR);
+		for (z = HEIGHT - 1; z >= 0; z--) {
+			if (column[z] >= 0) color = column[z];
+			else if (column[z] == -2) column[z] = color;
+		}
+	}
+
+	private static int colorBin(byte[] data, int offset, int[] histogram) {
+		int b = data[offset] & 0xFF;
+		int g = data[offset + 1] & 0xFF;
+		int r = data[offset + 2] & 0xFF;
+		int bin = bin((r << 16) | (g << 8) | b);
+		histogram[bin]++;
+		return bin;
+	}
+
+	private static int bin(int rgb) {
+		int shift = 8 - BIN_BITS;
+		int r = (rgb >> 16 & 0xFF) >> shift;
+		int g = (rgb >> 8 & 0xFF) >> shift;
+		int b = (rgb & 0xFF) >> shift;
+		return (r << (2 * BIN_BITS)) | (g << BIN_BITS) | b;
+	}
+
+	/**
+	 * Gets a channel of the color in the middle of a bin.
+	 * @param bin The bin.
+	 * @param channel 0 for red, 1 for green, or 2 for blue.
+	 * @return The channel's value, from 0 to 255.
+	 */
+	private static int binChannel(int bin, int channel) {
+		int value = (bin >> ((2 - channel) * BIN_BITS)) & ((1 << BIN_BITS) - 1);
+		return (value << (8 - BIN_BITS)) + (1 << (7 - BIN_BITS));
+	}
+
+	private static int closestBin(short[] bins, int count, int bin) {
+		int closest = 0;
+		long closestDistance = Long.MAX_VALUE;
+		for (int i = 0; i < count; i++) {
+			long distance = 0;
+			for (int c = 0; c < 3; c++) {
+				int diff = binChannel(bins[i], c) - binChannel(bin, c);
+				distance += (long) diff * diff;
+			}
+			if (distance < closestDistance) {
+				closest = i;
+				closestDistance = distance;
+			}
+		}
+		return closest;
+	}
+
+	/**
+	 * Quantizes counted colors with a median cut: the box of bins with the
+	 * most blocks and widest range is repeatedly split at its median, along
+	 * its widest channel.
+	 * @param histogram The number of blocks of each color bin.
+	 * @param maxColors The maximum number of colors.
+	 * @return The average RGB color of each box.
+	 */
+	private static int[] medianCut(int[] histogram, int maxColors) {
+		List<int[]> boxes = new ArrayList<>();
+		int[] all = IntStream.range(0, BINS).filter(bin -> histogram[bin] > 0).toArray();
+		if (all.length == 0) return new int[]{DEFAULT_COLOR};
+		boxes.add(all);
+		while (boxes.size() < maxColors) {
+			int splitIndex = -1;
+			int splitChannel = 0;
+			long bestScore = 0;
+			for (int i = 0; i < boxes.size(); i++) {
+				int[] box = boxes.get(i);
+				if (box.length < 2) continue;
+				long count = 0;
+				for (int bin : box) count += histogram[bin];
+				for (int c = 0; c < 3; c++) {
+					int min = 255, max = 0;
+					for (int bin : box) {
+						min = Math.min(min, binChannel(bin, c));
+						max = Math.max(max, binChannel(bin, c));
+					}
+					long score = count * (max - min);
+					if (score > bestScore) {
+						bestScore = score;
+						splitIndex = i;
+						splitChannel = c;
+					}
+				}
+			}
+			if (splitIndex == -1) break;
+			int[] box = boxes.get(splitIndex);
+			int channel = splitChannel;
+			// Sorts by the channel, by packing it above the bin.
+			long[] sorted = new long[box.length];
+			for (int i = 0; i < box.length; i++) sorted[i] = ((long) binChannel(box[i], channel) << 32) | box[i];
+			Arrays.sort(sorted);
+			long total = 0;
+			for (int bin : box) total += histogram[bin];
+			long seen = 0;
+			int split = 1;
+			for (int i = 0; i < sorted.length - 1; i++) {
+				seen += histogram[(int) sorted[i]];
+				split = i + 1;
+				if (seen * 2 >= total) break;
+			}
+			int[] lower = new int[split];
+			int[] upper = new int[sorted.length - split];
+			for (int i = 0; i < sorted.length; i++) {
+				if (i < split) lower[i] = (int) sorted[i];
+				else upper[i - split] = (int) sorted[i];
+			}
+			boxes.set(splitIndex, lower);
+			boxes.add(upper);
+		}
+		int[] colors = new int[boxes.size()];
+		for (int i = 0; i < colors.length; i++) {
+			long count = 0, r = 0, g = 0, b = 0;
+			for (int bin : boxes.get(i)) {
+				count += histogram[bin];
+				r += (long) histogram[bin] * binChannel(bin, 0);
+				g += (long) histogram[bin] * binChannel(bin, 1);
+				b += (long) histogram[bin] * binChannel(bin, 2);
+			}
+			colors[i] = (int) (r / count) << 16 | (int) (g / count) << 8 | (int) (b / count);
+		}
+		return colors;
+	}
+
+	/**
+	 * Finds the block value of the closest palette color to each bin.
+	 */
+	private static byte[] nearestColors(int[] colors) {
+		byte[] values = new byte[BINS];
+		IntStream.range(0, BINS).parallel().forEach(bin -> {
+			int r = binChannel(bin, 0), g = binChannel(bin, 1), b = binChannel(bin, 2);
+			int closest = 0;
+			int closestDistance = Integer.MAX_VALUE;
+			for (int i = 0; i < colors.length; i++) {
+				int dr = (colors[i] >> 16 & 0xFF) - r;
+				int dg = (colors[i] >> 8 & 0xFF) - g;
+				int db = (colors[i] & 0xFF) - b;
+				int distance = dr * dr + dg * dg + db * db;
+				if (distance < closestDistance) {
+					closest = i;
+					closestDistance = distance;
+				}
+			}
+			values[bin] = (byte) (closest + 1);
+		});
+		return values;
+	}
+
+	private static ColorPalette toPalette(int[] colors) {
+		ColorPalette palette = new ColorPalette();
+		for (int i = 0; i < colors.length; i++) {
+			palette.setColor(
+					(byte) (i + 1),
+					(colors[i] >> 16 & 0xFF) / 255f,
+					(colors[i] >> 8 & 0xFF) / 255f,
+					(colors[i] & 0xFF) / 255f
+			);
+		}
+		return palette;
+	}
+
+	private static Vector3f surfacePoint(World world, int x, int z) {
+		int height = world.getHeightAt(x, z);
+		return new Vector3f(x + 0.5f, height == World.NO_HEIGHT ? HEIGHT : height + 1, z + 0.5f);
+	}
+
+	/**
+	 * Gets the solid blocks of each column in a row of a world, as bits by
+	 * their z in the map. Rows outside the map count as solid, so that they
+	 * don't make blocks visible.
+	 */
+	private static long[] columnMasks(World world, int row) {
+		long[] masks = new long[SIZE];
+		for (int x = 0; x < SIZE; x++) {
+			if (row < 0 || row >= SIZE) {
+				masks[x] = -1L;
+				continue;
+			}
+			long mask = 1L << (HEIGHT - 1);
+			for (int y = 0; y < HEIGHT; y++) {
+				if (world.getBlockAt(x, y, row) != 0) mask |= 1L << (HEIGHT - 1 - y);
+			}
+			masks[x] = mask;
+		}
+		return masks;
+	}
+
+	/**
+	 * Gets the solid blocks of each column in a row of a strip.
+	 */
+	private static long[] columnMasks(byte[][] blocks, int lz) {
+		long[] masks = new long[SIZE];
+		for (int x = 0; x < SIZE; x++) {
+			long mask = 1L << (HEIGHT - 1);
+			for (int y = 0; y < HEIGHT; y++) {
+				if (blockAt(blocks, x, y, lz) != 0) mask |= 1L << (HEIGHT - 1 - y);
+			}
+			masks[x] = mask;
+		}
+		return masks;
+	}
+
+	private static byte blockAt(byte[][] blocks, int x, int y, int lz) {
+		byte[] chunk = blocks[(x >> Chunk.SIZE_BITS) * CHUNK_HEIGHT + (y >> Chunk.SIZE_BITS)];
+		return chunk[((x & Chunk.LOCAL_MASK) * Chunk.SIZE + (y & Chunk.LOCAL_MASK)) * Chunk.SIZE + lz];
+	}
+
+	/**
+	 * Encodes the columns of a strip. A solid block is colored if it's at the
+	 * top of the map, or next to air.
+	 * @param blocks The blocks of the strip's chunks.
+	 * @param before The column masks of the row before the strip.
+	 * @param after The column masks of the row after the strip.
+	 * @param colors The RGB color of each block value.
+	 * @return The encoded strip.
+	 */
+	private static byte[] encodeStrip(byte[][] blocks, long[] before, long[] after, int[] colors) {
+		var out = new ByteArrayOutputStream(64 * 1024);
+		long[] previous = before;
+		long[] current = columnMasks(blocks, 0);
+		for (int lz = 0; lz < Chunk.SIZE; lz++) {
+			long[] next = lz == Chunk.SIZE - 1 ? after : columnMasks(blocks, lz + 1);
+			for (int x = 0; x < SIZE; x++) {
+				long solid = current[x];
+				long west = x > 0 ? current[x - 1] : -1L;
+				long east = x < SIZE - 1 ? current[x + 1] : -1L;
+				// Bit z of each of these is whether the block above or below z is solid.
+				long above = solid << 1;
+				long below = (solid >>> 1) | (1L << (HEIGHT - 1));
+				long surface = solid & ~(above & below & west & east & previous[x] & next[x]);
+				encodeColumn(out, blocks, x, lz, solid, surface, colors);
+			}
+			previous = current;
+			current = next;
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Encodes one column's spans.
+	 */
+	private static void encodeColumn(ByteArrayOutputStream out, byte[][] blocks, int x, int lz, long solid, long surface, int[] colors) {
+		int z = 0;
+		while (z < HEIGHT) {
+			int airStart = z;
+			while (z < HEIGHT && !isSet(solid, z)) z++;
+			int topStart = z;
+			while (z < HEIGHT && isSet(surface, z)) z++;
+			int topEnd = z;
+			while (z < HEIGHT && isSet(solid, z) && !isSet(surface, z)) z++;
+			// Colored blocks after the hidden ones are this span's bottom colors,
+			// unless they reach the bottom of the map, in which case they're the
+			// next span's top colors.
+			int bottomStart = z;
+			int end = z;
+			while (end < HEIGHT && isSet(surface, end)) end++;
+			if (end < HEIGHT) z = end;
+			int bottomEnd = z;
+			int colorCount = (topEnd - topStart) + (bottomEnd - bottomStart);
+			out.write(z == HEIGHT ? 0 : colorCount + 1);
+			out.write(topStart);
+			out.write(topEnd - 1);
+			out.write(airStart);
+			for (int i = topStart; i < topEnd; i++) writeColor(out, blocks, x, i, lz, colors);
+			for (int i = bottomStart; i < bottomEnd; i++) writeColor(out, blocks, x, i, lz, colors);
+		}
+	}
+
+	private static boolean isSet(long mask, int z) {
+		return (mask & (1L << z)) != 0;
+	}
+
+	private static void writeColor(ByteArrayOutputStream out, byte[][] blocks, int x, int z, int lz, int[] colors) {
+		byte block = blockAt(blocks, x, HEIGHT - 1 - z, lz);
+		int color = block == 0 ? WATER_COLOR : colors[block & 0xFF];
+		out.write(color & 0xFF);
+		out.write(color >> 8 & 0xFF);
+		out.write(color >> 16 & 0xFF);
+		out.write(0x7F);
+	}
+}
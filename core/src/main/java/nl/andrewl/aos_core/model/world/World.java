@@ -1,27 +1,105 @@
 package nl.andrewl.aos_core.model.world;
 
 import nl.andrewl.aos_core.Directions;
-import nl.andrewl.aos_core.MathUtils;
 import org.joml.Math;
 import org.joml.Vector3f;
+import org.joml.Vector3fc;
 import org.joml.Vector3i;
 import org.joml.Vector3ic;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * A world is just a collection of chunks that together form the environment
  * that players can interact in.
+ * <p>
+ *     A world can be read on any number of threads while it's changed. Chunks
+ *     are looked up without locking, and each chunk is locked while it's
+ *     changed; see {@link ChunkMap} and {@link Chunk}. Adding and removing
+ *     chunks is synchronized on the world. To read the whole world at one
+ *     point in time, like to save it or to send it to a client, use
+ *     {@link World#snapshot()}.
+ * </p>
+ * <p>
+ *     {@link PagedWorld Paged worlds} are the exception: they synchronize
+ *     every chunk lookup, since a lookup may load or unload chunks, and
+ *     they don't support snapshots or digests. See
+ *     {@link World#supportsSnapshots()} and {@link World#supportsDigests()}.
+ * </p>
  */
 public class World {
-	private static final float DELTA = 0.001f;
+	/**
+	 * The value returned by {@link World#getHeightAt(int, int)} for a column
+	 * that doesn't contain any blocks.
+	 */
+	public static final int NO_HEIGHT = Integer.MIN_VALUE;
 
-	protected final Map<Vector3ic, Chunk> chunkMap = new HashMap<>();
+	protected final ChunkMap chunkMap = new ChunkMap();
 	protected ColorPalette palette;
-	protected final Map<String, Vector3f> spawnPoints = new HashMap<>();
+	protected final Map<String, Vector3f> spawnPoints = new ConcurrentHashMap<>();
+
+	/**
+	 * The chunk that was most recently looked up. Consecutive block lookups
+	 * are very often in the same chunk, so we can skip the map lookup. It's
+	 * only used if it's still in the world, since another thread may have
+	 * cached it just as it was removed.
+	 */
+	private Chunk lastChunk;
+
+	/**
+	 * Cached bounds of the world, in block coordinates, or null if they need
+	 * to be recomputed. These are expanded as chunks are added, and lazily
+	 * recomputed after chunks are removed.
+	 */
+	private volatile Bounds bounds;
+
+	private record Bounds(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		static final Bounds EMPTY = new Bounds(0, 0, 0, 0, 0, 0);
+
+		static Bounds of(long chunkKey) {
+			int x = ChunkMap.keyX(chunkKey) * Chunk.SIZE;
+			int y = ChunkMap.keyY(chunkKey) * Chunk.SIZE;
+			int z = ChunkMap.keyZ(chunkKey) * Chunk.SIZE;
+			return new Bounds(x, y, z, x + Chunk.SIZE - 1, y + Chunk.SIZE - 1, z + Chunk.SIZE - 1);
+		}
+
+		Bounds expand(long chunkKey) {
+			Bounds b = of(chunkKey);
+			return new Bounds(
+					Math.min(minX, b.minX), Math.min(minY, b.minY), Math.min(minZ, b.minZ),
+					Math.max(maxX, b.maxX), Math.max(maxY, b.maxY), Math.max(maxZ, b.maxZ)
+			);
+		}
+	}
+
+	/**
+	 * The allocator that chunks' blocks are stored with, or null if they're
+	 * kept on the heap.
+	 */
+	private volatile ChunkSlabAllocator slabAllocator;
+
+	/**
+	 * The most recently built digest, which is discarded when chunks are
+	 * added or removed.
+	 */
+	private volatile WorldDigest digest;
+
+	/**
+	 * Held in shared mode while blocks are changed, and in exclusive mode
+	 * while a {@link World#snapshot()} is taken, so that a snapshot never
+	 * contains only part of a change.
+	 */
+	private final StampedLock changeLock = new StampedLock();
+
+	/**
+	 * The journal that block changes are recorded in, if any.
+	 */
+	private volatile WorldJournal journal;
 
 	public World(ColorPalette palette, Collection<Chunk> chunks) {
 		this.palette = palette;
@@ -36,18 +114,80 @@ public class World {
 		this(ColorPalette.rainbow());
 	}
 
-	public void addChunk(Chunk chunk) {
-		chunkMap.put(chunk.getPosition(), chunk);
+	public synchronized void addChunk(Chunk chunk) {
+		if (slabAllocator != null) chunk.moveToSlab(slabAllocator);
+		chunk.setInWorld(true);
+		Chunk previous = chunkMap.put(chunk);
+		if (previous != null && previous != chunk) {
+			previous.setInWorld(false);
+			previous.releaseSlab();
+		}
+		lastChunk = null;
+		digest = null;
+		Bounds b = bounds;
+		if (b != null) {
+			bounds = getChunkCount() == 1 ? Bounds.of(chunk.getKey()) : b.expand(chunk.getKey());
+		}
 	}
 
 	public void removeChunk(Vector3i chunkPos) {
-		chunkMap.remove(chunkPos);
+		removeChunk(chunkPos.x, chunkPos.y, chunkPos.z);
+	}
+
+	public void removeChunk(int cx, int cy, int cz) {
+		removeChunk(ChunkMap.key(cx, cy, cz));
+	}
+
+	public synchronized void removeChunk(long chunkKey) {
+		Chunk removed = chunkMap.remove(chunkKey);
+		if (removed != null) {
+			removed.setInWorld(false);
+			removed.releaseSlab();
+		}
+		lastChunk = null;
+		bounds = null;
+		digest = null;
+	}
+
+	/**
+	 * Makes this world store its chunks' blocks off-heap, using the given
+	 * allocator. This applies to all current chunks, and any that are added
+	 * later. Chunks' blocks are moved back onto the heap when they're
+	 * removed from the world.
+	 * @param allocator The allocator to use.
+	 */
+	public synchronized void useSlabStorage(ChunkSlabAllocator allocator) {
+		this.slabAllocator = allocator;
+		chunkMap.forEach(chunk -> chunk.moveToSlab(allocator));
+	}
+
+	/**
+	 * @return The allocator that this world's blocks are stored with, or null
+	 * if they're stored on the heap.
+	 */
+	public ChunkSlabAllocator getSlabAllocator() {
+		return slabAllocator;
 	}
 
-	public Map<Vector3ic, Chunk> getChunkMap() {
+	public ChunkMap getChunkMap() {
 		return chunkMap;
 	}
 
+	/**
+	 * @return The keys of all chunks in this world.
+	 * @see ChunkMap#key(int, int, int)
+	 */
+	public long[] getChunkKeys() {
+		return chunkMap.keys();
+	}
+
+	/**
+	 * @return The number of chunks in this world.
+	 */
+	public int getChunkCount() {
+		return chunkMap.size();
+	}
+
 	public ColorPalette getPalette() {
 		return palette;
 	}
@@ -57,51 +197,166 @@ public class World {
 	}
 
 	public byte getBlockAt(Vector3f pos) {
-		return getBlockAt(pos, new Vector3i());
+		return getBlockAt(pos.x, pos.y, pos.z);
 	}
 
 	public byte getBlockAt(Vector3f pos, Vector3i util) {
-		getChunkPosAt(pos, util);
-		Chunk chunk = chunkMap.get(util);
-		if (chunk == null) return 0;
-		getLocalPosAt(pos.x, pos.y, pos.z, util);
-		return chunk.getBlockAt(util);
+		return getBlockAt(pos.x, pos.y, pos.z);
 	}
 
 	public byte getBlockAt(float x, float y, float z) {
-		return getBlockAt(new Vector3f(x, y, z));
+		return getBlockAt((int) Math.floor(x), (int) Math.floor(y), (int) Math.floor(z));
+	}
+
+	public byte getBlockAt(int x, int y, int z) {
+		Chunk chunk = getChunkAt(x >> Chunk.SIZE_BITS, y >> Chunk.SIZE_BITS, z >> Chunk.SIZE_BITS);
+		if (chunk == null) return 0;
+		return chunk.getBlockAt(x & Chunk.LOCAL_MASK, y & Chunk.LOCAL_MASK, z & Chunk.LOCAL_MASK);
 	}
 
 	public void setBlockAt(Vector3f pos, byte block) {
-		Vector3i chunkPos = getChunkPosAt(pos);
-		Chunk chunk = chunkMap.get(chunkPos);
-		if (chunk == null) return;
-		Vector3i blockPos = getLocalPosAt(pos.x, pos.y, pos.z, chunkPos);
-		chunk.setBlockAt(blockPos.x, blockPos.y, blockPos.z, block);
+		setBlockAt((int) Math.floor(pos.x), (int) Math.floor(pos.y), (int) Math.floor(pos.z), block);
 	}
 
 	public void setBlockAt(int x, int y, int z, byte block) {
-		setBlockAt(new Vector3f(x, y, z), block);
+		Chunk chunk = acquireChunk(ChunkMap.key(x >> Chunk.SIZE_BITS, y >> Chunk.SIZE_BITS, z >> Chunk.SIZE_BITS));
+		if (chunk == null) return;
+		long stamp = changeLock.readLock();
+		try {
+			chunk.setBlockAt(x & Chunk.LOCAL_MASK, y & Chunk.LOCAL_MASK, z & Chunk.LOCAL_MASK, block);
+		} finally {
+			changeLock.unlockRead(stamp);
+			releaseChunk(chunk);
+		}
+		WorldJournal j = journal;
+		if (j != null) j.recordSet(x, y, z, block);
 	}
 
 	public void setBlocksAt(int x1, int y1, int z1, int x2, int y2, int z2, byte block) {
-		for (int x = x1; x <= x2; x++) {
-			for (int y = y1; y <= y2; y++) {
-				for (int z = z1; z <= z2; z++) {
-					setBlockAt(x, y, z, block);
+		fill(BlockRegion.box(x1, y1, z1, x2, y2, z2), block);
+	}
+
+	/**
+	 * Sets all blocks in a region to the given value. The region is split up
+	 * by chunk, and each chunk is filled directly, so this is much faster
+	 * than setting each block individually. Blocks in chunks that don't exist
+	 * are ignored.
+	 * @param region The region to fill.
+	 * @param block The value to set.
+	 * @return The set of blocks that were changed, which can be sent to
+	 * clients to apply with {@link World#applyChanges(BlockChangeSet)}.
+	 */
+	public BlockChangeSet fill(BlockRegion region, byte block) {
+		BlockChangeSet changes = new BlockChangeSet(block);
+		long stamp = changeLock.readLock();
+		try {
+			fillChunks(region, block, changes);
+		} finally {
+			changeLock.unlockRead(stamp);
+		}
+		WorldJournal j = journal;
+		if (j != null && !changes.isEmpty()) j.recordChanges(changes);
+		return changes;
+	}
+
+	private void fillChunks(BlockRegion region, byte block, BlockChangeSet changes) {
+		for (int cx = region.minX() >> Chunk.SIZE_BITS; cx <= region.maxX() >> Chunk.SIZE_BITS; cx++) {
+			int bx = cx << Chunk.SIZE_BITS;
+			int x1 = Math.max(region.minX(), bx) - bx;
+			int x2 = Math.min(region.maxX(), bx + Chunk.SIZE - 1) - bx;
+			for (int cy = region.minY() >> Chunk.SIZE_BITS; cy <= region.maxY() >> Chunk.SIZE_BITS; cy++) {
+				int by = cy << Chunk.SIZE_BITS;
+				int y1 = Math.max(region.minY(), by) - by;
+				int y2 = Math.min(region.maxY(), by + Chunk.SIZE - 1) - by;
+				for (int cz = region.minZ() >> Chunk.SIZE_BITS; cz <= region.maxZ() >> Chunk.SIZE_BITS; cz++) {
+					int bz = cz << Chunk.SIZE_BITS;
+					Chunk chunk = acquireChunk(ChunkMap.key(cx, cy, cz));
+					if (chunk == null) continue;
+					int z1 = Math.max(region.minZ(), bz) - bz;
+					int z2 = Math.min(region.maxZ(), bz + Chunk.SIZE - 1) - bz;
+					try {
+						chunk.fill(region, x1, y1, z1, x2, y2, z2, block, changes);
+					} finally {
+						releaseChunk(chunk);
+					}
 				}
 			}
 		}
 	}
 
+	/**
+	 * Applies a set of changes that were made to another copy of this world.
+	 * @param changes The changes to apply.
+	 */
+	public void applyChanges(BlockChangeSet changes) {
+		long stamp = changeLock.readLock();
+		try {
+			changes.applyTo(this);
+		} finally {
+			changeLock.unlockRead(stamp);
+		}
+		WorldJournal j = journal;
+		if (j != null && !changes.isEmpty()) j.recordChanges(changes);
+	}
+
+	/**
+	 * Sets the journal that block changes made through this world are
+	 * recorded in. Changes made directly to chunks aren't recorded.
+	 * @param journal The journal, or null to stop recording changes.
+	 * @see WorldJournal
+	 */
+	void setJournal(WorldJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * @return The journal that this world's block changes are recorded in,
+	 * or null if there is none.
+	 */
+	public WorldJournal getJournal() {
+		return journal;
+	}
+
 	public Chunk getChunkAt(Vector3i chunkPos) {
-		return chunkMap.get(chunkPos);
+		return getChunkAt(chunkPos.x, chunkPos.y, chunkPos.z);
 	}
 
 	public Chunk getChunkAt(int x, int y, int z) {
-		return chunkMap.get(new Vector3i(x, y, z));
+		return getChunkAt(ChunkMap.key(x, y, z));
+	}
+
+	/**
+	 * Gets the chunk with the given packed key.
+	 * @param chunkKey The packed chunk coordinates.
+	 * @return The chunk, or null if there's no chunk there.
+	 * @see ChunkMap#key(int, int, int)
+	 */
+	public Chunk getChunkAt(long chunkKey) {
+		Chunk chunk = lastChunk;
+		if (chunk != null && chunk.getKey() == chunkKey && chunk.isInWorld()) return chunk;
+		chunk = chunkMap.get(chunkKey);
+		if (chunk != null) lastChunk = chunk;
+		return chunk;
+	}
+
+	/**
+	 * Gets a chunk in order to change it. Every change to a chunk's blocks
+	 * goes through this, and the chunk is released with
+	 * {@link World#releaseChunk(Chunk)} once the change is done, so that
+	 * worlds which unload chunks can keep it loaded until then.
+	 * @param chunkKey The packed chunk coordinates.
+	 * @return The chunk, or null if there's no chunk there.
+	 */
+	protected Chunk acquireChunk(long chunkKey) {
+		return getChunkAt(chunkKey);
 	}
 
+	/**
+	 * Releases a chunk that was gotten with {@link World#acquireChunk(long)}.
+	 * @param chunk The chunk.
+	 */
+	protected void releaseChunk(Chunk chunk) {}
+
 	public Vector3f getSpawnPoint(String name) {
 		return spawnPoints.get(name);
 	}
@@ -119,27 +374,42 @@ public class World {
 	}
 
 	public int getMinX() {
-		return chunkMap.values().stream().mapToInt(c -> c.getPosition().x * Chunk.SIZE).min().orElse(0);
+		return bounds().minX();
 	}
 
 	public int getMinY() {
-		return chunkMap.values().stream().mapToInt(c -> c.getPosition().y * Chunk.SIZE).min().orElse(0);
+		return bounds().minY();
 	}
 
 	public int getMinZ() {
-		return chunkMap.values().stream().mapToInt(c -> c.getPosition().z * Chunk.SIZE).min().orElse(0);
+		return bounds().minZ();
 	}
 
 	public int getMaxX() {
-		return chunkMap.values().stream().mapToInt(c -> c.getPosition().x * Chunk.SIZE + Chunk.SIZE - 1).max().orElse(0);
+		return bounds().maxX();
 	}
 
 	public int getMaxY() {
-		return chunkMap.values().stream().mapToInt(c -> c.getPosition().y * Chunk.SIZE + Chunk.SIZE - 1).max().orElse(0);
+		return bounds().maxY();
 	}
 
 	public int getMaxZ() {
-		return chunkMap.values().stream().mapToInt(c -> c.getPosition().z * Chunk.SIZE + Chunk.SIZE - 1).max().orElse(0);
+		return bounds().maxZ();
+	}
+
+	private Bounds bounds() {
+		Bounds b = bounds;
+		if (b != null) return b;
+		// Bounds are computed while synchronized, so that they can't miss a chunk that's added meanwhile.
+		synchronized (this) {
+			if (bounds == null) {
+				long[] keys = getChunkKeys();
+				b = keys.length == 0 ? Bounds.EMPTY : Bounds.of(keys[0]);
+				for (int i = 1; i < keys.length; i++) b = b.expand(keys[i]);
+				bounds = b;
+			}
+			return bounds;
+		}
 	}
 
 	public boolean containsPoint(Vector3i pos) {
@@ -148,11 +418,136 @@ public class World {
 				pos.z >= getMinZ() && pos.z < getMaxZ();
 	}
 
+	/**
+	 * Gets the y coordinate of the top-most non-air block in the given column
+	 * of the world.
+	 * @param x The x coordinate.
+	 * @param z The z coordinate.
+	 * @return The y coordinate of the highest block, or {@link World#NO_HEIGHT}
+	 * if the column is empty.
+	 */
+	public int getHeightAt(int x, int z) {
+		Bounds b = bounds();
+		int cx = x >> Chunk.SIZE_BITS;
+		int cz = z >> Chunk.SIZE_BITS;
+		int lx = x & Chunk.LOCAL_MASK;
+		int lz = z & Chunk.LOCAL_MASK;
+		for (int cy = b.maxY() >> Chunk.SIZE_BITS; cy >= b.minY() >> Chunk.SIZE_BITS; cy--) {
+			Chunk chunk = getChunkAt(cx, cy, cz);
+			if (chunk == null) continue;
+			int height = chunk.getColumnHeight(lx, lz);
+			if (height != -1) return cy * Chunk.SIZE + height;
+		}
+		return NO_HEIGHT;
+	}
+
+	/**
+	 * Checks if this world can build a {@link WorldDigest}. Worlds that don't
+	 * keep all of their chunks in memory can't, and throw an
+	 * {@link UnsupportedOperationException} from
+	 * {@link World#getDigest(int, int, int, int)}.
+	 * @return True if this world supports digests.
+	 */
+	public boolean supportsDigests() {
+		return true;
+	}
+
+	/**
+	 * Gets a digest of this world, using the smallest tree that covers all of
+	 * its chunks.
+	 * @return The digest.
+	 * @throws UnsupportedOperationException If this world doesn't
+	 * {@link World#supportsDigests() support digests}.
+	 * @see WorldDigest
+	 */
+	public WorldDigest getDigest() {
+		int cx = getMinX() >> Chunk.SIZE_BITS;
+		int cy = getMinY() >> Chunk.SIZE_BITS;
+		int cz = getMinZ() >> Chunk.SIZE_BITS;
+		int extent = Math.max(getMaxX() - getMinX(), Math.max(getMaxY() - getMinY(), getMaxZ() - getMinZ()));
+		int chunkExtent = (extent >> Chunk.SIZE_BITS) + 1;
+		int level = 0;
+		while ((1 << level) < chunkExtent && level < WorldDigest.MAX_LEVEL) level++;
+		return getDigest(cx, cy, cz, level);
+	}
+
+	/**
+	 * Gets a digest of this world, using the given frame. This is used to
+	 * compare against a digest of another copy of the world.
+	 * @param ox The x coordinate of the origin chunk.
+	 * @param oy The y coordinate of the origin chunk.
+	 * @param oz The z coordinate of the origin chunk.
+	 * @param level The level of the tree's root node.
+	 * @return The digest.
+	 * @throws UnsupportedOperationException If this world doesn't
+	 * {@link World#supportsDigests() support digests}.
+	 */
+	public WorldDigest getDigest(int ox, int oy, int oz, int level) {
+		if (!supportsDigests()) throw new UnsupportedOperationException(getClass().getSimpleName() + " doesn't support digests.");
+		WorldDigest d = digest;
+		if (d == null || !d.hasFrame(ox, oy, oz, level)) {
+			d = new WorldDigest(ox, oy, oz, level, chunkMap);
+			digest = d;
+		}
+		return d;
+	}
+
+	/**
+	 * Checks if this world can make a {@link World#snapshot()}. Worlds that
+	 * don't keep all of their chunks in memory can't, since a snapshot would
+	 * have to load every chunk. They should be read directly instead, and
+	 * may change while they're read.
+	 * @return True if this world supports snapshots.
+	 */
+	public boolean supportsSnapshots() {
+		return true;
+	}
+
+	/**
+	 * Makes a copy of this world at one point in time, which can be read on
+	 * another thread while this world keeps changing. The copy's chunks share
+	 * their blocks with this world's chunks, until either of them is changed,
+	 * so this is cheap even for large worlds. Changes to this world wait
+	 * until the snapshot is taken.
+	 * @return The snapshot.
+	 * @throws UnsupportedOperationException If this world doesn't
+	 * {@link World#supportsSnapshots() support snapshots}.
+	 */
+	public World snapshot() {
+		if (!supportsSnapshots()) throw new UnsupportedOperationException(getClass().getSimpleName() + " doesn't support snapshots.");
+		World copy = new World(ColorPalette.fromArray(palette.toArray()));
+		spawnPoints.forEach((name, point) -> copy.setSpawnPoint(name, new Vector3f(point)));
+		long stamp = changeLock.writeLock();
+		try {
+			for (var chunk : chunkMap.values()) {
+				copy.addChunk(chunk.snapshot());
+			}
+		} finally {
+			changeLock.unlockWrite(stamp);
+		}
+		return copy;
+	}
+
+	/**
+	 * Releases any resources that this world holds on to, like files. Worlds
+	 * that are only kept in memory don't hold any. The world shouldn't be
+	 * used after this.
+	 * @throws IOException If an exception occurs.
+	 */
+	public void close() throws IOException {}
+
 	/**
 	 * Clears all data from the world.
 	 */
-	public void clear() {
+	public synchronized void clear() {
+		chunkMap.forEach(chunk -> {
+			chunk.setInWorld(false);
+			chunk.releaseSlab();
+		});
 		chunkMap.clear();
+		lastChunk = null;
+		digest = null;
+		bounds = null;
 		spawnPoints.clear();
 	}
 
@@ -161,92 +556,90 @@ public class World {
 	 * Usually used to determine where a player has interacted/clicked in the
 	 * world.
 	 * @param eyePos The origin point to look from.
-	 * @param eyeDir The direction to look towards. This should be normalized.
+	 * @param eyeDir The direction to look towards.
 	 * @param limit The radius out from the origin to look. Blocks outside this
 	 *              limit will not be returned.
 	 * @return The location of the block that is looked at, or null if none
 	 * could be found.
 	 */
-	public Hit getLookingAtPos(Vector3f eyePos, Vector3f eyeDir, float limit) {
-		if (eyeDir.lengthSquared() == 0 || limit <= 0) return null;
-		Vector3f pos = new Vector3f(eyePos);
-		Vector3f previousPos = new Vector3f();
-		while (pos.distance(eyePos) < limit) {
-			previousPos.set(pos);
-			stepToNextBlock(pos, eyeDir);
-			// If for some reason we couldn't advance to the next block, exit null, so we don't infinitely loop.
-			if (pos.equals(previousPos)) return null;
-			if (getBlockAt(pos) > 0) {
-				Vector3i hitPos = new Vector3i(
-						(int) Math.floor(pos.x),
-						(int) Math.floor(pos.y),
-						(int) Math.floor(pos.z)
-				);
-				Vector3ic hitNorm;
-
-				// Determine the face that was hit based on which face was closest to the hit point.
-				float minYDist = Math.abs(pos.y - hitPos.y);
-				float maxYDist = Math.abs(pos.y - (hitPos.y + 1));
-				float minXDist = Math.abs(pos.x - hitPos.x);
-				float maxXDist = Math.abs(pos.x - (hitPos.x + 1));
-				float minZDist = Math.abs(pos.z - hitPos.z);
-				float maxZDist = Math.abs(pos.z - (hitPos.z + 1));
-				float minDist = MathUtils.min(minYDist, maxYDist, minXDist, maxXDist, minZDist, maxZDist);
-
-				if (minDist == maxYDist) hitNorm = Directions.UP;
-				else if (minDist == minYDist) hitNorm = Directions.DOWN;
-				else if (minDist == maxXDist) hitNorm = Directions.POSITIVE_X;
-				else if (minDist == minXDist) hitNorm = Directions.NEGATIVE_X;
-				else if (minDist == maxZDist) hitNorm = Directions.POSITIVE_Z;
-				else if (minDist == minZDist) hitNorm = Directions.NEGATIVE_Z;
-				else {
-					hitNorm = Directions.UP;
-					System.err.println("Invalid hit!");
-				}
-
-				return new Hit(hitPos, hitNorm, pos);
-			}
-		}
-		return null;
+	public Hit getLookingAtPos(Vector3fc eyePos, Vector3fc eyeDir, float limit) {
+		Hit hit = new Hit();
+		return raycast(eyePos, eyeDir, limit, hit) ? hit : null;
 	}
 
 	/**
-	 * Increments the given position until it hits a new block space, moving in
-	 * the specified direction. Note that we move slightly into a block if
-	 * needed, to ensure accuracy, so the position may not be a whole number.
-	 * @param pos The position.
-	 * @param dir The direction to move in.
+	 * Casts a ray through the world, and finds the first non-air block that
+	 * it enters. This walks the ray one block boundary at a time (the
+	 * Amanatides-Woo voxel traversal), so it's exact and doesn't allocate
+	 * anything. The block that the origin is inside of is ignored.
+	 * @param origin The origin of the ray.
+	 * @param dir The direction of the ray. This doesn't need to be normalized.
+	 * @param limit The maximum distance along the ray to search.
+	 * @param dest The hit to fill with information about the block that was
+	 *             hit. This is cleared if nothing is hit.
+	 * @return True if a block was hit, or false otherwise.
 	 */
-	private static void stepToNextBlock(Vector3f pos, Vector3f dir) {
-		if (dir.lengthSquared() == 0) return;
-		// Find the amount we'd have to multiply dir by to get pos to move to the next block on that axis.
-		float factorX = Float.MAX_VALUE;
-		float factorY = Float.MAX_VALUE;
-		float factorZ = Float.MAX_VALUE;
-
-		if (dir.x != 0) factorX = factorToNextValue(pos.x, dir.x);
-		if (dir.y != 0) factorY = factorToNextValue(pos.y, dir.y);
-		if (dir.z != 0) factorZ = factorToNextValue(pos.z, dir.z);
-
-		float minFactor = Math.min(factorX, Math.min(factorY, factorZ));
-		dir.mulAdd(minFactor, pos, pos);
-	}
-
-	private static float factorToNextValue(float n, float dir) {
-		if (dir == 0) return Float.MAX_VALUE;
-		float nextValue;
-		if (dir > 0) {
-			nextValue = (Math.ceil(n) == n) ? n + 1 : Math.ceil(n);
-		} else {
-			nextValue = Math.floor(n) - DELTA;
-		}
-		float diff = nextValue - n;
-		// Testing code!
-		if (diff == 0) {
-			System.out.printf("n = %.8f, nextValue = %.8f, floor(n) - DELTA = %.8f%n", n, nextValue, Math.floor(n) - DELTA);
-			return Float.MAX_VALUE;
+	public boolean raycast(Vector3fc origin, Vector3fc dir, float limit, Hit dest) {
+		dest.clear();
+		float len = dir.length();
+		if (len == 0 || limit <= 0) return false;
+		final float ox = origin.x(), oy = origin.y(), oz = origin.z();
+		final float dx = dir.x() / len, dy = dir.y() / len, dz = dir.z() / len;
+		int x = (int) Math.floor(ox);
+		int y = (int) Math.floor(oy);
+		int z = (int) Math.floor(oz);
+		final int stepX = dx > 0 ? 1 : (dx < 0 ? -1 : 0);
+		final int stepY = dy > 0 ? 1 : (dy < 0 ? -1 : 0);
+		final int stepZ = dz > 0 ? 1 : (dz < 0 ? -1 : 0);
+		// The distance along the ray needed to cross one whole block on each axis.
+		final float tDeltaX = stepX != 0 ? Math.abs(1 / dx) : Float.POSITIVE_INFINITY;
+		final float tDeltaY = stepY != 0 ? Math.abs(1 / dy) : Float.POSITIVE_INFINITY;
+		final float tDeltaZ = stepZ != 0 ? Math.abs(1 / dz) : Float.POSITIVE_INFINITY;
+		// The distance along the ray at which we cross the next block boundary on each axis.
+		float tMaxX = stepX > 0 ? (x + 1 - ox) / dx : (stepX < 0 ? (ox - x) / -dx : Float.POSITIVE_INFINITY);
+		float tMaxY = stepY > 0 ? (y + 1 - oy) / dy : (stepY < 0 ? (oy - y) / -dy : Float.POSITIVE_INFINITY);
+		float tMaxZ = stepZ > 0 ? (z + 1 - oz) / dz : (stepZ < 0 ? (oz - z) / -dz : Float.POSITIVE_INFINITY);
+
+		// We only look up a new chunk when the ray crosses into one.
+		int cx = x >> Chunk.SIZE_BITS;
+		int cy = y >> Chunk.SIZE_BITS;
+		int cz = z >> Chunk.SIZE_BITS;
+		Chunk chunk = getChunkAt(cx, cy, cz);
+		while (true) {
+			float t;
+			Vector3ic norm;
+			if (tMaxX < tMaxY && tMaxX < tMaxZ) {
+				x += stepX;
+				t = tMaxX;
+				tMaxX += tDeltaX;
+				norm = stepX > 0 ? Directions.NEGATIVE_X : Directions.POSITIVE_X;
+			} else if (tMaxY < tMaxZ) {
+				y += stepY;
+				t = tMaxY;
+				tMaxY += tDeltaY;
+				norm = stepY > 0 ? Directions.DOWN : Directions.UP;
+			} else {
+				z += stepZ;
+				t = tMaxZ;
+				tMaxZ += tDeltaZ;
+				norm = stepZ > 0 ? Directions.NEGATIVE_Z : Directions.POSITIVE_Z;
+			}
+			if (!(t <= limit)) return false; // Also catches NaN, if we got a bad direction.
+
+			int ncx = x >> Chunk.SIZE_BITS;
+			int ncy = y >> Chunk.SIZE_BITS;
+			int ncz = z >> Chunk.SIZE_BITS;
+			if (ncx != cx || ncy != cy || ncz != cz) {
+				cx = ncx;
+				cy = ncy;
+				cz = ncz;
+				chunk = getChunkAt(cx, cy, cz);
+			}
+			if (chunk != null && !chunk.isEmpty() && chunk.getBlockAt(x & Chunk.LOCAL_MASK, y & Chunk.LOCAL_MASK, z & Chunk.LOCAL_MASK) > 0) {
+				dest.set(x, y, z, norm, ox + dx * t, oy + dy * t, oz + dz * t, t);
+				return true;
+			}
 		}
-		return Math.abs(diff / dir);
 	}
 
 	/**
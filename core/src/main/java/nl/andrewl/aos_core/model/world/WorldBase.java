@@ -0,0 +1,68 @@
+package nl.andrewl.aos_core.model.world;
+
+import org.joml.Vector3f;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable copy of a world's chunks, palette and spawn points, which any
+ * number of {@link OverlayWorld}s can be built on top of. The base's blocks
+ * are never changed, so overlays on different threads can share them.
+ */
+public final class WorldBase {
+	private final ChunkMap chunks = new ChunkMap();
+	private final float[] palette;
+	private final Map<String, Vector3f> spawnPoints = new HashMap<>();
+
+	private WorldBase(World world) {
+		for (long key : world.getChunkKeys()) {
+			Chunk chunk = new Chunk(world.getChunkAt(key));
+			// Computed once here, so that overlays can copy it.
+			chunk.blockHash();
+			chunks.put(chunk);
+		}
+		this.palette = world.getPalette().toArray();
+		world.getSpawnPoints().forEach((name, point) -> spawnPoints.put(name, new Vector3f(point)));
+	}
+
+	/**
+	 * Creates a base from a copy of the given world. The world can be
+	 * changed or discarded afterwards.
+	 * @param world The world to copy.
+	 * @return The base.
+	 */
+	public static WorldBase of(World world) {
+		return new WorldBase(world);
+	}
+
+	ChunkMap getChunks() {
+		return chunks;
+	}
+
+	/**
+	 * @return A new copy of the base's palette.
+	 */
+	public ColorPalette getPalette() {
+		return ColorPalette.fromArray(palette);
+	}
+
+	public Map<String, Vector3f> getSpawnPoints() {
+		return Collections.unmodifiableMap(spawnPoints);
+	}
+
+	public int getChunkCount() {
+		return chunks.size();
+	}
+
+	/**
+	 * @return An estimate of the number of bytes used to store the base's
+	 * blocks.
+	 */
+	public long getStorageSize() {
+		long size = 0;
+		for (var chunk : chunks.values()) size += chunk.getStorageSize();
+		return size;
+	}
+}
@@ -0,0 +1,213 @@
+package nl.andrewl.aos_core.model.world;
+
+import net.openhft.hashing.LongHashFunction;
+import org.joml.Vector3i;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A Merkle tree over the block hashes of a world's chunks, which lets two
+ * copies of a world be compared by exchanging only a few hashes.
+ * <p>
+ *     The tree is an octree that's aligned to an origin chunk. A node at
+ *     level {@code L} covers a cube of {@code 2^L} chunks per axis, and has
+ *     8 children at level {@code L - 1}. Level 0 nodes are single chunks,
+ *     whose hash is the chunk's {@link Chunk#blockHash()}, or 0 if there's
+ *     no chunk there. Every other node's hash is a hash of its children's
+ *     hashes, or 0 if it doesn't contain any chunks.
+ * </p>
+ * <p>
+ *     Nodes are identified by their level and an index, which is the Morton
+ *     code (interleaved x, y and z bits) of the chunk position relative to
+ *     the origin, shifted right by {@code 3 * level}. The root node is always
+ *     at index 0. A node's children are at {@code (index << 3) | i} for
+ *     {@code i} in 0 to 7.
+ * </p>
+ * <p>
+ *     A digest holds on to the chunks that it was built from, and reads
+ *     their hashes as needed, so it stays valid as blocks change. It must be
+ *     rebuilt when chunks are added to or removed from the world.
+ * </p>
+ */
+public final class WorldDigest {
+	/**
+	 * The maximum level of a tree. This keeps node indices and their bounds
+	 * within a positive long.
+	 */
+	public static final int MAX_LEVEL = 20;
+
+	/**
+	 * The number of children of each node.
+	 */
+	public static final int CHILDREN = 8;
+
+	private static final LongHashFunction NODE_HASH = LongHashFunction.xx3(0);
+
+	private final int ox, oy, oz;
+	private final int level;
+	private final long[] codes;
+	private final Chunk[] chunks;
+
+	/**
+	 * Builds a digest of the given chunks, in the given frame. Chunks outside
+	 * of the root node are ignored.
+	 */
+	WorldDigest(int ox, int oy, int oz, int level, ChunkMap chunkMap) {
+		if (level < 0 || level > MAX_LEVEL) throw new IllegalArgumentException("Invalid level " + level);
+		this.ox = ox;
+		this.oy = oy;
+		this.oz = oz;
+		this.level = level;
+		int size = 1 << level;
+		// The map may change while we read it, so we work from a copy of its chunks.
+		Chunk[] inFrame = chunkMap.values().toArray(new Chunk[0]);
+		int count = 0;
+		for (var chunk : inFrame) {
+			int rx = chunk.getPosition().x - ox;
+			int ry = chunk.getPosition().y - oy;
+			int rz = chunk.getPosition().z - oz;
+			if (rx < 0 || rx >= size || ry < 0 || ry >= size || rz < 0 || rz >= size) continue;
+			inFrame[count++] = chunk;
+		}
+		this.chunks = Arrays.copyOf(inFrame, count);
+		Arrays.sort(chunks, Comparator.comparingLong(this::mortonCode));
+		this.codes = new long[count];
+		for (int i = 0; i < count; i++) codes[i] = mortonCode(chunks[i]);
+	}
+
+	private long mortonCode(Chunk chunk) {
+		Vector3i p = chunk.getPosition();
+		return mortonCode(p.x - ox, p.y - oy, p.z - oz);
+	}
+
+	public int getOriginX() {
+		return ox;
+	}
+
+	public int getOriginY() {
+		return oy;
+	}
+
+	public int getOriginZ() {
+		return oz;
+	}
+
+	/**
+	 * @return The level of the root node.
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * Checks if this digest uses the given frame.
+	 * @return True if this digest has the given origin and root level.
+	 */
+	public boolean hasFrame(int ox, int oy, int oz, int level) {
+		return this.ox == ox && this.oy == oy && this.oz == oz && this.level == level;
+	}
+
+	public long getRootHash() {
+		return getHash(level, 0);
+	}
+
+	/**
+	 * Gets the hash of a node in the tree.
+	 * @param nodeLevel The level of the node.
+	 * @param nodeIndex The index of the node.
+	 * @return The node's hash, or 0 if it doesn't contain any chunks.
+	 */
+	public long getHash(int nodeLevel, long nodeIndex) {
+		if (nodeLevel < 0 || nodeLevel > level) return 0;
+		int shift = 3 * nodeLevel;
+		int from = lowerBound(nodeIndex << shift, 0, codes.length);
+		int to = lowerBound((nodeIndex + 1) << shift, from, codes.length);
+		return hashRange(nodeLevel, from, to);
+	}
+
+	/**
+	 * Gets the hashes of all children of a node in the tree.
+	 * @param nodeLevel The level of the node. This must be at least 1.
+	 * @param nodeIndex The index of the node.
+	 * @return An array of {@link WorldDigest#CHILDREN} hashes.
+	 */
+	public long[] getChildHashes(int nodeLevel, long nodeIndex) {
+		long[] hashes = new long[CHILDREN];
+		if (nodeLevel < 1 || nodeLevel > level) return hashes;
+		for (int i = 0; i < CHILDREN; i++) {
+			hashes[i] = getHash(nodeLevel - 1, (nodeIndex << 3) | i);
+		}
+		return hashes;
+	}
+
+	/**
+	 * Gets the position of the chunk that a level 0 node covers.
+	 * @param nodeIndex The index of the level 0 node.
+	 * @return The chunk position.
+	 */
+	public Vector3i getChunkPos(long nodeIndex) {
+		return new Vector3i(
+				ox + compact(nodeIndex >>> 2),
+				oy + compact(nodeIndex >>> 1),
+				oz + compact(nodeIndex)
+		);
+	}
+
+	private long hashRange(int nodeLevel, int from, int to) {
+		if (from >= to) return 0;
+		if (nodeLevel == 0) return chunks[from].blockHash();
+		long[] childHashes = new long[CHILDREN];
+		int shift = 3 * (nodeLevel - 1);
+		int start = from;
+		for (int i = 0; i < CHILDREN && start < to; i++) {
+			int child = (int) (codes[start] >>> shift) & 7;
+			int end = start;
+			while (end < to && ((int) (codes[end] >>> shift) & 7) == child) end++;
+			childHashes[child] = hashRange(nodeLevel - 1, start, end);
+			start = end;
+		}
+		return NODE_HASH.hashLongs(childHashes);
+	}
+
+	private int lowerBound(long code, int from, int to) {
+		int lo = from, hi = to;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (codes[mid] < code) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Interleaves the bits of 3 coordinates of up to 21 bits each, with the x
+	 * coordinate's bits placed highest.
+	 */
+	static long mortonCode(int x, int y, int z) {
+		return (spread(x) << 2) | (spread(y) << 1) | spread(z);
+	}
+
+	private static long spread(int v) {
+		long x = v & 0x1FFFFFL;
+		x = (x | x << 32) & 0x1F00000000FFFFL;
+		x = (x | x << 16) & 0x1F0000FF0000FFL;
+		x = (x | x << 8) & 0x100F00F00F00F00FL;
+		x = (x | x << 4) & 0x10C30C30C30C30C3L;
+		x = (x | x << 2) & 0x1249249249249249L;
+		return x;
+	}
+
+	private static int compact(long v) {
+		long x = v & 0x1249249249249249L;
+		x = (x ^ (x >>> 2)) & 0x10C30C30C30C30C3L;
+		x = (x ^ (x >>> 4)) & 0x100F00F00F00F00FL;
+		x = (x ^ (x >>> 8)) & 0x1F0000FF0000FFL;
+		x = (x ^ (x >>> 16)) & 0x1F00000000FFFFL;
+		x = (x ^ (x >>> 32)) & 0x1FFFFFL;
+		return (int) x;
+	}
+}
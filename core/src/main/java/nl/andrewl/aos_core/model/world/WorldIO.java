@@ -3,14 +3,52 @@ package nl.andrewl.aos_core.model.world;
 import org.joml.Vector3f;
 
 import java.io.*;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
 import java.util.Map;
 
+import static java.nio.file.StandardOpenOption.*;
+
 /**
  * Utility class for reading and writing worlds to files.
+ * <p>
+ *     Worlds are written in version 2 of the format, which is laid out as:
+ * </p>
+ * <ol>
+ *     <li>The {@link WorldIO#MAGIC} number and the format version.</li>
+ *     <li>The color palette, as {@link ColorPalette#MAX_COLORS} RGB floats.</li>
+ *     <li>The number of spawn points, and each one's name and location.</li>
+ *     <li>The number of chunks, and an index with each chunk's coordinates,
+ *     and the offset and length of its data, relative to the start of the
+ *     world.</li>
+ *     <li>Each chunk's data, encoded by a {@link ChunkCodec}, in the same
+ *     order as the index.</li>
+ * </ol>
+ * <p>
+ *     Version 1 worlds had no magic number or index, and each chunk was
+ *     stored as its coordinates followed by its raw blocks. These can still
+ *     be read. A version 1 world starts with a palette color component
+ *     between 0 and 1, which can't be confused with the magic number.
+ * </p>
  */
 public final class WorldIO {
+	/**
+	 * The magic number at the start of each world, which is "AOSW" in ASCII.
+	 */
+	public static final int MAGIC = 0x414F5357;
+	public static final int VERSION = 2;
+
+	private static final int INDEX_ENTRY_SIZE = 5 * Integer.BYTES;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	/**
+	 * The number of chunks that are encoded or decoded together, by one
+	 * worker thread.
+	 */
+	private static final int BATCH_SIZE = 64;
+
 	/**
 	 * Writes a world to an output stream.
 	 * @param world The world to write.
@@ -18,7 +56,24 @@ public final class WorldIO {
 	 * @throws IOException If an exception occurs.
 	 */
 	public static void write(World world, OutputStream out) throws IOException {
-		var d = new DataOutputStream(out);
+		write(world, Channels.newChannel(out));
+	}
+
+	/**
+	 * Writes a world to a channel. Chunks are encoded in parallel, in batches
+	 * of their blocks that are copied on the calling thread. Once every chunk
+	 * is encoded, so that the index can be written, everything is written in
+	 * order. Data is collected into large buffers before being written, and
+	 * chunks that are stored raw are written directly from their storage.
+	 * @param world The world to write.
+	 * @param channel The channel to write to.
+	 * @throws IOException If an exception occurs.
+	 */
+	public static void write(World world, WritableByteChannel channel) throws IOException {
+		var headerBytes = new ByteArrayOutputStream();
+		var d = new DataOutputStream(headerBytes);
+		d.writeInt(MAGIC);
+		d.writeInt(VERSION);
 		// Write color palette.
 		for (var v : world.getPalette().toArray()) {
 			d.writeFloat(v);
@@ -34,35 +89,214 @@ public final class WorldIO {
 			d.writeFloat(entry.getValue().y());
 			d.writeFloat(entry.getValue().z());
 		}
-		// Write chunks.
-		var chunks = world.getChunkMap().values();
-		d.writeInt(chunks.size());
-		for (var chunk : chunks) {
-			d.writeInt(chunk.getPosition().x);
-			d.writeInt(chunk.getPosition().y);
-			d.writeInt(chunk.getPosition().z);
-			d.write(chunk.getBlocks());
+		// Encode chunks, so that we know their sizes for the index. Chunks are
+		// looked up by key, since a world might not keep all of them in memory.
+		long[] keys = world.getChunkKeys();
+		d.writeInt(keys.length);
+		byte[][] encoded = new byte[keys.length][];
+		var pipeline = new BatchPipeline<Void>(result -> {});
+		for (int from = 0; from < keys.length; from += BATCH_SIZE) {
+			int batchStart = from;
+			byte[][] batch = new byte[Math.min(BATCH_SIZE, keys.length - from)][Chunk.TOTAL_SIZE];
+			for (int i = 0; i < batch.length; i++) {
+				world.getChunkAt(keys[from + i]).copyBlocks(batch[i]);
+			}
+			pipeline.submit(() -> {
+				ChunkCodec codec = new ChunkCodec();
+				try {
+					for (int i = 0; i < batch.length; i++) {
+						encoded[batchStart + i] = codec.encode(batch[i]);
+					}
+				} finally {
+					codec.close();
+				}
+				return null;
+			});
 		}
+		pipeline.finish();
+
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		buffer.put(headerBytes.toByteArray());
+		// Write the chunk index.
+		int offset = headerBytes.size() + keys.length * INDEX_ENTRY_SIZE;
+		for (int i = 0; i < keys.length; i++) {
+			if (buffer.remaining() < INDEX_ENTRY_SIZE) flush(buffer, channel);
+			int length = encodedLength(encoded[i]);
+			buffer.putInt(ChunkMap.keyX(keys[i]))
+					.putInt(ChunkMap.keyY(keys[i]))
+					.putInt(ChunkMap.keyZ(keys[i]))
+					.putInt(offset)
+					.putInt(length);
+			offset += length;
+		}
+		// Write each chunk's data.
+		byte[] blocks = new byte[Chunk.TOTAL_SIZE];
+		for (int i = 0; i < keys.length; i++) {
+			if (encoded[i] != null) {
+				if (buffer.remaining() < encoded[i].length) flush(buffer, channel);
+				if (buffer.remaining() < encoded[i].length) {
+					ChunkStorage.writeFully(channel, ByteBuffer.wrap(encoded[i]));
+				} else {
+					buffer.put(encoded[i]);
+				}
+			} else {
+				if (!buffer.hasRemaining()) flush(buffer, channel);
+				buffer.put(ChunkCodec.RAW);
+				flush(buffer, channel);
+				world.getChunkAt(keys[i]).writeBlocks(channel, blocks);
+			}
+		}
+		flush(buffer, channel);
 	}
 
 	public static void write(World world, Path filePath) throws IOException {
-		try (var out = Files.newOutputStream(filePath)) {
-			write(world, out);
+		try (var channel = FileChannel.open(filePath, CREATE, TRUNCATE_EXISTING, WRITE)) {
+			write(world, channel);
 		}
 	}
 
 	/**
-	 * Reads a world from an input stream.
+	 * Reads a world from an input stream. This reads exactly the bytes of the
+	 * world, so the stream may be used for other data afterwards. Chunk data
+	 * is read in batches on the calling thread, and decoded in parallel.
 	 * @param in The input stream to read from.
 	 * @return The world which was read.
 	 * @throws IOException If an exception occurs.
 	 */
 	public static World read(InputStream in) throws IOException {
-		World world = new World();
 		var d = new DataInputStream(in);
+		int first = d.readInt();
+		if (first != MAGIC) {
+			return readV1(d, Float.intBitsToFloat(first));
+		}
+		int version = d.readInt();
+		if (version != VERSION) throw new IOException("Unsupported world version " + version);
+		World world = new World();
+		readPaletteAndSpawnPoints(d, world, d.readFloat());
+		int chunkCount = d.readInt();
+		int[] index = new int[chunkCount * 5];
+		for (int i = 0; i < index.length; i++) {
+			index[i] = d.readInt();
+			if (i % 5 == 4 && (index[i] < 1 || index[i] > 1 + Chunk.TOTAL_SIZE)) {
+				throw new IOException("Invalid chunk length " + index[i]);
+			}
+		}
+		var pipeline = new BatchPipeline<Chunk[]>(chunks -> {
+			for (var chunk : chunks) world.addChunk(chunk);
+		});
+		for (int from = 0; from < chunkCount; from += BATCH_SIZE) {
+			int[] positions = new int[Math.min(BATCH_SIZE, chunkCount - from) * 3];
+			byte[][] data = new byte[positions.length / 3][];
+			for (int i = 0; i < data.length; i++) {
+				int entry = (from + i) * 5;
+				System.arraycopy(index, entry, positions, i * 3, 3);
+				data[i] = new byte[index[entry + 4]];
+				d.readFully(data[i]);
+			}
+			pipeline.submit(() -> decodeBatch(positions, data, true));
+		}
+		pipeline.finish();
+		return world;
+	}
+
+	public static World read(Path filePath) throws IOException {
+		try (var channel = FileChannel.open(filePath, READ)) {
+			return read(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+		}
+	}
+
+	/**
+	 * Reads a single chunk from a world file, using its chunk index so that
+	 * the rest of the file doesn't need to be read.
+	 * @param filePath The path to the world file.
+	 * @param cx The chunk's x coordinate.
+	 * @param cy The chunk's y coordinate.
+	 * @param cz The chunk's z coordinate.
+	 * @return The chunk, or null if the world doesn't contain it.
+	 * @throws IOException If an exception occurs, or if the file isn't a
+	 * version 2 world.
+	 */
+	public static Chunk readChunk(Path filePath, int cx, int cy, int cz) throws IOException {
+		try (var channel = FileChannel.open(filePath, READ)) {
+			var d = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+			if (d.readInt() != MAGIC) throw new IOException("World file doesn't have a chunk index.");
+			int version = d.readInt();
+			if (version != VERSION) throw new IOException("Unsupported world version " + version);
+			readPaletteAndSpawnPoints(d, new World(), d.readFloat());
+			int chunkCount = d.readInt();
+			for (int i = 0; i < chunkCount; i++) {
+				int x = d.readInt(), y = d.readInt(), z = d.readInt();
+				int offset = d.readInt(), length = d.readInt();
+				if (x == cx && y == cy && z == cz) {
+					ByteBuffer data = ByteBuffer.allocate(length);
+					while (data.hasRemaining()) {
+						if (channel.read(data, offset + data.position()) < 0) throw new EOFException();
+					}
+					ChunkCodec codec = new ChunkCodec();
+					try {
+						return new Chunk(cx, cy, cz, codec.decode(data.array(), length));
+					} finally {
+						codec.close();
+					}
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the rest of a version 1 world, after its first value.
+	 */
+	private static World readV1(DataInputStream d, float firstPaletteValue) throws IOException {
+		World world = new World();
+		readPaletteAndSpawnPoints(d, world, firstPaletteValue);
+		int chunkCount = d.readInt();
+		var pipeline = new BatchPipeline<Chunk[]>(chunks -> {
+			for (var chunk : chunks) world.addChunk(chunk);
+		});
+		for (int from = 0; from < chunkCount; from += BATCH_SIZE) {
+			int[] positions = new int[Math.min(BATCH_SIZE, chunkCount - from) * 3];
+			byte[][] data = new byte[positions.length / 3][Chunk.TOTAL_SIZE];
+			for (int i = 0; i < data.length; i++) {
+				positions[i * 3] = d.readInt();
+				positions[i * 3 + 1] = d.readInt();
+				positions[i * 3 + 2] = d.readInt();
+				d.readFully(data[i]);
+			}
+			pipeline.submit(() -> decodeBatch(positions, data, false));
+		}
+		pipeline.finish();
+		return world;
+	}
+
+	/**
+	 * Builds the chunks of a batch that was read from a world.
+	 * @param positions The chunk coordinates, 3 per chunk.
+	 * @param data Each chunk's data.
+	 * @param encoded Whether the data is encoded by a {@link ChunkCodec}, or
+	 *                if it's just the raw blocks.
+	 * @return The chunks.
+	 * @throws IOException If any chunk's data is invalid.
+	 */
+	private static Chunk[] decodeBatch(int[] positions, byte[][] data, boolean encoded) throws IOException {
+		Chunk[] chunks = new Chunk[data.length];
+		ChunkCodec codec = encoded ? new ChunkCodec() : null;
+		try {
+			for (int i = 0; i < chunks.length; i++) {
+				byte[] blocks = encoded ? codec.decode(data[i], data[i].length) : data[i];
+				chunks[i] = new Chunk(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2], blocks);
+			}
+		} finally {
+			if (codec != null) codec.close();
+		}
+		return chunks;
+	}
+
+	private static void readPaletteAndSpawnPoints(DataInputStream d, World world, float firstPaletteValue) throws IOException {
 		// Read color palette.
 		ColorPalette palette = new ColorPalette();
-		for (int i = 0; i < ColorPalette.MAX_COLORS; i++) {
+		palette.setColor((byte) 1, firstPaletteValue, d.readFloat(), d.readFloat());
+		for (int i = 1; i < ColorPalette.MAX_COLORS; i++) {
 			palette.setColor((byte) (i + 1), d.readFloat(), d.readFloat(), d.readFloat());
 		}
 		world.setPalette(palette);
@@ -73,23 +307,15 @@ public final class WorldIO {
 			Vector3f location = new Vector3f(d.readFloat(), d.readFloat(), d.readFloat());
 			world.setSpawnPoint(name, location);
 		}
-		// Read chunks.
-		int chunkCount = d.readInt();
-		for (int i = 0; i < chunkCount; i++) {
-			Chunk chunk = new Chunk(
-					d.readInt(),
-					d.readInt(),
-					d.readInt(),
-					d.readNBytes(Chunk.TOTAL_SIZE)
-			);
-			world.addChunk(chunk);
-		}
-		return world;
 	}
 
-	public static World read(Path filePath) throws IOException {
-		try (var in = Files.newInputStream(filePath)) {
-			return read(in);
-		}
+	private static int encodedLength(byte[] encoded) {
+		return encoded == null ? 1 + Chunk.TOTAL_SIZE : encoded.length;
+	}
+
+	private static void flush(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+		buffer.flip();
+		ChunkStorage.writeFully(channel, buffer);
+		buffer.clear();
 	}
 }
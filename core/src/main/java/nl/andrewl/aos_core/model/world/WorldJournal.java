@@ -0,0 +1,411 @@
+package nl.andrewl.aos_core.model.world;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * An append-only journal of the block changes made to a world, which lets a
+ * world be persisted continuously without writing all of it each time.
+ * <p>
+ *     Changes are recorded by the world as they're made, and a background
+ *     thread appends them in batches to the current journal segment. Each
+ *     batch is a frame with its length and a CRC-32 checksum, so that a
+ *     frame that was only partly written before a crash is detected and
+ *     ignored. Entries set blocks to absolute values, so replaying an entry
+ *     more than once has no effect.
+ * </p>
+ * <p>
+ *     Every so often, the journal is compacted into a snapshot of the whole
+ *     world:
+ * </p>
+ * <ol>
+ *     <li>A new segment is started, on the thread that updates the world.</li>
+ *     <li>A few chunks are copied on each {@link WorldJournal#tick()}, so
+ *     that the world is never paused for long.</li>
+ *     <li>The copies are written as a snapshot by the background thread, and
+ *     older segments and snapshots are deleted.</li>
+ * </ol>
+ * <p>
+ *     Since chunks are copied over several ticks, a snapshot might include
+ *     some changes from after its segment was started, but not others.
+ *     That's fine, because every one of those changes is in the snapshot's
+ *     segment or later ones, and is replayed on top of it when the world is
+ *     {@link WorldJournal#recover(Path, World) recovered}.
+ * </p>
+ */
+public final class WorldJournal {
+	private static final byte ENTRY_SET = 1;
+	private static final byte ENTRY_FILL = 2;
+	private static final int FRAME_HEADER_SIZE = 2 * Integer.BYTES;
+
+	/**
+	 * The number of chunks to copy for a snapshot on each tick.
+	 */
+	private static final int SNAPSHOT_CHUNKS_PER_TICK = 16;
+
+	private static final Pattern SEGMENT_NAME = Pattern.compile("journal\\.(\\d+)\\.log");
+	private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot\\.(\\d+)\\.wld");
+
+	private final Path directory;
+	private final World world;
+	private final ScheduledExecutorService executor;
+
+	/**
+	 * Entries that haven't been written yet. Any thread may record entries,
+	 * so access is synchronized on this journal.
+	 */
+	private ByteArrayOutputStream pendingBytes = new ByteArrayOutputStream();
+	private DataOutputStream pending = new DataOutputStream(pendingBytes);
+	private long segment;
+	/**
+	 * Batches of entries for earlier segments, which must be written before
+	 * any entries of the current segment.
+	 */
+	private final List<Batch> sealedBatches = new ArrayList<>();
+
+	// These are only used by the background thread.
+	private FileChannel segmentChannel;
+	private long segmentChannelNumber = -1;
+	private final CRC32 crc = new CRC32();
+
+	private volatile boolean compactionRequested;
+	// This is only used by the thread that updates the world.
+	private Snapshot snapshot;
+
+	private record Batch(long segment, byte[] data) {}
+
+	/**
+	 * A snapshot that's in the process of being copied.
+	 */
+	private static final class Snapshot {
+		final long segment;
+		final long[] keys;
+		final World copy;
+		int nextKey;
+
+		Snapshot(long segment, World world) {
+			this.segment = segment;
+			this.keys = world.getChunkKeys();
+			this.copy = new World(world.getPalette());
+			world.getSpawnPoints().forEach(copy::setSpawnPoint);
+		}
+	}
+
+	private WorldJournal(Path directory, World world, long segment) {
+		this.directory = directory;
+		this.world = world;
+		this.segment = segment;
+		this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "World Journal");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Recovers a world from a journal, by reading its latest snapshot, and
+	 * replaying all journal entries that came after it. Any incomplete or
+	 * corrupted entries at the end of a segment are ignored.
+	 * @param directory The journal's directory.
+	 * @param base The world to replay entries on if there's no snapshot yet.
+	 * @return The recovered world.
+	 * @throws IOException If the snapshot can't be read.
+	 */
+	public static World recover(Path directory, World base) throws IOException {
+		if (!Files.isDirectory(directory)) return base;
+		var snapshots = listFiles(directory, SNAPSHOT_NAME);
+		World world = base;
+		long firstSegment = 0;
+		if (!snapshots.isEmpty()) {
+			firstSegment = snapshots.lastKey();
+			world = WorldIO.read(snapshots.lastEntry().getValue());
+		}
+		for (var entry : listFiles(directory, SEGMENT_NAME).tailMap(firstSegment).entrySet()) {
+			replay(entry.getValue(), world);
+		}
+		return world;
+	}
+
+	/**
+	 * Starts journaling a world's changes. This should be done after the
+	 * world is {@link WorldJournal#recover(Path, World) recovered}.
+	 * @param directory The directory to keep the journal in. It's created if
+	 *                  it doesn't exist.
+	 * @param world The world to journal.
+	 * @param flushInterval The number of seconds between writing batches of
+	 *                      entries to disk.
+	 * @param compactionInterval The number of seconds between compacting the
+	 *                           journal, or 0 to never compact it
+	 *                           automatically.
+	 * @return The journal.
+	 * @throws IOException If the directory can't be created.
+	 */
+	public static WorldJournal open(Path directory, World world, float flushInterval, float compactionInterval) throws IOException {
+		Files.createDirectories(directory);
+		long segment = 0;
+		var segments = listFiles(directory, SEGMENT_NAME);
+		if (!segments.isEmpty()) segment = segments.lastKey() + 1;
+		var snapshots = listFiles(directory, SNAPSHOT_NAME);
+		if (!snapshots.isEmpty()) segment = Math.max(segment, snapshots.lastKey());
+		var journal = new WorldJournal(directory, world, segment);
+		long flushMillis = Math.max(1, (long) (flushInterval * 1000));
+		journal.executor.scheduleWithFixedDelay(journal::writePendingSafely, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+		if (compactionInterval > 0) {
+			long compactionMillis = (long) (compactionInterval * 1000);
+			journal.executor.scheduleWithFixedDelay(journal::requestCompaction, compactionMillis, compactionMillis, TimeUnit.MILLISECONDS);
+		}
+		world.setJournal(journal);
+		return journal;
+	}
+
+	synchronized void recordSet(int x, int y, int z, byte block) {
+		try {
+			pending.writeByte(ENTRY_SET);
+			pending.writeInt(x);
+			pending.writeInt(y);
+			pending.writeInt(z);
+			pending.writeByte(block);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e); // Can't happen when writing to memory.
+		}
+	}
+
+	synchronized void recordChanges(BlockChangeSet changes) {
+		try {
+			long[] keys = changes.getChunkKeys();
+			int[] runCounts = changes.getRunCounts();
+			int[] runs = changes.getRuns();
+			pending.writeByte(ENTRY_FILL);
+			pending.writeByte(changes.getBlock());
+			pending.writeInt(keys.length);
+			for (int i = 0; i < keys.length; i++) {
+				pending.writeLong(keys[i]);
+				pending.writeInt(runCounts[i]);
+			}
+			pending.writeInt(runs.length);
+			for (int run : runs) pending.writeInt(run);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Asks for the journal to be compacted into a snapshot. The snapshot is
+	 * copied during the next few calls to {@link WorldJournal#tick()}.
+	 */
+	public void requestCompaction() {
+		compactionRequested = true;
+	}
+
+	/**
+	 * @return True if a compaction has been requested, or is in progress.
+	 */
+	public boolean isCompacting() {
+		return compactionRequested || snapshot != null;
+	}
+
+	/**
+	 * Does a bit of work towards the current compaction, if there is one.
+	 * This must be called regularly by the thread that updates the world,
+	 * like once per tick.
+	 */
+	public void tick() {
+		if (snapshot == null) {
+			if (!compactionRequested) return;
+			synchronized (this) {
+				sealPending();
+				segment++;
+				snapshot = new Snapshot(segment, world);
+			}
+		}
+		Snapshot s = snapshot;
+		int end = Math.min(s.keys.length, s.nextKey + SNAPSHOT_CHUNKS_PER_TICK);
+		for (int i = s.nextKey; i < end; i++) {
+			Chunk chunk = world.getChunkAt(s.keys[i]);
+			if (chunk != null) s.copy.addChunk(new Chunk(chunk));
+		}
+		s.nextKey = end;
+		if (end == s.keys.length) {
+			executor.execute(() -> writeSnapshot(s));
+			snapshot = null;
+			compactionRequested = false;
+		}
+	}
+
+	/**
+	 * Writes all entries that have been recorded so far, and waits for them
+	 * to be on disk.
+	 * @throws IOException If the entries couldn't be written.
+	 */
+	public void flush() throws IOException {
+		try {
+			executor.submit(() -> {
+				writePending();
+				return null;
+			}).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while flushing the journal.");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException io) throw io;
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Writes all remaining entries, and stops the journal. The world stops
+	 * recording changes.
+	 * @throws IOException If the entries couldn't be written.
+	 */
+	public void close() throws IOException {
+		world.setJournal(null);
+		flush();
+		executor.shutdown();
+		try {
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (segmentChannel != null) segmentChannel.close();
+	}
+
+	/**
+	 * Moves the pending entries into a batch for the current segment.
+	 */
+	private void sealPending() {
+		if (pendingBytes.size() == 0) return;
+		sealedBatches.add(new Batch(segment, pendingBytes.toByteArray()));
+		pendingBytes = new ByteArrayOutputStream();
+		pending = new DataOutputStream(pendingBytes);
+	}
+
+	private void writePendingSafely() {
+		try {
+			writePending();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void writePending() throws IOException {
+		List<Batch> batches;
+		synchronized (this) {
+			sealPending();
+			if (sealedBatches.isEmpty()) return;
+			batches = new ArrayList<>(sealedBatches);
+			sealedBatches.clear();
+		}
+		for (var batch : batches) {
+			if (batch.segment() != segmentChannelNumber) {
+				if (segmentChannel != null) {
+					segmentChannel.force(false);
+					segmentChannel.close();
+				}
+				segmentChannel = FileChannel.open(segmentPath(batch.segment()), CREATE, WRITE, APPEND);
+				segmentChannelNumber = batch.segment();
+			}
+			crc.reset();
+			crc.update(batch.data());
+			ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE)
+					.putInt(batch.data().length)
+					.putInt((int) crc.getValue())
+					.flip();
+			ChunkStorage.writeFully(segmentChannel, header);
+			ChunkStorage.writeFully(segmentChannel, ByteBuffer.wrap(batch.data()));
+		}
+		segmentChannel.force(false);
+	}
+
+	private void writeSnapshot(Snapshot s) {
+		try {
+			// Entries from before the snapshot's segment must be on disk before
+			// we delete anything.
+			writePending();
+			if (segmentChannel != null && segmentChannelNumber < s.segment) {
+				segmentChannel.close();
+				segmentChannel = null;
+				segmentChannelNumber = -1;
+			}
+			Path tmp = directory.resolve("snapshot.tmp");
+			try (var channel = FileChannel.open(tmp, CREATE, TRUNCATE_EXISTING, WRITE)) {
+				WorldIO.write(s.copy, channel);
+				channel.force(true);
+			}
+			Files.move(tmp, directory.resolve("snapshot." + s.segment + ".wld"), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			for (var file : listFiles(directory, SNAPSHOT_NAME).headMap(s.segment).values()) {
+				Files.delete(file);
+			}
+			for (var file : listFiles(directory, SEGMENT_NAME).headMap(s.segment).values()) {
+				Files.delete(file);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private Path segmentPath(long segment) {
+		return directory.resolve("journal." + segment + ".log");
+	}
+
+	private static TreeMap<Long, Path> listFiles(Path directory, Pattern pattern) throws IOException {
+		TreeMap<Long, Path> files = new TreeMap<>();
+		try (var s = Files.list(directory)) {
+			for (var file : s.toList()) {
+				var matcher = pattern.matcher(file.getFileName().toString());
+				if (matcher.matches()) files.put(Long.parseLong(matcher.group(1)), file);
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * Replays all complete frames of a segment on a world.
+	 */
+	private static void replay(Path segmentFile, World world) throws IOException {
+		byte[] bytes = Files.readAllBytes(segmentFile);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		CRC32 crc = new CRC32();
+		while (buffer.remaining() >= FRAME_HEADER_SIZE) {
+			int length = buffer.getInt();
+			int checksum = buffer.getInt();
+			if (length < 0 || length > buffer.remaining()) return;
+			crc.reset();
+			crc.update(bytes, buffer.position(), length);
+			if ((int) crc.getValue() != checksum) return;
+			var frame = new DataInputStream(new ByteArrayInputStream(bytes, buffer.position(), length));
+			buffer.position(buffer.position() + length);
+			while (frame.available() > 0) {
+				byte type = frame.readByte();
+				if (type == ENTRY_SET) {
+					world.setBlockAt(frame.readInt(), frame.readInt(), frame.readInt(), frame.readByte());
+				} else if (type == ENTRY_FILL) {
+					byte block = frame.readByte();
+					int chunkCount = frame.readInt();
+					long[] keys = new long[chunkCount];
+					int[] runCounts = new int[chunkCount];
+					for (int i = 0; i < chunkCount; i++) {
+						keys[i] = frame.readLong();
+						runCounts[i] = frame.readInt();
+					}
+					int[] runs = new int[frame.readInt()];
+					for (int i = 0; i < runs.length; i++) runs[i] = frame.readInt();
+					world.applyChanges(new BlockChangeSet(block, keys, runCounts, runs));
+				} else {
+					throw new IOException("Unknown journal entry type " + type + " in " + segmentFile);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package nl.andrewl.aos_core.model.world;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Rotates through a list of worlds, changing to the next one at the end of
+ * each round. The next world is loaded by an executor while the current round
+ * is played, so that changing worlds doesn't hold up the game's ticks.
+ * <p>
+ *     Everything but loading is done by the thread that calls
+ *     {@link WorldRotation#tick(long)}, which is given the current time, so
+ *     that the rotation never depends on the system clock.
+ * </p>
+ * <p>
+ *     After a change, players are only respawned once they have the new
+ *     world. They're queued with {@link WorldRotation#queueRespawn(Object, CompletionStage)},
+ *     and respawned on the ticking thread by {@link WorldRotation#respawnQueued(Consumer)}.
+ * </p>
+ * @param <P> The type of player.
+ */
+public class WorldRotation<P> {
+	private final String[] worlds;
+	private final long roundDurationMillis;
+	private final Function<String, World> loader;
+	private final Executor executor;
+	private final Queue<P> respawnQueue = new ConcurrentLinkedQueue<>();
+
+	private int nextIndex = 1;
+	/**
+	 * The world that's loading for the next round. This is replaced by the
+	 * ticking thread, and read by others when they request a change.
+	 */
+	private volatile CompletableFuture<World> nextWorld;
+	private long roundEndsAt;
+	private volatile boolean changeRequested;
+	private boolean waiting;
+
+	/**
+	 * Creates a rotation.
+	 * @param worlds The names of the worlds to rotate through, starting with
+	 *               the one that's used for the first round.
+	 * @param roundDurationMillis The length of each round, or 0 if rounds
+	 *                            only end when a change is requested.
+	 * @param loader Loads a world by its name. It may throw an unchecked
+	 *               exception if the world can't be loaded.
+	 * @param executor The executor that loads worlds.
+	 */
+	public WorldRotation(String[] worlds, long roundDurationMillis, Function<String, World> loader, Executor executor) {
+		this.worlds = worlds;
+		this.roundDurationMillis = roundDurationMillis;
+		this.loader = loader;
+		this.executor = executor;
+	}
+
+	/**
+	 * Starts the first round, and starts loading the next world. Nothing
+	 * happens if there's only one world.
+	 * @param currentTimeMillis The current timestamp.
+	 */
+	public void start(long currentTimeMillis) {
+		if (worlds.length < 2) return;
+		roundEndsAt = currentTimeMillis + roundDurationMillis;
+		loadNextWorld();
+	}
+
+	/**
+	 * Ends the current round as soon as the next world is loaded.
+	 * @return False if the rotation wasn't started.
+	 */
+	public boolean requestChange() {
+		if (nextWorld == null) return false;
+		changeRequested = true;
+		return true;
+	}
+
+	/**
+	 * Checks if the round is over and the next world is loaded, and if so,
+	 * starts the next round, and starts loading the world after it. If the
+	 * next world couldn't be loaded, the current one is kept for another
+	 * round.
+	 * @param currentTimeMillis The current timestamp.
+	 * @return The world to change to, or null if the world shouldn't change
+	 * yet.
+	 */
+	public World tick(long currentTimeMillis) {
+		if (nextWorld == null) return null;
+		if (roundDurationMillis > 0 && currentTimeMillis >= roundEndsAt) changeRequested = true;
+		if (!changeRequested) return null;
+		if (!nextWorld.isDone()) {
+			if (!waiting) System.out.println("The round is over, but the next world is still loading.");
+			waiting = true;
+			return null;
+		}
+		changeRequested = false;
+		waiting = false;
+		roundEndsAt = currentTimeMillis + roundDurationMillis;
+		World world;
+		try {
+			world = nextWorld.join();
+		} catch (CompletionException e) {
+			System.err.println("Couldn't load the next world, so the current one is kept: " + e.getCause().getMessage());
+			world = null;
+		}
+		loadNextWorld();
+		return world;
+	}
+
+	/**
+	 * Queues a player to be respawned once they have the new world.
+	 * @param player The player.
+	 * @param worldSent Completes when the player has the new world.
+	 */
+	public void queueRespawn(P player, CompletionStage<?> worldSent) {
+		worldSent.thenRun(() -> respawnQueue.add(player));
+	}
+
+	/**
+	 * Respawns the players that got the new world since the last time that
+	 * this was called, in the order that they got it. This should be called
+	 * by the ticking thread.
+	 * @param respawner Respawns a player.
+	 */
+	public void respawnQueued(Consumer<P> respawner) {
+		P player;
+		while ((player = respawnQueue.poll()) != null) {
+			respawner.accept(player);
+		}
+	}
+
+	private void loadNextWorld() {
+		String name = worlds[nextIndex];
+		nextIndex = (nextIndex + 1) % worlds.length;
+		nextWorld = CompletableFuture.supplyAsync(() -> loader.apply(name), executor);
+	}
+}
@@ -61,77 +61,35 @@ public final class Worlds {
 		Vector3i min = new Vector3i(-1 * Chunk.SIZE);
 		Vector3i max = new Vector3i(2 * Chunk.SIZE - 1);
 		int groundLevel = 0;
-		for (int x = min.x; x <= max.x; x++) {
-			for (int z = min.z; z <= max.z; z++) {
-				for (int y = min.y; y < groundLevel; y++) {
-					byte color;
-					if (x % 2 == 0 && z % 2 == 0) {
-						color = 1;
-					} else {
-						color = 9;
-					}
-					world.setBlockAt(x, y, z, color);
-				}
+		world.fill(BlockRegion.box(min.x, min.y, min.z, max.x, groundLevel - 1, max.z), (byte) 9);
+		for (int x = min.x; x <= max.x; x += 2) {
+			for (int z = min.z; z <= max.z; z += 2) {
+				world.fill(BlockRegion.column(x, z, min.y, groundLevel - 1), (byte) 1);
 			}
 		}
 
 		// -Z axis
-		for (int z = min.z; z < 0; z++) {
-			world.setBlockAt(0, -1, z, (byte) 4);
-		}
+		world.fill(BlockRegion.box(0, -1, min.z, 0, -1, -1), (byte) 4);
 		// +Z axis
-		for (int z = 0; z <= max.z; z++) {
-			world.setBlockAt(0, -1, z, (byte) 6);
-		}
+		world.fill(BlockRegion.box(0, -1, 0, 0, -1, max.z), (byte) 6);
 		// -X axis
-		for (int x = min.x; x < 0; x++) {
-			world.setBlockAt(x, -1, 0, (byte) 5);
-		}
+		world.fill(BlockRegion.box(min.x, -1, 0, -1, -1, 0), (byte) 5);
 		// +X axis
-		for (int x = 0; x <= max.x; x++) {
-			world.setBlockAt(x, -1, 0, (byte) 7);
-		}
+		world.fill(BlockRegion.box(0, -1, 0, max.x, -1, 0), (byte) 7);
 		// Draw a '+' in the + side of the world.
-		world.setBlockAt(10, -1, 10, (byte) 3);
-		world.setBlockAt(11, -1, 10, (byte) 3);
-		world.setBlockAt(12, -1, 10, (byte) 3);
-		world.setBlockAt(9, -1, 10, (byte) 3);
-		world.setBlockAt(8, -1, 10, (byte) 3);
-		world.setBlockAt(10, -1, 9, (byte) 3);
-		world.setBlockAt(10, -1, 8, (byte) 3);
-		world.setBlockAt(10, -1, 11, (byte) 3);
-		world.setBlockAt(10, -1, 12, (byte) 3);
+		world.fill(BlockRegion.box(8, -1, 10, 12, -1, 10), (byte) 3);
+		world.fill(BlockRegion.box(10, -1, 8, 10, -1, 12), (byte) 3);
 		// Draw a '-' in the - side of the world.
-		world.setBlockAt(-7, -1, -8, (byte) 3);
-		world.setBlockAt(-8, -1, -8, (byte) 3);
-		world.setBlockAt(-9, -1, -8, (byte) 3);
-		world.setBlockAt(-10, -1, -8, (byte) 3);
-		world.setBlockAt(-11, -1, -8, (byte) 3);
+		world.fill(BlockRegion.box(-11, -1, -8, -7, -1, -8), (byte) 3);
 
 		// Draw a '+' shaped wall.
-		for (int x = 16; x < 26; x++) {
-			world.setBlockAt(x, 0, 16, (byte) 1);
-			world.setBlockAt(x, 1, 16, (byte) 1);
-			world.setBlockAt(x, 2, 16, (byte) 1);
-		}
-		for (int z = 16; z < 26; z++) {
-			world.setBlockAt(16, 0, z, (byte) 1);
-			world.setBlockAt(16, 1, z, (byte) 1);
-			world.setBlockAt(16, 2, z, (byte) 1);
-		}
+		world.fill(BlockRegion.box(16, 0, 16, 25, 2, 16), (byte) 1);
+		world.fill(BlockRegion.box(16, 0, 16, 16, 2, 25), (byte) 1);
 		// Add a small staircase.
-		world.setBlockAt(14, 0, 20, (byte) 1);
-		world.setBlockAt(14, 0, 21, (byte) 1);
-		world.setBlockAt(14, 0, 22, (byte) 1);
-		world.setBlockAt(15, 1, 20, (byte) 1);
-		world.setBlockAt(15, 1, 21, (byte) 1);
-		world.setBlockAt(15, 1, 22, (byte) 1);
+		world.fill(BlockRegion.box(14, 0, 20, 14, 0, 22), (byte) 1);
+		world.fill(BlockRegion.box(15, 1, 20, 15, 1, 22), (byte) 1);
 		// Add a small floor area.
-		for (int x = 17; x < 26; x++) {
-			for (int z = 17; z < 26; z++) {
-				world.setBlockAt(x, 3, z, (byte) 1);
-			}
-		}
+		world.fill(BlockRegion.box(17, 3, 17, 25, 3, 25), (byte) 1);
 
 		world.setSpawnPoint("A", new Vector3f(0.5f, 0f, 0.5f));
 		world.setSpawnPoint("B", new Vector3f(20.5f, 0f, 20.5f));
@@ -0,0 +1,228 @@
+package nl.andrewl.aos_core.model.world;
+
+import org.joml.Vector3fc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A spatial index of the zones in a world, like each team's protected area
+ * around its spawn point, where the rules of the game are different.
+ * <p>
+ *     Each chunk that a zone touches is classified when the index is built:
+ *     either the zone covers the whole chunk, or only part of it. So finding
+ *     the zones at a point takes a single chunk lookup, and only points in
+ *     chunks on the edge of a zone need their distance to it computed. Most
+ *     of the world isn't in any zone at all, which is answered by a chunk
+ *     that isn't in the index.
+ * </p>
+ * <p>
+ *     Chunks that are within {@link ZoneIndex#EDGE_MARGIN} of a zone's edge
+ *     are always classified as partial, so that rounding errors in the
+ *     classification can't make the index disagree with
+ *     {@link Zone#contains(float, float, float)}.
+ * </p>
+ * <p>
+ *     An index is immutable; when zones change, a new one is built.
+ * </p>
+ */
+public final class ZoneIndex {
+	/**
+	 * The largest number of zones that an index can hold, since each chunk
+	 * keeps the zones that cover it in a bitmask.
+	 */
+	public static final int MAX_ZONES = Long.SIZE;
+
+	public static final ZoneIndex EMPTY = new ZoneIndex(List.of());
+
+	private static final float EDGE_MARGIN = 0.01f;
+
+	public enum Type {
+		/**
+		 * The area around a team's spawn point, in which blocks can't be
+		 * changed, and the team's players can't be hurt.
+		 */
+		SPAWN_PROTECTION(true),
+		/**
+		 * The area around a team's spawn point, in which the team's players
+		 * are resupplied. Points that are exactly on its edge are outside.
+		 */
+		RESUPPLY(false);
+
+		/**
+		 * Whether points that are exactly at the zone's radius are in it.
+		 */
+		private final boolean includesEdge;
+
+		Type(boolean includesEdge) {
+			this.includesEdge = includesEdge;
+		}
+	}
+
+	/**
+	 * A spherical zone.
+	 * @param type The type of zone.
+	 * @param teamId The id of the team that the zone belongs to.
+	 * @param center The center of the zone.
+	 * @param radius The radius of the zone.
+	 */
+	public record Zone(Type type, int teamId, Vector3fc center, float radius) {
+		public boolean contains(float x, float y, float z) {
+			float distance = center.distance(x, y, z);
+			return type.includesEdge ? distance <= radius : distance < radius;
+		}
+	}
+
+	/**
+	 * The zones that touch a chunk.
+	 * @param covering A bitmask of the zones that cover the whole chunk.
+	 * @param partial The zones that cover part of the chunk.
+	 */
+	private record ChunkZones(long covering, Zone[] partial) {}
+
+	private final Zone[] zones;
+	/**
+	 * For each type of zone, a bitmask of the zones of that type.
+	 */
+	private final long[] typeMasks = new long[Type.values().length];
+
+	// An open-addressed table of chunk keys and the zones that touch each chunk.
+	private final long[] chunkKeys;
+	private final ChunkZones[] chunkZones;
+
+	/**
+	 * Builds an index of some zones.
+	 * @param zones The zones. There can be at most {@link ZoneIndex#MAX_ZONES}.
+	 */
+	public ZoneIndex(List<Zone> zones) {
+		if (zones.size() > MAX_ZONES) {
+			throw new IllegalArgumentException("Cannot index more than " + MAX_ZONES + " zones.");
+		}
+		this.zones = zones.toArray(new Zone[0]);
+		// Collects the zones that touch each chunk first, and then puts them in the table.
+		Map<Long, Long> covering = new HashMap<>();
+		Map<Long, List<Zone>> partial = new HashMap<>();
+		for (int i = 0; i < this.zones.length; i++) {
+			Zone zone = this.zones[i];
+			typeMasks[zone.type().ordinal()] |= 1L << i;
+			Vector3fc c = zone.center();
+			float outer = zone.radius() + EDGE_MARGIN;
+			float inner = zone.radius() - EDGE_MARGIN;
+			int minCx = chunkCoord(c.x() - outer), maxCx = chunkCoord(c.x() + outer);
+			int minCy = chunkCoord(c.y() - outer), maxCy = chunkCoord(c.y() + outer);
+			int minCz = chunkCoord(c.z() - outer), maxCz = chunkCoord(c.z() + outer);
+			for (int cx = minCx; cx <= maxCx; cx++) {
+				for (int cy = minCy; cy <= maxCy; cy++) {
+					for (int cz = minCz; cz <= maxCz; cz++) {
+						if (distanceSquared(c, cx, cy, cz, false) > outer * outer) continue;
+						long key = ChunkMap.key(cx, cy, cz);
+						if (inner > 0 && distanceSquared(c, cx, cy, cz, true) <= inner * inner) {
+							covering.merge(key, 1L << i, (a, b) -> a | b);
+						} else {
+							partial.computeIfAbsent(key, k -> new ArrayList<>()).add(zone);
+							covering.putIfAbsent(key, 0L);
+						}
+					}
+				}
+			}
+		}
+		int capacity = Integer.highestOneBit(Math.max(8, covering.size() * 2 - 1)) << 1;
+		chunkKeys = new long[capacity];
+		Arrays.fill(chunkKeys, -1);
+		chunkZones = new ChunkZones[capacity];
+		for (var entry : covering.entrySet()) {
+			List<Zone> chunkPartial = partial.getOrDefault(entry.getKey(), List.of());
+			int idx = find(entry.getKey());
+			chunkKeys[idx] = entry.getKey();
+			chunkZones[idx] = new ChunkZones(entry.getValue(), chunkPartial.toArray(new Zone[0]));
+		}
+	}
+
+	public List<Zone> getZones() {
+		return List.of(zones);
+	}
+
+	/**
+	 * Checks if a point is in any zone of a type.
+	 * @param type The type of zone.
+	 * @param x The point's x coordinate.
+	 * @param y The point's y coordinate.
+	 * @param z The point's z coordinate.
+	 * @return True if the point is in a zone of the given type.
+	 */
+	public boolean contains(Type type, float x, float y, float z) {
+		return contains(type, -1, x, y, z);
+	}
+
+	/**
+	 * Checks if a point is in a team's zone of a type.
+	 * @param type The type of zone.
+	 * @param teamId The id of the team, or -1 for any team.
+	 * @param x The point's x coordinate.
+	 * @param y The point's y coordinate.
+	 * @param z The point's z coordinate.
+	 * @return True if the point is in a zone of the given type and team.
+	 */
+	public boolean contains(Type type, int teamId, float x, float y, float z) {
+		long typeMask = typeMasks[type.ordinal()];
+		if (typeMask == 0) return false;
+		int idx = find(ChunkMap.key(chunkCoord(x), chunkCoord(y), chunkCoord(z)));
+		ChunkZones chunk = chunkZones[idx];
+		if (chunk == null) return false;
+		long covering = chunk.covering() & typeMask;
+		while (covering != 0) {
+			if (teamId == -1 || zones[Long.numberOfTrailingZeros(covering)].teamId() == teamId) return true;
+			covering &= covering - 1;
+		}
+		for (var zone : chunk.partial()) {
+			if (zone.type() == type && (teamId == -1 || zone.teamId() == teamId) && zone.contains(x, y, z)) return true;
+		}
+		return false;
+	}
+
+	public boolean contains(Type type, Vector3fc point) {
+		return contains(type, point.x(), point.y(), point.z());
+	}
+
+	public boolean contains(Type type, int teamId, Vector3fc point) {
+		return contains(type, teamId, point.x(), point.y(), point.z());
+	}
+
+	private int find(long key) {
+		int mask = chunkKeys.length - 1;
+		long h = key * 0x9E3779B97F4A7C15L;
+		int idx = (int) (h ^ (h >>> 32)) & mask;
+		while (chunkKeys[idx] != -1 && chunkKeys[idx] != key) idx = (idx + 1) & mask;
+		return idx;
+	}
+
+	private static int chunkCoord(float v) {
+		return (int) Math.floor(v) >> Chunk.SIZE_BITS;
+	}
+
+	/**
+	 * Gets the squared distance from a point to the nearest or farthest point
+	 * of a chunk.
+	 */
+	private static float distanceSquared(Vector3fc p, int cx, int cy, int cz, boolean farthest) {
+		return square(axisDistance(p.x(), cx, farthest)) +
+				square(axisDistance(p.y(), cy, farthest)) +
+				square(axisDistance(p.z(), cz, farthest));
+	}
+
+	private static float axisDistance(float v, int chunkCoord, boolean farthest) {
+		float min = chunkCoord * Chunk.SIZE;
+		float max = min + Chunk.SIZE;
+		if (farthest) return Math.max(Math.abs(v - min), Math.abs(v - max));
+		if (v < min) return min - v;
+		if (v > max) return v - max;
+		return 0;
+	}
+
+	private static float square(float v) {
+		return v * v;
+	}
+}
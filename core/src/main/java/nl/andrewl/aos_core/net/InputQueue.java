@@ -0,0 +1,66 @@
+package nl.andrewl.aos_core.net;
+
+import nl.andrewl.record_net.Message;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded single-producer, single-consumer ring buffer of messages that a
+ * player's client has sent, like their input and orientation. The UDP
+ * receiver thread offers messages as they arrive, and the world updater polls
+ * them at the start of each tick, so that a player's state is only changed by
+ * the world updater, in the order that messages arrived.
+ */
+public class InputQueue {
+	private final Message[] buffer;
+	private final int mask;
+	/**
+	 * The index of the next message to poll, only written by the consumer.
+	 */
+	private final AtomicLong head = new AtomicLong();
+	/**
+	 * The index of the next message to offer, only written by the producer.
+	 */
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * Creates a queue.
+	 * @param capacity The most messages that the queue holds. This is
+	 *                 rounded up to a power of two.
+	 */
+	public InputQueue(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+		this.buffer = new Message[size];
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Adds a message to the queue. This must only be called by the producer.
+	 * @param msg The message.
+	 * @return True if it was added, or false if the queue is full.
+	 */
+	public boolean offer(Message msg) {
+		long t = tail.get();
+		if (t - head.get() >= buffer.length) return false;
+		buffer[(int) t & mask] = msg;
+		// Publishes the message to the consumer.
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	/**
+	 * Removes the oldest message from the queue. This must only be called by
+	 * the consumer.
+	 * @return The message, or null if the queue is empty.
+	 */
+	public Message poll() {
+		long h = head.get();
+		if (h == tail.get()) return null;
+		int idx = (int) h & mask;
+		Message msg = buffer[idx];
+		buffer[idx] = null;
+		// Gives the slot back to the producer.
+		head.lazySet(h + 1);
+		return msg;
+	}
+}
@@ -0,0 +1,55 @@
+package nl.andrewl.aos_core.net;
+
+import nl.andrewl.aos_core.Net;
+import nl.andrewl.record_net.Message;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A message that packs many small messages into one datagram, so that sending
+ * a tick's worth of updates to a client doesn't take a packet for each one.
+ * {@link UdpReceiver} unpacks batches, and handles each of their messages in
+ * order, as if they'd been received on their own.
+ * @param data The serialized messages, each preceded by its size as an
+ *             unsigned short.
+ */
+public record MessageBatch(byte[] data) implements Message {
+	/**
+	 * The number of bytes that each message in a batch takes, besides its
+	 * own serialized bytes.
+	 */
+	public static final int ENTRY_OVERHEAD = Short.BYTES;
+
+	/**
+	 * Reads the messages in this batch.
+	 * @return The messages, in the order that they were added.
+	 * @throws IOException If a message can't be read.
+	 */
+	public List<Message> messages() throws IOException {
+		List<Message> messages = new ArrayList<>();
+		var in = new DataInputStream(new ByteArrayInputStream(data));
+		while (in.available() > 0) {
+			byte[] messageData = new byte[in.readUnsignedShort()];
+			in.readFully(messageData);
+			messages.add(Net.read(messageData));
+		}
+		return messages;
+	}
+
+	/**
+	 * @return The number of bytes that a serialized batch takes, besides its
+	 * data.
+	 */
+	public static int serializedOverhead() {
+		try {
+			return Net.write(new MessageBatch(new byte[0])).length;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package nl.andrewl.aos_core.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Packs arrays of numbers into bytes, for messages that need to send them.
+ * Messages are serialized by record-net, which we only rely on for byte
+ * arrays, so other arrays are sent as packed bytes instead.
+ */
+public final class PackedArrays {
+	private PackedArrays() {}
+
+	public static byte[] pack(long[] values) {
+		ByteBuffer buffer = ByteBuffer.allocate(values.length * Long.BYTES);
+		buffer.asLongBuffer().put(values);
+		return buffer.array();
+	}
+
+	public static byte[] pack(int[] values) {
+		ByteBuffer buffer = ByteBuffer.allocate(values.length * Integer.BYTES);
+		buffer.asIntBuffer().put(values);
+		return buffer.array();
+	}
+
+	public static byte[] pack(float[] values) {
+		ByteBuffer buffer = ByteBuffer.allocate(values.length * Float.BYTES);
+		buffer.asFloatBuffer().put(values);
+		return buffer.array();
+	}
+
+	/**
+	 * Unpacks longs that were packed with {@link PackedArrays#pack(long[])}.
+	 * @param data The packed bytes.
+	 * @return The longs.
+	 * @throws IllegalArgumentException If the data isn't a whole number of
+	 * longs.
+	 */
+	public static long[] unpackLongs(byte[] data) {
+		long[] values = new long[count(data, Long.BYTES)];
+		ByteBuffer.wrap(data).asLongBuffer().get(values);
+		return values;
+	}
+
+	/**
+	 * Unpacks ints that were packed with {@link PackedArrays#pack(int[])}.
+	 * @param data The packed bytes.
+	 * @return The ints.
+	 * @throws IllegalArgumentException If the data isn't a whole number of
+	 * ints.
+	 */
+	public static int[] unpackInts(byte[] data) {
+		int[] values = new int[count(data, Integer.BYTES)];
+		ByteBuffer.wrap(data).asIntBuffer().get(values);
+		return values;
+	}
+
+	/**
+	 * Unpacks floats that were packed with {@link PackedArrays#pack(float[])}.
+	 * @param data The packed bytes.
+	 * @return The floats.
+	 * @throws IllegalArgumentException If the data isn't a whole number of
+	 * floats.
+	 */
+	public static float[] unpackFloats(byte[] data) {
+		float[] values = new float[count(data, Float.BYTES)];
+		ByteBuffer.wrap(data).asFloatBuffer().get(values);
+		return values;
+	}
+
+	private static int count(byte[] data, int size) {
+		if (data.length % size != 0) {
+			throw new IllegalArgumentException("Packed data of " + data.length + " bytes isn't a whole number of " + size + " byte values.");
+		}
+		return data.length / size;
+	}
+}
@@ -8,10 +8,12 @@ import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.SocketException;
+import java.util.List;
 
 /**
  * A runnable that receives UDP packets from a datagram socket and relays the
- * messages to a {@link UdpMessageHandler}.
+ * messages to a {@link UdpMessageHandler}. The messages in a
+ * {@link MessageBatch} are relayed one by one.
  */
 public class UdpReceiver implements Runnable {
 	public static final short MAX_PACKET_SIZE = 1400;
@@ -38,7 +40,11 @@ public class UdpReceiver implements Runnable {
 			try {
 				socket.receive(packet);
 				Message msg = Net.read(buffer);
-				handler.handle(msg, packet);
+				if (msg instanceof MessageBatch batch) {
+					handleBatch(batch, packet);
+				} else {
+					handler.handle(msg, packet);
+				}
 			} catch (SocketException e) {
 				if (e.getMessage().equals("Socket closed")) {
 					break;
@@ -52,4 +58,18 @@ public class UdpReceiver implements Runnable {
 		}
 		if (shutdownHook != null) shutdownHook.run();
 	}
+
+	private void handleBatch(MessageBatch batch, DatagramPacket packet) {
+		List<Message> messages;
+		try {
+			messages = batch.messages();
+		} catch (IOException e) {
+			// A bad batch is dropped, rather than stopping the receiver like a bad packet would.
+			e.printStackTrace();
+			return;
+		}
+		for (var msg : messages) {
+			handler.handle(msg, packet);
+		}
+	}
 }
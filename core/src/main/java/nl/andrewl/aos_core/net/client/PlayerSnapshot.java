@@ -0,0 +1,385 @@
+package nl.andrewl.aos_core.net.client;
+
+import nl.andrewl.aos_core.model.Player;
+import nl.andrewl.aos_core.model.PlayerMode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The quantized state of all players at one moment, which the server sends to
+ * clients as {@link PlayerSnapshotMessage}s. Positions and velocities are
+ * stored as fixed point numbers with {@link PlayerSnapshot#POSITION_SCALE}
+ * steps per meter, and orientations as 16 bit fractions of their range.
+ * <p>
+ *     Snapshots are encoded as a delta against a baseline snapshot that the
+ *     client has already received. Only players that changed since the
+ *     baseline are written: each as its id, a bitmask of the fields that
+ *     changed, and the difference of each of those fields, all as variable
+ *     length integers. So players that stand still cost nothing, and moving
+ *     players only cost a few bytes.
+ * </p>
+ * <p>
+ *     A delta that's too big for one datagram is split into parts that each
+ *     cover a range of player ids, and can be decoded on their own against
+ *     the same range of the baseline.
+ * </p>
+ */
+public final class PlayerSnapshot {
+	/**
+	 * The number of fixed point steps per meter, or per meter per second.
+	 */
+	public static final float POSITION_SCALE = 256;
+	private static final float YAW_SCALE = 65536 / (float) (Math.PI * 2);
+	private static final float PITCH_SCALE = 65535 / (float) Math.PI;
+
+	private static final int PX = 0, PY = 1, PZ = 2, VX = 3, VY = 4, VZ = 5, YAW = 6, PITCH = 7;
+	private static final int CROUCHING = 8, SELECTED_ITEM = 9, MODE = 10;
+	private static final int FIELD_COUNT = 11;
+	/**
+	 * The mask bit that means a player was removed since the baseline.
+	 */
+	private static final int REMOVED = 1 << FIELD_COUNT;
+
+	public static final PlayerSnapshot EMPTY = new PlayerSnapshot(new int[0], new int[0]);
+
+	/**
+	 * The players' ids, in ascending order.
+	 */
+	private final int[] ids;
+	/**
+	 * The fields of each player, {@link PlayerSnapshot#FIELD_COUNT} per player.
+	 */
+	private final int[] fields;
+
+	private PlayerSnapshot(int[] ids, int[] fields) {
+		this.ids = ids;
+		this.fields = fields;
+	}
+
+	public int size() {
+		return ids.length;
+	}
+
+	public int getId(int index) {
+		return ids[index];
+	}
+
+	/**
+	 * Finds a player in this snapshot.
+	 * @param id The player's id.
+	 * @return The player's index, or a negative number if they're not in it.
+	 */
+	public int indexOf(int id) {
+		return Arrays.binarySearch(ids, id);
+	}
+
+	/**
+	 * Sets a player's position, velocity, orientation, crouching and mode to
+	 * their state in this snapshot.
+	 * @param index The player's index in this snapshot.
+	 * @param p The player to update.
+	 */
+	public void apply(int index, Player p) {
+		applyMovement(index, p);
+		int o = index * FIELD_COUNT;
+		p.setOrientation(fields[o + YAW] / YAW_SCALE, fields[o + PITCH] / PITCH_SCALE);
+	}
+
+	/**
+	 * Sets a player's position, velocity, crouching and mode to their state in
+	 * this snapshot, but not their orientation. This is used for the client's
+	 * own player, whose orientation is controlled by the client.
+	 * @param index The player's index in this snapshot.
+	 * @param p The player to update.
+	 */
+	public void applyMovement(int index, Player p) {
+		int o = index * FIELD_COUNT;
+		p.getPosition().set(fields[o + PX] / POSITION_SCALE, fields[o + PY] / POSITION_SCALE, fields[o + PZ] / POSITION_SCALE);
+		p.getVelocity().set(fields[o + VX] / POSITION_SCALE, fields[o + VY] / POSITION_SCALE, fields[o + VZ] / POSITION_SCALE);
+		p.setCrouching(fields[o + CROUCHING] != 0);
+		p.setMode(PlayerMode.values()[fields[o + MODE]]);
+	}
+
+	public int getSelectedItemId(int index) {
+		return fields[index * FIELD_COUNT + SELECTED_ITEM];
+	}
+
+	/**
+	 * Gets the players in a range of ids.
+	 * @param firstId The first id in the range.
+	 * @param endId The id after the last one in the range.
+	 * @return A snapshot with just the players in the range.
+	 */
+	public PlayerSnapshot range(int firstId, int endId) {
+		int from = Arrays.binarySearch(ids, firstId);
+		if (from < 0) from = -from - 1;
+		int to = Arrays.binarySearch(ids, endId);
+		if (to < 0) to = -to - 1;
+		if (from == 0 && to == ids.length) return this;
+		return new PlayerSnapshot(
+				Arrays.copyOfRange(ids, from, to),
+				Arrays.copyOfRange(fields, from * FIELD_COUNT, to * FIELD_COUNT)
+		);
+	}
+
+	/**
+	 * Joins the parts of a snapshot back together.
+	 * @param parts The parts, which cover ranges of player ids in ascending
+	 *              order.
+	 * @return The whole snapshot.
+	 */
+	public static PlayerSnapshot join(PlayerSnapshot... parts) {
+		int count = 0;
+		for (var part : parts) count += part.ids.length;
+		int[] ids = new int[count];
+		int[] fields = new int[count * FIELD_COUNT];
+		int i = 0;
+		for (var part : parts) {
+			System.arraycopy(part.ids, 0, ids, i, part.ids.length);
+			System.arraycopy(part.fields, 0, fields, i * FIELD_COUNT, part.fields.length);
+			i += part.ids.length;
+		}
+		return new PlayerSnapshot(ids, fields);
+	}
+
+	/**
+	 * Encodes this snapshot as a delta against a baseline.
+	 * @param baseline The snapshot that the client already has, or
+	 *                 {@link PlayerSnapshot#EMPTY} to encode all of it.
+	 * @return The encoded delta, which is empty if nothing changed.
+	 */
+	public byte[] encodeDelta(PlayerSnapshot baseline) {
+		return encodeDelta(baseline, Integer.MAX_VALUE).get(0).data();
+	}
+
+	/**
+	 * Encodes this snapshot as a delta against a baseline, split into parts
+	 * that are no bigger than a maximum size.
+	 * @param baseline The snapshot that the client already has, or
+	 *                 {@link PlayerSnapshot#EMPTY} to encode all of it.
+	 * @param maxPartSize The maximum size of a part's data.
+	 * @return The parts, in order of their player ids. There's always at
+	 * least one part, whose data is empty if nothing changed.
+	 */
+	public List<DeltaPart> encodeDelta(PlayerSnapshot baseline, int maxPartSize) {
+		List<DeltaPart> parts = new ArrayList<>(1);
+		var out = new ByteArrayOutputStream(64);
+		var entry = new ByteArrayOutputStream(64);
+		int firstId = Integer.MIN_VALUE;
+		int lastId = 0;
+		int i = 0, b = 0;
+		while (i < ids.length || b < baseline.ids.length) {
+			int id;
+			int[] baseFields = null;
+			int offset = 0, baseOffset = 0;
+			int mask = 0;
+			if (b == baseline.ids.length || (i < ids.length && ids[i] < baseline.ids[b])) {
+				// The player was added, so every field is written against zero.
+				id = ids[i];
+				offset = i * FIELD_COUNT;
+				for (int f = 0; f < FIELD_COUNT; f++) {
+					if (fields[offset + f] != 0) mask |= 1 << f;
+				}
+				i++;
+			} else if (i == ids.length || baseline.ids[b] < ids[i]) {
+				id = baseline.ids[b];
+				mask = REMOVED;
+				b++;
+			} else {
+				id = ids[i];
+				offset = i * FIELD_COUNT;
+				baseFields = baseline.fields;
+				baseOffset = b * FIELD_COUNT;
+				for (int f = 0; f < FIELD_COUNT; f++) {
+					if (fields[offset + f] != baseFields[baseOffset + f]) mask |= 1 << f;
+				}
+				i++;
+				b++;
+				if (mask == 0) continue;
+			}
+			entry.reset();
+			writeEntry(entry, id - lastId, mask, fields, offset, baseFields, baseOffset);
+			if (out.size() > 0 && out.size() + entry.size() > maxPartSize) {
+				// Starts a new part with this player, whose id is then written against zero.
+				parts.add(new DeltaPart(firstId, id, out.toByteArray()));
+				out.reset();
+				firstId = id;
+				entry.reset();
+				writeEntry(entry, id, mask, fields, offset, baseFields, baseOffset);
+			}
+			out.writeBytes(entry.toByteArray());
+			lastId = id;
+		}
+		parts.add(new DeltaPart(firstId, Integer.MAX_VALUE, out.toByteArray()));
+		return parts;
+	}
+	/**
+	 * Decodes a snapshot that was encoded against a baseline.
+	 * @param baseline The baseline that the snapshot was encoded against.
+	 * @param data The encoded delta.
+	 * @return The decoded snapshot.
+	 * @throws IOException If the data is malformed.
+	 */
+	public static PlayerSnapshot decodeDelta(PlayerSnapshot baseline, byte[] data) throws IOException {
+		return decodeDelta(baseline, Integer.MIN_VALUE, Integer.MAX_VALUE, data);
+	}
+
+	/**
+	 * Decodes one part of a snapshot that was encoded against a baseline.
+	 * @param baseline The baseline that the snapshot was encoded against.
+	 * @param firstId The first player id in the part's range.
+	 * @param endId The player id after the last one in the part's range.
+	 * @param data The part's encoded delta.
+	 * @return The decoded players in the part's range.
+	 * @throws IOException If the data is malformed.
+	 */
+	public static PlayerSnapshot decodeDelta(PlayerSnapshot baseline, int firstId, int endId, byte[] data) throws IOException {
+		baseline = baseline.range(firstId, endId);
+		int[] ids = new int[baseline.ids.length + 8];
+		int[] fields = new int[ids.length * FIELD_COUNT];
+		int count = 0;
+		int b = 0;
+		int[] pos = {0};
+		int id = 0;
+		while (pos[0] < data.length || b < baseline.ids.length) {
+			int nextId = Integer.MAX_VALUE;
+			int mask = 0;
+			int entryStart = pos[0];
+			if (pos[0] < data.length) {
+				nextId = id + readVarInt(data, pos);
+				mask = readVarInt(data, pos);
+			}
+			// Players before the next entry are unchanged.
+			while (b < baseline.ids.length && baseline.ids[b] < nextId) {
+				if (count == ids.length) {
+					ids = Arrays.copyOf(ids, count * 2);
+					fields = Arrays.copyOf(fields, ids.length * FIELD_COUNT);
+				}
+				ids[count] = baseline.ids[b];
+				System.arraycopy(baseline.fields, b * FIELD_COUNT, fields, count * FIELD_COUNT, FIELD_COUNT);
+				count++;
+				b++;
+			}
+			if (entryStart == data.length) break;
+			id = nextId;
+			if (id < firstId || id >= endId) throw new IOException("Snapshot part has player " + id + " outside of its range.");
+			boolean inBaseline = b < baseline.ids.length && baseline.ids[b] == id;
+			if ((mask & REMOVED) != 0) {
+				if (!inBaseline) throw new IOException("Snapshot removes player " + id + " who isn't in its baseline.");
+				b++;
+				continue;
+			}
+			if (count == ids.length) {
+				ids = Arrays.copyOf(ids, count * 2);
+				fields = Arrays.copyOf(fields, ids.length * FIELD_COUNT);
+			}
+			ids[count] = id;
+			int o = count * FIELD_COUNT;
+			for (int f = 0; f < FIELD_COUNT; f++) {
+				int base = inBaseline ? baseline.fields[b * FIELD_COUNT + f] : 0;
+				fields[o + f] = (mask & (1 << f)) != 0 ? base + zigZagDecode(readVarInt(data, pos)) : base;
+			}
+			if (fields[o + MODE] < 0 || fields[o + MODE] >= PlayerMode.values().length) {
+				throw new IOException("Invalid player mode in snapshot.");
+			}
+			count++;
+			if (inBaseline) b++;
+		}
+		return new PlayerSnapshot(Arrays.copyOf(ids, count), Arrays.copyOf(fields, count * FIELD_COUNT));
+	}
+
+	private static void writeEntry(ByteArrayOutputStream out, int idDelta, int mask, int[] fields, int offset, int[] baseFields, int baseOffset) {
+		writeVarInt(out, idDelta);
+		writeVarInt(out, mask);
+		for (int f = 0; f < FIELD_COUNT; f++) {
+			if ((mask & (1 << f)) == 0) continue;
+			int base = baseFields == null ? 0 : baseFields[baseOffset + f];
+			writeVarInt(out, zigZagEncode(fields[offset + f] - base));
+		}
+	}
+
+	private static void writeVarInt(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static int readVarInt(byte[] data, int[] pos) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			if (pos[0] >= data.length) throw new IOException("Truncated snapshot.");
+			int b = data[pos[0]++];
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new IOException("Malformed variable length integer in snapshot.");
+	}
+
+	private static int zigZagEncode(int v) {
+		return (v << 1) ^ (v >> 31);
+	}
+
+	private static int zigZagDecode(int v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	/**
+	 * One part of an encoded delta.
+	 * @param firstId The first player id in the part's range.
+	 * @param endId The player id after the last one in the part's range.
+	 * @param data The encoded delta of the players in the range.
+	 */
+	public record DeltaPart(int firstId, int endId, byte[] data) {}
+
+	/**
+	 * Builds a snapshot from the players' current state.
+	 */
+	public static final class Builder {
+		private int[] ids = new int[16];
+		private int[] fields = new int[16 * FIELD_COUNT];
+		private int count = 0;
+
+		public Builder add(Player p, int selectedItemId) {
+			if (count == ids.length) {
+				ids = Arrays.copyOf(ids, count * 2);
+				fields = Arrays.copyOf(fields, ids.length * FIELD_COUNT);
+			}
+			int o = count * FIELD_COUNT;
+			ids[count] = p.getId();
+			fields[o + PX] = Math.round(p.getPosition().x * POSITION_SCALE);
+			fields[o + PY] = Math.round(p.getPosition().y * POSITION_SCALE);
+			fields[o + PZ] = Math.round(p.getPosition().z * POSITION_SCALE);
+			fields[o + VX] = Math.round(p.getVelocity().x * POSITION_SCALE);
+			fields[o + VY] = Math.round(p.getVelocity().y * POSITION_SCALE);
+			fields[o + VZ] = Math.round(p.getVelocity().z * POSITION_SCALE);
+			// Yaw wraps around, while pitch is clamped.
+			fields[o + YAW] = Math.round(p.getOrientation().x * YAW_SCALE) & 0xFFFF;
+			fields[o + PITCH] = Math.round(p.getOrientation().y * PITCH_SCALE);
+			fields[o + CROUCHING] = p.isCrouching() ? 1 : 0;
+			fields[o + SELECTED_ITEM] = selectedItemId;
+			fields[o + MODE] = p.getMode().ordinal();
+			count++;
+			return this;
+		}
+
+		public PlayerSnapshot build() {
+			// Sorts the players by id, keeping each one's fields with them.
+			Integer[] order = new Integer[count];
+			for (int i = 0; i < count; i++) order[i] = i;
+			Arrays.sort(order, (a, b) -> Integer.compare(ids[a], ids[b]));
+			int[] sortedIds = new int[count];
+			int[] sortedFields = new int[count * FIELD_COUNT];
+			for (int i = 0; i < count; i++) {
+				sortedIds[i] = ids[order[i]];
+				System.arraycopy(fields, order[i] * FIELD_COUNT, sortedFields, i * FIELD_COUNT, FIELD_COUNT);
+			}
+			return new PlayerSnapshot(sortedIds, sortedFields);
+		}
+	}
+}
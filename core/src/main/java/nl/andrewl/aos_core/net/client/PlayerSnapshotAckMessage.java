@@ -0,0 +1,11 @@
+package nl.andrewl.aos_core.net.client;
+
+import nl.andrewl.record_net.Message;
+
+/**
+ * This message is sent by clients to the server when they've received a
+ * {@link PlayerSnapshotMessage}.
+ * @param clientId The client's id.
+ * @param sequence The snapshot's sequence number.
+ */
+public record PlayerSnapshotAckMessage(int clientId, int sequence) implements Message {}
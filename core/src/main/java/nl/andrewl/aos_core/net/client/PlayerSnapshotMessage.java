@@ -0,0 +1,45 @@
+package nl.andrewl.aos_core.net.client;
+
+import nl.andrewl.aos_core.Net;
+import nl.andrewl.record_net.Message;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * This message is sent by the server to clients at the snapshot rate, with
+ * the state of all players as a {@link PlayerSnapshot} delta. A delta that
+ * doesn't fit in one datagram is sent as several parts. Clients answer each
+ * snapshot with a {@link PlayerSnapshotAckMessage} once they have all of its
+ * parts, so that the server can use it as the baseline for later snapshots.
+ * @param sequence The snapshot's sequence number.
+ * @param baseline The sequence number of the snapshot that this one is
+ *                 encoded against, or -1 if it's encoded against
+ *                 {@link PlayerSnapshot#EMPTY}.
+ * @param part The index of this part.
+ * @param partCount The number of parts of the snapshot.
+ * @param firstId The first player id in this part's range.
+ * @param endId The player id after the last one in this part's range.
+ * @param data The encoded delta of the players in this part's range.
+ */
+public record PlayerSnapshotMessage(
+		int sequence,
+		int baseline,
+		int part,
+		int partCount,
+		int firstId,
+		int endId,
+		byte[] data
+) implements Message {
+	/**
+	 * @return The number of bytes that a serialized message takes, besides
+	 * its data.
+	 */
+	public static int serializedOverhead() {
+		try {
+			return Net.write(new PlayerSnapshotMessage(0, 0, 0, 1, 0, 0, new byte[0])).length;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
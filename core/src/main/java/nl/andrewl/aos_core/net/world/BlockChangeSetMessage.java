@@ -0,0 +1,40 @@
+package nl.andrewl.aos_core.net.world;
+
+import nl.andrewl.aos_core.model.world.BlockChangeSet;
+import nl.andrewl.aos_core.net.PackedArrays;
+import nl.andrewl.record_net.Message;
+
+/**
+ * A message that's sent to clients when many blocks are set to the same
+ * value at once, like when a region of the world is filled.
+ * The change set's arrays are sent as bytes packed by {@link PackedArrays}.
+ * @param block The value that all blocks were set to.
+ * @param chunkKeys The packed keys of the chunks that were changed.
+ * @param runCounts For each chunk, the number of runs of changed blocks.
+ * @param runs The packed runs of changed blocks, for all chunks in order.
+ * @see BlockChangeSet
+ */
+public record BlockChangeSetMessage(
+		byte block,
+		byte[] chunkKeys,
+		byte[] runCounts,
+		byte[] runs
+) implements Message {
+	public BlockChangeSetMessage(BlockChangeSet changes) {
+		this(
+				changes.getBlock(),
+				PackedArrays.pack(changes.getChunkKeys()),
+				PackedArrays.pack(changes.getRunCounts()),
+				PackedArrays.pack(changes.getRuns())
+		);
+	}
+
+	public BlockChangeSet toChangeSet() {
+		return new BlockChangeSet(
+				block,
+				PackedArrays.unpackLongs(chunkKeys),
+				PackedArrays.unpackInts(runCounts),
+				PackedArrays.unpackInts(runs)
+		);
+	}
+}
@@ -1,5 +1,7 @@
 package nl.andrewl.aos_core.net.world;
 
+import nl.andrewl.aos_core.model.world.Chunk;
+import nl.andrewl.aos_core.model.world.ChunkMap;
 import nl.andrewl.aos_core.model.world.World;
 import nl.andrewl.record_net.Message;
 import org.joml.Vector3i;
@@ -20,15 +22,26 @@ public record ChunkUpdateMessage(
 		byte newBlock
 ) implements Message {
 	public static ChunkUpdateMessage fromWorld(Vector3i worldPos, World world) {
-		Vector3i chunkPos = World.getChunkPosAt(worldPos);
-		Vector3i localPos = World.getLocalPosAt(worldPos);
+		return fromWorld(worldPos.x, worldPos.y, worldPos.z, world);
+	}
+
+	public static ChunkUpdateMessage fromWorld(int x, int y, int z, World world) {
 		return new ChunkUpdateMessage(
-				chunkPos.x, chunkPos.y, chunkPos.z,
-				localPos.x, localPos.y, localPos.z,
-				world.getBlockAt(worldPos.x, worldPos.y, worldPos.z)
+				x >> Chunk.SIZE_BITS, y >> Chunk.SIZE_BITS, z >> Chunk.SIZE_BITS,
+				x & Chunk.LOCAL_MASK, y & Chunk.LOCAL_MASK, z & Chunk.LOCAL_MASK,
+				world.getBlockAt(x, y, z)
 		);
 	}
 
+	/**
+	 * Gets the packed key of the chunk that this update applies to.
+	 * @return The chunk key.
+	 * @see ChunkMap#key(int, int, int)
+	 */
+	public long getChunkKey() {
+		return ChunkMap.key(cx, cy, cz);
+	}
+
 	public Vector3i getChunkPos() {
 		return new Vector3i(cx, cy, cz);
 	}
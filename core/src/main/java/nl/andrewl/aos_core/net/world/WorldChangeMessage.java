@@ -0,0 +1,41 @@
+package nl.andrewl.aos_core.net.world;
+
+import nl.andrewl.aos_core.net.PackedArrays;
+import nl.andrewl.record_net.Message;
+
+/**
+ * A message sent by the server when it changes to a new world, like at the
+ * end of a round. The client clears its world when it gets this, and the new
+ * world's chunks follow in separate {@link ChunkDataMessage}s, so that other
+ * messages can still be sent in between. Its arrays are sent as bytes packed
+ * by {@link PackedArrays}.
+ * @param packedPalette The new world's palette, as given by
+ *                      {@link nl.andrewl.aos_core.model.world.ColorPalette#toArray()}.
+ * @param packedTeamIds The id of each team.
+ * @param packedTeamSpawnPoints The x, y and z coordinates of each team's
+ *                              spawn point in the new world, in the same
+ *                              order as the ids.
+ * @param chunkCount The number of chunks that will follow.
+ */
+public record WorldChangeMessage(
+		byte[] packedPalette,
+		byte[] packedTeamIds,
+		byte[] packedTeamSpawnPoints,
+		int chunkCount
+) implements Message {
+	public WorldChangeMessage(float[] palette, int[] teamIds, float[] teamSpawnPoints, int chunkCount) {
+		this(PackedArrays.pack(palette), PackedArrays.pack(teamIds), PackedArrays.pack(teamSpawnPoints), chunkCount);
+	}
+
+	public float[] getPalette() {
+		return PackedArrays.unpackFloats(packedPalette);
+	}
+
+	public int[] getTeamIds() {
+		return PackedArrays.unpackInts(packedTeamIds);
+	}
+
+	public float[] getTeamSpawnPoints() {
+		return PackedArrays.unpackFloats(packedTeamSpawnPoints);
+	}
+}
@@ -0,0 +1,25 @@
+package nl.andrewl.aos_core.net.world;
+
+import nl.andrewl.aos_core.model.world.WorldDigest;
+import nl.andrewl.record_net.Message;
+
+/**
+ * A message sent by the server, which contains the root hash of its world's
+ * digest, so that the client can check if its copy of the world is
+ * up-to-date. If the client's hash for the same node differs, it asks for
+ * the node's children with a {@link WorldSubtreeRequestMessage}.
+ * @param ox The x coordinate of the digest's origin chunk.
+ * @param oy The y coordinate of the digest's origin chunk.
+ * @param oz The z coordinate of the digest's origin chunk.
+ * @param level The level of the digest's root node.
+ * @param hash The hash of the root node.
+ */
+public record WorldDigestMessage(
+		int ox, int oy, int oz,
+		int level,
+		long hash
+) implements Message {
+	public WorldDigestMessage(WorldDigest digest) {
+		this(digest.getOriginX(), digest.getOriginY(), digest.getOriginZ(), digest.getLevel(), digest.getRootHash());
+	}
+}
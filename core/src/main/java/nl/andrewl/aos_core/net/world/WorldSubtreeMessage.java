@@ -0,0 +1,43 @@
+package nl.andrewl.aos_core.net.world;
+
+import nl.andrewl.aos_core.model.world.WorldDigest;
+import nl.andrewl.aos_core.net.PackedArrays;
+import nl.andrewl.record_net.Message;
+
+/**
+ * A message sent by the server with the hashes of the children of a node in
+ * its world digest. The client compares each of these to its own, and asks
+ * for the children of any that differ. For level 1 nodes, whose children are
+ * chunks, the client sends a {@link ChunkHashMessage} for each chunk that
+ * differs instead.
+ * @param ox The x coordinate of the digest's origin chunk.
+ * @param oy The y coordinate of the digest's origin chunk.
+ * @param oz The z coordinate of the digest's origin chunk.
+ * @param rootLevel The level of the digest's root node.
+ * @param level The level of the node.
+ * @param index The index of the node.
+ * @param packedChildHashes The hashes of the node's
+ *                          {@link WorldDigest#CHILDREN} children, as packed
+ *                          by {@link PackedArrays#pack(long[])}.
+ */
+public record WorldSubtreeMessage(
+		int ox, int oy, int oz,
+		int rootLevel,
+		int level,
+		long index,
+		byte[] packedChildHashes
+) implements Message {
+	public WorldSubtreeMessage(WorldDigest digest, int level, long index) {
+		this(
+				digest.getOriginX(), digest.getOriginY(), digest.getOriginZ(),
+				digest.getLevel(),
+				level,
+				index,
+				PackedArrays.pack(digest.getChildHashes(level, index))
+		);
+	}
+
+	public long[] getChildHashes() {
+		return PackedArrays.unpackLongs(packedChildHashes);
+	}
+}
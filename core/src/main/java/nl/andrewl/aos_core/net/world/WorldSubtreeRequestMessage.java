@@ -0,0 +1,21 @@
+package nl.andrewl.aos_core.net.world;
+
+import nl.andrewl.record_net.Message;
+
+/**
+ * A message sent by the client to ask for the hashes of the children of a
+ * node in the server's world digest, because the client's hash for that node
+ * is different. The server responds with a {@link WorldSubtreeMessage}.
+ * @param ox The x coordinate of the digest's origin chunk.
+ * @param oy The y coordinate of the digest's origin chunk.
+ * @param oz The z coordinate of the digest's origin chunk.
+ * @param rootLevel The level of the digest's root node.
+ * @param level The level of the node.
+ * @param index The index of the node.
+ */
+public record WorldSubtreeRequestMessage(
+		int ox, int oy, int oz,
+		int rootLevel,
+		int level,
+		long index
+) implements Message {}
@@ -0,0 +1,97 @@
+package nl.andrewl.aos_core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FixedTimestepTest {
+	private static final long MS = 1_000_000;
+
+	/**
+	 * A clock that only moves when it's told to.
+	 */
+	private static class TestClock {
+		long now = 1000 * MS;
+
+		long get() {
+			return now;
+		}
+	}
+
+	@Test
+	public void testOnTime() {
+		var clock = new TestClock();
+		long start = clock.now;
+		var timestep = new FixedTimestep(clock::get, 50 * MS, 100 * MS, 5);
+		List<Boolean> snapshots = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			clock.now = timestep.getNextTickAt();
+			// Each tick takes 2 ms.
+			assertEquals(0, timestep.runDueTicks(sendSnapshot -> {
+				snapshots.add(sendSnapshot);
+				clock.now += 2 * MS;
+			}));
+			// Deadlines are absolute, so the time that ticks take doesn't make the rate drift.
+			assertEquals(start + (i + 1) * 50 * MS, timestep.getNextTickAt());
+		}
+		// Snapshots are sent after every other tick.
+		assertEquals(List.of(true, false, true, false, true, false), snapshots);
+	}
+
+	@Test
+	public void testCatchUp() {
+		var clock = new TestClock();
+		long start = clock.now;
+		var timestep = new FixedTimestep(clock::get, 50 * MS, 50 * MS, 5);
+		// The first tick is late enough that three more are due when it's done.
+		clock.now = start + 160 * MS;
+		int[] ticks = {0};
+		List<Boolean> snapshots = new ArrayList<>();
+		assertEquals(0, timestep.runDueTicks(sendSnapshot -> {
+			ticks[0]++;
+			snapshots.add(sendSnapshot);
+		}));
+		assertEquals(4, ticks[0]);
+		assertEquals(start + 200 * MS, timestep.getNextTickAt());
+		// The ticks that catch up don't send a burst of snapshots.
+		assertEquals(List.of(true, false, false, false), snapshots);
+	}
+
+	@Test
+	public void testCatchUpLimit() {
+		var clock = new TestClock();
+		long start = clock.now;
+		var timestep = new FixedTimestep(clock::get, 50 * MS, 50 * MS, 5);
+		// A one second stall, like a long garbage collection.
+		clock.now = start + 1000 * MS;
+		int[] ticks = {0};
+		long skipped = timestep.runDueTicks(sendSnapshot -> ticks[0]++);
+		assertEquals(5, ticks[0]);
+		// Ticks were due up to and including the current time, and the five that ran covered 250 ms of them.
+		assertEquals(16, skipped);
+		assertEquals(start + 1050 * MS, timestep.getNextTickAt());
+		assertTrue(timestep.getNextTickAt() > clock.now);
+
+		// Afterwards, ticks run on the same schedule as before.
+		clock.now = timestep.getNextTickAt();
+		ticks[0] = 0;
+		assertEquals(0, timestep.runDueTicks(sendSnapshot -> ticks[0]++));
+		assertEquals(1, ticks[0]);
+		assertEquals(start + 1100 * MS, timestep.getNextTickAt());
+	}
+
+	@Test
+	public void testSnapshotRateIsCappedAtTickRate() {
+		var clock = new TestClock();
+		var timestep = new FixedTimestep(clock::get, 50 * MS, 10 * MS, 1);
+		List<Boolean> snapshots = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			clock.now = timestep.getNextTickAt();
+			timestep.runDueTicks(snapshots::add);
+		}
+		assertEquals(List.of(true, true, true), snapshots);
+	}
+}
@@ -0,0 +1,72 @@
+package nl.andrewl.aos_core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+	private static long[] counts(LatencyHistogram histogram) {
+		long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+		histogram.copyCounts(counts);
+		return counts;
+	}
+
+	@Test
+	public void testBucketEdges() {
+		// Small values each get their own bucket.
+		for (int v = 0; v < 64; v++) {
+			assertEquals(v, LatencyHistogram.bucketIndex(v));
+			assertEquals(v, LatencyHistogram.bucketMaxValue(v));
+		}
+		// Each bucket's largest value is just below the next bucket's smallest, and buckets are within about 3% of their values.
+		for (int i = 0; i < LatencyHistogram.BUCKET_COUNT - 1; i++) {
+			long max = LatencyHistogram.bucketMaxValue(i);
+			assertEquals(i, LatencyHistogram.bucketIndex(max));
+			assertEquals(i + 1, LatencyHistogram.bucketIndex(max + 1));
+			long min = i == 0 ? 0 : LatencyHistogram.bucketMaxValue(i - 1) + 1;
+			assertTrue(max - min <= min / 32, "Bucket " + i + " from " + min + " to " + max);
+		}
+	}
+
+	@Test
+	public void testRecordClamps() {
+		var histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+		long[] counts = counts(histogram);
+		assertEquals(1, counts[0]);
+		assertEquals(1, counts[LatencyHistogram.BUCKET_COUNT - 1]);
+	}
+
+	@Test
+	public void testPercentiles() {
+		var histogram = new LatencyHistogram();
+		assertEquals(0, LatencyHistogram.percentile(counts(histogram), 0, 50));
+
+		for (int v = 1; v <= 100; v++) histogram.record(v);
+		long[] counts = counts(histogram);
+		assertEquals(1, LatencyHistogram.percentile(counts, 100, 0));
+		assertEquals(50, LatencyHistogram.percentile(counts, 100, 50));
+		assertEquals(99, LatencyHistogram.percentile(counts, 100, 99));
+		assertEquals(LatencyHistogram.bucketMaxValue(LatencyHistogram.bucketIndex(100)), LatencyHistogram.percentile(counts, 100, 100));
+
+		// Mostly 1 ms ticks, with a few slow ones.
+		histogram = new LatencyHistogram();
+		for (int i = 0; i < 1000; i++) histogram.record(1_000_000);
+		for (int i = 0; i < 10; i++) histogram.record(50_000_000);
+		counts = counts(histogram);
+		long p50 = LatencyHistogram.percentile(counts, 1010, 50);
+		long p99 = LatencyHistogram.percentile(counts, 1010, 99);
+		long p100 = LatencyHistogram.percentile(counts, 1010, 100);
+		assertTrue(p50 >= 1_000_000 && p50 < 1_000_000 * 33 / 32, "p50 " + p50);
+		assertEquals(p50, p99);
+		assertTrue(p100 >= 50_000_000 && p100 < 50_000_000L * 33 / 32, "p100 " + p100);
+
+		// Counts can be subtracted to get the values recorded in an interval.
+		long[] before = counts(histogram);
+		histogram.record(200);
+		long[] after = counts(histogram);
+		for (int i = 0; i < after.length; i++) after[i] -= before[i];
+		assertEquals(200, LatencyHistogram.percentile(after, 1, 50), 200 / 32);
+	}
+}
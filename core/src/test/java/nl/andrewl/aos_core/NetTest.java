@@ -0,0 +1,132 @@
+package nl.andrewl.aos_core;
+
+import nl.andrewl.aos_core.model.Player;
+import nl.andrewl.aos_core.model.world.BlockRegion;
+import nl.andrewl.aos_core.model.world.Chunk;
+import nl.andrewl.aos_core.model.world.ColorPalette;
+import nl.andrewl.aos_core.model.world.World;
+import nl.andrewl.aos_core.net.client.PlayerSnapshot;
+import nl.andrewl.aos_core.net.client.PlayerSnapshotAckMessage;
+import nl.andrewl.aos_core.net.client.PlayerSnapshotMessage;
+import nl.andrewl.aos_core.net.world.BlockChangeSetMessage;
+import nl.andrewl.aos_core.net.world.WorldChangeMessage;
+import nl.andrewl.aos_core.net.world.WorldDigestMessage;
+import nl.andrewl.aos_core.net.world.WorldSubtreeMessage;
+import nl.andrewl.aos_core.net.world.WorldSubtreeRequestMessage;
+import nl.andrewl.record_net.Message;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that messages can be written and read back with {@link Net}.
+ */
+public class NetTest {
+	@SuppressWarnings("unchecked")
+	private static <T extends Message> T roundTrip(T msg) throws IOException {
+		Message read = Net.read(Net.write(msg));
+		assertNotNull(read);
+		assertEquals(msg.getClass(), read.getClass());
+		return (T) read;
+	}
+
+	@Test
+	public void testWorldDigestMessages() throws IOException {
+		World world = new World();
+		world.addChunk(new Chunk(0, 0, 0));
+		world.addChunk(new Chunk(3, -1, 2));
+		world.setBlockAt(1, 2, 3, (byte) 5);
+		var digest = world.getDigest();
+
+		var digestMessage = new WorldDigestMessage(digest);
+		assertEquals(digestMessage, roundTrip(digestMessage));
+
+		var request = new WorldSubtreeRequestMessage(digest.getOriginX(), digest.getOriginY(), digest.getOriginZ(), digest.getLevel(), digest.getLevel(), 0);
+		assertEquals(request, roundTrip(request));
+
+		var subtree = new WorldSubtreeMessage(digest, digest.getLevel(), 0);
+		var readSubtree = roundTrip(subtree);
+		assertEquals(digest.getOriginX(), readSubtree.ox());
+		assertEquals(digest.getOriginY(), readSubtree.oy());
+		assertEquals(digest.getOriginZ(), readSubtree.oz());
+		assertEquals(digest.getLevel(), readSubtree.rootLevel());
+		assertEquals(digest.getLevel(), readSubtree.level());
+		assertEquals(0, readSubtree.index());
+		assertArrayEquals(digest.getChildHashes(digest.getLevel(), 0), readSubtree.getChildHashes());
+	}
+
+	@Test
+	public void testBlockChangeSetMessage() throws IOException {
+		World world = new World();
+		world.addChunk(new Chunk(0, 0, 0));
+		world.addChunk(new Chunk(1, 0, -1));
+		var changes = world.fill(BlockRegion.sphere(Chunk.SIZE, 8, 0, 6.5f), (byte) 7);
+		assertTrue(changes.getChunkCount() > 1);
+
+		var read = roundTrip(new BlockChangeSetMessage(changes)).toChangeSet();
+		assertEquals(changes.getBlock(), read.getBlock());
+		assertEquals(changes.getBlockCount(), read.getBlockCount());
+		assertArrayEquals(changes.getChunkKeys(), read.getChunkKeys());
+		assertArrayEquals(changes.getRunCounts(), read.getRunCounts());
+		assertArrayEquals(changes.getRuns(), read.getRuns());
+	}
+
+	@Test
+	public void testWorldChangeMessage() throws IOException {
+		ColorPalette palette = new ColorPalette();
+		palette.setColor((byte) 1, 0.25f, 0.5f, 1);
+		palette.setColor((byte) 127, 0.1f, 0.2f, 0.3f);
+		int[] teamIds = {1, 2};
+		float[] teamSpawnPoints = {0.5f, 40, 0.5f, -64.5f, 32, 128.25f};
+		var read = roundTrip(new WorldChangeMessage(palette.toArray(), teamIds, teamSpawnPoints, 42));
+		assertArrayEquals(palette.toArray(), read.getPalette());
+		assertArrayEquals(teamIds, read.getTeamIds());
+		assertArrayEquals(teamSpawnPoints, read.getTeamSpawnPoints());
+		assertEquals(42, read.chunkCount());
+
+		// A world with no teams.
+		read = roundTrip(new WorldChangeMessage(palette.toArray(), new int[0], new float[0], 0));
+		assertEquals(0, read.getTeamIds().length);
+		assertEquals(0, read.getTeamSpawnPoints().length);
+	}
+
+	@Test
+	public void testPlayerSnapshotMessages() throws IOException {
+		var builder = new PlayerSnapshot.Builder();
+		for (int id = 1; id <= 40; id++) {
+			Player p = new Player(id, "player" + id);
+			p.getPosition().set(id * 3.5f, 64, -id);
+			p.getVelocity().set(0, -9.81f, id / 10f);
+			p.setOrientation(id / 7f, 0.5f);
+			p.setCrouching(id % 3 == 0);
+			builder.add(p, id % 4);
+		}
+		var snapshot = builder.build();
+		var parts = snapshot.encodeDelta(PlayerSnapshot.EMPTY, 400);
+		assertTrue(parts.size() > 1);
+		var decodedParts = new PlayerSnapshot[parts.size()];
+		for (int i = 0; i < parts.size(); i++) {
+			var part = parts.get(i);
+			var msg = new PlayerSnapshotMessage(17, -1, i, parts.size(), part.firstId(), part.endId(), part.data());
+			byte[] data = Net.write(msg);
+			assertEquals(PlayerSnapshotMessage.serializedOverhead() + part.data().length, data.length);
+			var read = (PlayerSnapshotMessage) Net.read(data);
+			assertEquals(17, read.sequence());
+			assertEquals(-1, read.baseline());
+			assertEquals(i, read.part());
+			assertEquals(parts.size(), read.partCount());
+			assertEquals(part.firstId(), read.firstId());
+			assertEquals(part.endId(), read.endId());
+			assertArrayEquals(part.data(), read.data());
+			decodedParts[i] = PlayerSnapshot.decodeDelta(PlayerSnapshot.EMPTY, read.firstId(), read.endId(), read.data());
+		}
+		var decoded = PlayerSnapshot.join(decodedParts);
+		assertEquals(snapshot.size(), decoded.size());
+		assertEquals(0, decoded.encodeDelta(snapshot).length);
+
+		var ack = new PlayerSnapshotAckMessage(5, 17);
+		assertEquals(ack, roundTrip(ack));
+	}
+}
@@ -0,0 +1,68 @@
+package nl.andrewl.aos_core.model;
+
+import nl.andrewl.aos_core.model.world.Chunk;
+import nl.andrewl.aos_core.model.world.ChunkMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkMapTest {
+	@Test
+	public void testKeyPacking() {
+		int[] values = {0, 1, -1, 15, -16, 1000, -1000, (1 << 20) - 1, -(1 << 20)};
+		for (int x : values) {
+			for (int y : values) {
+				for (int z : values) {
+					long key = ChunkMap.key(x, y, z);
+					assertEquals(x, ChunkMap.keyX(key));
+					assertEquals(y, ChunkMap.keyY(key));
+					assertEquals(z, ChunkMap.keyZ(key));
+				}
+			}
+		}
+		assertNotEquals(ChunkMap.key(1, 0, 0), ChunkMap.key(0, 1, 0));
+		assertNotEquals(ChunkMap.key(-1, 0, 0), ChunkMap.key(0, 0, -1));
+	}
+
+	@Test
+	public void testPutGetRemove() {
+		ChunkMap map = new ChunkMap();
+		Set<Chunk> chunks = new HashSet<>();
+		for (int x = -5; x < 5; x++) {
+			for (int y = -3; y < 3; y++) {
+				for (int z = -5; z < 5; z++) {
+					Chunk chunk = new Chunk(x, y, z);
+					assertNull(map.put(chunk));
+					chunks.add(chunk);
+				}
+			}
+		}
+		assertEquals(chunks.size(), map.size());
+		for (var chunk : chunks) {
+			assertSame(chunk, map.get(chunk.getPosition().x, chunk.getPosition().y, chunk.getPosition().z));
+		}
+		assertNull(map.get(5, 0, 0));
+		assertEquals(chunks.size(), new HashSet<>(map.values()).size());
+
+		// Remove every other chunk, and make sure the rest can still be found.
+		int removed = 0;
+		for (var chunk : chunks) {
+			if ((chunk.getPosition().x + chunk.getPosition().y + chunk.getPosition().z) % 2 == 0) {
+				assertSame(chunk, map.remove(chunk.getKey()));
+				removed++;
+			}
+		}
+		assertEquals(chunks.size() - removed, map.size());
+		for (var chunk : chunks) {
+			boolean shouldExist = (chunk.getPosition().x + chunk.getPosition().y + chunk.getPosition().z) % 2 != 0;
+			assertEquals(shouldExist, map.get(chunk.getKey()) == chunk);
+		}
+
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(0, 0, 0));
+	}
+}
@@ -53,4 +53,71 @@ public class ChunkTest {
 		assertEquals(0, chunk.getBlockAt(-1, 0, 0));
 		assertEquals(0, chunk.getBlockAt(16, 0, 5));
 	}
+
+	@Test
+	public void testStorageModes() {
+		Chunk chunk = new Chunk(0, 0, 0);
+		assertEquals(0, chunk.getStorageSize());
+		byte[] expected = new byte[Chunk.TOTAL_SIZE];
+		Random rand = new Random(1);
+		// Gradually add more distinct values, so the chunk goes through each storage mode.
+		for (int distinct = 1; distinct <= 40; distinct++) {
+			for (int n = 0; n < 50; n++) {
+				int idx = rand.nextInt(Chunk.TOTAL_SIZE);
+				byte value = (byte) rand.nextInt(0, distinct + 1);
+				expected[idx] = value;
+				Vector3i pos = Chunk.idxToXyz(idx);
+				chunk.setBlockAt(pos.x, pos.y, pos.z, value);
+			}
+			assertArrayEquals(expected, chunk.getBlocks());
+			for (int i = 0; i < Chunk.TOTAL_SIZE; i++) {
+				assertEquals(expected[i], chunk.getBlockAt(Chunk.idxToXyz(i)));
+			}
+			if (distinct < 16) assertTrue(chunk.getStorageSize() < Chunk.TOTAL_SIZE);
+		}
+		assertEquals(Chunk.TOTAL_SIZE, chunk.getStorageSize());
+
+		// Chunks created from an array should pick the most compact storage.
+		assertEquals(0, new Chunk(0, 0, 0, new byte[Chunk.TOTAL_SIZE]).getStorageSize());
+		byte[] twoValues = new byte[Chunk.TOTAL_SIZE];
+		for (int i = 0; i < Chunk.TOTAL_SIZE / 2; i++) twoValues[i] = 7;
+		Chunk twoValueChunk = new Chunk(0, 0, 0, twoValues);
+		assertTrue(twoValueChunk.getStorageSize() < Chunk.TOTAL_SIZE / 4);
+		assertArrayEquals(twoValues, twoValueChunk.getBlocks());
+		assertEquals(Chunk.TOTAL_SIZE / 2, twoValueChunk.getNonAirCount());
+
+		// Copies must be independent of the original.
+		Chunk copy = new Chunk(twoValueChunk);
+		copy.setBlockAt(0, 0, 0, (byte) 3);
+		assertEquals(7, twoValueChunk.getBlockAt(0, 0, 0));
+		assertEquals(3, copy.getBlockAt(0, 0, 0));
+	}
+
+	@Test
+	public void testBlockHash() {
+		Chunk chunk = Chunk.random(new Vector3i(0, 0, 0), new Random(1));
+		long originalHash = chunk.blockHash();
+		long version = chunk.getVersion();
+		assertEquals(originalHash, chunk.blockHash());
+		assertEquals(originalHash, new Chunk(0, 0, 0, chunk.getBlocks()).blockHash());
+
+		// Setting a block to its current value isn't a change.
+		chunk.setBlockAt(1, 2, 3, chunk.getBlockAt(1, 2, 3));
+		assertEquals(version, chunk.getVersion());
+
+		byte previous = chunk.getBlockAt(1, 2, 3);
+		chunk.setBlockAt(1, 2, 3, (byte) 0);
+		assertNotEquals(version, chunk.getVersion());
+		long changedHash = chunk.blockHash();
+		assertNotEquals(originalHash, changedHash);
+		assertEquals(changedHash, new Chunk(0, 0, 0, chunk.getBlocks()).blockHash());
+		Chunk copy = new Chunk(chunk);
+		assertEquals(changedHash, copy.blockHash());
+		copy.setBlockAt(0, 0, 0, (byte) 0);
+		assertNotEquals(changedHash, copy.blockHash());
+		assertEquals(changedHash, chunk.blockHash());
+
+		chunk.setBlockAt(1, 2, 3, previous);
+		assertEquals(originalHash, chunk.blockHash());
+	}
 }
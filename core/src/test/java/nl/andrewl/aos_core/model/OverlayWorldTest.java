@@ -0,0 +1,66 @@
+package nl.andrewl.aos_core.model;
+
+import nl.andrewl.aos_core.model.world.*;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OverlayWorldTest {
+	@Test
+	public void testOverlayWorld() {
+		World original = Worlds.arena();
+		WorldBase base = WorldBase.of(original);
+		OverlayWorld a = new OverlayWorld(base);
+		OverlayWorld b = new OverlayWorld(base);
+		assertEquals(original.getChunkCount(), a.getChunkCount());
+		assertEquals(0, a.getChangedChunkCount());
+		for (var chunk : a.getChunkMap().values()) {
+			assertEquals(0, chunk.getStorageSize());
+			assertArrayEquals(original.getChunkAt(chunk.getKey()).getBlocks(), chunk.getBlocks());
+		}
+		assertEquals(original.getDigest().getRootHash(), a.getDigest().getRootHash());
+
+		// Changes to one overlay don't affect the base, or other overlays.
+		byte before = a.getBlockAt(5, 5, 5);
+		a.setBlockAt(5, 5, 5, (byte) 42);
+		a.fill(BlockRegion.sphere(60, 10, 60, 8), (byte) 0);
+		a.fill(BlockRegion.box(32, 0, 32, 47, 15, 47), (byte) 3);
+		a.removeChunk(8, 0, 8);
+		a.addChunk(new Chunk(20, 20, 20));
+		a.setSpawnPoint("extra", new Vector3f(1, 2, 3));
+		assertEquals(42, a.getBlockAt(5, 5, 5));
+		assertEquals(0, a.getBlockAt(60, 10, 60));
+		assertEquals(before, b.getBlockAt(5, 5, 5));
+		assertEquals(original.getBlockAt(60, 10, 60), b.getBlockAt(60, 10, 60));
+		assertEquals(0, b.getChangedChunkCount());
+		assertTrue(a.getChangedChunkCount() > 0);
+		assertTrue(a.getChangedChunkCount() < a.getChunkCount());
+
+		// Resetting brings back the base, and only touches changed chunks.
+		int changed = a.getChangedChunkCount();
+		var resetChunks = a.reset();
+		assertEquals(changed, resetChunks.size());
+		assertEquals(0, a.getChangedChunkCount());
+		assertNull(a.getChunkAt(20, 20, 20));
+		assertNotNull(a.getChunkAt(8, 0, 8));
+		assertEquals(original.getSpawnPoints(), a.getSpawnPoints());
+		for (var chunk : original.getChunkMap().values()) {
+			assertArrayEquals(chunk.getBlocks(), a.getChunkAt(chunk.getKey()).getBlocks());
+			assertEquals(chunk.getNonAirCount(), a.getChunkAt(chunk.getKey()).getNonAirCount());
+		}
+		assertEquals(original.getHeightAt(60, 60), a.getHeightAt(60, 60));
+		assertEquals(original.getDigest().getRootHash(), a.getDigest().getRootHash());
+		assertTrue(a.reset().isEmpty());
+
+		// Overlays can keep their changed blocks off-heap.
+		var allocator = new ChunkSlabAllocator(16);
+		a.useSlabStorage(allocator);
+		a.setBlockAt(5, 5, 5, (byte) 42);
+		assertEquals(42, a.getBlockAt(5, 5, 5));
+		assertEquals(1, allocator.getUsedSlotCount());
+		a.reset();
+		assertEquals(before, a.getBlockAt(5, 5, 5));
+		assertEquals(0, allocator.getUsedSlotCount());
+	}
+}
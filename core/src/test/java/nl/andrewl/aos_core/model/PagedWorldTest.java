@@ -0,0 +1,121 @@
+package nl.andrewl.aos_core.model;
+
+import nl.andrewl.aos_core.model.world.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PagedWorldTest {
+	@Test
+	public void testPagedWorld() throws IOException {
+		World world = Worlds.arena();
+		// Add a chunk with negative coordinates, in another region.
+		Chunk extra = new Chunk(-1, 0, -9);
+		extra.setBlockAt(1, 2, 3, (byte) 7);
+		world.addChunk(extra);
+
+		Path dir = Files.createTempDirectory("paged-world");
+		try {
+			PagedWorld.write(world, dir);
+			assertTrue(PagedWorld.isPagedWorld(dir));
+			PagedWorld paged = PagedWorld.open(dir, 4);
+			assertEquals(0, paged.getLoadedChunkCount());
+			assertEquals(world.getChunkCount(), paged.getChunkCount());
+			assertEquals(world.getSpawnPoints(), paged.getSpawnPoints());
+			assertEquals(world.getMinX(), paged.getMinX());
+			assertEquals(world.getMaxY(), paged.getMaxY());
+			assertEquals(world.getMinZ(), paged.getMinZ());
+			for (long key : world.getChunkKeys()) {
+				assertArrayEquals(world.getChunkAt(key).getBlocks(), paged.getChunkAt(key).getBlocks());
+				assertTrue(paged.getLoadedChunkCount() <= 4);
+			}
+			assertNull(paged.getChunkAt(100, 100, 100));
+
+			// Changes survive being unloaded, and closing the world.
+			paged.setBlockAt(5, 5, 5, (byte) 42);
+			paged.fill(BlockRegion.box(20, 0, 20, 100, 30, 100), (byte) 9);
+			assertEquals(42, paged.getBlockAt(5, 5, 5));
+			paged.setBlockAt(-15, 2, -140, (byte) 3);
+			paged.removeChunk(8, 0, 8);
+			paged.addChunk(new Chunk(20, 20, 20));
+			paged.close();
+
+			PagedWorld reopened = PagedWorld.open(dir, 2);
+			assertEquals(world.getChunkCount(), reopened.getChunkCount());
+			assertEquals(42, reopened.getBlockAt(5, 5, 5));
+			assertEquals(9, reopened.getBlockAt(60, 15, 60));
+			assertEquals(7, reopened.getBlockAt(-15, 2, -141));
+			assertEquals(3, reopened.getBlockAt(-15, 2, -140));
+			assertNull(reopened.getChunkAt(8, 0, 8));
+			assertNotNull(reopened.getChunkAt(20, 20, 20));
+			assertEquals(20 * Chunk.SIZE + Chunk.SIZE - 1, reopened.getMaxX());
+
+			// Paged worlds can be written as regular worlds.
+			var out = new ByteArrayOutputStream();
+			WorldIO.write(reopened, out);
+			World read = WorldIO.read(new ByteArrayInputStream(out.toByteArray()));
+			assertEquals(reopened.getChunkCount(), read.getChunkCount());
+			assertEquals(9, read.getBlockAt(60, 15, 60));
+			assertTrue(reopened.getLoadedChunkCount() <= 2);
+			reopened.close();
+		} finally {
+			try (var files = Files.walk(dir)) {
+				for (var file : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(file);
+			}
+		}
+	}
+
+	@Test
+	public void testChangesWhileChunksAreUnloaded() throws Exception {
+		World world = Worlds.arena();
+		Path dir = Files.createTempDirectory("paged-world");
+		try {
+			PagedWorld.write(world, dir);
+			PagedWorld paged = PagedWorld.open(dir, 2);
+			assertFalse(paged.supportsDigests());
+			assertFalse(paged.supportsSnapshots());
+			assertThrows(UnsupportedOperationException.class, paged::snapshot);
+			long[] keys = paged.getChunkKeys();
+			// Another thread keeps loading every chunk, which unloads the ones that are being changed.
+			var running = new AtomicBoolean(true);
+			Thread reader = new Thread(() -> {
+				while (running.get()) {
+					for (long key : keys) paged.getChunkAt(key);
+				}
+			});
+			reader.start();
+			try {
+				for (int i = 0; i < 20_000; i++) {
+					int x = i % 64;
+					int z = (i / 64) % 64;
+					paged.setBlockAt(x, 40, z, (byte) (1 + i % 100));
+				}
+			} finally {
+				running.set(false);
+				reader.join();
+			}
+			paged.close();
+
+			PagedWorld reopened = PagedWorld.open(dir, 2);
+			for (int i = 20_000 - 64 * 64; i < 20_000; i++) {
+				int x = i % 64;
+				int z = (i / 64) % 64;
+				if (reopened.getChunkAt(x >> Chunk.SIZE_BITS, 40 >> Chunk.SIZE_BITS, z >> Chunk.SIZE_BITS) == null) continue;
+				assertEquals(1 + i % 100, reopened.getBlockAt(x, 40, z));
+			}
+			reopened.close();
+		} finally {
+			try (var files = Files.walk(dir)) {
+				for (var file : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(file);
+			}
+		}
+	}
+}
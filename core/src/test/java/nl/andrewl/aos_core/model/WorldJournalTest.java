@@ -0,0 +1,69 @@
+package nl.andrewl.aos_core.model;
+
+import nl.andrewl.aos_core.model.world.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorldJournalTest {
+	@Test
+	public void testJournal() throws IOException {
+		Path dir = Files.createTempDirectory("world-journal");
+		try {
+			World world = WorldJournal.recover(dir, Worlds.arena());
+			WorldJournal journal = WorldJournal.open(dir, world, 3600, 0);
+			assertSame(journal, world.getJournal());
+			world.setBlockAt(5, 5, 5, (byte) 42);
+			world.fill(BlockRegion.sphere(60, 10, 60, 8), (byte) 9);
+			journal.flush();
+			assertWorldsEqual(world, WorldJournal.recover(dir, Worlds.arena()));
+
+			// Changes made while a snapshot is copied are kept.
+			journal.requestCompaction();
+			int ticks = 0;
+			while (journal.isCompacting()) {
+				journal.tick();
+				world.setBlockAt(ticks, 20, 0, (byte) 3);
+				world.setBlockAt(100 - ticks, 20, 100, (byte) 4);
+				ticks++;
+			}
+			assertTrue(ticks > 1);
+			world.fill(BlockRegion.box(0, 0, 0, 40, 2, 40), (byte) 0);
+			journal.flush();
+			try (var files = Files.list(dir)) {
+				var names = files.map(f -> f.getFileName().toString()).sorted().toList();
+				assertEquals(1, names.stream().filter(n -> n.startsWith("snapshot.")).count());
+				assertFalse(names.contains("journal.0.log"));
+			}
+			// The base world isn't needed once there's a snapshot.
+			assertWorldsEqual(world, WorldJournal.recover(dir, new World()));
+
+			// Partly written frames are ignored.
+			world.setBlockAt(7, 7, 7, (byte) 1);
+			journal.close();
+			assertNull(world.getJournal());
+			try (var files = Files.list(dir)) {
+				Path segment = files.filter(f -> f.getFileName().toString().startsWith("journal.")).max(Comparator.naturalOrder()).orElseThrow();
+				Files.write(segment, new byte[]{0, 0, 1, 0, 1, 2, 3}, StandardOpenOption.APPEND);
+			}
+			assertWorldsEqual(world, WorldJournal.recover(dir, new World()));
+		} finally {
+			try (var files = Files.walk(dir)) {
+				for (var file : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(file);
+			}
+		}
+	}
+
+	private static void assertWorldsEqual(World expected, World actual) {
+		assertEquals(expected.getChunkCount(), actual.getChunkCount());
+		for (var chunk : expected.getChunkMap().values()) {
+			assertArrayEquals(chunk.getBlocks(), actual.getChunkAt(chunk.getKey()).getBlocks());
+		}
+	}
+}
@@ -1,15 +1,18 @@
 package nl.andrewl.aos_core.model;
 
 import nl.andrewl.aos_core.Directions;
-import nl.andrewl.aos_core.model.world.Chunk;
-import nl.andrewl.aos_core.model.world.Hit;
-import nl.andrewl.aos_core.model.world.World;
+import nl.andrewl.aos_core.model.world.*;
 import org.joml.Vector3f;
 import org.joml.Vector3i;
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 public class WorldTest {
 	@Test
@@ -22,6 +25,17 @@ public class WorldTest {
 		assertEquals(1, world.getBlockAt(new Vector3f(1.9f, 0, 0)));
 		assertEquals(1, world.getBlockAt(new Vector3f(1.5f, 0.7f, 0.3f)));
 		assertEquals(0, world.getBlockAt(new Vector3f(2f, 0.7f, 0.3f)));
+		assertEquals(1, world.getBlockAt(1, 0, 0));
+
+		// Check that negative coordinates map to the correct chunk.
+		Chunk negChunk = new Chunk(-1, 0, -1);
+		negChunk.setBlockAt(Chunk.SIZE - 1, 3, Chunk.SIZE - 2, (byte) 5);
+		world.addChunk(negChunk);
+		assertEquals(5, world.getBlockAt(-1, 3, -2));
+		assertEquals(5, world.getBlockAt(-0.5f, 3.2f, -1.1f));
+		assertEquals(0, world.getBlockAt(-1, 3, -1));
+		world.setBlockAt(-16, 0, -16, (byte) 2);
+		assertEquals(2, negChunk.getBlockAt(0, 0, 0));
 	}
 
 	@Test
@@ -57,4 +71,218 @@ public class WorldTest {
 		assertEquals(blockPos, hit.pos());
 		assertEquals(Directions.DOWN, hit.norm());
 	}
+
+	@Test
+	public void testGetLookingAtPosFaces() {
+		World world = new World();
+		world.addChunk(new Chunk(0, 0, 0));
+		world.addChunk(new Chunk(1, 0, 0));
+		Vector3i blockPos = new Vector3i(7, 7, 7);
+		world.setBlockAt(blockPos.x, blockPos.y, blockPos.z, (byte) 1);
+		Hit hit;
+
+		hit = world.getLookingAtPos(new Vector3f(2.5f, 7.5f, 7.5f), new Vector3f(1, 0, 0), 10);
+		assertEquals(blockPos, hit.pos());
+		assertEquals(Directions.NEGATIVE_X, hit.norm());
+		assertEquals(7f, hit.rawPos().x, 0.0001f);
+		assertEquals(4.5f, hit.distance(), 0.0001f);
+
+		hit = world.getLookingAtPos(new Vector3f(12.5f, 7.5f, 7.5f), new Vector3f(-1, 0, 0), 10);
+		assertEquals(blockPos, hit.pos());
+		assertEquals(Directions.POSITIVE_X, hit.norm());
+
+		hit = world.getLookingAtPos(new Vector3f(7.5f, 7.5f, 1.5f), new Vector3f(0, 0, 3), 10);
+		assertEquals(blockPos, hit.pos());
+		assertEquals(Directions.NEGATIVE_Z, hit.norm());
+
+		hit = world.getLookingAtPos(new Vector3f(7.5f, 7.5f, 14.5f), new Vector3f(0, 0, -1), 10);
+		assertEquals(blockPos, hit.pos());
+		assertEquals(Directions.POSITIVE_Z, hit.norm());
+
+		// Diagonal ray that enters the block from above.
+		hit = world.getLookingAtPos(new Vector3f(5.5f, 9.6f, 7.5f), new Vector3f(1, -1, 0), 10);
+		assertEquals(blockPos, hit.pos());
+		assertEquals(Directions.UP, hit.norm());
+
+		// Out of range, or looking away.
+		assertNull(world.getLookingAtPos(new Vector3f(2.5f, 7.5f, 7.5f), new Vector3f(1, 0, 0), 4));
+		assertNull(world.getLookingAtPos(new Vector3f(2.5f, 7.5f, 7.5f), new Vector3f(-1, 0, 0), 10));
+		assertNull(world.getLookingAtPos(new Vector3f(2.5f, 7.5f, 7.5f), new Vector3f(0, 0, 0), 10));
+
+		// Ray that crosses into the neighboring chunk.
+		world.setBlockAt(20, 7, 7, (byte) 1);
+		hit = world.getLookingAtPos(new Vector3f(8.5f, 7.5f, 7.5f), new Vector3f(1, 0, 0), 20);
+		assertEquals(new Vector3i(20, 7, 7), hit.pos());
+		assertEquals(Directions.NEGATIVE_X, hit.norm());
+	}
+
+	@Test
+	public void testRaycastLimit() {
+		World world = new World();
+		world.addChunk(new Chunk(0, 0, 0));
+		world.setBlocksAt(0, 0, 0, Chunk.SIZE - 1, 3, Chunk.SIZE - 1, (byte) 1);
+		Hit hit = new Hit();
+		for (int i = 0; i < Chunk.SIZE; i++) {
+			float limit = i % 2 == 0 ? 10 : 2; // Odd rays are too short to hit.
+			boolean hitWorld = world.raycast(new Vector3f(i + 0.5f, 10, 0.5f), new Vector3f(0, -1, 0), limit, hit);
+			if (i % 2 == 0) {
+				assertTrue(hitWorld);
+				assertEquals(new Vector3i(i, 3, 0), hit.pos());
+				assertEquals(Directions.UP, hit.norm());
+			} else {
+				assertFalse(hitWorld);
+				assertTrue(hit.isEmpty());
+			}
+		}
+	}
+
+	@Test
+	public void testBoundsAndHeightmap() {
+		World world = new World();
+		assertEquals(0, world.getMinX());
+		assertEquals(0, world.getMaxX());
+		assertEquals(World.NO_HEIGHT, world.getHeightAt(0, 0));
+
+		world.addChunk(new Chunk(0, 0, 0));
+		world.addChunk(new Chunk(0, 1, 0));
+		world.addChunk(new Chunk(-1, 0, 2));
+		assertEquals(-Chunk.SIZE, world.getMinX());
+		assertEquals(Chunk.SIZE - 1, world.getMaxX());
+		assertEquals(0, world.getMinY());
+		assertEquals(2 * Chunk.SIZE - 1, world.getMaxY());
+		assertEquals(0, world.getMinZ());
+		assertEquals(3 * Chunk.SIZE - 1, world.getMaxZ());
+
+		world.removeChunk(-1, 0, 2);
+		assertEquals(0, world.getMinX());
+		assertEquals(Chunk.SIZE - 1, world.getMaxZ());
+
+		world.setBlockAt(3, 2, 4, (byte) 1);
+		world.setBlockAt(3, 20, 4, (byte) 1);
+		assertEquals(20, world.getHeightAt(3, 4));
+		world.setBlockAt(3, 20, 4, (byte) 0);
+		assertEquals(2, world.getHeightAt(3, 4));
+		world.setBlockAt(3, 2, 4, (byte) 0);
+		assertEquals(World.NO_HEIGHT, world.getHeightAt(3, 4));
+
+		Chunk chunk = world.getChunkAt(0, 0, 0);
+		assertTrue(chunk.isEmpty());
+		world.setBlocksAt(0, 0, 0, 1, 1, 1, (byte) 3);
+		assertEquals(8, chunk.getNonAirCount());
+		assertEquals(1, chunk.getColumnHeight(1, 1));
+		world.setBlockAt(0, 0, 0, (byte) 4);
+		assertEquals(8, chunk.getNonAirCount());
+		world.setBlockAt(0, 0, 0, (byte) 0);
+		assertEquals(7, chunk.getNonAirCount());
+		assertEquals(1, new Chunk(chunk).getColumnHeight(0, 0));
+	}
+
+	@Test
+	public void testSlabStorage() throws IOException {
+		World world = Worlds.testingWorld();
+		var heapOut = new ByteArrayOutputStream();
+		WorldIO.write(world, heapOut);
+		byte[] expected = heapOut.toByteArray();
+
+		ChunkSlabAllocator allocator = new ChunkSlabAllocator(4);
+		world.useSlabStorage(allocator);
+		int usedSlots = allocator.getUsedSlotCount();
+		assertTrue(usedSlots > 0);
+		assertEquals((usedSlots + 3) / 4, allocator.getSlabCount());
+		var slabOut = new ByteArrayOutputStream();
+		WorldIO.write(world, slabOut);
+		assertArrayEquals(expected, slabOut.toByteArray());
+
+		// Modifying an empty chunk should move it into the slab.
+		Chunk chunk = new Chunk(10, 10, 10);
+		world.addChunk(chunk);
+		assertEquals(usedSlots, allocator.getUsedSlotCount());
+		world.setBlockAt(160, 160, 160, (byte) 3);
+		assertEquals(usedSlots + 1, allocator.getUsedSlotCount());
+		assertEquals(3, world.getBlockAt(160, 160, 160));
+
+		// Removed chunks keep their blocks, and their slot is re-used.
+		int slabCount = allocator.getSlabCount();
+		world.removeChunk(10, 10, 10);
+		assertEquals(usedSlots, allocator.getUsedSlotCount());
+		assertEquals(3, chunk.getBlockAt(0, 0, 0));
+		Chunk other = new Chunk(11, 10, 10);
+		world.addChunk(other);
+		world.setBlockAt(176, 160, 160, (byte) 5);
+		assertEquals(usedSlots + 1, allocator.getUsedSlotCount());
+		assertEquals(slabCount, allocator.getSlabCount());
+		assertEquals(3, chunk.getBlockAt(0, 0, 0));
+		assertEquals(5, other.getBlockAt(0, 0, 0));
+
+		World read = WorldIO.read(new ByteArrayInputStream(expected));
+		assertEquals(world.getChunkMap().size() - 1, read.getChunkMap().size());
+		for (var c : read.getChunkMap().values()) {
+			assertArrayEquals(c.getBlocks(), world.getChunkAt(c.getKey()).getBlocks());
+		}
+	}
+
+	@Test
+	public void testConcurrentAccess() throws InterruptedException {
+		World world = new World();
+		world.addChunk(new Chunk(0, 0, 0));
+		world.addChunk(new Chunk(1, 0, 0));
+		// The region covers half of each of the two chunks.
+		int s = Chunk.SIZE;
+		BlockRegion region = BlockRegion.box(0, 0, 0, 2 * s - 1, s / 2 - 1, s - 1);
+		int regionSize = s * s / 2 * s;
+		world.fill(region, (byte) 1);
+		long keptKey = world.getChunkAt(0, 0, 0).getKey();
+
+		var running = new AtomicBoolean(true);
+		var failure = new AtomicReference<Throwable>();
+		Thread writer = new Thread(() -> {
+			// Cycling through many values makes the palette storage widen while it's read.
+			for (int i = 0; i < 2000; i++) world.fill(region, (byte) (1 + i % 40));
+			running.set(false);
+		});
+		Thread chunkChanger = new Thread(() -> {
+			while (running.get()) {
+				world.addChunk(new Chunk(5, 5, 5));
+				world.removeChunk(5, 5, 5);
+			}
+		});
+		Thread reader = new Thread(() -> {
+			try {
+				byte[] blocks = new byte[Chunk.TOTAL_SIZE];
+				while (running.get()) {
+					// A chunk's blocks are never copied in the middle of a change.
+					world.getChunkAt(0, 0, 0).copyBlocks(blocks);
+					byte value = 0;
+					int count = 0;
+					for (byte b : blocks) {
+						if (b == 0) continue;
+						if (value == 0) value = b;
+						assertEquals(value, b);
+						count++;
+					}
+					assertEquals(regionSize, count);
+
+					// Snapshots never contain part of a change, even across chunks.
+					World snapshot = world.snapshot();
+					assertEquals(snapshot.getBlockAt(0, 0, 0), snapshot.getBlockAt(2 * s - 1, s / 2 - 1, s - 1));
+
+					// Chunks that aren't removed are always found.
+					assertNotNull(world.getChunkAt(keptKey));
+					boolean found = false;
+					for (long key : world.getChunkKeys()) found |= key == keptKey;
+					assertTrue(found);
+				}
+			} catch (Throwable t) {
+				failure.set(t);
+			}
+		});
+		reader.start();
+		chunkChanger.start();
+		writer.start();
+		writer.join();
+		reader.join();
+		chunkChanger.join();
+		if (failure.get() != null) fail(failure.get());
+		assertEquals(40, world.getBlockAt(s + 1, 1, 1));
+	}
 }
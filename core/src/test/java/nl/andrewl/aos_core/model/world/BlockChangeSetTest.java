@@ -0,0 +1,68 @@
+package nl.andrewl.aos_core.model.world;
+
+import nl.andrewl.aos_core.net.world.BlockChangeSetMessage;
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlockChangeSetTest {
+	@Test
+	public void testFill() {
+		World world = Worlds.testingWorld();
+		World copy = Worlds.testingWorld();
+		BitSet bits = new BitSet();
+		for (int i = 0; i < 5 * 6 * 7; i += 3) bits.set(i);
+		BlockRegion[] regions = {
+				BlockRegion.box(-16, -16, -16, 31, 31, 31),
+				BlockRegion.box(-3, -5, 2, 20, 1, 17),
+				BlockRegion.column(4, -9, -16, 30),
+				BlockRegion.sphere(2, 3, -1, 9.5f),
+				BlockRegion.mask(-2, 13, 14, 5, 6, 7, bits),
+				BlockRegion.box(-20, 0, 0, 40, 0, 0)
+		};
+		byte value = 10;
+		for (var region : regions) {
+			// Compute the expected result by setting each block individually.
+			World expected = new World();
+			for (var chunk : world.getChunkMap().values()) expected.addChunk(new Chunk(chunk));
+			int expectedChanges = 0;
+			for (int x = region.minX(); x <= region.maxX(); x++) {
+				for (int y = region.minY(); y <= region.maxY(); y++) {
+					for (int z = region.minZ(); z <= region.maxZ(); z++) {
+						if (!region.contains(x, y, z) || expected.getChunkAt(World.getChunkPosAt(new Vector3i(x, y, z))) == null) continue;
+						if (expected.getBlockAt(x, y, z) != value) expectedChanges++;
+						expected.setBlockAt(x, y, z, value);
+					}
+				}
+			}
+
+			BlockChangeSet changes = world.fill(region, value);
+			assertEquals(expectedChanges, changes.getBlockCount());
+			copy.applyChanges(new BlockChangeSetMessage(changes).toChangeSet());
+			for (var expectedChunk : expected.getChunkMap().values()) {
+				for (World w : new World[]{world, copy}) {
+					Chunk chunk = w.getChunkAt(expectedChunk.getKey());
+					assertArrayEquals(expectedChunk.getBlocks(), chunk.getBlocks());
+					assertEquals(expectedChunk.getNonAirCount(), chunk.getNonAirCount());
+					for (int x = 0; x < Chunk.SIZE; x++) {
+						for (int z = 0; z < Chunk.SIZE; z++) {
+							assertEquals(expectedChunk.getColumnHeight(x, z), chunk.getColumnHeight(x, z));
+						}
+					}
+					assertEquals(expectedChunk.blockHash(), chunk.blockHash());
+				}
+			}
+			value++;
+		}
+
+		// Filling whole chunks makes them uniform, and filling again changes nothing.
+		BlockChangeSet changes = world.fill(regions[0], (byte) 20);
+		assertEquals(world.getChunkMap().size(), changes.getChunkCount());
+		assertEquals(world.getChunkMap().size(), changes.getRuns().length);
+		assertEquals(0, world.getChunkAt(0, 0, 0).getStorageSize());
+		assertTrue(world.fill(regions[0], (byte) 20).isEmpty());
+	}
+}
@@ -0,0 +1,94 @@
+package nl.andrewl.aos_core.model.world;
+
+import nl.andrewl.aos_core.model.item.Gun;
+import nl.andrewl.aos_core.model.item.ItemTypes;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlockDamageTrackerTest {
+	@Test
+	public void testDamageWearsOff() {
+		BlockDamageTracker tracker = new BlockDamageTracker(1000, 0);
+		assertEquals(1, tracker.damage(3, -4, 5, 1, 0));
+		assertEquals(1, tracker.size());
+		tracker.tick(1000);
+		assertEquals(1, tracker.getDamage(3, -4, 5, 1000));
+		// The damage wears off once the cooldown has passed, even before the wheel catches up.
+		assertEquals(0, tracker.getDamage(3, -4, 5, 1001));
+		tracker.tick(1100);
+		assertEquals(0, tracker.size());
+	}
+
+	@Test
+	public void testDamageAgainBeforeExpiry() {
+		BlockDamageTracker tracker = new BlockDamageTracker(1000, 0);
+		tracker.damage(1, 2, 3, 1, 0);
+		assertEquals(2, tracker.damage(1, 2, 3, 1, 800));
+		// The first expiry passes, but the block was damaged again since then.
+		tracker.tick(1100);
+		assertEquals(1, tracker.size());
+		assertEquals(2, tracker.getDamage(1, 2, 3, 1100));
+		assertEquals(3, tracker.damage(1, 2, 3, 1, 1700));
+		tracker.tick(2600);
+		assertEquals(3, tracker.getDamage(1, 2, 3, 2600));
+		tracker.tick(2800);
+		assertEquals(0, tracker.size());
+		// Damage after it wore off starts from nothing.
+		assertEquals(1, tracker.damage(1, 2, 3, 1, 2800));
+	}
+
+	@Test
+	public void testDamageAfterExpiryBeforeTick() {
+		BlockDamageTracker tracker = new BlockDamageTracker(1000, 0);
+		tracker.damage(0, 0, 0, 2, 0);
+		assertEquals(0.5, tracker.damage(0, 0, 0, 0.5f, 1500));
+		tracker.tick(1600);
+		assertEquals(0.5, tracker.getDamage(0, 0, 0, 1600));
+	}
+
+	/**
+	 * A block is destroyed by the n-th hit of damage d, where n is the
+	 * smallest number such that n * d >= R, for its resistance R.
+	 */
+	@Test
+	public void testHitsToDestroy() {
+		float resistance = 3;
+		for (var gun : new Gun[] {ItemTypes.RIFLE, ItemTypes.AK_47, ItemTypes.WINCHESTER}) {
+			float d = gun.getBaseDamage();
+			int expectedHits = (int) Math.ceil(resistance / d);
+			BlockDamageTracker tracker = new BlockDamageTracker(10_000, 0);
+			int hits = 0;
+			double total;
+			do {
+				hits++;
+				total = tracker.damage(7, 8, 9, d, hits * 100L);
+			} while (total < resistance);
+			assertEquals(expectedHits, hits, gun.getName());
+			tracker.remove(7, 8, 9);
+			assertEquals(0, tracker.size());
+			assertEquals(0, tracker.getDamage(7, 8, 9, hits * 100L));
+		}
+	}
+
+	@Test
+	public void testManyBlocks() {
+		BlockDamageTracker tracker = new BlockDamageTracker(1000, 0);
+		for (int x = -50; x < 50; x++) {
+			for (int z = -50; z < 50; z++) {
+				tracker.damage(x, 10, z, 1, (x + 50) * 10L);
+			}
+		}
+		assertEquals(10_000, tracker.size());
+		for (int x = -50; x < 50; x += 7) {
+			assertEquals(1, tracker.getDamage(x, 10, 0, 1000));
+		}
+		tracker.tick(1500);
+		// Blocks damaged at 500 or later remain.
+		assertEquals(5000, tracker.size());
+		assertEquals(0, tracker.getDamage(-50, 10, 0, 1500));
+		assertEquals(1, tracker.getDamage(49, 10, 49, 1500));
+		tracker.clear();
+		assertEquals(0, tracker.size());
+	}
+}
@@ -0,0 +1,75 @@
+package nl.andrewl.aos_core.model.world;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkCodecTest {
+	@Test
+	public void testUniformChunk() throws IOException {
+		ChunkCodec codec = new ChunkCodec();
+		byte[] blocks = new byte[Chunk.TOTAL_SIZE];
+		Arrays.fill(blocks, (byte) 7);
+		byte[] data = codec.encode(blocks);
+		assertNotNull(data);
+		assertEquals(ChunkCodec.RLE, data[0]);
+		assertTrue(data.length < 8);
+		assertArrayEquals(blocks, codec.decode(data, data.length));
+		codec.close();
+	}
+
+	@Test
+	public void testStructuredChunk() throws IOException {
+		ChunkCodec codec = new ChunkCodec();
+		// Layers of ground with scattered blocks, like a chunk of terrain.
+		Random rand = new Random(1);
+		byte[] blocks = new byte[Chunk.TOTAL_SIZE];
+		for (int i = 0; i < Chunk.TOTAL_SIZE / 2; i++) {
+			blocks[i] = (byte) (rand.nextInt(8) == 0 ? 2 : 1);
+		}
+		byte[] data = codec.encode(blocks);
+		assertNotNull(data);
+		assertTrue(data[0] == ChunkCodec.RLE || data[0] == ChunkCodec.DEFLATE);
+		assertTrue(data.length < Chunk.TOTAL_SIZE);
+		assertArrayEquals(blocks, codec.decode(data, data.length));
+
+		// Decoding re-uses the codec's buffers, so check a second chunk too.
+		byte[] other = new byte[Chunk.TOTAL_SIZE];
+		other[Chunk.TOTAL_SIZE - 1] = 3;
+		byte[] otherData = codec.encode(other);
+		assertArrayEquals(other, codec.decode(otherData, otherData.length));
+		codec.close();
+	}
+
+	@Test
+	public void testNoiseIsRaw() {
+		ChunkCodec codec = new ChunkCodec();
+		byte[] blocks = new byte[Chunk.TOTAL_SIZE];
+		new Random(1).nextBytes(blocks);
+		assertNull(codec.encode(blocks));
+		codec.close();
+	}
+
+	@Test
+	public void testInvalidData() {
+		ChunkCodec codec = new ChunkCodec();
+		assertThrows(IOException.class, () -> codec.decode(new byte[0], 0));
+		assertThrows(IOException.class, () -> codec.decode(new byte[]{42, 0}, 2));
+		assertThrows(IOException.class, () -> codec.decode(new byte[]{ChunkCodec.RAW, 1, 2}, 3));
+		// A run whose length is cut off.
+		assertThrows(IOException.class, () -> codec.decode(new byte[]{ChunkCodec.RLE, 1, (byte) 0x80}, 3));
+		// A run that doesn't cover the whole chunk.
+		assertThrows(IOException.class, () -> codec.decode(new byte[]{ChunkCodec.RLE, 1, 10}, 3));
+		assertThrows(IOException.class, () -> codec.decode(new byte[]{ChunkCodec.DEFLATE, 1, 2, 3, 4}, 5));
+
+		byte[] blocks = new byte[Chunk.TOTAL_SIZE];
+		Arrays.fill(blocks, (byte) 1);
+		byte[] data = codec.encode(blocks);
+		assertThrows(IOException.class, () -> codec.decode(data, data.length - 1));
+		codec.close();
+	}
+}
@@ -0,0 +1,64 @@
+package nl.andrewl.aos_core.model.world;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SupportTrackerTest {
+	@Test
+	public void testSupportTracker() {
+		World world = new World();
+		for (int cx = 0; cx < 2; cx++) {
+			for (int cy = 0; cy < 2; cy++) {
+				for (int cz = 0; cz < 2; cz++) world.addChunk(new Chunk(cx, cy, cz));
+			}
+		}
+		world.fill(BlockRegion.box(0, 0, 0, 31, 3, 31), (byte) 1);
+		// Two pillars, joined by a bridge, with a tower on the first one.
+		world.fill(BlockRegion.column(5, 5, 4, 10), (byte) 2);
+		world.fill(BlockRegion.column(20, 5, 4, 10), (byte) 2);
+		world.fill(BlockRegion.box(5, 10, 5, 20, 10, 5), (byte) 3);
+		world.fill(BlockRegion.box(4, 11, 4, 6, 14, 6), (byte) 4);
+		var tracker = new SupportTracker(world, 1000, 10000);
+		assertNull(tracker.tick());
+
+		// The bridge is still held up by the second pillar.
+		world.setBlockAt(5, 6, 5, (byte) 0);
+		tracker.blockRemoved(5, 6, 5);
+		assertNull(tracker.tick());
+		assertEquals(0, tracker.getPendingCount());
+		assertEquals(3, world.getBlockAt(12, 10, 5));
+
+		// Now everything above the cuts falls, in one change.
+		world.setBlockAt(20, 6, 5, (byte) 0);
+		tracker.blockRemoved(20, 6, 5);
+		var changes = tracker.tick();
+		assertNotNull(changes);
+		assertEquals(4 + 4 + 14 + 3 * 3 * 4, changes.getBlockCount());
+		assertEquals(0, world.getBlockAt(12, 10, 5));
+		assertEquals(0, world.getBlockAt(5, 14, 5));
+		assertEquals(2, world.getBlockAt(5, 5, 5));
+		assertEquals(1, world.getBlockAt(5, 3, 5));
+
+		// Clusters that are too large are assumed to be supported.
+		world.fill(BlockRegion.column(10, 10, 4, 20), (byte) 2);
+		world.fill(BlockRegion.box(8, 21, 8, 12, 25, 12), (byte) 2);
+		var smallTracker = new SupportTracker(world, 50, 10000);
+		world.setBlockAt(10, 4, 10, (byte) 0);
+		smallTracker.blockRemoved(10, 4, 10);
+		assertNull(smallTracker.tick());
+		tracker.blockRemoved(10, 4, 10);
+		assertEquals(16 + 125, tracker.tick().getBlockCount());
+
+		// Filling a region with air queues the blocks around it.
+		world.fill(BlockRegion.column(25, 25, 4, 12), (byte) 2);
+		world.fill(BlockRegion.box(23, 13, 23, 27, 15, 27), (byte) 3);
+		var region = BlockRegion.sphere(25, 6, 25, 1.5f);
+		assertFalse(world.fill(region, (byte) 0).isEmpty());
+		tracker.regionRemoved(region);
+		assertTrue(tracker.getPendingCount() > 0);
+		assertEquals(5 + 5 * 5 * 3, tracker.tick().getBlockCount());
+		assertEquals(0, world.getBlockAt(25, 14, 25));
+		assertEquals(1, world.getBlockAt(25, 3, 25));
+	}
+}
@@ -0,0 +1,35 @@
+package nl.andrewl.aos_core.model.world;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TerrainGeneratorTest {
+	@Test
+	public void testTerrainGenerator() {
+		var generator = new TerrainGenerator(42, 100);
+		assertEquals(7 * Chunk.SIZE, generator.getSize());
+		World world = generator.generate();
+		assertEquals(7 * 7 * TerrainGenerator.CHUNK_HEIGHT, world.getChunkCount());
+		assertEquals(0, world.getMinX());
+		assertEquals(generator.getSize() - 1, world.getMaxZ());
+		for (var spawn : world.getSpawnPoints().values()) {
+			int x = (int) spawn.x;
+			int z = (int) spawn.z;
+			assertEquals(generator.getTerrainHeight(x, z), world.getHeightAt(x, z) + 1);
+			assertEquals(0, world.getBlockAt(x, (int) spawn.y, z));
+		}
+
+		// The same seed always gives the same world.
+		World again = new TerrainGenerator(42, 100).generate();
+		for (var chunk : world.getChunkMap().values()) {
+			assertArrayEquals(chunk.getBlocks(), again.getChunkAt(chunk.getKey()).getBlocks());
+		}
+		World other = new TerrainGenerator(43, 100).generate();
+		boolean differs = false;
+		for (var chunk : world.getChunkMap().values()) {
+			differs |= chunk.blockHash() != other.getChunkAt(chunk.getKey()).blockHash();
+		}
+		assertTrue(differs);
+	}
+}
@@ -0,0 +1,80 @@
+package nl.andrewl.aos_core.model.world;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimingWheelTest {
+	@Test
+	public void testExpiresAtLevelBoundaries() {
+		for (long start : new long[] {0, 1000, 4095, 262_143}) {
+			TimingWheel wheel = new TimingWheel(1, start);
+			long[] offsets = {1, 63, 64, 65, 4095, 4096, 4097, 262_143, 262_144, 262_145};
+			for (int i = 0; i < offsets.length; i++) {
+				wheel.schedule(i, start + offsets[i]);
+			}
+			long[] expiredAt = new long[offsets.length];
+			for (long now = start; now <= start + 262_145; now++) {
+				final long t = now;
+				wheel.advance(now, key -> expiredAt[(int) key] = t);
+			}
+			for (int i = 0; i < offsets.length; i++) {
+				assertEquals(start + offsets[i], expiredAt[i], "Key with offset " + offsets[i] + " from " + start);
+			}
+			assertEquals(0, wheel.size());
+		}
+	}
+
+	@Test
+	public void testNeverEarlyAndAtMostOneTickLate() {
+		long tickMillis = 50;
+		TimingWheel wheel = new TimingWheel(tickMillis, 12_345);
+		Random rand = new Random(1);
+		long[] deadlines = new long[1000];
+		for (int i = 0; i < deadlines.length; i++) {
+			deadlines[i] = 12_345 + rand.nextInt(500_000);
+			wheel.schedule(i, deadlines[i]);
+		}
+		assertEquals(deadlines.length, wheel.size());
+		long[] expiredAt = new long[deadlines.length];
+		for (long now = 12_345; now <= 12_345 + 500_000 + tickMillis; now += 7) {
+			final long t = now;
+			wheel.advance(now, key -> expiredAt[(int) key] = t);
+		}
+		for (int i = 0; i < deadlines.length; i++) {
+			assertTrue(expiredAt[i] >= deadlines[i], "Key " + i + " expired early.");
+			assertTrue(expiredAt[i] < deadlines[i] + tickMillis + 7, "Key " + i + " expired too late.");
+		}
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testBeyondLastLevel() {
+		TimingWheel wheel = new TimingWheel(1, 0);
+		long deadline = (1L << 24) + 100;
+		wheel.schedule(1, deadline);
+		boolean[] expired = {false};
+		wheel.advance(deadline - 1, key -> expired[0] = true);
+		assertFalse(expired[0]);
+		wheel.advance(deadline, key -> expired[0] = true);
+		assertTrue(expired[0]);
+	}
+
+	@Test
+	public void testScheduleWhileExpiring() {
+		TimingWheel wheel = new TimingWheel(10, 0);
+		wheel.schedule(1, 100);
+		int[] count = {0};
+		for (long now = 0; now <= 1000; now += 10) {
+			final long t = now;
+			wheel.advance(now, key -> {
+				count[0]++;
+				if (count[0] < 3) wheel.schedule(key, t + 100);
+			});
+		}
+		assertEquals(3, count[0]);
+		assertEquals(0, wheel.size());
+	}
+}
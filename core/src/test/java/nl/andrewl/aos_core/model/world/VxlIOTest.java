@@ -0,0 +1,48 @@
+package nl.andrewl.aos_core.model.world;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VxlIOTest {
+	@Test
+	public void testVxlIO() throws IOException {
+		World world = new TerrainGenerator(3, 64).generate();
+		world.removeChunk(1, 0, 1);
+		var out = new ByteArrayOutputStream();
+		VxlIO.write(world, out);
+		World read = VxlIO.read(new ByteArrayInputStream(out.toByteArray()));
+		int chunks = VxlIO.SIZE / Chunk.SIZE;
+		assertEquals(chunks * chunks * VxlIO.HEIGHT / Chunk.SIZE, read.getChunkCount());
+		assertEquals(Set.of("A", "B"), read.getSpawnPoints().keySet());
+		for (int x = 0; x < 80; x++) {
+			for (int z = 0; z < 80; z++) {
+				// The bottom of a map is always solid.
+				assertNotEquals(0, read.getBlockAt(x, 0, z));
+				for (int y = 1; y < VxlIO.HEIGHT; y++) {
+					assertEquals(world.getBlockAt(x, y, z) != 0, read.getBlockAt(x, y, z) != 0);
+				}
+				// Visible colors are kept, give or take the quantization.
+				int top = world.getHeightAt(x, z);
+				if (top > 0) {
+					var expected = world.getPalette().getColor(world.getBlockAt(x, top, z));
+					var actual = read.getPalette().getColor(read.getBlockAt(x, top, z));
+					assertTrue(expected.distance(actual) < 0.05f, expected + " vs " + actual);
+				}
+			}
+		}
+
+		// Writing the read world again gives the same map.
+		var again = new ByteArrayOutputStream();
+		VxlIO.write(read, again);
+		World readAgain = VxlIO.read(new ByteArrayInputStream(again.toByteArray()));
+		for (var chunk : read.getChunkMap().values()) {
+			assertArrayEquals(chunk.getBlocks(), readAgain.getChunkAt(chunk.getKey()).getBlocks());
+		}
+	}
+}
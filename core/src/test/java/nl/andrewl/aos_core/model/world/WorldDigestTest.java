@@ -0,0 +1,57 @@
+package nl.andrewl.aos_core.model.world;
+
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorldDigestTest {
+	@Test
+	public void testDigest() {
+		World server = Worlds.arena();
+		World client = Worlds.arena();
+		WorldDigest serverDigest = server.getDigest();
+		assertEquals(server.getMinX() >> Chunk.SIZE_BITS, serverDigest.getOriginX());
+		assertTrue(server.getMaxX() - server.getMinX() < Chunk.SIZE << serverDigest.getLevel());
+		WorldDigest clientDigest = client.getDigest(serverDigest.getOriginX(), serverDigest.getOriginY(), serverDigest.getOriginZ(), serverDigest.getLevel());
+		assertEquals(serverDigest.getRootHash(), clientDigest.getRootHash());
+		assertSame(serverDigest, server.getDigest());
+
+		// Diverge a few chunks, and make sure that walking down the tree finds exactly those.
+		Set<Vector3i> diverged = new HashSet<>();
+		client.setBlockAt(3, 3, 3, (byte) 42);
+		diverged.add(new Vector3i(0, 0, 0));
+		server.setBlockAt(100, 20, 50, (byte) 43);
+		diverged.add(World.getChunkPosAt(new Vector3i(100, 20, 50)));
+		Chunk removed = client.getChunkAt(World.getChunkPosAt(new Vector3i(130, 1, 10)));
+		client.removeChunk(removed.getPosition());
+		diverged.add(removed.getPosition());
+		clientDigest = client.getDigest(serverDigest.getOriginX(), serverDigest.getOriginY(), serverDigest.getOriginZ(), serverDigest.getLevel());
+		assertNotEquals(serverDigest.getRootHash(), clientDigest.getRootHash());
+
+		Set<Vector3i> found = new HashSet<>();
+		int comparisons = findDivergedChunks(serverDigest, clientDigest, serverDigest.getLevel(), 0, found);
+		assertEquals(diverged, found);
+		assertTrue(comparisons < server.getChunkMap().size() / 4);
+	}
+
+	private int findDivergedChunks(WorldDigest a, WorldDigest b, int level, long index, Set<Vector3i> found) {
+		if (a.getHash(level, index) == b.getHash(level, index)) return 1;
+		if (level == 0) {
+			found.add(a.getChunkPos(index));
+			return 1;
+		}
+		long[] aHashes = a.getChildHashes(level, index);
+		long[] bHashes = b.getChildHashes(level, index);
+		int comparisons = 1;
+		for (int i = 0; i < WorldDigest.CHILDREN; i++) {
+			if (aHashes[i] != bHashes[i]) {
+				comparisons += findDivergedChunks(a, b, level - 1, (index << 3) | i, found);
+			}
+		}
+		return comparisons;
+	}
+}
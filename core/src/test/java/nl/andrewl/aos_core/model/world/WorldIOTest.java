@@ -0,0 +1,89 @@
+package nl.andrewl.aos_core.model.world;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorldIOTest {
+	@Test
+	public void testWorldIO() throws IOException {
+		World world = Worlds.arena();
+		// Add a chunk of noise, which can't be compressed.
+		byte[] noise = new byte[Chunk.TOTAL_SIZE];
+		new Random(1).nextBytes(noise);
+		world.addChunk(new Chunk(-1, 2, -3, noise));
+
+		var out = new ByteArrayOutputStream();
+		WorldIO.write(world, out);
+		new DataOutputStream(out).writeInt(42);
+		byte[] v2 = out.toByteArray();
+		var in = new ByteArrayInputStream(v2);
+		assertWorldsEqual(world, WorldIO.read(in));
+		// The rest of the stream is left untouched.
+		assertEquals(42, new DataInputStream(in).readInt());
+
+		// Invalid chunk data is reported.
+		var header = new DataInputStream(new ByteArrayInputStream(v2));
+		header.skipNBytes(2 * Integer.BYTES + 3 * ColorPalette.MAX_COLORS * Float.BYTES);
+		int spawnPointCount = header.readInt();
+		for (int i = 0; i < spawnPointCount; i++) {
+			header.readUTF();
+			header.skipNBytes(3 * Float.BYTES);
+		}
+		header.skipNBytes(Integer.BYTES + 3 * Integer.BYTES);
+		byte[] corrupt = v2.clone();
+		corrupt[header.readInt()] = 42; // An unknown codec.
+		assertThrows(IOException.class, () -> WorldIO.read(new ByteArrayInputStream(corrupt)));
+
+		// Worlds in the old format can still be read.
+		var v1 = new ByteArrayOutputStream();
+		var d = new DataOutputStream(v1);
+		for (var v : world.getPalette().toArray()) d.writeFloat(v);
+		d.writeInt(world.getSpawnPoints().size());
+		for (var entry : world.getSpawnPoints().entrySet()) {
+			d.writeUTF(entry.getKey());
+			d.writeFloat(entry.getValue().x());
+			d.writeFloat(entry.getValue().y());
+			d.writeFloat(entry.getValue().z());
+		}
+		d.writeInt(world.getChunkMap().size());
+		for (var chunk : world.getChunkMap().values()) {
+			d.writeInt(chunk.getPosition().x);
+			d.writeInt(chunk.getPosition().y);
+			d.writeInt(chunk.getPosition().z);
+			d.write(chunk.getBlocks());
+		}
+		assertTrue(v2.length < v1.size());
+		assertWorldsEqual(world, WorldIO.read(new ByteArrayInputStream(v1.toByteArray())));
+
+		// Single chunks can be read from a file.
+		Path file = Files.createTempFile("world", ".wld");
+		try {
+			WorldIO.write(world, file);
+			assertWorldsEqual(world, WorldIO.read(file));
+			assertArrayEquals(noise, WorldIO.readChunk(file, -1, 2, -3).getBlocks());
+			assertArrayEquals(world.getChunkAt(3, 0, 4).getBlocks(), WorldIO.readChunk(file, 3, 0, 4).getBlocks());
+			assertNull(WorldIO.readChunk(file, 100, 100, 100));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private static void assertWorldsEqual(World expected, World actual) {
+		assertArrayEquals(expected.getPalette().toArray(), actual.getPalette().toArray());
+		assertEquals(expected.getSpawnPoints(), actual.getSpawnPoints());
+		assertEquals(expected.getChunkMap().size(), actual.getChunkMap().size());
+		for (var chunk : expected.getChunkMap().values()) {
+			assertArrayEquals(chunk.getBlocks(), actual.getChunkAt(chunk.getKey()).getBlocks());
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package nl.andrewl.aos_core.model.world;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorldRotationTest {
+	/**
+	 * Loads worlds only when its tasks are run, and keeps the worlds it
+	 * loaded by name.
+	 */
+	private static class TestLoader {
+		final List<Runnable> tasks = new ArrayList<>();
+		final List<String> loaded = new ArrayList<>();
+		final Map<String, World> worlds = new HashMap<>();
+
+		World load(String name) {
+			if (name.equals("broken")) throw new IllegalStateException("Broken world.");
+			loaded.add(name);
+			World world = new World();
+			worlds.put(name, world);
+			return world;
+		}
+
+		void runTasks() {
+			var pending = new ArrayList<>(tasks);
+			tasks.clear();
+			pending.forEach(Runnable::run);
+		}
+	}
+
+	@Test
+	public void testRoundsChangeWorlds() {
+		var loader = new TestLoader();
+		var rotation = new WorldRotation<String>(new String[]{"a", "b", "c"}, 60_000, loader::load, loader.tasks::add);
+		rotation.start(1000);
+		assertNull(rotation.tick(1000));
+		loader.runTasks();
+		assertEquals(List.of("b"), loader.loaded);
+		assertNull(rotation.tick(60_999));
+
+		// The round ends, and the next world is ready.
+		assertSame(loader.worlds.get("b"), rotation.tick(61_000));
+		assertNull(rotation.tick(61_001));
+
+		// The next round ends before its world is loaded, so the change waits for it.
+		assertNull(rotation.tick(121_000));
+		assertNull(rotation.tick(125_000));
+		loader.runTasks();
+		assertSame(loader.worlds.get("c"), rotation.tick(125_050));
+
+		// The round after that starts when the change happened, and goes back to the first world.
+		loader.runTasks();
+		assertNull(rotation.tick(185_049));
+		assertSame(loader.worlds.get("a"), rotation.tick(185_050));
+		assertEquals(List.of("b", "c", "a"), loader.loaded);
+	}
+
+	@Test
+	public void testRequestChange() {
+		var loader = new TestLoader();
+		var rotation = new WorldRotation<String>(new String[]{"a", "b"}, 0, loader::load, loader.tasks::add);
+		assertFalse(rotation.requestChange());
+		rotation.start(0);
+		loader.runTasks();
+		// Without a round duration, the world only changes when it's requested.
+		assertNull(rotation.tick(Long.MAX_VALUE / 2));
+		assertTrue(rotation.requestChange());
+		assertSame(loader.worlds.get("b"), rotation.tick(10));
+		assertNull(rotation.tick(20));
+	}
+
+	@Test
+	public void testSingleWorld() {
+		var loader = new TestLoader();
+		var rotation = new WorldRotation<String>(new String[]{"a"}, 1000, loader::load, loader.tasks::add);
+		rotation.start(0);
+		assertTrue(loader.tasks.isEmpty());
+		assertFalse(rotation.requestChange());
+		assertNull(rotation.tick(5000));
+	}
+
+	@Test
+	public void testBrokenWorldIsSkipped() {
+		var loader = new TestLoader();
+		var rotation = new WorldRotation<String>(new String[]{"a", "broken", "c"}, 1000, loader::load, loader.tasks::add);
+		rotation.start(0);
+		loader.runTasks();
+		// The current world is kept for another round, while the one after the broken one loads.
+		assertNull(rotation.tick(1000));
+		loader.runTasks();
+		assertNull(rotation.tick(1999));
+		assertSame(loader.worlds.get("c"), rotation.tick(2000));
+	}
+
+	@Test
+	public void testRespawnAfterWorldIsSent() {
+		var loader = new TestLoader();
+		var rotation = new WorldRotation<String>(new String[]{"a", "b"}, 1000, loader::load, loader.tasks::add);
+		rotation.start(0);
+		loader.runTasks();
+		assertNotNull(rotation.tick(1000));
+
+		// Each player's world is sent on its own thread, so they finish in any order.
+		var sentToAlice = new CompletableFuture<Void>();
+		var sentToBob = new CompletableFuture<Void>();
+		var sentToCarol = new CompletableFuture<Void>();
+		rotation.queueRespawn("alice", sentToAlice);
+		rotation.queueRespawn("bob", sentToBob);
+		rotation.queueRespawn("carol", sentToCarol);
+
+		List<String> respawned = new ArrayList<>();
+		// Nobody is respawned until their client has the new world.
+		rotation.respawnQueued(respawned::add);
+		assertEquals(List.of(), respawned);
+
+		sentToBob.complete(null);
+		sentToAlice.complete(null);
+		// Players are only respawned when the ticking thread asks, in the order that they got the world.
+		assertEquals(List.of(), respawned);
+		rotation.respawnQueued(respawned::add);
+		assertEquals(List.of("bob", "alice"), respawned);
+
+		sentToCarol.complete(null);
+		rotation.respawnQueued(respawned::add);
+		assertEquals(List.of("bob", "alice", "carol"), respawned);
+		rotation.respawnQueued(respawned::add);
+		assertEquals(3, respawned.size());
+	}
+}
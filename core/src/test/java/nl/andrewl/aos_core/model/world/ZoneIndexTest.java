@@ -0,0 +1,129 @@
+package nl.andrewl.aos_core.model.world;
+
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ZoneIndexTest {
+	/**
+	 * The check that the index replaces, which looks at each zone's distance
+	 * to the point.
+	 */
+	private static boolean containsByDistance(List<ZoneIndex.Zone> zones, ZoneIndex.Type type, int teamId, float x, float y, float z) {
+		for (var zone : zones) {
+			if (zone.type() != type || (teamId != -1 && zone.teamId() != teamId)) continue;
+			float distance = zone.center().distance(x, y, z);
+			if (type == ZoneIndex.Type.RESUPPLY ? distance < zone.radius() : distance <= zone.radius()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void assertAgrees(ZoneIndex index, List<ZoneIndex.Zone> zones, float x, float y, float z) {
+		for (var type : ZoneIndex.Type.values()) {
+			for (int teamId = -1; teamId <= 2; teamId++) {
+				assertEquals(
+						containsByDistance(zones, type, teamId, x, y, z),
+						index.contains(type, teamId, x, y, z),
+						type + " of team " + teamId + " at " + x + ", " + y + ", " + z
+				);
+			}
+		}
+	}
+
+	private static List<ZoneIndex.Zone> spawnZones() {
+		return List.of(
+				new ZoneIndex.Zone(ZoneIndex.Type.SPAWN_PROTECTION, 1, new Vector3f(0.5f, 40.5f, 0.5f), 10),
+				new ZoneIndex.Zone(ZoneIndex.Type.RESUPPLY, 1, new Vector3f(0.5f, 40.5f, 0.5f), 3),
+				// A zone whose radius is exactly a chunk's size, centered on a chunk corner.
+				new ZoneIndex.Zone(ZoneIndex.Type.SPAWN_PROTECTION, 2, new Vector3f(64, 32, -48), Chunk.SIZE),
+				new ZoneIndex.Zone(ZoneIndex.Type.RESUPPLY, 2, new Vector3f(64, 32, -48), 0.5f)
+		);
+	}
+
+	@Test
+	public void testGrid() {
+		var zones = spawnZones();
+		var index = new ZoneIndex(zones);
+		for (var zone : zones) {
+			var c = zone.center();
+			float r = zone.radius() + 2;
+			for (float x = c.x() - r; x <= c.x() + r; x += 0.25f) {
+				for (float y = c.y() - r; y <= c.y() + r; y += 0.5f) {
+					for (float z = c.z() - r; z <= c.z() + r; z += 0.25f) {
+						assertAgrees(index, zones, x, y, z);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testBoundary() {
+		var zones = spawnZones();
+		var index = new ZoneIndex(zones);
+		Random rand = new Random(1);
+		for (var zone : zones) {
+			var c = zone.center();
+			float r = zone.radius();
+			// Points exactly on the edge, along each axis.
+			for (float d : new float[] {-r, r}) {
+				assertAgrees(index, zones, c.x() + d, c.y(), c.z());
+				assertAgrees(index, zones, c.x(), c.y() + d, c.z());
+				assertAgrees(index, zones, c.x(), c.y(), c.z() + d);
+			}
+			// Points just inside and outside the edge, in random directions.
+			for (int i = 0; i < 20_000; i++) {
+				var dir = new Vector3f((float) rand.nextGaussian(), (float) rand.nextGaussian(), (float) rand.nextGaussian()).normalize();
+				float dist = r + (rand.nextFloat() - 0.5f) * 0.002f;
+				assertAgrees(index, zones, c.x() + dir.x * dist, c.y() + dir.y * dist, c.z() + dir.z * dist);
+			}
+		}
+	}
+
+	@Test
+	public void testBlockCentersOnChunkEdges() {
+		// Spawn points are block centers, and blocks are checked at their centers too.
+		var zones = List.of(
+				new ZoneIndex.Zone(ZoneIndex.Type.SPAWN_PROTECTION, 1, new Vector3f(15.5f, 15.5f, 15.5f), 16.5f)
+		);
+		var index = new ZoneIndex(zones);
+		for (int x = -20; x < 52; x++) {
+			for (int y = -20; y < 52; y++) {
+				for (int z = -20; z < 52; z++) {
+					assertAgrees(index, zones, x + 0.5f, y + 0.5f, z + 0.5f);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testEdges() {
+		var index = new ZoneIndex(List.of(
+				new ZoneIndex.Zone(ZoneIndex.Type.SPAWN_PROTECTION, 1, new Vector3f(0, 40, 0), 10),
+				new ZoneIndex.Zone(ZoneIndex.Type.RESUPPLY, 1, new Vector3f(0, 40, 0), 3)
+		));
+		assertTrue(index.contains(ZoneIndex.Type.SPAWN_PROTECTION, 10, 40, 0));
+		assertFalse(index.contains(ZoneIndex.Type.SPAWN_PROTECTION, 10.25f, 40, 0));
+		// Resupply zones don't include their edge, like the distance check that they replaced.
+		assertFalse(index.contains(ZoneIndex.Type.RESUPPLY, 3, 40, 0));
+		assertFalse(index.contains(ZoneIndex.Type.RESUPPLY, 0, 43, 0));
+		assertTrue(index.contains(ZoneIndex.Type.RESUPPLY, 2.75f, 40, 0));
+	}
+
+	@Test
+	public void testEmptyAndTooMany() {
+		assertFalse(ZoneIndex.EMPTY.contains(ZoneIndex.Type.SPAWN_PROTECTION, 0, 0, 0));
+		var tooMany = new ArrayList<ZoneIndex.Zone>();
+		for (int i = 0; i <= ZoneIndex.MAX_ZONES; i++) {
+			tooMany.add(new ZoneIndex.Zone(ZoneIndex.Type.RESUPPLY, i, new Vector3f(i * 10, 0, 0), 1));
+		}
+		assertThrows(IllegalArgumentException.class, () -> new ZoneIndex(tooMany));
+	}
+}
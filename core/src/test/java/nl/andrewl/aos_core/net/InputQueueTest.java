@@ -0,0 +1,78 @@
+package nl.andrewl.aos_core.net;
+
+import nl.andrewl.aos_core.net.client.ClientOrientationState;
+import nl.andrewl.record_net.Message;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InputQueueTest {
+	private static Message msg(int i) {
+		return new ClientOrientationState(i, i, 0);
+	}
+
+	@Test
+	public void testFullAndEmpty() {
+		var queue = new InputQueue(4);
+		assertNull(queue.poll());
+		for (int i = 0; i < 4; i++) assertTrue(queue.offer(msg(i)));
+		// Messages that arrive while the queue is full are dropped.
+		assertFalse(queue.offer(msg(4)));
+		for (int i = 0; i < 4; i++) assertEquals(msg(i), queue.poll());
+		assertNull(queue.poll());
+		assertTrue(queue.offer(msg(5)));
+		assertEquals(msg(5), queue.poll());
+	}
+
+	@Test
+	public void testCapacityRoundsUp() {
+		var queue = new InputQueue(5);
+		int added = 0;
+		while (queue.offer(msg(added))) added++;
+		assertEquals(8, added);
+		assertEquals(msg(0), queue.poll());
+	}
+
+	@Test
+	public void testWraparound() {
+		var queue = new InputQueue(4);
+		int next = 0, expected = 0;
+		// Keeps the queue partly full while its indexes go around the buffer many times.
+		for (int round = 0; round < 1000; round++) {
+			int toAdd = round % 4 + 1;
+			for (int i = 0; i < toAdd && queue.offer(msg(next)); i++) next++;
+			int toPoll = (round + 2) % 4;
+			for (int i = 0; i < toPoll; i++) {
+				Message m = queue.poll();
+				if (m == null) break;
+				assertEquals(msg(expected++), m);
+			}
+		}
+		Message m;
+		while ((m = queue.poll()) != null) assertEquals(msg(expected++), m);
+		assertEquals(next, expected);
+	}
+
+	@Test
+	public void testProducerAndConsumerThreads() throws InterruptedException {
+		var queue = new InputQueue(16);
+		int count = 100_000;
+		Thread producer = new Thread(() -> {
+			for (int i = 0; i < count; i++) {
+				while (!queue.offer(msg(i))) Thread.onSpinWait();
+			}
+		});
+		producer.start();
+		int expected = 0;
+		while (expected < count) {
+			Message m = queue.poll();
+			if (m == null) {
+				Thread.onSpinWait();
+			} else {
+				assertEquals(msg(expected++), m);
+			}
+		}
+		producer.join();
+		assertNull(queue.poll());
+	}
+}
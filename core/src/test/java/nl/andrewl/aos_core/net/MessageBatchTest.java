@@ -0,0 +1,93 @@
+package nl.andrewl.aos_core.net;
+
+import nl.andrewl.aos_core.Net;
+import nl.andrewl.aos_core.net.client.ClientHealthMessage;
+import nl.andrewl.aos_core.net.client.PlayerSnapshotAckMessage;
+import nl.andrewl.aos_core.net.world.ChunkHashMessage;
+import nl.andrewl.record_net.Message;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageBatchTest {
+	/**
+	 * Packs messages into a batch's data, the same way the server does.
+	 */
+	private static byte[] batchData(Message... messages) throws IOException {
+		var out = new ByteArrayOutputStream();
+		var dataOut = new DataOutputStream(out);
+		for (var msg : messages) {
+			byte[] data = Net.write(msg);
+			dataOut.writeShort(data.length);
+			dataOut.write(data);
+		}
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		List<Message> messages = List.of(
+				new ClientHealthMessage(0.75f),
+				new ChunkHashMessage(1, -2, 3, 123456789L),
+				new PlayerSnapshotAckMessage(4, 99),
+				new ClientHealthMessage(1)
+		);
+		var batch = new MessageBatch(batchData(messages.toArray(new Message[0])));
+		byte[] data = Net.write(batch);
+		assertEquals(MessageBatch.serializedOverhead() + batch.data().length, data.length);
+		var read = (MessageBatch) Net.read(data);
+		assertEquals(messages, read.messages());
+
+		assertEquals(List.of(), new MessageBatch(new byte[0]).messages());
+	}
+
+	@Test
+	public void testPacketSizeLimit() throws IOException {
+		// A batch whose data fills the rest of a packet is exactly the size of the receiver's buffer.
+		int maxDataSize = UdpReceiver.MAX_PACKET_SIZE - MessageBatch.serializedOverhead();
+		var message = new ClientHealthMessage(0.5f);
+		int entrySize = MessageBatch.ENTRY_OVERHEAD + Net.write(message).length;
+		Message[] messages = new Message[maxDataSize / entrySize];
+		Arrays.fill(messages, message);
+		byte[] data = Net.write(new MessageBatch(batchData(messages)));
+		assertTrue(data.length <= UdpReceiver.MAX_PACKET_SIZE);
+		assertTrue(data.length + entrySize > UdpReceiver.MAX_PACKET_SIZE);
+
+		byte[] full = Net.write(new MessageBatch(new byte[maxDataSize]));
+		assertEquals(UdpReceiver.MAX_PACKET_SIZE, full.length);
+
+		// The receiver reads into a buffer of the maximum size, so trailing bytes after the batch are ignored.
+		byte[] buffer = Arrays.copyOf(data, UdpReceiver.MAX_PACKET_SIZE);
+		var read = (MessageBatch) Net.read(buffer);
+		assertEquals(messages.length, read.messages().size());
+	}
+
+	@Test
+	public void testMalformed() throws IOException {
+		byte[] data = batchData(new ClientHealthMessage(0.5f), new ChunkHashMessage(1, 2, 3, 4));
+
+		// The last message is cut short.
+		var truncated = new MessageBatch(Arrays.copyOf(data, data.length - 3));
+		assertThrows(IOException.class, truncated::messages);
+
+		// Only one byte of the last message's size is there.
+		int firstEntrySize = MessageBatch.ENTRY_OVERHEAD + Net.write(new ClientHealthMessage(0.5f)).length;
+		var cutSize = new MessageBatch(Arrays.copyOf(data, firstEntrySize + 1));
+		assertThrows(IOException.class, cutSize::messages);
+
+		// A size that's larger than the rest of the batch.
+		byte[] badSize = data.clone();
+		badSize[0] = (byte) 0xFF;
+		assertThrows(IOException.class, () -> new MessageBatch(badSize).messages());
+
+		// The serialized batch itself is cut short.
+		byte[] serialized = Net.write(new MessageBatch(data));
+		assertThrows(IOException.class, () -> Net.read(Arrays.copyOf(serialized, serialized.length - 5)));
+	}
+}
@@ -0,0 +1,158 @@
+package nl.andrewl.aos_core.net.client;
+
+import nl.andrewl.aos_core.model.Player;
+import nl.andrewl.aos_core.model.PlayerMode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PlayerSnapshotTest {
+	private static Player player(int id, float x, float y, float z) {
+		Player p = new Player(id, "player" + id);
+		p.getPosition().set(x, y, z);
+		p.getVelocity().set(0, -9.81f, 1.5f);
+		p.setOrientation(5.9f, 1.2f);
+		return p;
+	}
+
+	@Test
+	public void testFullRoundTrip() throws IOException {
+		Player a = player(3, 10.123f, 64.5f, -20.77f);
+		Player b = player(1, 0, 0, 0);
+		b.setCrouching(true);
+		b.setMode(PlayerMode.CREATIVE);
+		var snapshot = new PlayerSnapshot.Builder().add(a, 4).add(b, -1).build();
+		var decoded = PlayerSnapshot.decodeDelta(PlayerSnapshot.EMPTY, snapshot.encodeDelta(PlayerSnapshot.EMPTY));
+		assertEquals(2, decoded.size());
+		assertEquals(1, decoded.getId(0));
+		assertEquals(3, decoded.getId(1));
+
+		Player a2 = new Player(3, "copy");
+		decoded.apply(decoded.indexOf(3), a2);
+		assertEquals(a.getPosition().x, a2.getPosition().x, 1 / PlayerSnapshot.POSITION_SCALE);
+		assertEquals(a.getPosition().y, a2.getPosition().y, 1 / PlayerSnapshot.POSITION_SCALE);
+		assertEquals(a.getPosition().z, a2.getPosition().z, 1 / PlayerSnapshot.POSITION_SCALE);
+		assertEquals(a.getVelocity().y, a2.getVelocity().y, 1 / PlayerSnapshot.POSITION_SCALE);
+		assertEquals(a.getOrientation().x, a2.getOrientation().x, 0.001f);
+		assertEquals(a.getOrientation().y, a2.getOrientation().y, 0.001f);
+		assertEquals(4, decoded.getSelectedItemId(decoded.indexOf(3)));
+
+		Player b2 = new Player(1, "copy");
+		decoded.apply(decoded.indexOf(1), b2);
+		assertTrue(b2.isCrouching());
+		assertEquals(PlayerMode.CREATIVE, b2.getMode());
+		assertEquals(-1, decoded.getSelectedItemId(decoded.indexOf(1)));
+	}
+
+	@Test
+	public void testDelta() throws IOException {
+		Player a = player(1, 10, 64, 10);
+		Player b = player(2, 20, 64, 20);
+		Player c = player(5, 30, 64, 30);
+		var baseline = new PlayerSnapshot.Builder().add(a, 0).add(b, 0).add(c, 0).build();
+
+		// Nothing changed, so nothing is sent.
+		var same = new PlayerSnapshot.Builder().add(a, 0).add(b, 0).add(c, 0).build();
+		assertEquals(0, same.encodeDelta(baseline).length);
+
+		// One player moved a little, one left, and one joined.
+		a.getPosition().add(0.1f, 0, 0);
+		Player d = player(9, 40, 64, 40);
+		var next = new PlayerSnapshot.Builder().add(d, 2).add(c, 0).add(a, 0).build();
+		byte[] data = next.encodeDelta(baseline);
+		var decoded = PlayerSnapshot.decodeDelta(baseline, data);
+		assertEquals(3, decoded.size());
+		assertTrue(decoded.indexOf(2) < 0);
+		assertEquals(0, decoded.encodeDelta(next).length);
+		assertEquals(0, next.encodeDelta(decoded).length);
+
+		// A moving player costs just a few bytes.
+		a.getPosition().add(0.1f, 0, 0.1f);
+		var moved = new PlayerSnapshot.Builder().add(d, 2).add(c, 0).add(a, 0).build();
+		assertTrue(moved.encodeDelta(next).length <= 8);
+	}
+
+	@Test
+	public void testChangeRevertedBeforeAck() throws IOException {
+		Player a = player(1, 10, 64, 10);
+		Player b = player(2, 20, 64, 20);
+		var acked = new PlayerSnapshot.Builder().add(a, 0).add(b, 0).build();
+
+		// The client gets a snapshot in which a player is crouching, but doesn't acknowledge it yet.
+		a.setCrouching(true);
+		var sent = new PlayerSnapshot.Builder().add(a, 0).add(b, 0).build();
+		var client = PlayerSnapshot.decodeDelta(acked, sent.encodeDelta(acked));
+		Player a2 = new Player(1, "copy");
+		client.apply(client.indexOf(1), a2);
+		assertTrue(a2.isCrouching());
+
+		// The player stops crouching, so the next snapshot is the same as the acknowledged one, but not the sent one.
+		a.setCrouching(false);
+		var reverted = new PlayerSnapshot.Builder().add(a, 0).add(b, 0).build();
+		assertEquals(0, reverted.encodeDelta(acked).length);
+		assertTrue(reverted.encodeDelta(sent).length > 0);
+
+		// So it must still be sent, and its empty delta against the acknowledged snapshot undoes the change.
+		client = PlayerSnapshot.decodeDelta(acked, reverted.encodeDelta(acked));
+		client.apply(client.indexOf(1), a2);
+		assertFalse(a2.isCrouching());
+		assertEquals(0, client.encodeDelta(reverted).length);
+	}
+
+	@Test
+	public void testSplitIntoParts() throws IOException {
+		int maxPartSize = 1300;
+		var builder = new PlayerSnapshot.Builder();
+		for (int id = 1; id <= 200; id++) {
+			builder.add(player(id, id * 3.7f, 64 + id % 7, -id * 1.3f), id % 4);
+		}
+		var snapshot = builder.build();
+		byte[] whole = snapshot.encodeDelta(PlayerSnapshot.EMPTY);
+		assertTrue(whole.length > maxPartSize);
+
+		var parts = snapshot.encodeDelta(PlayerSnapshot.EMPTY, maxPartSize);
+		assertTrue(parts.size() > 1);
+		assertEquals(Integer.MIN_VALUE, parts.get(0).firstId());
+		assertEquals(Integer.MAX_VALUE, parts.get(parts.size() - 1).endId());
+		var decodedParts = new PlayerSnapshot[parts.size()];
+		for (int i = 0; i < parts.size(); i++) {
+			var part = parts.get(i);
+			assertTrue(part.data().length <= maxPartSize);
+			if (i > 0) assertEquals(parts.get(i - 1).endId(), part.firstId());
+			decodedParts[i] = PlayerSnapshot.decodeDelta(PlayerSnapshot.EMPTY, part.firstId(), part.endId(), part.data());
+		}
+		var joined = PlayerSnapshot.join(decodedParts);
+		assertEquals(200, joined.size());
+		assertEquals(0, joined.encodeDelta(snapshot).length);
+
+		// Parts of a delta are decoded against their range of the baseline.
+		Player moved = player(150, 0, 0, 0);
+		var next = new PlayerSnapshot.Builder();
+		for (int id = 1; id <= 200; id++) {
+			next.add(id == 150 ? moved : player(id, id * 3.7f, 64 + id % 7, -id * 1.3f), id % 4);
+		}
+		var nextSnapshot = next.build();
+		var deltaParts = nextSnapshot.encodeDelta(joined, 20);
+		decodedParts = new PlayerSnapshot[deltaParts.size()];
+		for (int i = 0; i < deltaParts.size(); i++) {
+			var part = deltaParts.get(i);
+			decodedParts[i] = PlayerSnapshot.decodeDelta(joined, part.firstId(), part.endId(), part.data());
+		}
+		assertEquals(0, PlayerSnapshot.join(decodedParts).encodeDelta(nextSnapshot).length);
+
+		// A part can't have players outside its range.
+		var first = parts.get(0);
+		assertThrows(IOException.class, () -> PlayerSnapshot.decodeDelta(PlayerSnapshot.EMPTY, first.endId(), Integer.MAX_VALUE, first.data()));
+	}
+
+	@Test
+	public void testMalformed() {
+		var baseline = new PlayerSnapshot.Builder().add(player(1, 0, 0, 0), 0).build();
+		// Removing a player who isn't in the baseline.
+		assertThrows(IOException.class, () -> PlayerSnapshot.decodeDelta(baseline, new byte[] {2, (byte) 0x80, 0x10}));
+		// A truncated entry.
+		assertThrows(IOException.class, () -> PlayerSnapshot.decodeDelta(baseline, new byte[] {1, 1}));
+	}
+}
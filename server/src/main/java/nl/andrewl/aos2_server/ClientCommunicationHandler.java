@@ -5,6 +5,8 @@ import nl.andrewl.aos_core.Net;
 import nl.andrewl.aos_core.UsernameChecker;
 import nl.andrewl.aos_core.model.item.ItemStack;
 import nl.andrewl.aos_core.model.world.Chunk;
+import nl.andrewl.aos_core.model.world.World;
+import nl.andrewl.aos_core.model.world.WorldDigest;
 import nl.andrewl.aos_core.model.world.WorldIO;
 import nl.andrewl.aos_core.net.TcpReceiver;
 import nl.andrewl.aos_core.net.client.ChatMessage;
@@ -14,14 +16,17 @@ import nl.andrewl.aos_core.net.connect.ConnectRejectMessage;
 import nl.andrewl.aos_core.net.connect.ConnectRequestMessage;
 import nl.andrewl.aos_core.net.world.ChunkDataMessage;
 import nl.andrewl.aos_core.net.world.ChunkHashMessage;
+import nl.andrewl.aos_core.net.world.WorldChangeMessage;
+import nl.andrewl.aos_core.net.world.WorldSubtreeMessage;
+import nl.andrewl.aos_core.net.world.WorldSubtreeRequestMessage;
 import nl.andrewl.record_net.Message;
 import nl.andrewl.record_net.util.ExtendedDataInputStream;
 import nl.andrewl.record_net.util.ExtendedDataOutputStream;
-import org.joml.Vector3i;
 
 import java.io.IOException;
 import java.net.*;
 import java.util.LinkedList;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ForkJoinPool;
 
 /**
@@ -42,6 +47,17 @@ public class ClientCommunicationHandler {
 	private InetAddress clientAddress;
 	private int clientUdpPort = -1;
 	private ServerPlayer player;
+	private final DatagramBatcher datagramBatcher = new DatagramBatcher();
+	/**
+	 * The sequence number of the latest player snapshot that the client has
+	 * acknowledged, or -1 if they haven't acknowledged any.
+	 */
+	private volatile int ackedSnapshot = -1;
+	/**
+	 * The sequence number of the latest player snapshot that was sent to the
+	 * client, or -1 if none were sent. This is only used by the tick thread.
+	 */
+	private int sentSnapshot = -1;
 
 	public ClientCommunicationHandler(Server server, Socket socket, DatagramSocket datagramSocket) throws IOException {
 		this.server = server;
@@ -69,12 +85,39 @@ public class ClientCommunicationHandler {
 		this.clientUdpPort = port;
 	}
 
+	public int getAckedSnapshot() {
+		return ackedSnapshot;
+	}
+
+	public int getSentSnapshot() {
+		return sentSnapshot;
+	}
+
+	public void setSentSnapshot(int sequence) {
+		sentSnapshot = sequence;
+	}
+
+	/**
+	 * Records that the client has received a player snapshot. Acknowledgements
+	 * may arrive out of order, so only the latest one is kept.
+	 * @param sequence The snapshot's sequence number.
+	 */
+	public void acknowledgeSnapshot(int sequence) {
+		if (sequence > ackedSnapshot) ackedSnapshot = sequence;
+	}
+
 	private void handleTcpMessage(Message msg) {
 		if (msg instanceof ChunkHashMessage hashMessage) {
-			Chunk chunk = server.getWorld().getChunkAt(new Vector3i(hashMessage.cx(), hashMessage.cy(), hashMessage.cz()));
+			Chunk chunk = server.getWorld().getChunkAt(hashMessage.cx(), hashMessage.cy(), hashMessage.cz());
 			if (chunk != null && hashMessage.hash() != chunk.blockHash()) {
 				sendTcpMessage(new ChunkDataMessage(chunk));
 			}
+		} else if (msg instanceof WorldSubtreeRequestMessage req && server.getWorld().supportsDigests()) {
+			// Only answer for the digest that we broadcast, so that clients can't make us build digests of other frames.
+			var digest = server.getWorld().getDigest();
+			if (digest.hasFrame(req.ox(), req.oy(), req.oz(), req.rootLevel()) && isValidNode(digest, req.level(), req.index())) {
+				sendTcpMessage(new WorldSubtreeMessage(digest, req.level(), req.index()));
+			}
 		} else if (msg instanceof ChatWrittenMessage chatWrittenMessage) {
 			if (chatWrittenMessage.message().startsWith("/")) {
 				server.handleCommand(chatWrittenMessage.message(), player, this);
@@ -88,6 +131,18 @@ public class ClientCommunicationHandler {
 		}
 	}
 
+	/**
+	 * Checks if a digest has a node whose children can be sent to a client.
+	 * @param digest The digest.
+	 * @param level The node's level.
+	 * @param index The node's index.
+	 * @return True if the node is above level 0, and in the digest's tree.
+	 */
+	private static boolean isValidNode(WorldDigest digest, int level, long index) {
+		if (level < 1 || level > digest.getLevel()) return false;
+		return index >= 0 && index < 1L << (3 * (digest.getLevel() - level));
+	}
+
 	public void establishConnection() throws IOException {
 		socket.setSoTimeout(1000);
 		boolean connectionEstablished = false;
@@ -159,6 +214,50 @@ public class ClientCommunicationHandler {
 		});
 	}
 
+	/**
+	 * Streams a new world to the client, after the server has changed worlds.
+	 * Each chunk is sent in its own message, on a separate thread, so that
+	 * other messages aren't held up until the whole world is sent.
+	 * @param message The message that announces the new world.
+	 * @param world The new world.
+	 * @return A future that completes once the world has been sent, or the
+	 * sending was stopped.
+	 */
+	public CompletableFuture<Void> sendWorld(WorldChangeMessage message, World world) {
+		var sent = new CompletableFuture<Void>();
+		Thread thread = new Thread(() -> {
+			try {
+				synchronized (out) {
+					Net.write(message, out);
+				}
+				for (long key : world.getChunkKeys()) {
+					// Stop if the world has already changed again.
+					if (socket.isClosed() || server.getWorld() != world) return;
+					Chunk chunk = world.getChunkAt(key);
+					if (chunk == null) continue;
+					var chunkMessage = new ChunkDataMessage(chunk);
+					synchronized (out) {
+						Net.write(chunkMessage, out);
+					}
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			} finally {
+				sent.complete(null);
+			}
+		}, "World Sender");
+		thread.setDaemon(true);
+		thread.start();
+		return sent;
+	}
+
+	/**
+	 * Sends a message to the client over UDP right away, in its own datagram.
+	 * Messages that are sent during a tick should be
+	 * {@link ClientCommunicationHandler#queueDatagram(Message) queued}
+	 * instead, so that they're batched.
+	 * @param msg The message to send.
+	 */
 	public void sendDatagramPacket(Message msg) {
 		try {
 			sendDatagramPacket(Net.write(msg));
@@ -177,14 +276,69 @@ public class ClientCommunicationHandler {
 	}
 
 	public void sendDatagramPacket(DatagramPacket packet) {
+		if (clientUdpPort != -1 && sendDatagram(packet)) {
+			server.getDatagramStats().messageSent();
+		}
+	}
+
+	/**
+	 * Queues a message to send to the client over UDP, in a batch with any
+	 * other messages that are queued for them before the end of the tick.
+	 * This should only be used from the server's tick thread, since the
+	 * batch is only sent when the tick is done.
+	 * @param msg The message to send.
+	 */
+	public void queueDatagram(Message msg) {
 		try {
-			if (clientUdpPort != -1) {
-				packet.setAddress(clientAddress);
-				packet.setPort(clientUdpPort);
-				datagramSocket.send(packet);
-			}
+			queueDatagram(Net.write(msg));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Queues a serialized message to send to the client over UDP.
+	 * @param data The serialized message.
+	 * @see ClientCommunicationHandler#queueDatagram(Message)
+	 */
+	public void queueDatagram(byte[] data) {
+		if (clientUdpPort == -1) return;
+		try {
+			datagramBatcher.add(data, this::sendBatch);
+			server.getDatagramStats().messageSent();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Sends all queued UDP messages to the client. This is done at the end
+	 * of each tick.
+	 */
+	public void flushDatagrams() {
+		try {
+			datagramBatcher.flush(this::sendBatch);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void sendBatch(byte[] data) {
+		if (clientUdpPort != -1) {
+			sendDatagram(new DatagramPacket(data, data.length, clientAddress, clientUdpPort));
+		}
+	}
+
+	private boolean sendDatagram(DatagramPacket packet) {
+		try {
+			packet.setAddress(clientAddress);
+			packet.setPort(clientUdpPort);
+			datagramSocket.send(packet);
+			server.getDatagramStats().datagramSent(packet.getLength());
+			return true;
 		} catch (IOException e) {
 			e.printStackTrace();
+			return false;
 		}
 	}
 
@@ -195,7 +349,9 @@ public class ClientCommunicationHandler {
 	 */
 	private void sendInitialData() throws IOException {
 		// First world data. We send this in the same format that we'd use for files.
-		WorldIO.write(server.getWorld(), out);
+		// A snapshot is sent if possible, since the world may change while it's written.
+		World world = server.getWorld();
+		WorldIO.write(world.supportsSnapshots() ? world.snapshot() : world, out);
 
 		// Team data.
 		var teams = server.getTeamManager().getTeams();
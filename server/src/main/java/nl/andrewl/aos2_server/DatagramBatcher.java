@@ -0,0 +1,62 @@
+package nl.andrewl.aos2_server;
+
+import nl.andrewl.aos_core.Net;
+import nl.andrewl.aos_core.net.MessageBatch;
+import nl.andrewl.aos_core.net.UdpReceiver;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Gathers the serialized messages that are sent to a client over UDP, and
+ * packs them into {@link MessageBatch} datagrams that fit in
+ * {@link UdpReceiver#MAX_PACKET_SIZE}. Datagrams are sent when the next
+ * message doesn't fit, and when the batcher is flushed at the end of each
+ * tick.
+ */
+class DatagramBatcher {
+	private static final int MAX_DATA_SIZE = UdpReceiver.MAX_PACKET_SIZE - MessageBatch.serializedOverhead();
+
+	private final byte[] buffer = new byte[MAX_DATA_SIZE];
+	private int size = 0;
+	private int count = 0;
+
+	/**
+	 * Adds a message to the current batch, sending the batch first if the
+	 * message doesn't fit in it. Messages that are too big for any batch are
+	 * sent on their own.
+	 * @param data The serialized message.
+	 * @param sender Sends a datagram's data.
+	 */
+	synchronized void add(byte[] data, Consumer<byte[]> sender) throws IOException {
+		int entrySize = MessageBatch.ENTRY_OVERHEAD + data.length;
+		if (entrySize > MAX_DATA_SIZE) {
+			flush(sender);
+			sender.accept(data);
+			return;
+		}
+		if (size + entrySize > MAX_DATA_SIZE) flush(sender);
+		buffer[size] = (byte) (data.length >>> 8);
+		buffer[size + 1] = (byte) data.length;
+		System.arraycopy(data, 0, buffer, size + MessageBatch.ENTRY_OVERHEAD, data.length);
+		size += entrySize;
+		count++;
+	}
+
+	/**
+	 * Sends the current batch, if there is one. A batch of one message is
+	 * sent as just that message.
+	 * @param sender Sends a datagram's data.
+	 */
+	synchronized void flush(Consumer<byte[]> sender) throws IOException {
+		if (count == 0) return;
+		if (count == 1) {
+			sender.accept(Arrays.copyOfRange(buffer, MessageBatch.ENTRY_OVERHEAD, size));
+		} else {
+			sender.accept(Net.write(new MessageBatch(Arrays.copyOf(buffer, size))));
+		}
+		size = 0;
+		count = 0;
+	}
+}
@@ -0,0 +1,64 @@
+package nl.andrewl.aos2_server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the UDP traffic that the server sends to clients, so that we can see
+ * how many datagrams are sent, and how much of the traffic is spent on
+ * packet headers.
+ */
+public class DatagramStats {
+	/**
+	 * The size of the IPv4 and UDP headers of each datagram.
+	 */
+	public static final int HEADER_SIZE = 28;
+
+	/**
+	 * Stats over an interval.
+	 * @param seconds The length of the interval.
+	 * @param messages The number of messages that were sent.
+	 * @param datagrams The number of datagrams that they were sent in.
+	 * @param payloadBytes The number of bytes in the datagrams, not counting
+	 *                     their headers.
+	 */
+	public record Interval(double seconds, long messages, long datagrams, long payloadBytes) {
+		/**
+		 * @return The fraction of all bytes sent that were headers.
+		 */
+		public double headerOverhead() {
+			long headerBytes = datagrams * HEADER_SIZE;
+			return headerBytes == 0 ? 0 : (double) headerBytes / (headerBytes + payloadBytes);
+		}
+	}
+
+	private final LongAdder messages = new LongAdder();
+	private final LongAdder datagrams = new LongAdder();
+	private final LongAdder payloadBytes = new LongAdder();
+
+	private long lastMessages, lastDatagrams, lastPayloadBytes;
+	private long lastReadAt = System.nanoTime();
+
+	void messageSent() {
+		messages.increment();
+	}
+
+	void datagramSent(int size) {
+		datagrams.increment();
+		payloadBytes.add(size);
+	}
+
+	/**
+	 * Gets the stats since the last time that this was called.
+	 * @return The stats.
+	 */
+	public synchronized Interval read() {
+		long now = System.nanoTime();
+		long m = messages.sum(), d = datagrams.sum(), b = payloadBytes.sum();
+		var interval = new Interval((now - lastReadAt) / 1_000_000_000.0, m - lastMessages, d - lastDatagrams, b - lastPayloadBytes);
+		lastMessages = m;
+		lastDatagrams = d;
+		lastPayloadBytes = b;
+		lastReadAt = now;
+		return interval;
+	}
+}
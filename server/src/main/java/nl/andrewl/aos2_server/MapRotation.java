@@ -0,0 +1,126 @@
+package nl.andrewl.aos2_server;
+
+import nl.andrewl.aos2_server.config.ServerConfig;
+import nl.andrewl.aos2_server.model.ServerPlayer;
+import nl.andrewl.aos_core.model.world.ChunkSlabAllocator;
+import nl.andrewl.aos_core.model.world.OverlayWorld;
+import nl.andrewl.aos_core.model.world.World;
+import nl.andrewl.aos_core.model.world.WorldBase;
+import nl.andrewl.aos_core.model.world.WorldRotation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Component that rotates the server through a list of worlds, changing to the
+ * next one at the end of each round. The next world is loaded on a background
+ * thread while the current round is played, so that changing worlds doesn't
+ * hold up the server's ticks. The rotation itself is done by a
+ * {@link WorldRotation}.
+ */
+public class MapRotation {
+	private final Server server;
+	private final ExecutorService loader;
+	private final WorldRotation<ServerPlayer> rotation;
+	private final boolean enabled;
+
+	public MapRotation(Server server) {
+		this.server = server;
+		ServerConfig config = server.getConfig();
+		String[] worlds = new String[1 + config.mapRotation.worlds.length];
+		worlds[0] = config.world;
+		System.arraycopy(config.mapRotation.worlds, 0, worlds, 1, config.mapRotation.worlds.length);
+		this.enabled = worlds.length > 1 && !config.journal.enabled;
+		this.loader = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "Map Loader");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.rotation = new WorldRotation<>(worlds, (long) (config.mapRotation.roundDuration * 1000), this::loadWorld, loader);
+	}
+
+	/**
+	 * @return True if there are other worlds to rotate through. Worlds with a
+	 * journal can't be rotated, since the journal belongs to the first one.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts the first round, and starts loading the next world.
+	 * @param currentTimeMillis The current timestamp.
+	 */
+	public void start(long currentTimeMillis) {
+		if (enabled) rotation.start(currentTimeMillis);
+	}
+
+	/**
+	 * Ends the current round as soon as the next world is loaded.
+	 * @return False if there's no map rotation.
+	 */
+	public boolean requestChange() {
+		return rotation.requestChange();
+	}
+
+	/**
+	 * Changes to the next world if the round is over, and the world is loaded.
+	 * This is called by the world updater on each tick, so the world is never
+	 * changed in the middle of a tick.
+	 * @param currentTimeMillis The current timestamp.
+	 */
+	public void tick(long currentTimeMillis) {
+		World world = rotation.tick(currentTimeMillis);
+		if (world != null) server.changeWorld(world);
+	}
+
+	/**
+	 * Queues a player to be respawned once their client has the new world.
+	 * @param player The player.
+	 * @param worldSent Completes when the player's client has the new world.
+	 */
+	void queueRespawn(ServerPlayer player, CompletionStage<?> worldSent) {
+		rotation.queueRespawn(player, worldSent);
+	}
+
+	/**
+	 * Respawns the players whose client has received the new world since the
+	 * last tick. This is only called by the world updater, after
+	 * {@link MapRotation#tick(long)}.
+	 */
+	public void respawnQueuedPlayers() {
+		var playerManager = server.getPlayerManager();
+		// A player may have left while the world was being sent.
+		rotation.respawnQueued(player -> {
+			if (playerManager.getHandler(player) != null) playerManager.respawn(player);
+		});
+	}
+
+	public void shutdown() {
+		loader.shutdownNow();
+	}
+
+	private World loadWorld(String name) {
+		ServerConfig config = server.getConfig();
+		World world;
+		try {
+			world = Server.loadWorld(name, config);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (world.supportsSnapshots()) {
+			world = new OverlayWorld(WorldBase.of(world));
+		}
+		// Computes the world's bounds and digest now, instead of during a tick.
+		world.getMaxY();
+		if (world.supportsDigests()) world.getDigest();
+		if (config.offHeapChunks) {
+			world.useSlabStorage(new ChunkSlabAllocator());
+		}
+		System.out.println("Loaded the next world: " + name);
+		return world;
+	}
+}
@@ -5,6 +5,8 @@ import nl.andrewl.aos_core.Net;
 import nl.andrewl.aos_core.model.PlayerMode;
 import nl.andrewl.aos_core.model.Team;
 import nl.andrewl.aos_core.model.item.*;
+import nl.andrewl.aos_core.model.world.World;
+import nl.andrewl.aos_core.net.UdpReceiver;
 import nl.andrewl.aos_core.net.client.*;
 import nl.andrewl.aos_core.net.connect.DatagramInit;
 import nl.andrewl.record_net.Message;
@@ -20,9 +22,24 @@ import java.util.regex.Pattern;
  * the server, and components related to that.
  */
 public class PlayerManager {
+	private static final int SNAPSHOT_HISTORY_SIZE = 32;
+	/**
+	 * The maximum size of the data in each part of a snapshot, so that each
+	 * part fits in a datagram.
+	 */
+	private static final int MAX_SNAPSHOT_PART_SIZE = UdpReceiver.MAX_PACKET_SIZE - PlayerSnapshotMessage.serializedOverhead();
+
 	private final Server server;
 	private final Map<Integer, ServerPlayer> players = new HashMap<>();
 	private final Map<Integer, ClientCommunicationHandler> clientHandlers = new HashMap<>();
+	/**
+	 * The most recent player snapshots that were sent, indexed by their
+	 * sequence number modulo {@link PlayerManager#SNAPSHOT_HISTORY_SIZE}, so
+	 * that each client's delta can be encoded against the last one that it
+	 * acknowledged.
+	 */
+	private final PlayerSnapshot[] snapshotHistory = new PlayerSnapshot[SNAPSHOT_HISTORY_SIZE];
+	private int snapshotSequence = 0;
 	private int nextClientId = 1;
 
 	public PlayerManager(Server server) {
@@ -122,11 +139,87 @@ public class PlayerManager {
 		return Collections.unmodifiableCollection(clientHandlers.values());
 	}
 
-	public void tick(long currentTimeMillis, float dt) {
+	/**
+	 * Applies the messages that each player's client has sent since the last
+	 * tick, in the order that they arrived.
+	 */
+	public void applyInputs() {
+		for (var player : players.values()) {
+			var queue = player.getActionManager().getInputQueue();
+			Message msg;
+			while ((msg = queue.poll()) != null) {
+				if (msg instanceof ClientInputState inputState) {
+					player.getActionManager().setLastInputState(inputState);
+				} else if (msg instanceof ClientOrientationState orientationState) {
+					player.setOrientation(orientationState.x(), orientationState.y());
+				} else if (msg instanceof BlockColorMessage blockColorMessage) {
+					if (player.getInventory().getSelectedItemStack() instanceof BlockItemStack stack) {
+						stack.setSelectedValue(blockColorMessage.block());
+						queueUdpBroadcastToAllBut(blockColorMessage, player);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Performs each player's actions for this tick.
+	 * @param currentTimeMillis The current time.
+	 * @param dt The time since the last tick, in seconds.
+	 */
+	public void tickActions(long currentTimeMillis, float dt) {
 		for (var player : players.values()) {
 			player.getActionManager().tick(currentTimeMillis, dt, server.getWorld(), server);
-			if (player.getActionManager().isUpdated()) {
-				broadcastUdpMessage(player.getUpdateMessage(currentTimeMillis));
+		}
+	}
+
+	/**
+	 * Moves each player for this tick, after their actions.
+	 * @param dt The time since the last tick, in seconds.
+	 */
+	public void tickMovement(float dt) {
+		for (var player : players.values()) {
+			player.getActionManager().tickMovement(dt, server.getWorld(), server);
+		}
+	}
+
+	/**
+	 * Sends a snapshot of all players to each client. This is done at the
+	 * server's snapshot rate, which may be lower than its tick rate. Each
+	 * client's snapshot is a delta against the last snapshot that it
+	 * acknowledged, so only the players that changed since then are sent, or
+	 * against nothing if it hasn't acknowledged any of the recent ones.
+	 * Snapshots that don't fit in one datagram are sent in parts, and ones
+	 * that are the same as the last acknowledged one that we sent are
+	 * skipped.
+	 */
+	public void sendPlayerUpdates() {
+		var builder = new PlayerSnapshot.Builder();
+		for (var player : players.values()) {
+			builder.add(player, player.getSelectedItemId());
+		}
+		PlayerSnapshot snapshot = builder.build();
+		int sequence = snapshotSequence++;
+		snapshotHistory[sequence % SNAPSHOT_HISTORY_SIZE] = snapshot;
+		for (var handler : clientHandlers.values()) {
+			int acked = handler.getAckedSnapshot();
+			PlayerSnapshot baseline = PlayerSnapshot.EMPTY;
+			if (acked >= 0 && acked < sequence && sequence - acked < SNAPSHOT_HISTORY_SIZE) {
+				baseline = snapshotHistory[acked % SNAPSHOT_HISTORY_SIZE];
+			} else {
+				acked = -1;
+			}
+			var parts = snapshot.encodeDelta(baseline, MAX_SNAPSHOT_PART_SIZE);
+			// The client can skip this snapshot if it's the same as the last one that we sent, and the client has
+			// that one. If the last one hasn't been acknowledged yet, it may differ from the acknowledged one even
+			// when this one doesn't, like when a player changes something and changes it back, so we still send it.
+			// We also send it once the acknowledged snapshot is getting old enough to drop out of the history.
+			boolean unchanged = parts.size() == 1 && parts.get(0).data().length == 0;
+			if (unchanged && acked != -1 && acked == handler.getSentSnapshot() && sequence - acked < SNAPSHOT_HISTORY_SIZE / 2) continue;
+			handler.setSentSnapshot(sequence);
+			for (int i = 0; i < parts.size(); i++) {
+				var part = parts.get(i);
+				handler.queueDatagram(new PlayerSnapshotMessage(sequence, acked, i, parts.size(), part.firstId(), part.endId(), part.data()));
 			}
 		}
 	}
@@ -155,13 +248,31 @@ public class PlayerManager {
 	 * Determines the best location to spawn the given player at. This is
 	 * usually the player's team spawn point, if they have a team. Otherwise, a
 	 * spawn point is randomly chosen from the world. If no spawnpoint exists in
-	 * the world, we resort to 0, 0, 0 as the last option.
+	 * the world, we resort to the surface at the center of the world.
 	 * @param player The player to spawn.
 	 * @return The best location to spawn the player at.
 	 */
 	private Vector3f getBestSpawnPoint(ServerPlayer player) {
 		if (player.getTeam() != null) return player.getTeam().getSpawnPoint();
-		return server.getWorld().getSpawnPoints().values().stream().findAny().orElse(new Vector3f(0, 0, 0));
+		var world = server.getWorld();
+		return world.getSpawnPoints().values().stream().findAny().orElseGet(() -> {
+			int x = (world.getMinX() + world.getMaxX()) / 2;
+			int z = (world.getMinZ() + world.getMaxZ()) / 2;
+			int height = world.getHeightAt(x, z);
+			float y = height == World.NO_HEIGHT ? 0 : height + 1;
+			return new Vector3f(x + 0.5f, y, z + 0.5f);
+		});
+	}
+
+	/**
+	 * Moves a player to their spawn point and stops them, without telling
+	 * anyone. Use {@link PlayerManager#respawn(ServerPlayer)} to also tell
+	 * clients, and resupply them.
+	 * @param player The player to move.
+	 */
+	public void moveToSpawnPoint(ServerPlayer player) {
+		player.setPosition(getBestSpawnPoint(player));
+		player.setVelocity(new Vector3f(0));
 	}
 
 	/**
@@ -206,8 +317,7 @@ public class PlayerManager {
 	}
 
 	public void respawn(ServerPlayer player) {
-		player.setPosition(getBestSpawnPoint(player));
-		player.setVelocity(new Vector3f(0));
+		moveToSpawnPoint(player);
 		broadcastUdpMessage(player.getUpdateMessage(System.currentTimeMillis()));
 		resupply(player);
 	}
@@ -254,7 +364,11 @@ public class PlayerManager {
 		var handler = getHandler(init.clientId());
 		if (handler != null) {
 			handler.setClientUdpPort(packet.getPort());
-			handler.sendDatagramPacket(init);
+			try {
+				handler.sendDatagramPacket(Net.write(init));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
 		}
 	}
 
@@ -297,4 +411,50 @@ public class PlayerManager {
 			e.printStackTrace();
 		}
 	}
+
+	/**
+	 * Queues a UDP message for all clients, to be sent in a batch at the end
+	 * of the tick. This should only be used from the server's tick thread.
+	 * @param msg The message to send.
+	 * @see ClientCommunicationHandler#queueDatagram(Message)
+	 */
+	public void queueUdpBroadcast(Message msg) {
+		try {
+			byte[] data = Net.write(msg);
+			for (var handler : getHandlers()) {
+				handler.queueDatagram(data);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Queues a UDP message for all clients except one, to be sent in a batch
+	 * at the end of the tick. This should only be used from the server's
+	 * tick thread.
+	 * @param msg The message to send.
+	 * @param player The player whose client doesn't get the message.
+	 */
+	public void queueUdpBroadcastToAllBut(Message msg, ServerPlayer player) {
+		try {
+			byte[] data = Net.write(msg);
+			for (var entry : clientHandlers.entrySet()) {
+				if (entry.getKey() != player.getId()) {
+					entry.getValue().queueDatagram(data);
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Sends the UDP messages that have been queued for each client.
+	 */
+	public void flushDatagrams() {
+		for (var handler : getHandlers()) {
+			handler.flushDatagrams();
+		}
+	}
 }
@@ -1,6 +1,5 @@
 package nl.andrewl.aos2_server;
 
-import nl.andrewl.aos2_server.model.BlockHitTracker;
 import nl.andrewl.aos2_server.model.ServerPlayer;
 import nl.andrewl.aos2_server.model.ServerProjectile;
 import nl.andrewl.aos_core.Directions;
@@ -8,6 +7,7 @@ import nl.andrewl.aos_core.model.Player;
 import nl.andrewl.aos_core.model.PlayerMode;
 import nl.andrewl.aos_core.model.Projectile;
 import nl.andrewl.aos_core.model.item.Gun;
+import nl.andrewl.aos_core.model.world.BlockDamageTracker;
 import nl.andrewl.aos_core.model.world.Hit;
 import nl.andrewl.aos_core.net.client.ClientHealthMessage;
 import nl.andrewl.aos_core.net.client.SoundMessage;
@@ -31,13 +31,20 @@ public class ProjectileManager {
 	private int nextProjectileId = 1;
 	private final Map<Integer, ServerProjectile> projectiles;
 	private final Queue<ServerProjectile> removalQueue;
-	private final Map<Vector3i, BlockHitTracker> blockHitTrackers;
+	private final BlockDamageTracker blockDamage;
+
+	// Re-usable buffers for casting each projectile's ray through the world.
+	private final Vector3f rayDirection = new Vector3f();
+	private final Hit rayHit = new Hit();
 
 	public ProjectileManager(Server server) {
 		this.server = server;
 		this.projectiles = new HashMap<>();
 		this.removalQueue = new LinkedList<>();
-		this.blockHitTrackers = new HashMap<>();
+		this.blockDamage = new BlockDamageTracker(
+				(long) (server.getConfig().actions.blockBulletDamageCooldown * 1000),
+				System.currentTimeMillis()
+		);
 	}
 
 	/**
@@ -84,25 +91,35 @@ public class ProjectileManager {
 
 			ServerProjectile bullet = new ServerProjectile(id, new Vector3f(pos), vel, Projectile.Type.BULLET, player, gun);
 			projectiles.put(bullet.getId(), bullet);
-			server.getPlayerManager().broadcastUdpMessage(bullet.toMessage(false));
+			server.getPlayerManager().queueUdpBroadcast(bullet.toMessage(false));
 		}
 	}
 
 	public void tick(long now, float dt) {
 		for (var projectile : projectiles.values()) {
-			tickProjectile(projectile, now, dt);
+			projectile.getVelocity().y -= server.getConfig().physics.gravity * dt * MOVEMENT_FACTOR;
+			// Each projectile's ray is cast right before it's resolved, so that it sees blocks destroyed by earlier ones.
+			Vector3f movement = rayDirection.set(projectile.getVelocity()).mul(dt);
+			boolean hitWorld = server.getWorld().raycast(projectile.getPosition(), movement, movement.length(), rayHit);
+			tickProjectile(projectile, hitWorld ? rayHit : null, now, dt);
 		}
 		while (!removalQueue.isEmpty()) {
 			ServerProjectile projectile = removalQueue.remove();
 			projectiles.remove(projectile.getId());
 		}
-		// Remove any block hit trackers for blocks whose cooldown period has passed.
-		blockHitTrackers.entrySet().removeIf(entry -> now - entry.getValue().getLastHitAt() > server.getConfig().actions.blockBulletDamageCooldown * 1000);
+		// Forget the damage of blocks whose cooldown period has passed.
+		blockDamage.tick(now);
 	}
 
-	private void tickProjectile(ServerProjectile projectile, long now, float dt) {
-		projectile.getVelocity().y -= server.getConfig().physics.gravity * dt * MOVEMENT_FACTOR;
-
+	/**
+	 * Updates a single projectile.
+	 * @param projectile The projectile to update.
+	 * @param hit The point at which the projectile will hit the world during
+	 *            this tick, or null if it won't hit anything.
+	 * @param now The current time.
+	 * @param dt The time since the last tick, in seconds.
+	 */
+	private void tickProjectile(ServerProjectile projectile, Hit hit, long now, float dt) {
 		// Check for if the bullet will move close enough to a player to hit them.
 		Vector3f movement = new Vector3f(projectile.getVelocity()).mul(dt);
 		Vector3f direction = new Vector3f(projectile.getVelocity()).normalize();
@@ -148,10 +165,6 @@ public class ProjectileManager {
 			}
 		}
 
-		// Then check to see if we'll hit the world during this tick.
-		Vector3f movementDir = new Vector3f(movement).normalize();
-		Hit hit = server.getWorld().getLookingAtPos(projectile.getPosition(), movementDir, movement.length());
-
 		float playerHitDist = Float.MAX_VALUE;
 		if (playerHit != null) playerHitDist = projectile.getPosition().distanceSquared(playerHit);
 		float worldHitDist = Float.MAX_VALUE;
@@ -170,7 +183,7 @@ public class ProjectileManager {
 			if (projectile.getDistanceTravelled() > 500) {
 				deleteProjectile(projectile);
 			} else {
-				server.getPlayerManager().broadcastUdpMessage(projectile.toMessage(false));
+				server.getPlayerManager().queueUdpBroadcast(projectile.toMessage(false));
 			}
 		}
 	}
@@ -206,20 +219,26 @@ public class ProjectileManager {
 		return null;
 	}
 
+	/**
+	 * Forgets all damage done to blocks, like when the world is changed.
+	 */
+	public void clearBlockHits() {
+		blockDamage.clear();
+	}
+
 	private void handleProjectileBlockHit(Hit hit, ServerProjectile projectile, long now) {
 		if (!server.getTeamManager().isProtected(hit.pos())) {
 			Gun gun = (Gun) projectile.getSourceItem();
 			float damage = gun.getBaseDamage();
-			BlockHitTracker blockHitTracker = blockHitTrackers.computeIfAbsent(hit.pos(), p -> new BlockHitTracker(now, damage));
-			if (blockHitTracker.getDamageAccumulated() >= server.getConfig().actions.blockBulletDamageResistance) {
-				server.getWorld().setBlockAt(hit.pos().x, hit.pos().y, hit.pos().z, (byte) 0);
-				server.getPlayerManager().broadcastUdpMessage(ChunkUpdateMessage.fromWorld(hit.pos(), server.getWorld()));
-				blockHitTrackers.remove(hit.pos());
-			} else {
-				blockHitTracker.doHit(now, damage);
+			Vector3i pos = hit.pos();
+			if (blockDamage.damage(pos.x, pos.y, pos.z, damage, now) >= server.getConfig().actions.blockBulletDamageResistance) {
+				server.getWorld().setBlockAt(pos.x, pos.y, pos.z, (byte) 0);
+				server.onBlockRemoved(pos);
+				server.getPlayerManager().queueUdpBroadcast(ChunkUpdateMessage.fromWorld(pos, server.getWorld()));
+				blockDamage.remove(pos.x, pos.y, pos.z);
 			}
 			int soundVariant = ThreadLocalRandom.current().nextInt(1, 6);
-			server.getPlayerManager().broadcastUdpMessage(new SoundMessage("bullet_impact_" + soundVariant, 1, hit.rawPos()));
+			server.getPlayerManager().queueUdpBroadcast(new SoundMessage("bullet_impact_" + soundVariant, 1, hit.rawPos()));
 		}
 		deleteProjectile(projectile);
 	}
@@ -232,23 +251,23 @@ public class ProjectileManager {
 				damage *= 2;
 				if (projectile.getPlayer() != null) {
 					var shooter = projectile.getPlayer();
-					server.getPlayerManager().getHandler(shooter).sendDatagramPacket(new SoundMessage("hit_1", 1, shooter.getPosition(), shooter.getVelocity()));
+					server.getPlayerManager().getHandler(shooter).queueDatagram(new SoundMessage("hit_1", 1, shooter.getPosition(), shooter.getVelocity()));
 				}
 			} else {
 				if (projectile.getPlayer() != null) {
 					var shooter = projectile.getPlayer();
-					server.getPlayerManager().getHandler(shooter).sendDatagramPacket(new SoundMessage("hit_2", 1, shooter.getPosition(), shooter.getVelocity()));
+					server.getPlayerManager().getHandler(shooter).queueDatagram(new SoundMessage("hit_2", 1, shooter.getPosition(), shooter.getVelocity()));
 				}
 			}
 			hitPlayer.setHealth(hitPlayer.getHealth() - damage);
 			Vector3f impactAcceleration = new Vector3f(projectile.getVelocity()).normalize().mul(3);
 			hitPlayer.getVelocity().add(impactAcceleration);
 			int soundVariant = ThreadLocalRandom.current().nextInt(1, 4);
-			server.getPlayerManager().broadcastUdpMessage(new SoundMessage("hurt_" + soundVariant, 1, hitPlayer.getPosition(), hitPlayer.getVelocity()));
+			server.getPlayerManager().queueUdpBroadcast(new SoundMessage("hurt_" + soundVariant, 1, hitPlayer.getPosition(), hitPlayer.getVelocity()));
 			if (hitPlayer.getHealth() == 0) {
 				server.getPlayerManager().playerKilled(hitPlayer, projectile.getPlayer());
 			} else {
-				server.getPlayerManager().getHandler(hitPlayer).sendDatagramPacket(new ClientHealthMessage(hitPlayer.getHealth()));
+				server.getPlayerManager().getHandler(hitPlayer).queueDatagram(new ClientHealthMessage(hitPlayer.getHealth()));
 			}
 		}
 		deleteProjectile(projectile);
@@ -256,6 +275,6 @@ public class ProjectileManager {
 
 	private void deleteProjectile(ServerProjectile p) {
 		removalQueue.add(p);
-		server.getPlayerManager().broadcastUdpMessage(p.toMessage(true));
+		server.getPlayerManager().queueUdpBroadcast(p.toMessage(true));
 	}
 }
@@ -3,27 +3,47 @@ package nl.andrewl.aos2_server;
 import nl.andrewl.aos2_server.cli.ServerCli;
 import nl.andrewl.aos2_server.cli.ingame.PlayerCommandHandler;
 import nl.andrewl.aos2_server.config.ServerConfig;
+import nl.andrewl.aos2_server.logic.TickProfiler;
 import nl.andrewl.aos2_server.logic.WorldUpdater;
 import nl.andrewl.aos2_server.model.ServerPlayer;
 import nl.andrewl.aos_core.FileUtils;
 import nl.andrewl.aos_core.config.Config;
-import nl.andrewl.aos_core.model.item.BlockItemStack;
+import nl.andrewl.aos_core.model.world.BlockChangeSet;
+import nl.andrewl.aos_core.model.world.BlockRegion;
+import nl.andrewl.aos_core.model.world.ChunkSlabAllocator;
+import nl.andrewl.aos_core.model.world.OverlayWorld;
+import nl.andrewl.aos_core.model.world.PagedWorld;
+import nl.andrewl.aos_core.model.world.SupportTracker;
+import nl.andrewl.aos_core.model.world.TerrainGenerator;
+import nl.andrewl.aos_core.model.world.VxlIO;
 import nl.andrewl.aos_core.model.world.World;
+import nl.andrewl.aos_core.model.world.WorldBase;
 import nl.andrewl.aos_core.model.world.WorldIO;
+import nl.andrewl.aos_core.model.world.WorldJournal;
 import nl.andrewl.aos_core.model.world.Worlds;
 import nl.andrewl.aos_core.net.UdpReceiver;
 import nl.andrewl.aos_core.net.client.BlockColorMessage;
+import nl.andrewl.aos_core.net.client.ChatMessage;
 import nl.andrewl.aos_core.net.client.ClientInputState;
 import nl.andrewl.aos_core.net.client.ClientOrientationState;
+import nl.andrewl.aos_core.net.client.PlayerSnapshotAckMessage;
 import nl.andrewl.aos_core.net.connect.DatagramInit;
+import nl.andrewl.aos_core.net.world.BlockChangeSetMessage;
+import nl.andrewl.aos_core.net.world.ChunkDataMessage;
+import nl.andrewl.aos_core.net.world.WorldChangeMessage;
 import nl.andrewl.record_net.Message;
 import org.joml.Vector3f;
+import org.joml.Vector3i;
 
 import java.io.IOException;
 import java.net.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ScheduledExecutorService;
@@ -42,8 +62,25 @@ public class Server implements Runnable {
 	private final TeamManager teamManager;
 	private final ProjectileManager projectileManager;
 	private final PlayerCommandHandler commandHandler;
-	private final World world;
+	private volatile World world;
+	/**
+	 * Finds and drops blocks that are left floating in the world, or null if
+	 * that's turned off.
+	 */
+	private volatile SupportTracker supportTracker;
 	private final WorldUpdater worldUpdater;
+	private final MapRotation mapRotation;
+	private final DatagramStats datagramStats = new DatagramStats();
+	/**
+	 * Requests to reset the world, which are done by the world updater in
+	 * between ticks.
+	 */
+	private final Queue<CompletableFuture<Integer>> worldResetRequests = new ConcurrentLinkedQueue<>();
+	/**
+	 * Regions to fill with a block, which are filled by the world updater on
+	 * its next tick.
+	 */
+	private final Queue<FillRequest> fillRequests = new ConcurrentLinkedQueue<>();
 
 	public Server(ServerConfig config) throws IOException {
 		this.config = config;
@@ -55,11 +92,57 @@ public class Server implements Runnable {
 		this.teamManager = new TeamManager(this);
 		this.projectileManager = new ProjectileManager(this);
 		this.commandHandler = new PlayerCommandHandler(this);
-		this.worldUpdater = new WorldUpdater(this, config.ticksPerSecond);
+		this.worldUpdater = new WorldUpdater(this, config.ticksPerSecond, config.snapshotsPerSecond, config.maxCatchUpTicks);
 
-		if (config.world.startsWith("worlds.")) {
-			String worldName = config.world.substring("worlds.".length());
-			this.world = switch (worldName) {
+		World loadedWorld = loadWorld(config.world, config);
+		Path journalDir = Path.of(config.journal.directory);
+		// Worlds that can't be snapshotted are paged from disk, which already saves their changes, and they'd
+		// have to be loaded entirely to keep journal snapshots or a base to reset to.
+		boolean journaled = config.journal.enabled && loadedWorld.supportsSnapshots();
+		if (journaled) {
+			loadedWorld = WorldJournal.recover(journalDir, loadedWorld);
+		} else if (loadedWorld.supportsSnapshots()) {
+			// Keep the map as a base that the world can be reset to.
+			loadedWorld = new OverlayWorld(WorldBase.of(loadedWorld));
+		}
+		this.world = loadedWorld;
+		if (config.offHeapChunks) {
+			world.useSlabStorage(new ChunkSlabAllocator());
+		}
+		if (journaled) {
+			WorldJournal.open(journalDir, world, config.journal.flushInterval, config.journal.compactionInterval);
+		}
+		this.supportTracker = newSupportTracker(world);
+
+		for (var teamConfig : config.teams) {
+			teamManager.addTeam(teamConfig.name, new Vector3f(teamConfig.color), teamConfig.spawnPoint);
+		}
+		this.mapRotation = new MapRotation(this);
+	}
+
+	/**
+	 * Loads a world, given like the {@code world} config option.
+	 * @param name The name of a built-in world, a generated world given as
+	 *             {@code gen:<seed>:<size>}, or the path to a world file,
+	 *             {@code .vxl} map or paged world directory.
+	 * @param config The server's config.
+	 * @return The world.
+	 * @throws IOException If the world can't be read.
+	 */
+	static World loadWorld(String name, ServerConfig config) throws IOException {
+		if (name.startsWith("gen:")) {
+			String[] parts = name.split(":");
+			try {
+				long seed = Long.parseLong(parts[1]);
+				int size = parts.length > 2 ? Integer.parseInt(parts[2]) : 256;
+				return new TerrainGenerator(seed, size).generate();
+			} catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+				System.err.println("Invalid generated world \"" + name + "\", expected gen:<seed>:<size>. " + e.getMessage());
+				return Worlds.arena();
+			}
+		} else if (name.startsWith("worlds.")) {
+			String worldName = name.substring("worlds.".length());
+			return switch (worldName) {
 				case "testing" -> Worlds.testingWorld();
 				case "flat" -> Worlds.flatWorld();
 				case "cube" -> Worlds.smallCube();
@@ -67,24 +150,25 @@ public class Server implements Runnable {
 				default -> WorldIO.read(FileUtils.getClasspathResource("redfort.wld"));
 			};
 		} else {
-			Path worldFile = Path.of(config.world);
-			if (Files.isReadable(worldFile)) {
-				this.world = WorldIO.read(worldFile);
+			Path worldFile = Path.of(name);
+			if (PagedWorld.isPagedWorld(worldFile)) {
+				return PagedWorld.open(worldFile, config.maxLoadedChunks);
+			} else if (Files.isReadable(worldFile) && name.endsWith(".vxl")) {
+				return VxlIO.read(worldFile);
+			} else if (Files.isReadable(worldFile)) {
+				return WorldIO.read(worldFile);
 			} else {
 				System.err.println("Cannot read world file: " + worldFile.toAbsolutePath());
-				this.world = Worlds.arena();
+				return Worlds.arena();
 			}
 		}
-
-		for (var teamConfig : config.teams) {
-			teamManager.addTeam(teamConfig.name, new Vector3f(teamConfig.color), teamConfig.spawnPoint);
-		}
 	}
 
 	@Override
 	public void run() {
 		running = true;
 		new Thread(new UdpReceiver(datagramSocket, this::handleUdpMessage)).start();
+		mapRotation.start(System.currentTimeMillis());
 		new Thread(worldUpdater).start();
 		ScheduledExecutorService executorService = null;
 		if (config.registries != null && config.registries.length > 0) {
@@ -100,6 +184,19 @@ public class Server implements Runnable {
 		if (executorService != null) executorService.shutdown();
 		playerManager.deregisterAll();
 		worldUpdater.shutdown();
+		mapRotation.shutdown();
+		if (world.getJournal() != null) {
+			try {
+				world.getJournal().close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		try {
+			world.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 		datagramSocket.close(); // Shuts down the UdpReceiver.
 		try {
 			serverSocket.close();
@@ -121,32 +218,34 @@ public class Server implements Runnable {
 		}
 	}
 
+	/**
+	 * Handles a message received over UDP, on the UDP receiver's thread.
+	 * Messages that change a player are queued, and applied by the world
+	 * updater at the start of its next tick.
+	 * @param msg The message.
+	 * @param packet The packet that the message came from.
+	 */
 	public void handleUdpMessage(Message msg, DatagramPacket packet) {
-		long now = System.currentTimeMillis();
 		if (msg instanceof DatagramInit init) {
 			playerManager.handleUdpInit(init, packet);
 		} else if (msg instanceof ClientInputState inputState) {
-			ServerPlayer player = playerManager.getPlayer(inputState.clientId());
-			if (player != null) {
-				if (player.getActionManager().setLastInputState(inputState)) {
-					playerManager.broadcastUdpMessage(player.getUpdateMessage(now));
-				}
-			}
+			queuePlayerInput(inputState.clientId(), msg);
 		} else if (msg instanceof ClientOrientationState orientationState) {
-			ServerPlayer player = playerManager.getPlayer(orientationState.clientId());
-			if (player != null) {
-				player.setOrientation(orientationState.x(), orientationState.y());
-				playerManager.broadcastUdpMessageToAllBut(player.getUpdateMessage(now), player);
-			}
+			queuePlayerInput(orientationState.clientId(), msg);
 		} else if (msg instanceof BlockColorMessage blockColorMessage) {
-			ServerPlayer player = playerManager.getPlayer(blockColorMessage.clientId());
-			if (player != null && player.getInventory().getSelectedItemStack() instanceof BlockItemStack stack) {
-				stack.setSelectedValue(blockColorMessage.block());
-				playerManager.broadcastUdpMessageToAllBut(blockColorMessage, player);
-			}
+			queuePlayerInput(blockColorMessage.clientId(), msg);
+		} else if (msg instanceof PlayerSnapshotAckMessage ack) {
+			var handler = playerManager.getHandler(ack.clientId());
+			if (handler != null) handler.acknowledgeSnapshot(ack.sequence());
 		}
 	}
 
+	private void queuePlayerInput(int clientId, Message msg) {
+		ServerPlayer player = playerManager.getPlayer(clientId);
+		// If a client floods us with messages, the ones that don't fit are dropped.
+		if (player != null) player.getActionManager().getInputQueue().offer(msg);
+	}
+
 	private void acceptClientConnection() {
 		try {
 			Socket clientSocket = serverSocket.accept();
@@ -175,6 +274,177 @@ public class Server implements Runnable {
 		return world;
 	}
 
+	private record FillRequest(BlockRegion region, byte block, CompletableFuture<BlockChangeSet> result) {}
+
+	/**
+	 * Asks for a region of the world to be filled with a block. The region is
+	 * filled by the world updater on its next tick, and the changes are sent
+	 * to all players like any other block changes.
+	 * @param region The region to fill.
+	 * @param block The block to fill it with.
+	 * @return A future that completes with the blocks that were changed.
+	 */
+	public CompletableFuture<BlockChangeSet> requestFill(BlockRegion region, byte block) {
+		var request = new FillRequest(region, block, new CompletableFuture<>());
+		fillRequests.add(request);
+		return request.result();
+	}
+
+	/**
+	 * Fills the regions that were requested since the last tick. This is only
+	 * called by the world updater, before it drops floating blocks, so that
+	 * blocks left floating by a fill are dropped in the same tick.
+	 */
+	public void fillRequestedRegions() {
+		FillRequest request;
+		while ((request = fillRequests.poll()) != null) {
+			var changes = world.fill(request.region(), request.block());
+			if (!changes.isEmpty()) {
+				if (request.block() == 0) onRegionRemoved(request.region());
+				playerManager.broadcastTcpMessage(new BlockChangeSetMessage(changes));
+			}
+			request.result().complete(changes);
+		}
+	}
+
+	/**
+	 * Asks for the world to be reset to the map that it was loaded from. The
+	 * reset is done by the world updater at the end of its current tick, so
+	 * that it never happens while the world is being changed.
+	 * @return A future that completes with the number of chunks that were
+	 * reset, or with an {@link IllegalStateException} if the world can't be
+	 * reset, because it's paged or has a journal.
+	 */
+	public CompletableFuture<Integer> requestWorldReset() {
+		var request = new CompletableFuture<Integer>();
+		worldResetRequests.add(request);
+		return request;
+	}
+
+	/**
+	 * Resets the world if that was requested, and sends the changes to all
+	 * players. This is only called by the world updater, in between ticks.
+	 * Only the chunks that were reset are sent, unless the reset removed
+	 * chunks, in which case the whole world is sent again, since clients
+	 * can't remove single chunks.
+	 */
+	public void resetWorldIfRequested() {
+		if (worldResetRequests.isEmpty()) return;
+		List<CompletableFuture<Integer>> requests = new ArrayList<>();
+		CompletableFuture<Integer> request;
+		while ((request = worldResetRequests.poll()) != null) requests.add(request);
+		if (!(world instanceof OverlayWorld overlayWorld)) {
+			var e = new IllegalStateException("Only worlds without a journal, that aren't paged, can be reset.");
+			requests.forEach(r -> r.completeExceptionally(e));
+			return;
+		}
+		boolean removesChunks = overlayWorld.getAddedChunkCount() > 0;
+		var chunks = overlayWorld.reset();
+		supportTracker = newSupportTracker(world);
+		projectileManager.clearBlockHits();
+		teamManager.updateSpawnPoints();
+		if (removesChunks) {
+			sendWorld(world, false);
+		} else {
+			for (var chunk : chunks) {
+				playerManager.broadcastTcpMessage(new ChunkDataMessage(chunk));
+			}
+		}
+		requests.forEach(r -> r.complete(chunks.size()));
+	}
+
+	/**
+	 * Swaps in a new world, sends it to all players, and respawns each of them
+	 * in it once their client has it. This is only called by the
+	 * {@link MapRotation} on the world updater's thread, in between ticks.
+	 * @param next The new world.
+	 */
+	void changeWorld(World next) {
+		World previous = world;
+		world = next;
+		supportTracker = newSupportTracker(next);
+		projectileManager.clearBlockHits();
+		teamManager.updateSpawnPoints();
+		// Players are moved to their spawn points straight away, so that they don't fall through the new world, but
+		// they're only respawned once their client has its chunks.
+		for (var player : playerManager.getPlayers()) {
+			playerManager.moveToSpawnPoint(player);
+		}
+		sendWorld(next, true);
+		try {
+			previous.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		playerManager.broadcastTcpMessage(ChatMessage.announce("The round is over; changing to the next map."));
+	}
+
+	/**
+	 * Sends a whole world to all players, replacing the one they have.
+	 * @param world The world to send.
+	 * @param respawn Whether to respawn each player once their client has
+	 *                the world.
+	 */
+	private void sendWorld(World world, boolean respawn) {
+		var teams = teamManager.getTeams().stream().filter(t -> t.getSpawnPoint() != null).toList();
+		int[] teamIds = new int[teams.size()];
+		float[] teamSpawnPoints = new float[teams.size() * 3];
+		for (int i = 0; i < teams.size(); i++) {
+			var team = teams.get(i);
+			teamIds[i] = team.getId();
+			teamSpawnPoints[i * 3] = team.getSpawnPoint().x;
+			teamSpawnPoints[i * 3 + 1] = team.getSpawnPoint().y;
+			teamSpawnPoints[i * 3 + 2] = team.getSpawnPoint().z;
+		}
+		var message = new WorldChangeMessage(world.getPalette().toArray(), teamIds, teamSpawnPoints, world.getChunkCount());
+		for (var player : playerManager.getPlayers()) {
+			var sent = playerManager.getHandler(player).sendWorld(message, world);
+			if (respawn) mapRotation.queueRespawn(player, sent);
+		}
+	}
+
+	private SupportTracker newSupportTracker(World world) {
+		if (!config.actions.dropFloatingBlocks) return null;
+		return new SupportTracker(world, config.actions.maxFloatingClusterSize, config.actions.floatingBlockChecksPerTick);
+	}
+
+	/**
+	 * Called when a player or projectile removes a block, so that any blocks
+	 * that were only held up by it are dropped on the next tick.
+	 * @param pos The position of the removed block.
+	 */
+	public void onBlockRemoved(Vector3i pos) {
+		SupportTracker tracker = supportTracker;
+		if (tracker != null) tracker.blockRemoved(pos.x, pos.y, pos.z);
+	}
+
+	/**
+	 * Called when all blocks in a region are removed, like by filling it with
+	 * air, so that any blocks that were only held up by them are dropped on
+	 * the next tick.
+	 * @param region The region that was removed.
+	 */
+	public void onRegionRemoved(BlockRegion region) {
+		SupportTracker tracker = supportTracker;
+		if (tracker != null) tracker.regionRemoved(region);
+	}
+
+	/**
+	 * @return The tracker that drops floating blocks, or null if that's
+	 * turned off.
+	 */
+	public SupportTracker getSupportTracker() {
+		return supportTracker;
+	}
+
+	public DatagramStats getDatagramStats() {
+		return datagramStats;
+	}
+
+	public MapRotation getMapRotation() {
+		return mapRotation;
+	}
+
 	public PlayerManager getPlayerManager() {
 		return playerManager;
 	}
@@ -183,6 +453,10 @@ public class Server implements Runnable {
 		return teamManager;
 	}
 
+	public TickProfiler getTickProfiler() {
+		return worldUpdater.getProfiler();
+	}
+
 	public ProjectileManager getProjectileManager() {
 		return projectileManager;
 	}
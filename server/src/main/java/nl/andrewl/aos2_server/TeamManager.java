@@ -2,6 +2,7 @@ package nl.andrewl.aos2_server;
 
 import nl.andrewl.aos2_server.model.ServerPlayer;
 import nl.andrewl.aos_core.model.Team;
+import nl.andrewl.aos_core.model.world.ZoneIndex;
 import org.joml.Vector3f;
 import org.joml.Vector3i;
 
@@ -14,6 +15,12 @@ public class TeamManager {
 	private int nextTeamId = 1;
 	private final Server server;
 	private final Map<Integer, Team> teams;
+	private final Map<Integer, String> spawnPointNames = new HashMap<>();
+	/**
+	 * The zones around each team's spawn point. This is rebuilt whenever a
+	 * spawn point changes, so that checks don't need to look at each team.
+	 */
+	private volatile ZoneIndex zones = ZoneIndex.EMPTY;
 
 	public TeamManager(Server server) {
 		this.server = server;
@@ -22,7 +29,41 @@ public class TeamManager {
 
 	public synchronized void addTeam(String name, Vector3f color, String spawnPoint) {
 		int id = nextTeamId++;
-		teams.put(id, new Team(id, name, color, server.getWorld().getSpawnPoint(spawnPoint)));
+		// Teams get their own copy of the spawn point, since it's updated when the world changes.
+		Vector3f point = server.getWorld().getSpawnPoint(spawnPoint);
+		teams.put(id, new Team(id, name, color, point == null ? null : new Vector3f(point)));
+		spawnPointNames.put(id, spawnPoint);
+		rebuildZones();
+	}
+
+	/**
+	 * Moves each team's spawn point to the one with the same name in the
+	 * server's current world, after the world has changed. Teams keep their
+	 * spawn point if the world doesn't have one with that name.
+	 */
+	public synchronized void updateSpawnPoints() {
+		for (var team : teams.values()) {
+			Vector3f point = server.getWorld().getSpawnPoint(spawnPointNames.get(team.getId()));
+			if (point != null && team.getSpawnPoint() != null) team.setSpawnPoint(point);
+		}
+		rebuildZones();
+	}
+
+	private void rebuildZones() {
+		float protection = server.getConfig().actions.teamSpawnProtection;
+		float resupply = server.getConfig().actions.resupplyRadius;
+		List<ZoneIndex.Zone> zoneList = new ArrayList<>();
+		for (var team : teams.values()) {
+			if (team.getSpawnPoint() == null) continue;
+			Vector3f center = new Vector3f(team.getSpawnPoint());
+			if (protection > 0) zoneList.add(new ZoneIndex.Zone(ZoneIndex.Type.SPAWN_PROTECTION, team.getId(), center, protection));
+			if (resupply > 0) zoneList.add(new ZoneIndex.Zone(ZoneIndex.Type.RESUPPLY, team.getId(), center, resupply));
+		}
+		zones = new ZoneIndex(zoneList);
+	}
+
+	public ZoneIndex getZones() {
+		return zones;
 	}
 
 	public Team getTeam(int id) {
@@ -63,15 +104,30 @@ public class TeamManager {
 		return getPlayers(team);
 	}
 
+	/**
+	 * Checks if a block is in any team's spawn protection zone.
+	 */
 	public boolean isProtected(Vector3i pos) {
-		float prot = server.getConfig().actions.teamSpawnProtection;
-		return prot > 0 &&
-				getTeams().stream().anyMatch(t -> t.getSpawnPoint().distance(pos.x + 0.5f, pos.y + 0.5f, pos.z + 0.5f) <= prot);
+		return zones.contains(ZoneIndex.Type.SPAWN_PROTECTION, pos.x + 0.5f, pos.y + 0.5f, pos.z + 0.5f);
 	}
 
+	/**
+	 * Checks if a player is in their own team's spawn protection zone.
+	 */
 	public boolean isProtected(ServerPlayer player) {
-		float prot = server.getConfig().actions.teamSpawnProtection;
-		return prot > 0 &&
-				getTeams().stream().anyMatch(t -> t.equals(player.getTeam()) && player.getPosition().distance(t.getSpawnPoint()) <= prot);
+		return isInTeamZone(player, ZoneIndex.Type.SPAWN_PROTECTION);
+	}
+
+	/**
+	 * Checks if a player is close enough to their team's spawn point to be
+	 * resupplied.
+	 */
+	public boolean isInResupplyZone(ServerPlayer player) {
+		return isInTeamZone(player, ZoneIndex.Type.RESUPPLY);
+	}
+
+	private boolean isInTeamZone(ServerPlayer player, ZoneIndex.Type type) {
+		Team team = player.getTeam();
+		return team != null && zones.contains(type, team.getId(), player.getPosition());
 	}
 }
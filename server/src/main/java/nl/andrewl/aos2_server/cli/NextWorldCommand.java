@@ -0,0 +1,21 @@
+package nl.andrewl.aos2_server.cli;
+
+import picocli.CommandLine;
+
+@CommandLine.Command(
+		name = "next-world",
+		description = "Ends the current round, and changes to the next world in the map rotation.",
+		mixinStandardHelpOptions = true
+)
+public class NextWorldCommand implements Runnable {
+	@CommandLine.ParentCommand ServerCli cli;
+
+	@Override
+	public void run() {
+		if (cli.server.getMapRotation().requestChange()) {
+			cli.out.println("Changing to the next world as soon as it's loaded.");
+		} else {
+			cli.out.println("There's no map rotation; add worlds to the mapRotation config to use one.");
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package nl.andrewl.aos2_server.cli;
+
+import picocli.CommandLine;
+
+@CommandLine.Command(
+		name = "profile",
+		description = "Shows how long each phase of the server's ticks takes.",
+		mixinStandardHelpOptions = true
+)
+public class ProfileCommand {
+	@CommandLine.ParentCommand ServerCli cli;
+
+	@CommandLine.Command(name = "stats", description = "Shows stats for each tick phase, since the last time this was run.")
+	public void stats() {
+		var stats = cli.server.getTickProfiler().getStats();
+		TablePrinter tp = new TablePrinter(cli.out)
+				.drawBorders(true)
+				.addLine("Phase", "Ticks", "p50 (ms)", "p99 (ms)", "Max (ms)");
+		for (var phase : stats) {
+			tp.addLine(phase.name(), phase.count(), millis(phase.p50()), millis(phase.p99()), millis(phase.max()));
+		}
+		tp.println();
+	}
+
+	@CommandLine.Command(name = "history", description = "Shows how long each phase took in the most recent ticks.")
+	public void history() {
+		cli.out.print(cli.server.getTickProfiler().formatHistory());
+	}
+
+	@CommandLine.Command(name = "net", description = "Shows how many UDP messages and datagrams have been sent, since the last time this was run.")
+	public void net() {
+		var stats = cli.server.getDatagramStats().read();
+		double seconds = Math.max(stats.seconds(), 0.001);
+		cli.out.printf(
+				"In %.1f s: %d messages in %d datagrams (%.1f datagrams/s, %.1f messages/datagram), %.1f%% header overhead.%n",
+				stats.seconds(),
+				stats.messages(),
+				stats.datagrams(),
+				stats.datagrams() / seconds,
+				stats.datagrams() == 0 ? 0 : (double) stats.messages() / stats.datagrams(),
+				stats.headerOverhead() * 100
+		);
+	}
+
+	private static String millis(long nanos) {
+		return String.format("%.3f", nanos / 1_000_000.0);
+	}
+}
@@ -0,0 +1,33 @@
+package nl.andrewl.aos2_server.cli;
+
+import picocli.CommandLine;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+@CommandLine.Command(
+		name = "reset-world",
+		description = "Resets the world to the map that the server loaded, undoing all changes.",
+		mixinStandardHelpOptions = true
+)
+public class ResetWorldCommand implements Runnable {
+	private static final long TIMEOUT_SECONDS = 10;
+
+	@CommandLine.ParentCommand ServerCli cli;
+
+	@Override
+	public void run() {
+		try {
+			int count = cli.server.requestWorldReset().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			cli.out.println("Reset " + count + " chunks.");
+		} catch (ExecutionException e) {
+			cli.out.println(e.getCause().getMessage());
+		} catch (TimeoutException e) {
+			// The reset is still queued, and will happen if the server's tick loop catches up.
+			cli.out.println("Timed out after " + TIMEOUT_SECONDS + " seconds waiting for the world to be reset.");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package nl.andrewl.aos2_server.cli;
 
+import nl.andrewl.aos_core.model.world.PagedWorld;
+import nl.andrewl.aos_core.model.world.World;
 import nl.andrewl.aos_core.model.world.WorldIO;
 import picocli.CommandLine;
 
@@ -17,11 +19,19 @@ public class SaveWorldCommand implements Runnable {
 	@CommandLine.Option(names = {"-o", "--output"}, description = "The file to save to.", defaultValue = "world.wld")
 	Path file;
 
+	@CommandLine.Option(names = {"-p", "--paged"}, description = "Save as a paged world directory, which the server can load without reading every chunk.")
+	boolean paged;
+
 	@Override
 	public void run() {
 		try {
 			cli.out.println("Saving world...");
-			WorldIO.write(cli.server.getWorld(), file);
+			if (paged) {
+				PagedWorld.write(cli.server.getWorld(), file);
+			} else {
+				World world = cli.server.getWorld();
+				WorldIO.write(world.supportsSnapshots() ? world.snapshot() : world, file);
+			}
 			cli.out.println("Saved server's world to " + file.toAbsolutePath());
 		} catch (IOException e) {
 			e.printStackTrace();
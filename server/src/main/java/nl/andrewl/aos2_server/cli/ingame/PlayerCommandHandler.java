@@ -2,6 +2,7 @@ package nl.andrewl.aos2_server.cli.ingame;
 
 import nl.andrewl.aos2_server.ClientCommunicationHandler;
 import nl.andrewl.aos2_server.Server;
+import nl.andrewl.aos2_server.cli.ingame.commands.FillCommand;
 import nl.andrewl.aos2_server.cli.ingame.commands.KillCommand;
 import nl.andrewl.aos2_server.cli.ingame.commands.KillDeathRatioCommand;
 import nl.andrewl.aos2_server.cli.ingame.commands.PlayerModeCommand;
@@ -25,6 +26,7 @@ public class PlayerCommandHandler {
 	public PlayerCommandHandler(Server server) {
 		this.server = server;
 		commands = new HashMap<>();
+		commands.put("fill", new FillCommand());
 		commands.put("kd", new KillDeathRatioCommand());
 		commands.put("kill", new KillCommand());
 		commands.put("mode", new PlayerModeCommand());
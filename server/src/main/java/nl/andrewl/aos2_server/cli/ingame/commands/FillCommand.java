@@ -0,0 +1,67 @@
+package nl.andrewl.aos2_server.cli.ingame.commands;
+
+import nl.andrewl.aos2_server.ClientCommunicationHandler;
+import nl.andrewl.aos2_server.Server;
+import nl.andrewl.aos2_server.cli.ingame.PlayerCommand;
+import nl.andrewl.aos2_server.model.ServerPlayer;
+import nl.andrewl.aos_core.model.PlayerMode;
+import nl.andrewl.aos_core.model.world.BlockRegion;
+import nl.andrewl.aos_core.net.client.ChatMessage;
+
+/**
+ * Command for filling a box or sphere of blocks at once. Only players in
+ * creative mode may use this.
+ * <ul>
+ *     <li>{@code /fill <x1> <y1> <z1> <x2> <y2> <z2> <block>}</li>
+ *     <li>{@code /fill sphere <radius> <block>}, centered on the player.</li>
+ * </ul>
+ */
+public class FillCommand implements PlayerCommand {
+	private static final int MAX_SIZE = 128;
+
+	@Override
+	public void handle(String[] args, ServerPlayer player, ClientCommunicationHandler handler, Server server) {
+		if (player.getMode() != PlayerMode.CREATIVE) {
+			handler.sendTcpMessage(ChatMessage.privateMessage("You must be in creative mode to fill blocks."));
+			return;
+		}
+		BlockRegion region;
+		byte block;
+		try {
+			if (args.length == 3 && args[0].equalsIgnoreCase("sphere")) {
+				float radius = Float.parseFloat(args[1]);
+				if (!(radius > 0 && radius <= MAX_SIZE / 2f)) {
+					handler.sendTcpMessage(ChatMessage.privateMessage("Sphere radius must be greater than 0 and at most " + MAX_SIZE / 2 + "."));
+					return;
+				}
+				var pos = player.getPosition();
+				region = BlockRegion.sphere((int) Math.floor(pos.x()), (int) Math.floor(pos.y()), (int) Math.floor(pos.z()), radius);
+				block = (byte) Integer.parseInt(args[2]);
+			} else if (args.length == 7) {
+				region = BlockRegion.box(
+						Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+						Integer.parseInt(args[3]), Integer.parseInt(args[4]), Integer.parseInt(args[5])
+				);
+				block = (byte) Integer.parseInt(args[6]);
+			} else {
+				handler.sendTcpMessage(ChatMessage.privateMessage("Usage: /fill <x1> <y1> <z1> <x2> <y2> <z2> <block>, or /fill sphere <radius> <block>"));
+				return;
+			}
+		} catch (NumberFormatException e) {
+			handler.sendTcpMessage(ChatMessage.privateMessage("Invalid number: " + e.getMessage()));
+			return;
+		}
+		if (
+				region.maxX() - region.minX() >= MAX_SIZE ||
+				region.maxY() - region.minY() >= MAX_SIZE ||
+				region.maxZ() - region.minZ() >= MAX_SIZE
+		) {
+			handler.sendTcpMessage(ChatMessage.privateMessage("Regions can be at most " + MAX_SIZE + " blocks on each axis."));
+			return;
+		}
+		// The region is filled on the next tick, since commands are handled on the player's connection thread.
+		server.requestFill(region, block).thenAccept(changes ->
+				handler.sendTcpMessage(ChatMessage.privateMessage("Filled " + changes.getBlockCount() + " blocks."))
+		);
+	}
+}
@@ -9,7 +9,15 @@ public class ServerConfig {
 	public int maxPlayers = 32;
 	public int connectionBacklog = 5;
 	public float ticksPerSecond = 20.0f;
+	public float snapshotsPerSecond = 20.0f;
+	public int maxCatchUpTicks = 5;
 	public String world = "worlds.redfort";
+	public boolean offHeapChunks = false;
+	public int maxLoadedChunks = 4096;
+	public float worldDigestInterval = 10;
+	public JournalConfig journal = new JournalConfig();
+	public MapRotationConfig mapRotation = new MapRotationConfig();
+	public ProfilerConfig profiler = new ProfilerConfig();
 	public PhysicsConfig physics = new PhysicsConfig();
 	public ActionsConfig actions = new ActionsConfig();
 	public TeamConfig[] teams = new TeamConfig[]{
@@ -17,6 +25,24 @@ public class ServerConfig {
 			new TeamConfig("Blue", new float[]{0, 0, 0.8f}, "B")
 	};
 
+	public static class JournalConfig {
+		public boolean enabled = false;
+		public String directory = "world-journal";
+		public float flushInterval = 1;
+		public float compactionInterval = 300;
+	}
+
+	public static class ProfilerConfig {
+		public int historySize = 128;
+		public float spikeThreshold = 1;
+		public float spikeDumpInterval = 10;
+	}
+
+	public static class MapRotationConfig {
+		public String[] worlds = new String[0];
+		public float roundDuration = 0;
+	}
+
 	public static class PhysicsConfig {
 		public float gravity = 9.81f;
 		public float walkingSpeed = 4;
@@ -40,6 +66,9 @@ public class ServerConfig {
 		public float movementAccuracyDecreaseFactor = 0.01f;
 		public boolean friendlyFire = false;
 		public float healthRegenPerSecond = 0.01f;
+		public boolean dropFloatingBlocks = false;
+		public int maxFloatingClusterSize = 4096;
+		public int floatingBlockChecksPerTick = 50000;
 	}
 
 	public static class TeamConfig {
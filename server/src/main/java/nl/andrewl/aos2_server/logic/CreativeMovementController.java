@@ -8,18 +8,15 @@ import org.joml.Vector3f;
 
 public class CreativeMovementController implements PlayerMovementController {
 	@Override
-	public boolean tickMovement(float dt, ServerPlayer player, PlayerInputTracker input, Server server, World world, ServerConfig.PhysicsConfig config) {
-		boolean updated = tickVelocity(player, input, config);
+	public void tickMovement(float dt, ServerPlayer player, PlayerInputTracker input, Server server, World world, ServerConfig.PhysicsConfig config) {
+		tickVelocity(player, input, config);
 		if (player.getVelocity().lengthSquared() > 0) {
 			Vector3f movement = new Vector3f(player.getVelocity()).mul(dt);
 			player.getPosition().add(movement);
-			updated = true;
 		}
-		return updated;
 	}
 
-	private boolean tickVelocity(ServerPlayer player, PlayerInputTracker input, ServerConfig.PhysicsConfig config) {
-		boolean updated = false;
+	private void tickVelocity(ServerPlayer player, PlayerInputTracker input, ServerConfig.PhysicsConfig config) {
 		var velocity = player.getVelocity();
 		var orientation = player.getOrientation();
 		Vector3f acceleration = new Vector3f(0);
@@ -43,7 +40,6 @@ public class CreativeMovementController implements PlayerMovementController {
 			if (velocity.length() > maxSpeed) {
 				velocity.normalize(maxSpeed);
 			}
-			updated = true;
 		} else if (velocity.lengthSquared() > 0) {
 			float decel = Math.min(velocity.length(), config.movementDeceleration);
 			Vector3f deceleration = new Vector3f(velocity).negate().normalize().mul(decel);
@@ -51,8 +47,6 @@ public class CreativeMovementController implements PlayerMovementController {
 			if (Math.abs(velocity.x) < 0.1f) velocity.x = 0;
 			if (Math.abs(velocity.y) < 0.1f) velocity.y = 0;
 			if (Math.abs(velocity.z) < 0.1f) velocity.z = 0;
-			updated = true;
 		}
-		return updated;
 	}
 }
@@ -16,21 +16,18 @@ import static nl.andrewl.aos_core.model.Player.RADIUS;
 
 public class NormalMovementController implements PlayerMovementController {
 	@Override
-	public boolean tickMovement(float dt, ServerPlayer player, PlayerInputTracker input, Server server, World world, ServerConfig.PhysicsConfig config) {
-		boolean updated;
+	public void tickMovement(float dt, ServerPlayer player, PlayerInputTracker input, Server server, World world, ServerConfig.PhysicsConfig config) {
 		var velocity = player.getVelocity();
 		var position = player.getPosition();
 		boolean grounded = player.isGrounded(world);
-		updated = tickHorizontalVelocity(player, input, config, grounded);
+		tickHorizontalVelocity(player, input, config, grounded);
 
 		if (grounded) {
 			if (input.jumping()) {
 				velocity.y = config.jumpVerticalSpeed * (input.sprinting() ? 1.25f : 1f);
-				updated = true;
 			}
 		} else {
 			velocity.y -= config.gravity * dt * 2; // Apply double-gravity to players to make the game feel faster.
-			updated = true;
 		}
 
 		// Apply updated velocity to the player.
@@ -39,7 +36,6 @@ public class NormalMovementController implements PlayerMovementController {
 			// Check for collisions if we try to move according to what the player wants.
 			checkBlockCollisions(player, movement, server, world);
 			position.add(movement);
-			updated = true;
 		}
 
 		// Finally, check to see if the player is outside the world, and kill them if so.
@@ -50,12 +46,9 @@ public class NormalMovementController implements PlayerMovementController {
 		) {
 			server.getPlayerManager().playerKilled(player, null);
 		}
-
-		return updated;
 	}
 
-	private boolean tickHorizontalVelocity(ServerPlayer player, PlayerInputTracker input, ServerConfig.PhysicsConfig config, boolean grounded) {
-		boolean updated = false;
+	private void tickHorizontalVelocity(ServerPlayer player, PlayerInputTracker input, ServerConfig.PhysicsConfig config, boolean grounded) {
 		var velocity = player.getVelocity();
 		var orientation = player.getOrientation();
 		Vector3f horizontalVelocity = new Vector3f(
@@ -90,7 +83,6 @@ public class NormalMovementController implements PlayerMovementController {
 			if (horizontalVelocity.length() > maxSpeed) {
 				horizontalVelocity.normalize(maxSpeed);
 			}
-			updated = true;
 		} else if (horizontalVelocity.lengthSquared() > 0) {
 			float baseDecel = config.movementDeceleration;
 			if (!grounded) baseDecel *= 0.25f;
@@ -100,13 +92,11 @@ public class NormalMovementController implements PlayerMovementController {
 			if (horizontalVelocity.length() < 0.1f) {
 				horizontalVelocity.set(0);
 			}
-			updated = true;
 		}
 
 		// Update the player's velocity with what we've computed.
 		velocity.x = horizontalVelocity.x;
 		velocity.z = horizontalVelocity.z;
-		return updated;
 	}
 
 	private void checkBlockCollisions(ServerPlayer player, Vector3f movement, Server server, World world) {
@@ -228,9 +218,9 @@ public class NormalMovementController implements PlayerMovementController {
 									server.getPlayerManager().playerKilled(player, player);
 								} else {
 									var handler = server.getPlayerManager().getHandler(player.getId());
-									handler.sendDatagramPacket(new ClientHealthMessage(player.getHealth()));
+									handler.queueDatagram(new ClientHealthMessage(player.getHealth()));
 									int soundVariant = ThreadLocalRandom.current().nextInt(1, 4);
-									handler.sendDatagramPacket(new SoundMessage("hurt_" + soundVariant, 1, player.getPosition()));
+									handler.queueDatagram(new SoundMessage("hurt_" + soundVariant, 1, player.getPosition()));
 								}
 							}
 							position.y = blockMaxY;
@@ -11,6 +11,7 @@ import nl.andrewl.aos_core.model.item.gun.Ak47;
 import nl.andrewl.aos_core.model.item.gun.Rifle;
 import nl.andrewl.aos_core.model.item.gun.Winchester;
 import nl.andrewl.aos_core.model.world.World;
+import nl.andrewl.aos_core.net.InputQueue;
 import nl.andrewl.aos_core.net.client.*;
 import nl.andrewl.aos_core.net.world.ChunkUpdateMessage;
 import org.joml.Math;
@@ -23,8 +24,15 @@ import java.util.concurrent.ThreadLocalRandom;
  * Component that manages a server player's current actions and movement.
  */
 public class PlayerActionManager {
+	/**
+	 * The most messages that a client can send in between two ticks, after
+	 * which more are dropped.
+	 */
+	private static final int INPUT_QUEUE_CAPACITY = 256;
+
 	private final ServerPlayer player;
 	private final PlayerInputTracker input;
+	private final InputQueue inputQueue = new InputQueue(INPUT_QUEUE_CAPACITY);
 	private final PlayerMovementController normalMovementController = new NormalMovementController();
 	private final CreativeMovementController creativeMovementController = new CreativeMovementController();
 
@@ -39,8 +47,6 @@ public class PlayerActionManager {
 	private long gunReloadingStartedAt = 0;
 	private GunItemStack reloadingItemStack = null;
 
-	private boolean updated = false;
-
 	public PlayerActionManager(ServerPlayer player) {
 		this.player = player;
 		this.input = new PlayerInputTracker(player);
@@ -50,6 +56,14 @@ public class PlayerActionManager {
 		return input;
 	}
 
+	/**
+	 * @return The queue of messages from the player's client, which are
+	 * applied at the start of each tick.
+	 */
+	public InputQueue getInputQueue() {
+		return inputQueue;
+	}
+
 	public boolean setLastInputState(ClientInputState lastInputState) {
 		return input.setLastInputState(lastInputState);
 	}
@@ -59,19 +73,16 @@ public class PlayerActionManager {
 				player.getInventory().getSelectedItemStack() instanceof GunItemStack;
 	}
 
-	public boolean isUpdated() {
-		return updated;
-	}
-
+	/**
+	 * Performs the player's actions for this tick, like shooting and placing
+	 * blocks. This is followed by {@link PlayerActionManager#tickMovement(float, World, Server)}.
+	 */
 	public void tick(long now, float dt, World world, Server server) {
-		updated = false; // Reset the updated flag. This will be set to true if the player was updated in this tick.
-
 		if (player.getMode() != PlayerMode.SPECTATOR) {
 			if (player.getInventory().getSelectedIndex() != input.selectedInventoryIndex()) {
 				player.getInventory().setSelectedIndex(input.selectedInventoryIndex());
 				// Tell the client that their inventory slot has been updated properly.
-				server.getPlayerManager().getHandler(player.getId()).sendDatagramPacket(new InventorySelectedStackMessage(player.getInventory().getSelectedIndex()));
-				updated = true; // Tell everyone else that this player's selected item has changed.
+				server.getPlayerManager().getHandler(player.getId()).queueDatagram(new InventorySelectedStackMessage(player.getInventory().getSelectedIndex()));
 			}
 
 			ItemStack selectedStack = player.getInventory().getSelectedItemStack();
@@ -83,8 +94,7 @@ public class PlayerActionManager {
 
 			if (
 					now - lastResupplyAt > server.getConfig().actions.resupplyCooldown * 1000 &&
-							player.getTeam() != null &&
-							player.getPosition().distance(player.getTeam().getSpawnPoint()) < server.getConfig().actions.resupplyRadius
+							server.getTeamManager().isInResupplyZone(player)
 			) {
 				server.getPlayerManager().resupply(player);
 				lastResupplyAt = now;
@@ -93,18 +103,20 @@ public class PlayerActionManager {
 
 		if (player.getMode() == PlayerMode.NORMAL && server.getConfig().actions.healthRegenPerSecond != 0 && player.getHealth() < 1) {
 			player.setHealth(player.getHealth() + server.getConfig().actions.healthRegenPerSecond * dt);
-			server.getPlayerManager().getHandler(player).sendDatagramPacket(new ClientHealthMessage(player.getHealth()));
+			server.getPlayerManager().getHandler(player).queueDatagram(new ClientHealthMessage(player.getHealth()));
 		}
 
-		if (player.isCrouching() != input.crouching()) {
-			player.setCrouching(input.crouching());
-			updated = true;
-		}
+		player.setCrouching(input.crouching());
+	}
 
-		updated = switch (player.getMode()) {
+	/**
+	 * Moves the player for this tick, and then resets their input.
+	 */
+	public void tickMovement(float dt, World world, Server server) {
+		switch (player.getMode()) {
 			case NORMAL -> normalMovementController.tickMovement(dt, player, input, server, world, server.getConfig().physics);
 			case CREATIVE, SPECTATOR -> creativeMovementController.tickMovement(dt, player, input, server, world, server.getConfig().physics);
-		} || updated;
+		}
 		input.reset(); // Reset our input state after processing this tick's player input.
 	}
 
@@ -149,13 +161,14 @@ public class PlayerActionManager {
 			var hit = world.getLookingAtPos(player.getEyePosition(), player.getViewVector(), reach);
 			if (hit != null && !server.getTeamManager().isProtected(hit.pos())) {
 				world.setBlockAt(hit.pos().x, hit.pos().y, hit.pos().z, (byte) 0);
+				server.onBlockRemoved(hit.pos());
 				lastBlockRemovedAt = now;
 				if (player.getMode() == PlayerMode.NORMAL) {
 					stack.incrementAmount();
-					server.getPlayerManager().getHandler(player.getId()).sendDatagramPacket(new ItemStackMessage(player.getInventory()));
+					server.getPlayerManager().getHandler(player.getId()).queueDatagram(new ItemStackMessage(player.getInventory()));
 				}
-				server.getPlayerManager().broadcastUdpMessage(ChunkUpdateMessage.fromWorld(hit.pos(), world));
-				server.getPlayerManager().broadcastUdpMessage(new SoundMessage("block_break_1", 1, player.getPosition()));
+				server.getPlayerManager().queueUdpBroadcast(ChunkUpdateMessage.fromWorld(hit.pos(), world));
+				server.getPlayerManager().queueUdpBroadcast(new SoundMessage("block_break_1", 1, player.getPosition()));
 			}
 		}
 		// Check for placing blocks.
@@ -178,10 +191,10 @@ public class PlayerActionManager {
 					lastBlockPlacedAt = now;
 					if (player.getMode() == PlayerMode.NORMAL) {
 						stack.decrementAmount();
-						server.getPlayerManager().getHandler(player.getId()).sendDatagramPacket(new ItemStackMessage(player.getInventory()));
+						server.getPlayerManager().getHandler(player.getId()).queueDatagram(new ItemStackMessage(player.getInventory()));
 					}
-					server.getPlayerManager().broadcastUdpMessage(ChunkUpdateMessage.fromWorld(placePos, world));
-					server.getPlayerManager().broadcastUdpMessage(new SoundMessage("block_place_1", 1, player.getPosition()));
+					server.getPlayerManager().queueUdpBroadcast(ChunkUpdateMessage.fromWorld(placePos, world));
+					server.getPlayerManager().queueUdpBroadcast(new SoundMessage("block_place_1", 1, player.getPosition()));
 				}
 			}
 		}
@@ -194,12 +207,12 @@ public class PlayerActionManager {
 		if (!gun.isAutomatic()) {
 			gunNeedsReCock = true;
 		}
-		server.getPlayerManager().getHandler(player.getId()).sendDatagramPacket(new ItemStackMessage(player.getInventory()));
+		server.getPlayerManager().getHandler(player.getId()).queueDatagram(new ItemStackMessage(player.getInventory()));
 		// Apply recoil!
 		float recoilFactor = 10f; // Maximum number of degrees to recoil.
 		if (isScopeEnabled()) recoilFactor *= 0.1f;
 		float recoil = recoilFactor * gun.getRecoil() + (float) ThreadLocalRandom.current().nextGaussian(0, 0.01);
-		server.getPlayerManager().getHandler(player.getId()).sendDatagramPacket(new ClientRecoilMessage(0, Math.toRadians(recoil)));
+		server.getPlayerManager().getHandler(player.getId()).queueDatagram(new ClientRecoilMessage(0, Math.toRadians(recoil)));
 		// Play sound!
 		String shotSound = null;
 		if (gun instanceof Rifle) {
@@ -212,7 +225,7 @@ public class PlayerActionManager {
 		Vector3f soundLocation = new Vector3f(player.getPosition());
 		soundLocation.y += 1.4f;
 		soundLocation.add(player.getViewVector());
-		server.getPlayerManager().broadcastUdpMessage(new SoundMessage(shotSound, 1, soundLocation, player.getVelocity()));
+		server.getPlayerManager().queueUdpBroadcast(new SoundMessage(shotSound, 1, soundLocation, player.getVelocity()));
 	}
 
 	private void reloadGun(long now, Server server, GunItemStack g) {
@@ -220,15 +233,15 @@ public class PlayerActionManager {
 		gunReloadingStartedAt = now;
 		gunReloading = true;
 		reloadingItemStack = g;
-		server.getPlayerManager().getHandler(player.getId()).sendDatagramPacket(new ItemStackMessage(player.getInventory()));
-		server.getPlayerManager().broadcastUdpMessage(new SoundMessage("reload", 1, player.getPosition(), player.getVelocity()));
+		server.getPlayerManager().getHandler(player.getId()).queueDatagram(new ItemStackMessage(player.getInventory()));
+		server.getPlayerManager().queueUdpBroadcast(new SoundMessage("reload", 1, player.getPosition(), player.getVelocity()));
 	}
 
 	private void reloadingComplete(Server server, Gun gun) {
 		reloadingItemStack.setBulletCount(gun.getMaxBulletCount());
 		int idx = player.getInventory().getIndex(reloadingItemStack);
 		if (idx != -1) {
-			server.getPlayerManager().getHandler(player.getId()).sendDatagramPacket(new ItemStackMessage(idx, reloadingItemStack));
+			server.getPlayerManager().getHandler(player.getId()).queueDatagram(new ItemStackMessage(idx, reloadingItemStack));
 		}
 		gunReloading = false;
 		reloadingItemStack = null;
@@ -6,5 +6,5 @@ import nl.andrewl.aos2_server.model.ServerPlayer;
 import nl.andrewl.aos_core.model.world.World;
 
 public interface PlayerMovementController {
-	boolean tickMovement(float dt, ServerPlayer player, PlayerInputTracker input, Server server, World world, ServerConfig.PhysicsConfig config);
+	void tickMovement(float dt, ServerPlayer player, PlayerInputTracker input, Server server, World world, ServerConfig.PhysicsConfig config);
 }
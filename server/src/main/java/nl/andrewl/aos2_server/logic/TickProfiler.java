@@ -0,0 +1,175 @@
+package nl.andrewl.aos2_server.logic;
+
+import nl.andrewl.aos_core.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measures how long each phase of the world updater's ticks takes, so that
+ * we can tell which part of the server is slowing it down.
+ * <p>
+ *     The world updater calls {@link TickProfiler#startTick()}, then
+ *     {@link TickProfiler#endPhase(Phase)} after each phase, and finally
+ *     {@link TickProfiler#endTick(long)}. Each phase's durations are recorded
+ *     in a {@link LatencyHistogram}, and the durations of the last few ticks
+ *     are kept in a ring buffer. When a tick takes longer than the spike
+ *     threshold, the ring buffer is printed, at most once per dump interval.
+ * </p>
+ * <p>
+ *     Only the world updater's thread records ticks, but stats can be read
+ *     from any thread, like the server's CLI.
+ * </p>
+ */
+public class TickProfiler {
+	public enum Phase {
+		INPUT,
+		ACTIONS,
+		MOVEMENT,
+		PROJECTILES,
+		WORLD,
+		BROADCAST
+	}
+
+	private static final Phase[] PHASES = Phase.values();
+	// Each tick in the history has its start time and total duration, followed by each phase's duration.
+	private static final int HISTORY_STRIDE = PHASES.length + 2;
+
+	/**
+	 * Stats about a phase's durations, in nanoseconds.
+	 * @param name The name of the phase, or "TOTAL" for whole ticks.
+	 * @param count The number of durations.
+	 * @param p50 The median duration.
+	 * @param p99 The 99th percentile duration.
+	 * @param max The longest duration.
+	 */
+	public record PhaseStats(String name, long count, long p50, long p99, long max) {}
+
+	private final long spikeThresholdNs;
+	private final long spikeDumpIntervalNs;
+
+	// The last histogram is for whole ticks.
+	private final LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length + 1];
+	private final AtomicLongArray history;
+	private final int historySize;
+	private volatile long tickCount = 0;
+
+	// The state of the current tick, only used by the world updater's thread.
+	private final long[] phaseNs = new long[PHASES.length];
+	private long tickStartNs;
+	private long lastMarkNs;
+	private long lastDumpAtNs;
+
+	// The counts when stats were last read, so that stats cover the time since then.
+	private final long[][] lastCounts = new long[histograms.length][LatencyHistogram.BUCKET_COUNT];
+
+	/**
+	 * Creates a profiler.
+	 * @param historySize The number of recent ticks to keep.
+	 * @param spikeThresholdNs The duration after which a tick is a spike.
+	 * @param spikeDumpIntervalNs The shortest time between printing the
+	 *                            history for spikes.
+	 */
+	public TickProfiler(int historySize, long spikeThresholdNs, long spikeDumpIntervalNs) {
+		this.historySize = Math.max(1, historySize);
+		this.history = new AtomicLongArray(this.historySize * HISTORY_STRIDE);
+		this.spikeThresholdNs = spikeThresholdNs;
+		this.spikeDumpIntervalNs = spikeDumpIntervalNs;
+		for (int i = 0; i < histograms.length; i++) histograms[i] = new LatencyHistogram();
+		this.lastDumpAtNs = System.nanoTime() - spikeDumpIntervalNs;
+	}
+
+	public void startTick() {
+		tickStartNs = System.nanoTime();
+		lastMarkNs = tickStartNs;
+	}
+
+	/**
+	 * Records that a phase of the current tick has ended, and that the next
+	 * one starts now.
+	 * @param phase The phase that ended.
+	 */
+	public void endPhase(Phase phase) {
+		long now = System.nanoTime();
+		phaseNs[phase.ordinal()] = now - lastMarkNs;
+		lastMarkNs = now;
+	}
+
+	/**
+	 * Records the current tick, and prints the history if it was a spike.
+	 * @param currentTimeMillis The timestamp of the tick.
+	 */
+	public void endTick(long currentTimeMillis) {
+		long totalNs = System.nanoTime() - tickStartNs;
+		int offset = (int) (tickCount % historySize) * HISTORY_STRIDE;
+		history.set(offset, currentTimeMillis);
+		history.set(offset + 1, totalNs);
+		for (int i = 0; i < PHASES.length; i++) {
+			histograms[i].record(phaseNs[i]);
+			history.set(offset + 2 + i, phaseNs[i]);
+			phaseNs[i] = 0;
+		}
+		histograms[PHASES.length].record(totalNs);
+		tickCount++;
+		if (totalNs > spikeThresholdNs && tickStartNs - lastDumpAtNs >= spikeDumpIntervalNs) {
+			lastDumpAtNs = tickStartNs;
+			System.err.printf(
+					"Tick took %.3f ms, more than the %.3f ms spike threshold. Recent ticks:%n%s",
+					totalNs / 1_000_000.0, spikeThresholdNs / 1_000_000.0, formatHistory()
+			);
+		}
+	}
+
+	/**
+	 * Gets stats for each phase, and for whole ticks, covering the ticks since
+	 * the last time this was called.
+	 * @return The stats for each phase, followed by the stats for whole ticks.
+	 */
+	public synchronized List<PhaseStats> getStats() {
+		List<PhaseStats> stats = new ArrayList<>(histograms.length);
+		long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+		for (int h = 0; h < histograms.length; h++) {
+			histograms[h].copyCounts(counts);
+			long total = 0;
+			int maxBucket = -1;
+			for (int i = 0; i < counts.length; i++) {
+				long current = counts[i];
+				counts[i] -= lastCounts[h][i];
+				lastCounts[h][i] = current;
+				total += counts[i];
+				if (counts[i] > 0) maxBucket = i;
+			}
+			stats.add(new PhaseStats(
+					h < PHASES.length ? PHASES[h].name() : "TOTAL",
+					total,
+					LatencyHistogram.percentile(counts, total, 50),
+					LatencyHistogram.percentile(counts, total, 99),
+					maxBucket == -1 ? 0 : LatencyHistogram.bucketMaxValue(maxBucket)
+			));
+		}
+		return stats;
+	}
+
+	/**
+	 * Formats the recent ticks as a table, oldest first, with durations in
+	 * milliseconds. The tick that's being recorded while this is read may
+	 * show a mix of old and new durations.
+	 * @return The formatted history.
+	 */
+	public String formatHistory() {
+		StringBuilder sb = new StringBuilder(String.format("%-14s %9s", "Time", "TOTAL"));
+		for (var phase : PHASES) sb.append(String.format(" %11s", phase.name()));
+		sb.append(System.lineSeparator());
+		long count = tickCount;
+		for (long t = Math.max(0, count - historySize); t < count; t++) {
+			int offset = (int) (t % historySize) * HISTORY_STRIDE;
+			sb.append(String.format("%-14d %9.3f", history.get(offset), history.get(offset + 1) / 1_000_000.0));
+			for (int i = 0; i < PHASES.length; i++) {
+				sb.append(String.format(" %11.3f", history.get(offset + 2 + i) / 1_000_000.0));
+			}
+			sb.append(System.lineSeparator());
+		}
+		return sb.toString();
+	}
+}
@@ -1,23 +1,68 @@
 package nl.andrewl.aos2_server.logic;
 
 import nl.andrewl.aos2_server.Server;
-import org.joml.Math;
+import nl.andrewl.aos_core.FixedTimestep;
+import nl.andrewl.aos_core.net.world.BlockChangeSetMessage;
+import nl.andrewl.aos_core.net.world.WorldDigestMessage;
+
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * A runnable to run as a separate thread, to periodically update the server's
  * world as players perform actions. This is essentially the "core" of the
  * game engine, as it controls the game's main update pattern.
+ * <p>
+ *     Ticks run on a {@link FixedTimestep}, scheduled against absolute
+ *     deadlines so that the tick rate doesn't drift. If a tick overruns, the
+ *     missed ticks are run back-to-back to catch up, up to a limit, after
+ *     which the rest are skipped. Player updates are sent as snapshots at
+ *     their own rate, after the tick that's due.
+ * </p>
  */
 public class WorldUpdater implements Runnable {
+	/**
+	 * How long before a deadline to stop sleeping and start spinning, since
+	 * the OS may wake a sleeping thread up to this late.
+	 */
+	private static final long SPIN_NS = 1_000_000;
+
 	private final Server server;
-	private final float ticksPerSecond;
 	private final float secondsPerTick;
+	private final long nsPerTick;
+	private final long nsPerSnapshot;
+	private final int maxCatchUpTicks;
+	private final TickProfiler profiler;
 	private volatile boolean running;
+	private long lastWorldDigestAt = 0;
 
-	public WorldUpdater(Server server, float ticksPerSecond) {
+	/**
+	 * Creates the world updater.
+	 * @param server The server.
+	 * @param ticksPerSecond The rate at which to simulate the game.
+	 * @param snapshotsPerSecond The rate at which to send player updates.
+	 *                           This is capped at the tick rate, which is
+	 *                           also used if it's not positive.
+	 * @param maxCatchUpTicks The most ticks to run back-to-back to catch up
+	 *                        when the updater falls behind.
+	 */
+	public WorldUpdater(Server server, float ticksPerSecond, float snapshotsPerSecond, int maxCatchUpTicks) {
 		this.server = server;
-		this.ticksPerSecond = ticksPerSecond;
 		this.secondsPerTick = 1.0f / ticksPerSecond;
+		this.nsPerTick = (long) (1_000_000_000.0 / ticksPerSecond);
+		this.nsPerSnapshot = snapshotsPerSecond > 0
+				? Math.max(nsPerTick, (long) (1_000_000_000.0 / snapshotsPerSecond))
+				: nsPerTick;
+		this.maxCatchUpTicks = maxCatchUpTicks;
+		var profilerConfig = server.getConfig().profiler;
+		this.profiler = new TickProfiler(
+				profilerConfig.historySize,
+				(long) (nsPerTick * (double) profilerConfig.spikeThreshold),
+				(long) (profilerConfig.spikeDumpInterval * 1_000_000_000.0)
+		);
+	}
+
+	public TickProfiler getProfiler() {
+		return profiler;
 	}
 
 	public void shutdown() {
@@ -26,40 +71,91 @@ public class WorldUpdater implements Runnable {
 
 	@Override
 	public void run() {
-		double secondsPerTick = 1.0 / ticksPerSecond;
-		final long msPerTick = (long) Math.floor(secondsPerTick * 1_000);
-		final long nsPerTick = (long) Math.floor(secondsPerTick * 1_000_000_000);
-		System.out.printf("Running world updater at %d ms/tick, or %d ns/tick.%n", msPerTick, nsPerTick);
+		System.out.printf("Running world updater at %d ns/tick, sending snapshots every %d ns.%n", nsPerTick, nsPerSnapshot);
 		running = true;
-
+		var timestep = new FixedTimestep(System::nanoTime, nsPerTick, nsPerSnapshot, maxCatchUpTicks);
 		while (running) {
-			long start = System.nanoTime();
-			long now = System.currentTimeMillis();
-			tick(now);
-			long elapsedNs = System.nanoTime() - start;
-			if (elapsedNs > nsPerTick) {
-				System.err.printf("Took %d ns to do one tick, which is more than the desired %d ns per tick.%n", elapsedNs, nsPerTick);
-			} else {
-				long sleepTime = nsPerTick - elapsedNs;
-				long ms = sleepTime / 1_000_000;
-				int nanos = (int) (sleepTime % 1_000_000);
-				try {
-					Thread.sleep(ms, nanos);
-				} catch (InterruptedException e) {
-					throw new RuntimeException(e);
-				}
+			waitUntil(timestep.getNextTickAt());
+			long skipped = timestep.runDueTicks(sendSnapshot -> tick(System.currentTimeMillis(), sendSnapshot));
+			if (skipped > 0) {
+				System.err.printf("World updater is %d ticks behind; skipping them.%n", skipped);
 			}
 		}
 	}
 
+	/**
+	 * Waits until a deadline, by sleeping until shortly before it, and then
+	 * spinning, so that ticks start on time.
+	 * @param deadline The deadline, in terms of {@link System#nanoTime()}.
+	 */
+	private void waitUntil(long deadline) {
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > SPIN_NS) {
+			LockSupport.parkNanos(remaining - SPIN_NS);
+		}
+		while (deadline - System.nanoTime() > 0) {
+			Thread.onSpinWait();
+		}
+	}
+
 	/**
 	 * The main server update method, that runs once on each game tick, and
 	 * performs all game state updates.
 	 * @param currentTimeMillis The current timestamp for the tick. This may
 	 *                          be needed for certain functions in logic.
+	 * @param sendSnapshot Whether to send player updates after this tick.
 	 */
-	private void tick(long currentTimeMillis) {
-		server.getPlayerManager().tick(currentTimeMillis, secondsPerTick);
+	private void tick(long currentTimeMillis, boolean sendSnapshot) {
+		profiler.startTick();
+		server.getPlayerManager().applyInputs();
+		profiler.endPhase(TickProfiler.Phase.INPUT);
+		server.getPlayerManager().tickActions(currentTimeMillis, secondsPerTick);
+		profiler.endPhase(TickProfiler.Phase.ACTIONS);
+		server.getPlayerManager().tickMovement(secondsPerTick);
+		profiler.endPhase(TickProfiler.Phase.MOVEMENT);
 		server.getProjectileManager().tick(currentTimeMillis, secondsPerTick);
+		profiler.endPhase(TickProfiler.Phase.PROJECTILES);
+		server.fillRequestedRegions();
+		dropFloatingBlocks();
+		var journal = server.getWorld().getJournal();
+		if (journal != null) journal.tick();
+		// The world may be reset or changed at the end of a tick, so it's done last.
+		server.resetWorldIfRequested();
+		server.getMapRotation().tick(currentTimeMillis);
+		server.getMapRotation().respawnQueuedPlayers();
+		profiler.endPhase(TickProfiler.Phase.WORLD);
+		if (sendSnapshot) server.getPlayerManager().sendPlayerUpdates();
+		sendWorldDigest(currentTimeMillis);
+		server.getPlayerManager().flushDatagrams();
+		profiler.endPhase(TickProfiler.Phase.BROADCAST);
+		profiler.endTick(currentTimeMillis);
+	}
+
+	/**
+	 * Removes any blocks that were left floating by blocks removed during this
+	 * tick, and sends all of them to clients in one message.
+	 */
+	private void dropFloatingBlocks() {
+		var tracker = server.getSupportTracker();
+		if (tracker == null) return;
+		var changes = tracker.tick();
+		if (changes != null) {
+			server.getPlayerManager().broadcastTcpMessage(new BlockChangeSetMessage(changes));
+		}
+	}
+
+	/**
+	 * Periodically sends a digest of the world to all clients, so that they
+	 * can detect and repair any chunks that differ from ours, like when a
+	 * chunk update was lost. Worlds that don't support digests, like paged
+	 * worlds, are skipped.
+	 * @param currentTimeMillis The current timestamp for the tick.
+	 */
+	private void sendWorldDigest(long currentTimeMillis) {
+		float interval = server.getConfig().worldDigestInterval;
+		if (interval <= 0 || !server.getWorld().supportsDigests()) return;
+		if (currentTimeMillis - lastWorldDigestAt < interval * 1000) return;
+		server.getPlayerManager().broadcastTcpMessage(new WorldDigestMessage(server.getWorld().getDigest()));
+		lastWorldDigestAt = currentTimeMillis;
 	}
 }
@@ -67,6 +67,14 @@ public class ServerPlayer extends Player {
 		killCount++;
 	}
 
+	/**
+	 * @return The id of the item type that this player is holding, or -1 if
+	 * they aren't holding anything.
+	 */
+	public int getSelectedItemId() {
+		return inventory.getSelectedItemStack() == null ? -1 : inventory.getSelectedItemStack().getType().getId();
+	}
+
 	/**
 	 * Helper method to build an update message for this player, to be sent to
 	 * various clients.
@@ -78,8 +86,8 @@ public class ServerPlayer extends Player {
 				position.x, position.y, position.z,
 				velocity.x, velocity.y, velocity.z,
 				orientation.x, orientation.y,
-				actionManager.getInput().crouching(),
-				inventory.getSelectedItemStack() == null ? -1 : inventory.getSelectedItemStack().getType().getId(),
+				crouching,
+				getSelectedItemId(),
 				mode
 		);
 	}